@@ -0,0 +1,43 @@
+package io.sekretess.client;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of a {@link ResumableUploader}. Files are encrypted in the chunked format with chunks of
+ * {@code chunkSize} bytes and uploaded in parts of {@code partSize} plaintext bytes, a multiple of the chunk size.
+ * At most {@code parallelism} parts are uploaded at the same time, and a failed part is tried up to
+ * {@code maxAttempts} times, waiting {@code retryBackoff} times the attempt in between. The state of unfinished
+ * uploads is kept in {@code checkpointDirectory}.
+ */
+public record ResumableUploadConfig(int chunkSize, int partSize, int parallelism, int maxAttempts, Duration retryBackoff,
+                                    Path checkpointDirectory) {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_PART_SIZE = 8 * DEFAULT_CHUNK_SIZE;
+
+    public ResumableUploadConfig {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        if (partSize <= 0 || partSize % chunkSize != 0) {
+            throw new IllegalArgumentException("partSize must be a positive multiple of chunkSize " + chunkSize + ": " + partSize);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        if (retryBackoff == null || retryBackoff.isNegative()) {
+            throw new IllegalArgumentException("retryBackoff must not be negative: " + retryBackoff);
+        }
+        if (checkpointDirectory == null) {
+            throw new IllegalArgumentException("checkpointDirectory must be set");
+        }
+    }
+
+    public static ResumableUploadConfig defaults(Path checkpointDirectory) {
+        return new ResumableUploadConfig(DEFAULT_CHUNK_SIZE, DEFAULT_PART_SIZE, 4, 5, Duration.ofMillis(500), checkpointDirectory);
+    }
+}
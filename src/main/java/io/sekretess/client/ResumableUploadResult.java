@@ -0,0 +1,10 @@
+package io.sekretess.client;
+
+import io.sekretess.client.response.FileUploadResponse;
+import io.sekretess.util.EncryptedFileUpload;
+
+/**
+ * A completed resumable upload: the encrypted file with the key and ciphertext hash to send to the consumer, the
+ * server's response, and how many parts were already uploaded before and not sent again.
+ */
+public record ResumableUploadResult(EncryptedFileUpload encryptedFile, FileUploadResponse response, long partsResumed) {}
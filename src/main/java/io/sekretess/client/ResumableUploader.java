@@ -0,0 +1,261 @@
+package io.sekretess.client;
+
+import io.sekretess.client.response.FileUploadResponse;
+import io.sekretess.util.EncryptedFileUpload;
+import io.sekretess.util.FileEncryptionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uploads files in parts that can be resumed after a failure or a restart. The file is encrypted in the chunked
+ * format and its parts are sealed in order, which also hashes the ciphertext, and uploaded by up to
+ * {@code parallelism} threads; failed parts are retried on their own. The upload id, the key, the nonce prefix and a
+ * SHA-256 of the plaintext are kept in a checkpoint file, readable by the owner only where the file system supports POSIX permissions, until the
+ * upload completes; elsewhere every checkpoint written logs a warning, and the directory has to be protected otherwise.
+ * Uploading the same file to the same consumer again then seals all parts again with that key, which yields the same
+ * ciphertext, and only uploads the parts the server has not received. The plaintext is hashed again before that, as
+ * sealing other content under the same key and nonces would break the encryption; if the file changed, or the server
+ * no longer knows the upload, it starts over with a new key.
+ */
+public class ResumableUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumableUploader.class);
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private final SekretessServerClient serverClient;
+    private final ResumableUploadConfig config;
+    private final Executor sealExecutor;
+
+    public ResumableUploader(SekretessServerClient serverClient, ResumableUploadConfig config) {
+        this(serverClient, config, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an uploader that seals the chunks of every part on {@code sealExecutor}.
+     */
+    public ResumableUploader(SekretessServerClient serverClient, ResumableUploadConfig config, Executor sealExecutor) {
+        this.serverClient = serverClient;
+        this.config = config;
+        this.sealExecutor = sealExecutor;
+    }
+
+    public ResumableUploadResult upload(Path file, String consumer) throws IOException, InterruptedException {
+        Path checkpointFile = checkpointFile(file, consumer);
+        Checkpoint checkpoint = readCheckpoint(checkpointFile, file);
+        EncryptedFileUpload encryptedFile = null;
+        Set<Long> uploadedParts = Set.of();
+        if (checkpoint != null) {
+            encryptedFile = FileEncryptionUtil.encryptForUpload(file, config.chunkSize(), checkpoint.encodedKey(), checkpoint.encodedIv(),
+                    sealExecutor);
+            List<Long> receivedParts = serverClient.getUploadedParts(checkpoint.uploadId());
+            if (receivedParts == null) {
+                logger.warn("Upload {} of {} is no longer known to the server, starting over", checkpoint.uploadId(), file);
+                checkpoint = null;
+            } else {
+                uploadedParts = new HashSet<>(receivedParts);
+                logger.info("Resuming upload {} of {}, {} parts already uploaded", checkpoint.uploadId(), file, uploadedParts.size());
+            }
+        }
+        if (checkpoint == null) {
+            encryptedFile = FileEncryptionUtil.encryptForUpload(file, config.chunkSize(), sealExecutor);
+            String uploadId = serverClient.startUpload(consumer, encryptedFile.ciphertextSize(), encryptedFile.partCount(config.partSize()));
+            checkpoint = new Checkpoint(uploadId, encryptedFile.encodedKey(), encryptedFile.encodedIv(), Files.size(file),
+                    Files.getLastModifiedTime(file).toMillis(), plaintextSha256(file));
+            writeCheckpoint(checkpointFile, checkpoint);
+        }
+
+        long partsResumed = uploadParts(checkpoint.uploadId(), encryptedFile, uploadedParts);
+        FileUploadResponse response = serverClient.completeUpload(checkpoint.uploadId(), encryptedFile.ciphertextSha256());
+        Files.deleteIfExists(checkpointFile);
+        return new ResumableUploadResult(encryptedFile, response, partsResumed);
+    }
+
+    /**
+     * Seals every part in order and uploads the ones not uploaded yet. Stops handing out parts after the first part
+     * failed all attempts, waits for the parts in flight and rethrows the failure.
+     */
+    private long uploadParts(String uploadId, EncryptedFileUpload encryptedFile, Set<Long> uploadedParts)
+            throws IOException, InterruptedException {
+        long partCount = encryptedFile.partCount(config.partSize());
+        Semaphore inFlight = new Semaphore(config.parallelism());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Future<?>> uploads = new ArrayList<>();
+        long partsResumed = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(config.parallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "sekretess-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (long part = 0; part < partCount && failure.get() == null; part++) {
+                byte[] ciphertext = encryptedFile.sealPart(part, config.partSize());
+                if (uploadedParts.contains(part)) {
+                    partsResumed++;
+                    continue;
+                }
+                inFlight.acquire();
+                long partNumber = part;
+                uploads.add(executor.submit(() -> {
+                    try {
+                        uploadPart(uploadId, partNumber, ciphertext);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<?> upload : uploads) {
+                upload.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Part upload failed unexpectedly! " + uploadId, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        Exception failed = failure.get();
+        if (failed instanceof InterruptedException interrupted) {
+            throw interrupted;
+        }
+        if (failed != null) {
+            throw new IOException("Failed to upload " + uploadId + ", it can be resumed! " + failed.getMessage(), failed);
+        }
+        return partsResumed;
+    }
+
+    private void uploadPart(String uploadId, long part, byte[] ciphertext) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                serverClient.uploadPart(uploadId, part, ciphertext);
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= config.maxAttempts()) {
+                    throw e;
+                }
+                logger.warn("Upload of part {} of {} failed, attempt {} of {}: {}", part, uploadId, attempt, config.maxAttempts(), e.getMessage());
+                Thread.sleep(config.retryBackoff().multipliedBy(attempt).toMillis());
+            }
+        }
+    }
+
+    private Path checkpointFile(Path file, String consumer) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((file.toAbsolutePath().normalize() + "\n" + consumer).getBytes(StandardCharsets.UTF_8));
+            return config.checkpointDirectory().resolve(HexFormat.of().formatHex(digest) + ".upload");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available!", e);
+        }
+    }
+
+    /**
+     * Returns the checkpoint of an unfinished upload of {@code file}, or {@code null} if there is none, or the file
+     * changed since. Size and modification time only rule out changes cheaply; a rewrite that keeps both is caught
+     * by the plaintext hash.
+     */
+    private Checkpoint readCheckpoint(Path checkpointFile, Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpointFile)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            Checkpoint checkpoint = new Checkpoint(properties.getProperty("uploadId"), properties.getProperty("key"),
+                    properties.getProperty("iv"), Long.parseLong(properties.getProperty("size")),
+                    Long.parseLong(properties.getProperty("lastModified")), properties.getProperty("plaintextSha256"));
+            boolean sameLayout = Integer.parseInt(properties.getProperty("chunkSize")) == config.chunkSize()
+                    && Integer.parseInt(properties.getProperty("partSize")) == config.partSize();
+            if (sameLayout && checkpoint.plaintextSha256() != null && checkpoint.size() == Files.size(file)
+                    && checkpoint.lastModified() == Files.getLastModifiedTime(file).toMillis()
+                    && checkpoint.plaintextSha256().equals(plaintextSha256(file))) {
+                return checkpoint;
+            }
+            logger.warn("{} or the upload settings changed since upload {} started, starting over", file, checkpoint.uploadId());
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring unreadable upload checkpoint {}: {}", checkpointFile, e.getMessage());
+        }
+        Files.deleteIfExists(checkpointFile);
+        return null;
+    }
+
+    private void writeCheckpoint(Path checkpointFile, Checkpoint checkpoint) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("uploadId", checkpoint.uploadId());
+        properties.setProperty("key", checkpoint.encodedKey());
+        properties.setProperty("iv", checkpoint.encodedIv());
+        properties.setProperty("size", Long.toString(checkpoint.size()));
+        properties.setProperty("lastModified", Long.toString(checkpoint.lastModified()));
+        properties.setProperty("plaintextSha256", checkpoint.plaintextSha256());
+        properties.setProperty("chunkSize", Integer.toString(config.chunkSize()));
+        properties.setProperty("partSize", Integer.toString(config.partSize()));
+        Files.createDirectories(checkpointFile.getParent());
+        Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        if (temporary.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(temporary, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            logger.warn("Upload checkpoint {} holds the file key but cannot be made readable by its owner only on this file system, "
+                    + "restrict access to {}", checkpointFile, checkpointFile.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(temporary)) {
+            properties.store(writer, "sekretess resumable upload");
+        }
+        try {
+            Files.move(temporary, checkpointFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String plaintextSha256(Path file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available!", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                messageDigest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(messageDigest.digest());
+    }
+
+    private record Checkpoint(String uploadId, String encodedKey, String encodedIv, long size, long lastModified,
+                              String plaintextSha256) {
+    }
+}
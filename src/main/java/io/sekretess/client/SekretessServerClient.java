@@ -3,11 +3,16 @@ package io.sekretess.client;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import io.sekretess.client.request.SendAdMessage;
+import io.sekretess.client.request.CompleteUpload;
 import io.sekretess.client.request.SendMessage;
+import io.sekretess.client.request.StartUpload;
 import io.sekretess.client.response.ConsumerKeysResponse;
 import io.sekretess.client.response.FileUploadResponse;
 import io.sekretess.client.response.SendAdsMessageResponse;
 import io.sekretess.client.response.SendMessageResponse;
+import io.sekretess.client.response.StartUploadResponse;
+import io.sekretess.client.response.UploadStatusResponse;
+import io.sekretess.util.EncryptedFileUpload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +40,7 @@ public class SekretessServerClient {
     private final TokenProvider tokenProvider;
     private final String apiKeyCredentials;
     private static final Logger logger = LoggerFactory.getLogger(SekretessServerClient.class);
+    private static final String RESUMABLE_UPLOADS_PATH = "/api/v1/businesses/uploads/resumable";
 
     public SekretessServerClient() {
         this.businessServerUrl = System.getenv("SEKRETESS_BUSINESS_SERVER_URL");
@@ -159,11 +165,32 @@ public class SekretessServerClient {
     }
 
     public FileUploadResponse uploadFile(Path encryptedFile, String consumer) throws IOException, InterruptedException {
+        return uploadFile(HttpRequest.BodyPublishers.ofFile(encryptedFile), encryptedFile.getFileName().toString(), consumer);
+    }
+
+    /**
+     * Uploads a file that is encrypted while the request body is sent. Its ciphertext hash is available once this
+     * returns.
+     */
+    public FileUploadResponse uploadFile(EncryptedFileUpload encryptedFile, String consumer) throws IOException, InterruptedException {
+        return uploadFile(encryptedFile.bodyPublisher(), "sekretess-file-" + UUID.randomUUID() + ".bin", consumer);
+    }
+
+    /**
+     * Uploads a file without naming a consumer, for a file sent to several consumers. The file id and token are only
+     * delivered to them inside the end-to-end encrypted file message.
+     */
+    public FileUploadResponse uploadFile(EncryptedFileUpload encryptedFile) throws IOException, InterruptedException {
+        return uploadFile(encryptedFile.bodyPublisher(), "sekretess-file-" + UUID.randomUUID() + ".bin", null);
+    }
+
+    private FileUploadResponse uploadFile(HttpRequest.BodyPublisher file, String fileName, String consumer)
+            throws IOException, InterruptedException {
         String boundary = "----SekretessBoundary" + UUID.randomUUID();
-        String fileName = encryptedFile.getFileName().toString();
-        String consumerPart = "--" + boundary + "\r\n"
+        String consumerPart = consumer == null ? "" : "--" + boundary + "\r\n"
                 + "Content-Disposition: form-data; name=\"consumerName\"\r\n\r\n"
                 + consumer + "\r\n";
+        String recipients = consumer == null ? "several consumers" : consumer;
         String filePartHeader = "--" + boundary + "\r\n"
                 + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
                 + "Content-Type: application/octet-stream\r\n\r\n";
@@ -173,7 +200,7 @@ public class SekretessServerClient {
                 .POST(HttpRequest.BodyPublishers.concat(
                         HttpRequest.BodyPublishers.ofByteArray(consumerPart.getBytes(StandardCharsets.UTF_8)),
                         HttpRequest.BodyPublishers.ofByteArray(filePartHeader.getBytes(StandardCharsets.UTF_8)),
-                        HttpRequest.BodyPublishers.ofFile(encryptedFile),
+                        file,
                         HttpRequest.BodyPublishers.ofByteArray(closingBoundary.getBytes(StandardCharsets.UTF_8))
                 ))
                 .uri(URI.create(businessServerUrl + "/api/v1/businesses/uploads"))
@@ -182,10 +209,80 @@ public class SekretessServerClient {
 
         HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
         if (response.statusCode() != 200) {
-            throw new RuntimeException("Failed to upload encrypted file for consumer! " + consumer + " ,statusCode: " + response.statusCode());
+            throw new RuntimeException("Failed to upload encrypted file for consumer! " + recipients + " ,statusCode: " + response.statusCode());
+        }
+
+        logger.info("Successfully uploaded encrypted file for consumer! {}", recipients);
+        return new Gson().fromJson(response.body(), FileUploadResponse.class);
+    }
+
+    /**
+     * Starts a resumable upload of {@code size} ciphertext bytes in {@code parts} parts and returns its id.
+     */
+    public String startUpload(String consumer, long size, long parts) throws IOException, InterruptedException {
+        HttpRequest request = withAuthentication(HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofString(new Gson().toJson(new StartUpload(consumer, size, parts))))
+                .uri(URI.create(businessServerUrl + RESUMABLE_UPLOADS_PATH))
+                .header("Content-Type", "application/json"))
+                .build();
+
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200 && response.statusCode() != 201) {
+            throw new RuntimeException("Failed to start upload for consumer! " + consumer + " ,statusCode: " + response.statusCode());
+        }
+        return new Gson().fromJson(response.body(), StartUploadResponse.class).uploadId();
+    }
+
+    /**
+     * Returns the parts of a resumable upload the server has received, or {@code null} if it does not know the
+     * upload, for example because it expired.
+     */
+    public List<Long> getUploadedParts(String uploadId) throws IOException, InterruptedException {
+        HttpRequest request = withAuthentication(HttpRequest.newBuilder()
+                .GET()
+                .uri(URI.create(businessServerUrl + RESUMABLE_UPLOADS_PATH + "/" + uploadId)))
+                .build();
+
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 404) {
+            return null;
+        }
+        if (response.statusCode() != 200) {
+            throw new RuntimeException("Failed to fetch upload status! " + uploadId + " ,statusCode: " + response.statusCode());
+        }
+        List<Long> receivedParts = new Gson().fromJson(response.body(), UploadStatusResponse.class).receivedParts();
+        return receivedParts == null ? List.of() : receivedParts;
+    }
+
+    public void uploadPart(String uploadId, long part, byte[] ciphertext) throws IOException, InterruptedException {
+        HttpRequest request = withAuthentication(HttpRequest.newBuilder()
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(ciphertext))
+                .uri(URI.create(businessServerUrl + RESUMABLE_UPLOADS_PATH + "/" + uploadId + "/parts/" + part))
+                .header("Content-Type", "application/octet-stream"))
+                .build();
+
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200 && response.statusCode() != 204) {
+            throw new RuntimeException("Failed to upload part " + part + " of upload! " + uploadId + " ,statusCode: " + response.statusCode());
+        }
+    }
+
+    /**
+     * Completes a resumable upload once all parts are received; the server checks the ciphertext hash.
+     */
+    public FileUploadResponse completeUpload(String uploadId, String ciphertextSha256) throws IOException, InterruptedException {
+        HttpRequest request = withAuthentication(HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofString(new Gson().toJson(new CompleteUpload(ciphertextSha256))))
+                .uri(URI.create(businessServerUrl + RESUMABLE_UPLOADS_PATH + "/" + uploadId + "/complete"))
+                .header("Content-Type", "application/json"))
+                .build();
+
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new RuntimeException("Failed to complete upload! " + uploadId + " ,statusCode: " + response.statusCode());
         }
 
-        logger.info("Successfully uploaded encrypted file for consumer! {}", consumer);
+        logger.info("Successfully completed upload! {}", uploadId);
         return new Gson().fromJson(response.body(), FileUploadResponse.class);
     }
 
@@ -0,0 +1,3 @@
+package io.sekretess.client.request;
+
+public record CompleteUpload(String ciphertextSha256) {}
@@ -0,0 +1,3 @@
+package io.sekretess.client.request;
+
+public record StartUpload(String consumerName, long size, long parts) {}
@@ -0,0 +1,3 @@
+package io.sekretess.client.response;
+
+public record StartUploadResponse(String uploadId) {}
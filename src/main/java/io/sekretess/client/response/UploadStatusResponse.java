@@ -0,0 +1,5 @@
+package io.sekretess.client.response;
+
+import java.util.List;
+
+public record UploadStatusResponse(String uploadId, List<Long> receivedParts) {}
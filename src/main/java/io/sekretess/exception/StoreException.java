@@ -0,0 +1,7 @@
+package io.sekretess.exception;
+
+public class StoreException extends RuntimeException {
+    public StoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,79 @@
+package io.sekretess.manager;
+
+import io.sekretess.util.StableHash;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns consumers to {@code shardCount} SDK instances with consistent hashing. Every shard is placed on a hash
+ * ring {@code virtualNodes} times, and a consumer belongs to the first shard at or after its own hash. Changing the
+ * shard count only moves the consumers between the old and new ring positions, about {@code 1/shardCount} of them.
+ * The hash is stable across JVMs, so all instances agree on the owner of a consumer.
+ */
+public final class ConsumerSharding {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final int virtualNodes;
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    public ConsumerSharding(int shardIndex, int shardCount, int virtualNodes) {
+        if (shardCount <= 0 || virtualNodes <= 0) {
+            throw new IllegalArgumentException("shardCount and virtualNodes must be positive");
+        }
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("shardIndex must be between 0 and " + (shardCount - 1) + ": " + shardIndex);
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.virtualNodes = virtualNodes;
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.putIfAbsent(StableHash.hash("shard-" + shard + "#" + node), shard);
+            }
+        }
+    }
+
+    /**
+     * A single instance that owns every consumer.
+     */
+    public static ConsumerSharding single() {
+        return new ConsumerSharding(0, 1, 1);
+    }
+
+    public int shardOf(String consumer) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        Map.Entry<Long, Integer> owner = ring.ceilingEntry(StableHash.hash(consumer));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    public boolean owns(String consumer) {
+        return shardOf(consumer) == shardIndex;
+    }
+
+    public ConsumerSharding withShards(int shardIndex, int shardCount) {
+        return new ConsumerSharding(shardIndex, shardCount, virtualNodes);
+    }
+
+    public int shardIndex() {
+        return shardIndex;
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public int virtualNodes() {
+        return virtualNodes;
+    }
+
+    @Override
+    public String toString() {
+        return "shard " + shardIndex + " of " + shardCount;
+    }
+}
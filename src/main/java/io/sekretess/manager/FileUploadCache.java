@@ -0,0 +1,163 @@
+package io.sekretess.manager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.sekretess.model.FileMessageData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uploaded files by the SHA-256 of their plaintext and their chunk size, so that a file with the same content is only
+ * encrypted and uploaded again once its file token is about to expire. Only uploads that name no consumer are cached:
+ * their file id and token reach consumers inside the encrypted file message only, so one upload is reused for sends to
+ * any consumers, while the server may bind the token of a consumer's own upload to that consumer. The file message of an upload, with its id, token, key and IV, is kept until
+ * {@link FileUploadCacheConfig#expiryMargin()} before {@code expiresAt}. Uploads of files that changed while they were
+ * sent, or whose expiry cannot be parsed, are not cached. Concurrent sends of the same file share one upload.
+ * <p>
+ * A miss reads the file twice, once for the hash and once to encrypt it: the hash is the cache key and is needed
+ * before encryption can be skipped. The second read is mostly served from the page cache, and hashing costs less
+ * than encrypting and uploading the file, which a hit saves.
+ */
+final class FileUploadCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileUploadCache.class);
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+
+    private final Cache<UploadKey, CachedUpload> uploads;
+    private final Map<UploadKey, CompletableFuture<FileMessageData>> inFlight = new ConcurrentHashMap<>();
+    private final Duration expiryMargin;
+
+    FileUploadCache(FileUploadCacheConfig config) {
+        this.expiryMargin = config.expiryMargin();
+        this.uploads = Caffeine.newBuilder().executor(Runnable::run).recordStats()
+                .maximumSize(config.maximumSize())
+                .expireAfter(new Expiry<UploadKey, CachedUpload>() {
+                    @Override
+                    public long expireAfterCreate(UploadKey key, CachedUpload upload, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), upload.expiresAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UploadKey key, CachedUpload upload, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, upload, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(UploadKey key, CachedUpload upload, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns the file message of an earlier upload of a file with the same content as {@code file}, sent with
+     * {@code chunkSize}, or uploads it with {@code upload}, which must not name a consumer. Waits for an upload of the
+     * same file that is in progress, and uploads the file itself if that one fails.
+     */
+    FileMessageData getOrUpload(Path file, int chunkSize, Upload upload) throws Exception {
+        BasicFileAttributes before = Files.readAttributes(file, BasicFileAttributes.class);
+        UploadKey key = new UploadKey(sha256(file), chunkSize);
+        while (true) {
+            CachedUpload cached = uploads.getIfPresent(key);
+            if (cached != null) {
+                logger.debug("Reusing upload {} of {}", cached.fileMessage().fileId(), file);
+                return cached.fileMessage();
+            }
+            CompletableFuture<FileMessageData> uploading = new CompletableFuture<>();
+            CompletableFuture<FileMessageData> running = inFlight.putIfAbsent(key, uploading);
+            if (running == null) {
+                try {
+                    FileMessageData fileMessage = upload(file, key, before, upload);
+                    uploading.complete(fileMessage);
+                    return fileMessage;
+                } catch (Exception | Error e) {
+                    uploading.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(key, uploading);
+                }
+            }
+            try {
+                return running.join();
+            } catch (CompletionException | CancellationException e) {
+                logger.debug("Concurrent upload of {} failed, uploading it again: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    CacheStats stats() {
+        return uploads.stats();
+    }
+
+    private FileMessageData upload(Path file, UploadKey key, BasicFileAttributes before, Upload upload) throws Exception {
+        UploadedFile uploaded = upload.upload();
+        BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+        if (before.size() != after.size() || !before.lastModifiedTime().equals(after.lastModifiedTime())) {
+            logger.warn("{} changed while it was sent, its upload is not cached", file);
+        } else {
+            try {
+                Instant expiresAt = Instant.parse(uploaded.expiresAt()).minus(expiryMargin);
+                if (expiresAt.isAfter(Instant.now())) {
+                    uploads.put(key, new CachedUpload(uploaded.fileMessage(), expiresAt));
+                }
+            } catch (DateTimeParseException | NullPointerException e) {
+                logger.warn("Upload {} has no valid expiry, it is not cached: {}", uploaded.fileMessage().fileId(), uploaded.expiresAt());
+            }
+        }
+        return uploaded.fileMessage();
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available!", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @FunctionalInterface
+    interface Upload {
+        UploadedFile upload() throws Exception;
+    }
+
+    record UploadedFile(FileMessageData fileMessage, String expiresAt) {
+    }
+
+    private record UploadKey(String contentHash, int chunkSize) {
+    }
+
+    private record CachedUpload(FileMessageData fileMessage, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,22 @@
+package io.sekretess.manager;
+
+import java.time.Duration;
+
+/**
+ * Sizing of the cache of uploaded files kept by {@link SekretessManager}. At most {@code maximumSize} uploads are
+ * kept, and each one only until {@code expiryMargin} before its file token expires, so that consumers still have
+ * time to download the file.
+ */
+public record FileUploadCacheConfig(long maximumSize, Duration expiryMargin) {
+
+    public static final Duration DEFAULT_EXPIRY_MARGIN = Duration.ofMinutes(1);
+
+    public FileUploadCacheConfig {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        if (expiryMargin == null || expiryMargin.isNegative()) {
+            throw new IllegalArgumentException("expiryMargin must not be negative: " + expiryMargin);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package io.sekretess.manager;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.gson.Gson;
+import io.sekretess.client.ResumableUploadConfig;
+import io.sekretess.client.ResumableUploadResult;
+import io.sekretess.client.ResumableUploader;
 import io.sekretess.client.SekretessServerClient;
 import io.sekretess.client.response.ConsumerKeysResponse;
 import io.sekretess.client.response.FileUploadResponse;
@@ -10,9 +14,13 @@ import io.sekretess.exception.MessageSendException;
 import io.sekretess.exception.PrekeyBundleException;
 import io.sekretess.exception.SessionCreationException;
 import io.sekretess.model.FileMessageData;
-import io.sekretess.model.GroupSessionData;
+import io.sekretess.model.FileSendReport;
+import io.sekretess.model.GroupSessionRecordData;
 import io.sekretess.store.SekretessSignalProtocolStore;
-import io.sekretess.util.EncryptedFilePayload;
+import io.sekretess.store.SessionTierStats;
+import io.sekretess.store.SessionWriteStats;
+import io.sekretess.store.StoreMetrics;
+import io.sekretess.util.EncryptedFileUpload;
 import io.sekretess.util.FileEncryptionUtil;
 import org.signal.libsignal.protocol.*;
 import org.signal.libsignal.protocol.ecc.ECPublicKey;
@@ -29,29 +37,69 @@ import org.slf4j.LoggerFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
-public class SekretessManager {
+public class SekretessManager implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(SekretessManager.class);
+    private static final int MAX_SESSION_CONFLICT_RETRIES = 3;
 
     private final SekretessSignalProtocolStore signalProtocolStore;
     private final SekretessServerClient sekretessServerClient;
     private final String userName = System.getenv("BUSINESS_USER_NAME");
+    private final List<AutoCloseable> resources = new CopyOnWriteArrayList<>();
+    private Thread shutdownHook;
+    private volatile ConsumerSharding consumerSharding;
+    private volatile Supplier<StoreMetrics> sessionStoreMetrics = () -> null;
+    private volatile int fileChunkSize;
+    private volatile int fileInMemoryThreshold;
+    private volatile ResumableUploadConfig resumableUpload;
+    private volatile int fileSendParallelism = 1;
+    private final ThreadPoolExecutor fileSendExecutor = newFileSendExecutor();
+    private final ThreadPoolExecutor fileSealExecutor = newFileSealExecutor();
+    private volatile FileUploadCache fileUploadCache;
 
     public SekretessManager(SekretessSignalProtocolStore signalProtocolStore) {
-        this(signalProtocolStore, new SekretessServerClient());
+        this(signalProtocolStore, ConsumerSharding.single());
+    }
+
+    public SekretessManager(SekretessSignalProtocolStore signalProtocolStore, ConsumerSharding consumerSharding) {
+        this(signalProtocolStore, new SekretessServerClient(), consumerSharding);
     }
 
 
     SekretessManager(SekretessSignalProtocolStore signalProtocolStore,
                      SekretessServerClient serverClient) {
+        this(signalProtocolStore, serverClient, ConsumerSharding.single());
+    }
+
+    SekretessManager(SekretessSignalProtocolStore signalProtocolStore,
+                     SekretessServerClient serverClient,
+                     ConsumerSharding consumerSharding) {
         this.signalProtocolStore = signalProtocolStore;
         this.sekretessServerClient = serverClient;
+        this.consumerSharding = consumerSharding;
+        resources.add(fileSendExecutor::shutdown);
+        resources.add(fileSealExecutor::shutdown);
     }
 
     private void sendMessage(String message,
                              String consumer,
                              MessageDispatcher messageDispatcher) throws SessionCreationException, MessageSendException, PrekeyBundleException {
+        if (!ownsConsumer(consumer)) {
+            throw new MessageSendException("Consumer: " + consumer + " is owned by shard " + ownerShardOf(consumer) + ", not by " + consumerSharding);
+        }
         SignalProtocolAddress consumerAddress = new SignalProtocolAddress(consumer, 123);
         SessionRecord sessionRecord = signalProtocolStore.loadSession(consumerAddress);
         if (sessionRecord == null) {
@@ -60,17 +108,21 @@ public class SekretessManager {
             PreKeyBundle consumerPrekeyBundle = getConsumerPrekeyBundle(consumer);
             try {
                 sessionBuilder.process(consumerPrekeyBundle);
-                sessionRecord = signalProtocolStore.loadSession(consumerAddress);
+                // A session created concurrently by another instance wins; it is picked up by the encrypt below.
+                signalProtocolStore.consumeSessionConflict(consumerAddress);
             } catch (InvalidKeyException | UntrustedIdentityException e) {
                 throw new SessionCreationException("Exception happened when trying to create session with consumer: " + consumer + " , " + e.getMessage());
             }
         }
 
-        SessionCipher sessionCipher = new SessionCipher(signalProtocolStore, consumerAddress);
         try {
-            CiphertextMessage ciphertextMessage = sessionCipher.encrypt(message.getBytes(StandardCharsets.UTF_8));
+            CiphertextMessage ciphertextMessage = encrypt(consumerAddress, message.getBytes(StandardCharsets.UTF_8));
+            // With an async session store the session is persisted while the message is sent.
+            CompletableFuture<Void> sessionPersisted = signalProtocolStore.pendingSessionWrites(consumerAddress);
+            sessionRecord = signalProtocolStore.loadSession(consumerAddress);
             PreKeySignalMessage signalMessage = new PreKeySignalMessage(ciphertextMessage.serialize());
             SendMessageResponse sendMessageResponse = messageDispatcher.send(Base64.getEncoder().encodeToString(signalMessage.serialize()), consumer);
+            awaitSessionPersisted(sessionPersisted, consumer);
             IdentityKey idenKey = new IdentityKey(Base64.getDecoder().decode(sendMessageResponse.userIK()));
             if (!Arrays.equals(sessionRecord.getRemoteIdentityKey().getPublicKey().serialize(), idenKey.getPublicKey().serialize())) {
                 signalProtocolStore.deleteSession(consumerAddress);
@@ -87,38 +139,128 @@ public class SekretessManager {
     }
 
     public void sendFileToConsumer(Path filePath, String consumer) throws SessionCreationException, MessageSendException, PrekeyBundleException {
-        EncryptedFilePayload encryptedFilePayload = null;
         try {
-            encryptedFilePayload = FileEncryptionUtil.encrypt(filePath);
-            FileUploadResponse uploadResponse = sekretessServerClient.uploadFile(encryptedFilePayload.encryptedFilePath(), consumer);
-            FileMessageData fileMessageData = new FileMessageData(
-                    "file",
-                    "AES-256-GCM",
-                    "SHA-256",
-                    uploadResponse.fileId(),
-                    uploadResponse.fileToken(),
-                    encryptedFilePayload.encodedKey(),
-                    encryptedFilePayload.encodedIv(),
-                    encryptedFilePayload.ciphertextSha256(),
-                    encryptedFilePayload.plaintextSize(),
-                    encryptedFilePayload.ciphertextSize(),
-                    encryptedFilePayload.mimeType()
-            );
-            this.sendMessage(new Gson().toJson(fileMessageData), consumer, sekretessServerClient::sendFileMessage);
+            FileMessageData fileMessage = uploadFile(filePath, consumer);
+            this.sendMessage(new Gson().toJson(fileMessage), consumer, sekretessServerClient::sendFileMessage);
         } catch (MessageSendException | SessionCreationException | PrekeyBundleException e) {
             throw e;
         } catch (Exception e) {
             logger.error("Exception happened when trying to send file! {}", e.getMessage(), e);
             throw new MessageSendException("Exception happened when trying to send file! " + e.getMessage());
-        } finally {
-            if (encryptedFilePayload != null) {
+        }
+    }
+
+    /**
+     * Uploads a file for one consumer. With the file upload cache enabled, and no resumable uploads, the upload names
+     * no consumer so that it can be reused for sends to other consumers.
+     */
+    private FileMessageData uploadFile(Path filePath, String consumer) throws Exception {
+        FileUploadCache fileUploadCache = this.fileUploadCache;
+        ResumableUploadConfig resumableUpload = this.resumableUpload;
+        if (fileUploadCache != null && resumableUpload == null) {
+            return fileUploadCache.getOrUpload(filePath, fileChunkSize, unboundUpload(filePath));
+        }
+        EncryptedFileUpload encryptedFile;
+        FileUploadResponse uploadResponse;
+        if (resumableUpload == null) {
+            encryptedFile = FileEncryptionUtil.encryptForUpload(filePath, fileChunkSize, fileInMemoryThreshold, fileSealExecutor);
+            uploadResponse = sekretessServerClient.uploadFile(encryptedFile, consumer);
+        } else {
+            encryptedFile = FileEncryptionUtil.encryptInMemory(filePath, fileChunkSize, fileInMemoryThreshold, fileSealExecutor);
+            if (encryptedFile != null) {
+                uploadResponse = sekretessServerClient.uploadFile(encryptedFile, consumer);
+            } else {
+                ResumableUploadResult result = new ResumableUploader(sekretessServerClient, resumableUpload, fileSealExecutor)
+                        .upload(filePath, consumer);
+                encryptedFile = result.encryptedFile();
+                uploadResponse = result.response();
+            }
+        }
+        return fileMessage(encryptedFile, uploadResponse);
+    }
+
+    private FileUploadCache.Upload unboundUpload(Path filePath) {
+        return () -> {
+            EncryptedFileUpload encryptedFile = FileEncryptionUtil.encryptForUpload(filePath, fileChunkSize, fileInMemoryThreshold, fileSealExecutor);
+            FileUploadResponse uploadResponse = sekretessServerClient.uploadFile(encryptedFile);
+            return new FileUploadCache.UploadedFile(fileMessage(encryptedFile, uploadResponse), uploadResponse.expiresAt());
+        };
+    }
+
+    /**
+     * Sends a file to several consumers. The file is encrypted and uploaded once, and only the file message with its
+     * key, id and token is encrypted for every consumer and sent, by up to {@code fileSendParallelism} threads of a pool
+     * owned by this manager. The upload names no consumer; the file id and token reach the consumers only inside the
+     * encrypted file message. Duplicate consumers get the file once. Resumable uploads are not used here, the file is
+     * uploaded in one request.
+     *
+     * @return the uploaded file id, and the consumers the file message could not be sent to
+     * @throws MessageSendException if the file could not be encrypted or uploaded, in which case nothing was sent
+     */
+    public FileSendReport sendFileToConsumers(Path filePath, Collection<String> consumers) throws MessageSendException {
+        Set<String> recipients = new LinkedHashSet<>(consumers);
+        String fileMessage;
+        String fileId;
+        try {
+            FileUploadCache fileUploadCache = this.fileUploadCache;
+            FileMessageData fileMessageData = fileUploadCache != null
+                    ? fileUploadCache.getOrUpload(filePath, fileChunkSize, unboundUpload(filePath))
+                    : unboundUpload(filePath).upload().fileMessage();
+            fileMessage = new Gson().toJson(fileMessageData);
+            fileId = fileMessageData.fileId();
+        } catch (Exception e) {
+            logger.error("Exception happened when trying to upload file for {} consumers! {}", recipients.size(), e.getMessage(), e);
+            throw new MessageSendException("Exception happened when trying to upload file! " + e.getMessage());
+        }
+
+        Map<String, Exception> failures = new ConcurrentHashMap<>();
+        // Only as many sends are submitted as may run, instead of queueing one task per consumer.
+        int parallelism = fileSendParallelism;
+        Semaphore permits = new Semaphore(parallelism);
+        try {
+            for (String consumer : recipients) {
+                permits.acquire();
                 try {
-                    encryptedFilePayload.deleteTempFile();
-                } catch (Exception e) {
-                    logger.warn("Exception happened when deleting temp encrypted file! {}", e.getMessage(), e);
+                    fileSendExecutor.execute(() -> {
+                        try {
+                            sendMessage(fileMessage, consumer, sekretessServerClient::sendFileMessage);
+                        } catch (Exception e) {
+                            failures.put(consumer, e);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw new MessageSendException("Manager is closed, file " + fileId + " was not sent to all consumers!");
                 }
             }
+            permits.acquire(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageSendException("Interrupted while sending file " + fileId + " to consumers!");
+        }
+        if (!failures.isEmpty()) {
+            logger.warn("File {} could not be sent to {} of {} consumers", fileId, failures.size(), recipients.size());
         }
+        return new FileSendReport(fileId, recipients.size() - failures.size(), Map.copyOf(failures));
+    }
+
+    private static FileMessageData fileMessage(EncryptedFileUpload encryptedFile, FileUploadResponse uploadResponse) {
+        return new FileMessageData(
+                "file",
+                encryptedFile.algorithm(),
+                "SHA-256",
+                uploadResponse.fileId(),
+                uploadResponse.fileToken(),
+                encryptedFile.encodedKey(),
+                encryptedFile.encodedIv(),
+                encryptedFile.ciphertextSha256(),
+                encryptedFile.plaintextSize(),
+                encryptedFile.ciphertextSize(),
+                encryptedFile.mimeType(),
+                encryptedFile.chunkSize() > 0 ? encryptedFile.chunkSize() : null
+        );
     }
 
     private void handleRetrySendMessage(String message,
@@ -132,17 +274,18 @@ public class SekretessManager {
         signalProtocolStore.saveIdentity(consumerAddress, consumerPrekeyBundle.getIdentityKey());
         try {
             sessionBuilder.process(consumerPrekeyBundle);
-            signalProtocolStore.loadSession(consumerAddress);
+            signalProtocolStore.consumeSessionConflict(consumerAddress);
         } catch (InvalidKeyException | UntrustedIdentityException e) {
             logger.error("Exception happened when trying to create session with consumer: {} , {}", consumer, e.getMessage(), e);
             throw new RuntimeException(e);
         }
 
-        SessionCipher sessionCipher = new SessionCipher(signalProtocolStore, consumerAddress);
         try {
-            CiphertextMessage ciphertextMessage = sessionCipher.encrypt(message.getBytes(StandardCharsets.UTF_8));
+            CiphertextMessage ciphertextMessage = encrypt(consumerAddress, message.getBytes(StandardCharsets.UTF_8));
+            CompletableFuture<Void> sessionPersisted = signalProtocolStore.pendingSessionWrites(consumerAddress);
             PreKeySignalMessage signalMessage = new PreKeySignalMessage(ciphertextMessage.serialize());
             messageDispatcher.send(Base64.getEncoder().encodeToString(signalMessage.serialize()), consumer);
+            awaitSessionPersisted(sessionPersisted, consumer);
         } catch (Exception e) {
             logger.error("Exception happened when trying to send message! {}", e.getMessage(), e);
         }
@@ -156,10 +299,10 @@ public class SekretessManager {
         logger.info("Request received to subscribe ads messages from consumer: {}", consumer);
         try {
             SenderKeyDistributionMessage sentBusinessDistributionMessage = null;
-            GroupSessionData groupSessionModel = Optional.ofNullable(signalProtocolStore.getGroupSessionStore().loadGroupSession(userName)).orElseThrow();
+            GroupSessionRecordData groupSessionModel = Optional.ofNullable(signalProtocolStore.getGroupSessionStore().loadGroupSessionRecord(userName)).orElseThrow();
             if (groupSessionModel.sessionRecord() != null) {
                 sentBusinessDistributionMessage =
-                        new SenderKeyDistributionMessage(Base64.getDecoder().decode(groupSessionModel.businessDistributionMessage()));
+                        new SenderKeyDistributionMessage(groupSessionModel.businessDistributionMessage());
             } else {
                 throw new RuntimeException("Group session not found for business!");
             }
@@ -172,17 +315,18 @@ public class SekretessManager {
                 PreKeyBundle consumerPrekeyBundle = getConsumerPrekeyBundle(consumer);
                 try {
                     sessionBuilder.process(consumerPrekeyBundle);
-                    sessionRecord = signalProtocolStore.loadSession(consumerAddress);
+                    signalProtocolStore.consumeSessionConflict(consumerAddress);
                 } catch (InvalidKeyException | UntrustedIdentityException e) {
                     throw new SessionCreationException("Exception happened when trying to create session with consumer: " + consumer + " , " + e.getMessage());
                 }
             }
 
-            SessionCipher sessionCipher = new SessionCipher(signalProtocolStore, consumerAddress);
             try {
-                CiphertextMessage ciphertextMessage = sessionCipher.encrypt(Base64.getEncoder().encodeToString(sentBusinessDistributionMessage.serialize()).getBytes());
+                CiphertextMessage ciphertextMessage = encrypt(consumerAddress, Base64.getEncoder().encodeToString(sentBusinessDistributionMessage.serialize()).getBytes());
+                CompletableFuture<Void> sessionPersisted = signalProtocolStore.pendingSessionWrites(consumerAddress);
                 PreKeySignalMessage signalMessage = new PreKeySignalMessage(ciphertextMessage.serialize());
                 sekretessServerClient.sendKeyDistMessage(Base64.getEncoder().encodeToString(signalMessage.serialize()), consumer);
+                awaitSessionPersisted(sessionPersisted, consumer);
 
             } catch (Exception e) {
                 logger.error("Exception happened when trying to send message! {}", e.getMessage(), e);
@@ -205,17 +349,84 @@ public class SekretessManager {
     }
 
 
+    /**
+     * Whether this instance owns {@code consumer}. Messages to other consumers have to be sent through the
+     * instance returned by {@link #ownerShardOf}.
+     */
+    public boolean ownsConsumer(String consumer) {
+        return consumerSharding.owns(consumer);
+    }
+
+    public int ownerShardOf(String consumer) {
+        return consumerSharding.shardOf(consumer);
+    }
+
+    public ConsumerSharding getConsumerSharding() {
+        return consumerSharding;
+    }
+
+    /**
+     * Moves this instance to a new shard layout. Sessions of consumers it no longer owns are dropped from memory,
+     * and sessions of consumers it took over are loaded from the store. Callers should stop sending to the
+     * affected consumers on all instances until every instance has been resharded.
+     */
+    public synchronized void reshard(int shardIndex, int shardCount) {
+        ConsumerSharding previous = consumerSharding;
+        ConsumerSharding next = previous.withShards(shardIndex, shardCount);
+        consumerSharding = next;
+        int evicted = signalProtocolStore.evictSessions(consumer -> !next.owns(consumer));
+        logger.info("Resharded from {} to {}, dropped {} sessions", previous, next, evicted);
+        if (!signalProtocolStore.isOptimisticLocking()) {
+            Predicate<String> gained = consumer -> next.owns(consumer) && !previous.owns(consumer);
+            SekretessManagerFactory.restoreSessions(signalProtocolStore, gained);
+            SekretessManagerFactory.restoreIdentities(signalProtocolStore, gained);
+        }
+    }
+
+    public CacheStats getSessionCacheStats() {
+        return signalProtocolStore.getSessionCacheStats();
+    }
+
+    /**
+     * Hit counters of the file upload cache, or {@code null} unless it is enabled.
+     */
+    public CacheStats getFileUploadCacheStats() {
+        FileUploadCache fileUploadCache = this.fileUploadCache;
+        return fileUploadCache != null ? fileUploadCache.stats() : null;
+    }
+
+    public SessionWriteStats getSessionWriteStats() {
+        return signalProtocolStore.getSessionWriteStats();
+    }
+
+    /**
+     * Hit counters of the session cache, the warm tier and the session store, or {@code null} unless a warm tier
+     * is configured.
+     */
+    public SessionTierStats getSessionTierStats() {
+        return signalProtocolStore.getSessionTierStats();
+    }
+
+    /**
+     * Latency, timeout and rejection counters of the session store, or {@code null} unless a store timeout is
+     * configured.
+     */
+    public StoreMetrics getSessionStoreMetrics() {
+        return sessionStoreMetrics.get();
+    }
+
     public void sendAdsMessage(String message) throws MessageSendException {
         try {
-            GroupSessionData groupSessionModel = Optional.ofNullable(signalProtocolStore.getGroupSessionStore().loadGroupSession(userName)).orElseThrow();
+            GroupSessionRecordData groupSessionModel = Optional.ofNullable(signalProtocolStore.getGroupSessionStore().loadGroupSessionRecord(userName)).orElseThrow();
             GroupCipher groupCipher = new GroupCipher(this.signalProtocolStore, new SignalProtocolAddress(userName, 1));
             CiphertextMessage ciphertextMessage =
                     groupCipher.encrypt(UUID.fromString(groupSessionModel.distributionId()), message.getBytes());
             List<SendAdsMessageResponse> sendAdsMessageResponses = sekretessServerClient.sendAdsMessage(Base64.getEncoder().encodeToString(ciphertextMessage.serialize()), userName);
             if (!sendAdsMessageResponses.isEmpty()) {
-                sendAdsMessageResponses.forEach(sendAdsMessageResponse -> {
-                    sendSenderKeyDistributionMessage(sendAdsMessageResponse.consumerName());
-                });
+                sendAdsMessageResponses.stream()
+                        .map(SendAdsMessageResponse::consumerName)
+                        .filter(this::ownsConsumer)
+                        .forEach(this::sendSenderKeyDistributionMessage);
             }
 
         } catch (Exception e) {
@@ -225,6 +436,152 @@ public class SekretessManager {
     }
 
 
+    /**
+     * Releases resources created by {@link SekretessManagerFactory}, flushing any pending session writes. Resources
+     * are closed in reverse order of creation, so that store decorators flush into the stores they wrap. Removes the
+     * shutdown hook registered by {@link #closeOnShutdown()}, so a closed manager is not kept reachable by it.
+     */
+    @Override
+    public void close() {
+        synchronized (resources) {
+            if (shutdownHook != null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException e) {
+                    // The JVM is already shutting down; the hook finds the resources closed.
+                }
+                shutdownHook = null;
+            }
+            closeResources();
+        }
+    }
+
+    /**
+     * Closes this manager on JVM shutdown unless {@link #close()} was called before. Registers one hook per manager.
+     */
+    void closeOnShutdown() {
+        synchronized (resources) {
+            if (shutdownHook == null) {
+                shutdownHook = new Thread(this::closeResources, "sekretess-close-on-shutdown");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+        }
+    }
+
+    private void closeResources() {
+        synchronized (resources) {
+            for (AutoCloseable resource : resources.reversed()) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    logger.error("Exception happened when closing resource! {}", e.getMessage(), e);
+                }
+            }
+            resources.clear();
+        }
+    }
+
+    void addResource(AutoCloseable resource) {
+        resources.add(resource);
+    }
+
+    void setSessionStoreMetrics(Supplier<StoreMetrics> sessionStoreMetrics) {
+        this.sessionStoreMetrics = sessionStoreMetrics;
+    }
+
+    /**
+     * Sends files in the chunked format with chunks of {@code fileChunkSize} bytes, or encrypted as a whole if it is
+     * {@code 0}.
+     */
+    void setFileChunkSize(int fileChunkSize) {
+        this.fileChunkSize = fileChunkSize;
+    }
+
+    /**
+     * Encrypts files smaller than {@code fileInMemoryThreshold} bytes into memory and sends them in one request, also
+     * if resumable uploads are enabled, or none if it is {@code 0}.
+     */
+    void setFileInMemoryThreshold(int fileInMemoryThreshold) {
+        this.fileInMemoryThreshold = fileInMemoryThreshold;
+    }
+
+    /**
+     * Sends files with resumable uploads, or in one request if {@code resumableUpload} is {@code null}. Resumable
+     * uploads use the chunked format, so its chunk size must be the {@linkplain #setFileChunkSize file chunk size}.
+     */
+    void setResumableUpload(ResumableUploadConfig resumableUpload) {
+        if (resumableUpload != null && resumableUpload.chunkSize() != fileChunkSize) {
+            throw new IllegalArgumentException("Resumable uploads need the file chunk size " + fileChunkSize
+                    + " as chunk size: " + resumableUpload.chunkSize());
+        }
+        this.resumableUpload = resumableUpload;
+    }
+
+    /**
+     * Sends the file message of a multi-recipient file send to up to {@code fileSendParallelism} consumers at once.
+     */
+    void setFileSendParallelism(int fileSendParallelism) {
+        if (fileSendParallelism <= 0) {
+            throw new IllegalArgumentException("fileSendParallelism must be positive: " + fileSendParallelism);
+        }
+        synchronized (fileSendExecutor) {
+            if (fileSendParallelism > fileSendExecutor.getMaximumPoolSize()) {
+                fileSendExecutor.setMaximumPoolSize(fileSendParallelism);
+                fileSendExecutor.setCorePoolSize(fileSendParallelism);
+            } else {
+                fileSendExecutor.setCorePoolSize(fileSendParallelism);
+                fileSendExecutor.setMaximumPoolSize(fileSendParallelism);
+            }
+        }
+        this.fileSendParallelism = fileSendParallelism;
+    }
+
+    /**
+     * Reuses uploads of files with the same content while their file tokens are valid, or never if
+     * {@code fileUploadCache} is {@code null}.
+     */
+    void setFileUploadCache(FileUploadCacheConfig fileUploadCache) {
+        this.fileUploadCache = fileUploadCache != null ? new FileUploadCache(fileUploadCache) : null;
+    }
+
+    /**
+     * Waits for the session writes of a message that was already sent. Their failure cannot undo the send, so it is
+     * logged and counted in {@link SessionWriteStats#writeFailures()} instead of failing it. The session stays cached
+     * and is written again with its next change or on {@link SekretessSignalProtocolStore#flushSessionWrites()}.
+     */
+    private static void awaitSessionPersisted(CompletableFuture<Void> sessionPersisted, String consumer) {
+        try {
+            sessionPersisted.join();
+        } catch (CompletionException | CancellationException e) {
+            logger.error("Message to {} was sent, but its session could not be persisted! {}", consumer, e.getMessage(), e);
+        }
+    }
+
+    private static ThreadPoolExecutor newFileSendExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "sekretess-file-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Seals the chunks of files sent in the chunked format, one thread per processor, instead of on the common
+     * fork-join pool shared with the rest of the application.
+     */
+    private static ThreadPoolExecutor newFileSealExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "sekretess-file-seal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private PreKeyBundle getConsumerPrekeyBundle(String consumer) throws PrekeyBundleException {
         try {
             ConsumerKeysResponse consumerKeysResponse = sekretessServerClient.getConsumerKeys(consumer);
@@ -262,6 +619,25 @@ public class SekretessManager {
         }
     }
 
+    /**
+     * Encrypts for an existing session. When the session write is rejected because another instance sharing
+     * the session store advanced the session first, the ciphertext is discarded and the message is encrypted
+     * again with the reloaded session.
+     */
+    private CiphertextMessage encrypt(SignalProtocolAddress address, byte[] plaintext) throws Exception {
+        SessionCipher sessionCipher = new SessionCipher(signalProtocolStore, address);
+        for (int attempt = 1; ; attempt++) {
+            CiphertextMessage ciphertextMessage = sessionCipher.encrypt(plaintext);
+            if (!signalProtocolStore.consumeSessionConflict(address)) {
+                return ciphertextMessage;
+            }
+            if (attempt > MAX_SESSION_CONFLICT_RETRIES) {
+                throw new MessageSendException("Session of consumer: " + address.getName() + " is being modified concurrently");
+            }
+            logger.info("Session of consumer: {} was modified concurrently, encrypting again", address.getName());
+        }
+    }
+
     @FunctionalInterface
     private interface MessageDispatcher {
         SendMessageResponse send(String text, String consumer) throws Exception;
@@ -1,9 +1,11 @@
 package io.sekretess.manager;
 
-import io.sekretess.model.GroupSessionData;
+import io.sekretess.client.ResumableUploadConfig;
+import io.sekretess.model.GroupSessionRecordData;
 import io.sekretess.model.IdentityKeyData;
-import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
 import io.sekretess.store.*;
+import io.sekretess.store.file.WarmTierSessionStore;
 import org.signal.libsignal.protocol.*;
 import org.signal.libsignal.protocol.ecc.ECKeyPair;
 import org.signal.libsignal.protocol.groups.GroupSessionBuilder;
@@ -14,19 +16,86 @@ import org.signal.libsignal.protocol.util.KeyHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Base64;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class SekretessManagerFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(SekretessManagerFactory.class);
     private static final String username = System.getenv("BUSINESS_USER_NAME");
+    private static final int DEFAULT_SESSION_LOAD_PAGE_SIZE = 1000;
+    private static final int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 100;
+    private static final long DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int DEFAULT_WRITE_BEHIND_MAX_DIRTY = 10_000;
+    private static final int DEFAULT_SHARD_COUNT = 1;
+    private static final long MAX_FILE_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_FILE_IN_MEMORY_THRESHOLD = 256 * 1024;
+    private static final long MAX_FILE_IN_MEMORY_THRESHOLD = 64 * 1024 * 1024;
+    private static final int DEFAULT_FILE_UPLOAD_PARALLELISM = 4;
+    private static final int DEFAULT_FILE_UPLOAD_MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_FILE_UPLOAD_RETRY_BACKOFF_MILLIS = 500;
+    private static final int DEFAULT_FILE_SEND_PARALLELISM = 8;
+    private static final int DEFAULT_STORE_MAX_CONCURRENT_CALLS = 16;
+    private static final int DEFAULT_STORE_MAX_BUFFERED_WRITES = 10_000;
+    private static final long DEFAULT_STORE_RETRY_INTERVAL_MILLIS = 1000;
+    private static final long DEFAULT_WARM_TIER_MAX_SIZE = 1_000_000;
+    // Sessions saved by other instances are stamped with their clocks, which may be behind ours.
+    private static final long SNAPSHOT_CLOCK_SKEW_MILLIS = 60_000;
 
     public static SekretessManager createSekretessManager(IdentityStore identityStore,
                                                           SessionStore sessionStore,
                                                           GroupSessionStore groupSessionStore) throws InvalidKeyException {
+        return createSekretessManager(identityStore, sessionStore, null, groupSessionStore);
+    }
+
+    /**
+     * Creates a manager on non-blocking stores. Session writes overlap with encryption and sending; identities,
+     * sender keys and the startup restore wait for the store. With optimistic locking session writes wait too.
+     */
+    public static SekretessManager createSekretessManager(AsyncIdentityStore identityStore,
+                                                          AsyncSessionStore sessionStore,
+                                                          AsyncGroupSessionStore groupSessionStore) throws InvalidKeyException {
+        if (Boolean.parseBoolean(System.getenv("SEKRETESS_SESSION_WRITE_BEHIND"))) {
+            throw new IllegalStateException("SEKRETESS_SESSION_WRITE_BEHIND cannot be combined with an AsyncSessionStore");
+        }
+        if (longEnv("SEKRETESS_STORE_TIMEOUT_MILLIS", 0) > 0) {
+            throw new IllegalStateException("SEKRETESS_STORE_TIMEOUT_MILLIS cannot be combined with an AsyncSessionStore");
+        }
+        return createSekretessManager(identityStore.toBlocking(), sessionStore.toBlocking(), sessionStore, groupSessionStore.toBlocking());
+    }
 
+    private static SekretessManager createSekretessManager(IdentityStore identityStore,
+                                                           SessionStore sessionStore,
+                                                           AsyncSessionStore asyncSessionStore,
+                                                           GroupSessionStore groupSessionStore) throws InvalidKeyException {
+        List<AutoCloseable> resources = new ArrayList<>();
+        boolean optimisticLocking = Boolean.parseBoolean(System.getenv("SEKRETESS_SESSION_OPTIMISTIC_LOCKING"));
+        if (optimisticLocking && Boolean.parseBoolean(System.getenv("SEKRETESS_SESSION_WRITE_BEHIND"))) {
+            throw new IllegalStateException("SEKRETESS_SESSION_OPTIMISTIC_LOCKING cannot be combined with SEKRETESS_SESSION_WRITE_BEHIND");
+        }
+        ResilientSessionStore resilientSessionStore = withResilience(sessionStore, resources);
+        if (resilientSessionStore != null) {
+            sessionStore = resilientSessionStore;
+        }
+        sessionStore = withWriteBehind(sessionStore, resources);
+        sessionStore = withWarmTier(sessionStore, asyncSessionStore != null, optimisticLocking, resources);
+        AsyncSessionStore sessionWriteStore = optimisticLocking ? null : asyncSessionStore;
+        ConsumerSharding consumerSharding = consumerSharding();
+        ProtocolStoreSnapshot snapshot = optimisticLocking ? null : snapshot(sessionStore);
 
         IdentityKeyData identityData = identityStore.loadIdentity(username);
         SekretessSignalProtocolStore sekretessSignalProtocolStore;
@@ -39,47 +108,393 @@ public class SekretessManagerFactory {
 
             identityStore.saveIdentity(username, identityKeyPair.serialize(), registrationId);
 
-            sekretessSignalProtocolStore = new SekretessSignalProtocolStore(identityKeyPair, registrationId, sessionStore, groupSessionStore);
+            sekretessSignalProtocolStore = newProtocolStore(identityKeyPair, registrationId, identityStore, sessionStore, sessionWriteStore, groupSessionStore, optimisticLocking);
             GroupSessionBuilder businessSessionBuilder = new GroupSessionBuilder(sekretessSignalProtocolStore);
             SignalProtocolAddress businessAddress = new SignalProtocolAddress(username, 1);
             String distributionId = UUID.randomUUID().toString();
             SenderKeyDistributionMessage sentBusinessDistributionMessage = businessSessionBuilder.create(businessAddress, UUID.fromString(distributionId));
-            groupSessionStore.saveSendDistributionMessage(username, 1, distributionId, Base64.getEncoder().encodeToString(sentBusinessDistributionMessage.serialize()));
+            groupSessionStore.saveSendDistributionMessageRecord(username, 1, distributionId, sentBusinessDistributionMessage.serialize());
         } else {
             logger.info("Found identityKeys for the user: {}. Will re-use it", username);
             IdentityKeyPair identityKeyPair = new IdentityKeyPair(identityData.serializedIdentityKeyPair());
             int registrationId = identityData.registrationId();
-            sekretessSignalProtocolStore = new SekretessSignalProtocolStore(identityKeyPair, registrationId, sessionStore, groupSessionStore);
-            List<SessionData> sessions = sessionStore.loadAll();
-            sessions.forEach(sessionData -> {
-                SignalProtocolAddress signalProtocolAddress = new SignalProtocolAddress(sessionData.name(), sessionData.deviceId());
-                SessionRecord sessionRecord = null;
-                try {
-                    sessionRecord = new SessionRecord(Base64.getDecoder().decode(sessionData.base64SessionRecord()));
-                    sekretessSignalProtocolStore.storeSession(signalProtocolAddress, sessionRecord);
-                } catch (InvalidMessageException e) {
-                    logger.error("Exception happened when to create session record from DB! {}", e.getMessage(), e);
-                }
-            });
-            GroupSessionData groupSessionData = groupSessionStore.loadGroupSession(username);
+            sekretessSignalProtocolStore = newProtocolStore(identityKeyPair, registrationId, identityStore, sessionStore, sessionWriteStore, groupSessionStore, optimisticLocking);
+            if (optimisticLocking) {
+                // Other instances may update any session, so sessions are loaded on use together with their version.
+                logger.info("Session optimistic locking enabled, sessions will be loaded on demand");
+            } else if (!restoreSnapshot(sekretessSignalProtocolStore, snapshot, consumerSharding)) {
+                restoreSessions(sekretessSignalProtocolStore, consumerSharding::owns);
+                restoreIdentities(sekretessSignalProtocolStore, consumerSharding::owns);
+            }
+            GroupSessionRecordData groupSessionData = groupSessionStore.loadGroupSessionRecord(username);
             if (groupSessionData == null) {
                 GroupSessionBuilder businessSessionBuilder = new GroupSessionBuilder(sekretessSignalProtocolStore);
                 SignalProtocolAddress businessAddress = new SignalProtocolAddress(username, 1);
                 String distributionId = UUID.randomUUID().toString();
                 SenderKeyDistributionMessage sentBusinessDistributionMessage = businessSessionBuilder.create(businessAddress, UUID.fromString(distributionId));
-                groupSessionStore.saveSendDistributionMessage(username, 1, distributionId, Base64.getEncoder().encodeToString(sentBusinessDistributionMessage.serialize()));
-                groupSessionData = new GroupSessionData(username, 1, distributionId, null, Base64.getEncoder().encodeToString(sentBusinessDistributionMessage.serialize()));
+                groupSessionStore.saveSendDistributionMessageRecord(username, 1, distributionId, sentBusinessDistributionMessage.serialize());
+                groupSessionData = new GroupSessionRecordData(username, 1, distributionId, null, sentBusinessDistributionMessage.serialize());
             }
             SignalProtocolAddress signalProtocolAddress = new SignalProtocolAddress(groupSessionData.name(), groupSessionData.deviceId());
             SenderKeyRecord senderKeyRecord = null;
             try {
-                senderKeyRecord = new SenderKeyRecord(Base64.getDecoder().decode(groupSessionData.sessionRecord()));
+                senderKeyRecord = new SenderKeyRecord(groupSessionData.sessionRecord());
                 sekretessSignalProtocolStore.storeSenderKey(signalProtocolAddress, UUID.fromString(groupSessionData.distributionId()), senderKeyRecord);
             } catch (Exception e) {
                 logger.error("Exception happened when creating senderKeyRecord! {}", e.getMessage(), e);
             }
         }
 
-        return new SekretessManager(sekretessSignalProtocolStore);
+        if (sessionWriteStore != null) {
+            SekretessSignalProtocolStore protocolStore = sekretessSignalProtocolStore;
+            resources.add(() -> protocolStore.flushSessionWrites().join());
+        }
+        SekretessManager sekretessManager = new SekretessManager(sekretessSignalProtocolStore, consumerSharding);
+        resources.forEach(sekretessManager::addResource);
+        if (resources.stream().anyMatch(WriteBehindSessionStore.class::isInstance)) {
+            // Pending write-behind sessions would be lost on a JVM exit without close().
+            sekretessManager.closeOnShutdown();
+        }
+        if (resilientSessionStore != null) {
+            sekretessManager.setSessionStoreMetrics(resilientSessionStore::getMetrics);
+        }
+        sekretessManager.setFileChunkSize(fileChunkSize());
+        sekretessManager.setFileInMemoryThreshold(fileInMemoryThreshold());
+        sekretessManager.setResumableUpload(resumableUploadConfig());
+        sekretessManager.setFileSendParallelism(intEnv("SEKRETESS_FILE_SEND_PARALLELISM", DEFAULT_FILE_SEND_PARALLELISM));
+        sekretessManager.setFileUploadCache(fileUploadCacheConfig());
+        if (snapshot != null) {
+            snapshot.track(sekretessSignalProtocolStore);
+            sekretessManager.addResource(snapshotWriter(snapshot, sekretessSignalProtocolStore, sekretessManager));
+        }
+        return sekretessManager;
+    }
+
+    private static ProtocolStoreSnapshot snapshot(SessionStore sessionStore) {
+        String file = System.getenv("SEKRETESS_SNAPSHOT_FILE");
+        if (file == null || file.isBlank()) {
+            return null;
+        }
+        if (!sessionStore.supportsChangesSince()) {
+            throw new IllegalStateException("SEKRETESS_SNAPSHOT_FILE requires a SessionStore that supports loading the sessions changed since a time");
+        }
+        return new ProtocolStoreSnapshot(Path.of(file.trim()));
+    }
+
+    /**
+     * Restores the snapshot and then the sessions saved since it was taken.
+     *
+     * @return {@code false} if there was no usable snapshot and everything has to be restored from the stores
+     */
+    private static boolean restoreSnapshot(SekretessSignalProtocolStore sekretessSignalProtocolStore,
+                                           ProtocolStoreSnapshot snapshot,
+                                           ConsumerSharding consumerSharding) {
+        if (snapshot == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        ProtocolStoreSnapshot.Summary restored;
+        try {
+            restored = snapshot.restore(sekretessSignalProtocolStore, snapshotLayout(consumerSharding), consumerSharding::owns);
+        } catch (RuntimeException e) {
+            logger.error("Exception happened when restoring snapshot {}! {}", snapshot.getFile(), e.getMessage(), e);
+            return false;
+        }
+        if (restored == null) {
+            logger.info("No usable snapshot at {}, restoring from store", snapshot.getFile());
+            return false;
+        }
+        long sinceMillis = restored.watermarkMillis() - SNAPSHOT_CLOCK_SKEW_MILLIS;
+        restoreSessions(sekretessSignalProtocolStore, consumerSharding::owns, "store changes since " + Instant.ofEpochMilli(sinceMillis),
+                (pageSize, pageConsumer) -> sekretessSignalProtocolStore.getSessionStore().loadRecordsChangedSince(sinceMillis, pageSize, pageConsumer));
+        logger.info("Restored {} sessions and {} consumer identities from snapshot {} in {} ms", restored.sessions(),
+                restored.identities(), snapshot.getFile(), (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Writes the snapshot every {@code SEKRETESS_SNAPSHOT_INTERVAL_SECONDS}, if set, and when the returned resource
+     * is closed.
+     */
+    private static AutoCloseable snapshotWriter(ProtocolStoreSnapshot snapshot,
+                                                SekretessSignalProtocolStore sekretessSignalProtocolStore,
+                                                SekretessManager sekretessManager) {
+        Runnable write = () -> {
+            ProtocolStoreSnapshot.Summary written = snapshot.write(sekretessSignalProtocolStore, snapshotLayout(sekretessManager.getConsumerSharding()));
+            if (written == null) {
+                logger.info("Discarded snapshot {}, a session was deleted while it was written", snapshot.getFile());
+                return;
+            }
+            logger.info("Wrote {} sessions and {} consumer identities to snapshot {}", written.sessions(), written.identities(), snapshot.getFile());
+        };
+        long intervalSeconds = longEnv("SEKRETESS_SNAPSHOT_INTERVAL_SECONDS", 0);
+        if (intervalSeconds == 0) {
+            return write::run;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sekretess-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                write.run();
+            } catch (RuntimeException e) {
+                logger.error("Exception happened when writing snapshot {}! {}", snapshot.getFile(), e.getMessage(), e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        return () -> {
+            scheduler.shutdownNow();
+            write.run();
+        };
+    }
+
+    private static String snapshotLayout(ConsumerSharding consumerSharding) {
+        return consumerSharding + ", " + consumerSharding.virtualNodes() + " virtual nodes";
+    }
+
+    private static SekretessSignalProtocolStore newProtocolStore(IdentityKeyPair identityKeyPair,
+                                                                 int registrationId,
+                                                                 IdentityStore identityStore,
+                                                                 SessionStore sessionStore,
+                                                                 AsyncSessionStore asyncSessionStore,
+                                                                 GroupSessionStore groupSessionStore,
+                                                                 boolean optimisticLocking) {
+        if (asyncSessionStore != null) {
+            return new SekretessSignalProtocolStore(identityKeyPair, registrationId, asyncSessionStore, groupSessionStore, sessionCacheConfig(), identityStore);
+        }
+        if (sessionCacheConfig().isBounded() && !sessionStore.supportsKeyedLoad()) {
+            throw new IllegalStateException("A bounded session cache (SEKRETESS_SESSION_CACHE_MAX_SIZE, SEKRETESS_SESSION_CACHE_MAX_WEIGHT_BYTES"
+                    + " or SEKRETESS_SESSION_CACHE_EXPIRE_AFTER_ACCESS_SECONDS) requires a SessionStore that supports keyed loads");
+        }
+        return new SekretessSignalProtocolStore(identityKeyPair, registrationId, sessionStore, groupSessionStore, sessionCacheConfig(), optimisticLocking, identityStore);
+    }
+
+    private static ResilientSessionStore withResilience(SessionStore sessionStore, List<AutoCloseable> resources) {
+        long timeoutMillis = longEnv("SEKRETESS_STORE_TIMEOUT_MILLIS", 0);
+        if (timeoutMillis == 0) {
+            return null;
+        }
+        String policy = System.getenv("SEKRETESS_STORE_OVERLOAD_POLICY");
+        StoreResilienceConfig.OverloadPolicy overloadPolicy;
+        try {
+            overloadPolicy = policy == null || policy.isBlank()
+                    ? StoreResilienceConfig.OverloadPolicy.FAIL_FAST
+                    : StoreResilienceConfig.OverloadPolicy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("SEKRETESS_STORE_OVERLOAD_POLICY must be fail_fast or buffer: " + policy);
+        }
+        ResilientSessionStore resilientSessionStore = new ResilientSessionStore(sessionStore, new StoreResilienceConfig(
+                Duration.ofMillis(timeoutMillis),
+                intEnv("SEKRETESS_STORE_MAX_CONCURRENT_CALLS", DEFAULT_STORE_MAX_CONCURRENT_CALLS),
+                overloadPolicy,
+                intEnv("SEKRETESS_STORE_MAX_BUFFERED_WRITES", DEFAULT_STORE_MAX_BUFFERED_WRITES),
+                Duration.ofMillis(longEnv("SEKRETESS_STORE_RETRY_INTERVAL_MILLIS", DEFAULT_STORE_RETRY_INTERVAL_MILLIS))));
+        resources.add(resilientSessionStore);
+        logger.info("Session store timeout of {} ms enabled with overload policy {}", timeoutMillis, overloadPolicy);
+        return resilientSessionStore;
+    }
+
+    private static SessionStore withWriteBehind(SessionStore sessionStore, List<AutoCloseable> resources) {
+        if (!Boolean.parseBoolean(System.getenv("SEKRETESS_SESSION_WRITE_BEHIND"))) {
+            return sessionStore;
+        }
+        WriteBehindSessionStore writeBehindSessionStore = new WriteBehindSessionStore(
+                sessionStore,
+                intEnv("SEKRETESS_SESSION_WRITE_BEHIND_BATCH_SIZE", DEFAULT_WRITE_BEHIND_BATCH_SIZE),
+                Duration.ofMillis(longEnv("SEKRETESS_SESSION_WRITE_BEHIND_FLUSH_INTERVAL_MILLIS", DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL_MILLIS)),
+                intEnv("SEKRETESS_SESSION_WRITE_BEHIND_MAX_DIRTY", DEFAULT_WRITE_BEHIND_MAX_DIRTY));
+        resources.add(writeBehindSessionStore);
+        logger.info("Session write-behind enabled");
+        return writeBehindSessionStore;
+    }
+
+    private static SessionStore withWarmTier(SessionStore sessionStore, boolean async, boolean optimisticLocking,
+                                             List<AutoCloseable> resources) {
+        String file = System.getenv("SEKRETESS_SESSION_WARM_TIER_FILE");
+        if (file == null || file.isBlank()) {
+            return sessionStore;
+        }
+        if (!sessionCacheConfig().isBounded()) {
+            throw new IllegalStateException("SEKRETESS_SESSION_WARM_TIER_FILE requires a bounded session cache");
+        }
+        if (optimisticLocking) {
+            throw new IllegalStateException("SEKRETESS_SESSION_WARM_TIER_FILE cannot be combined with SEKRETESS_SESSION_OPTIMISTIC_LOCKING");
+        }
+        if (async) {
+            throw new IllegalStateException("SEKRETESS_SESSION_WARM_TIER_FILE cannot be combined with an AsyncSessionStore");
+        }
+        long maximumSize = longEnv("SEKRETESS_SESSION_WARM_TIER_MAX_SIZE", DEFAULT_WARM_TIER_MAX_SIZE);
+        WarmTierSessionStore warmTierSessionStore = new WarmTierSessionStore(sessionStore, Path.of(file.trim()), maximumSize);
+        resources.add(warmTierSessionStore);
+        logger.info("Warm session tier enabled in {} for up to {} sessions", file.trim(), maximumSize);
+        return warmTierSessionStore;
+    }
+
+    /**
+     * Caches the sessions of the consumers accepted by {@code consumerFilter}, streaming them from the store page
+     * by page.
+     */
+    static void restoreSessions(SekretessSignalProtocolStore sekretessSignalProtocolStore, Predicate<String> consumerFilter) {
+        restoreSessions(sekretessSignalProtocolStore, consumerFilter, "store",
+                (pageSize, pageConsumer) -> sekretessSignalProtocolStore.getSessionStore().loadAllRecords(pageSize, pageConsumer));
+    }
+
+    private static void restoreSessions(SekretessSignalProtocolStore sekretessSignalProtocolStore,
+                                        Predicate<String> consumerFilter,
+                                        String source,
+                                        BiConsumer<Integer, Consumer<List<SessionRecordData>>> loader) {
+        int pageSize = sessionLoadPageSize();
+        LongAdder restored = new LongAdder();
+        loader.accept(pageSize, page -> {
+            // Validating records is the expensive part, so it runs in parallel. Restored sessions are cached
+            // without being written back, since the store already holds exactly these records.
+            List<Map.Entry<SignalProtocolAddress, byte[]>> decoded = page.parallelStream()
+                    .filter(sessionData -> consumerFilter.test(sessionData.name()))
+                    .map(SekretessManagerFactory::decodeSession)
+                    .filter(Objects::nonNull)
+                    .toList();
+            decoded.forEach(entry -> sekretessSignalProtocolStore.restoreSession(entry.getKey(), entry.getValue()));
+            restored.add(decoded.size());
+        });
+        logger.info("Restored {} sessions from {} with page size {}", restored.sum(), source, pageSize);
+    }
+
+    /**
+     * Caches the persisted identities of the consumers accepted by {@code consumerFilter}, so that trust checks
+     * after a restart need neither the store nor the server. Identities that are not restored are loaded on use.
+     */
+    static void restoreIdentities(SekretessSignalProtocolStore sekretessSignalProtocolStore, Predicate<String> consumerFilter) {
+        IdentityStore consumerIdentityStore = sekretessSignalProtocolStore.getConsumerIdentityStore();
+        if (consumerIdentityStore == null) {
+            return;
+        }
+        int pageSize = sessionLoadPageSize();
+        LongAdder restored = new LongAdder();
+        consumerIdentityStore.loadAllConsumerIdentities(pageSize, page -> page.forEach(identityData -> {
+            if (identityData.identityKey() == null || !consumerFilter.test(identityData.name())) {
+                return;
+            }
+            try {
+                sekretessSignalProtocolStore.restoreIdentity(new SignalProtocolAddress(identityData.name(), identityData.deviceId()),
+                        new IdentityKey(identityData.identityKey()));
+                restored.increment();
+            } catch (InvalidKeyException | IllegalArgumentException e) {
+                logger.error("Exception happened when to create identity key from DB! {}", e.getMessage(), e);
+            }
+        }));
+        logger.info("Restored {} consumer identities from store with page size {}", restored.sum(), pageSize);
+    }
+
+    private static Map.Entry<SignalProtocolAddress, byte[]> decodeSession(SessionRecordData sessionData) {
+        if (sessionData.sessionRecord() == null) {
+            logger.warn("Skipping empty session record from DB for consumer: {}", sessionData.name());
+            return null;
+        }
+        try {
+            new SessionRecord(sessionData.sessionRecord());
+            return Map.entry(new SignalProtocolAddress(sessionData.name(), sessionData.deviceId()), sessionData.sessionRecord());
+        } catch (InvalidMessageException | IllegalArgumentException e) {
+            logger.error("Exception happened when to create session record from DB! {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static ConsumerSharding consumerSharding() {
+        ConsumerSharding consumerSharding = new ConsumerSharding(
+                intEnv("SEKRETESS_SHARD_INDEX", 0),
+                intEnv("SEKRETESS_SHARD_COUNT", DEFAULT_SHARD_COUNT),
+                intEnv("SEKRETESS_SHARD_VIRTUAL_NODES", ConsumerSharding.DEFAULT_VIRTUAL_NODES));
+        if (consumerSharding.shardCount() > 1) {
+            logger.info("Consumer sharding enabled, this instance is {}", consumerSharding);
+        }
+        return consumerSharding;
+    }
+
+    private static int fileChunkSize() {
+        long chunkSize = longEnv("SEKRETESS_FILE_CHUNK_SIZE", 0);
+        if (chunkSize > MAX_FILE_CHUNK_SIZE) {
+            throw new IllegalStateException("SEKRETESS_FILE_CHUNK_SIZE must be at most " + MAX_FILE_CHUNK_SIZE + ": " + chunkSize);
+        }
+        return (int) chunkSize;
+    }
+
+    private static int fileInMemoryThreshold() {
+        // 0 turns the in-memory path off, so it is accepted although the default is positive.
+        long threshold = System.getenv("SEKRETESS_FILE_IN_MEMORY_THRESHOLD") == null
+                ? DEFAULT_FILE_IN_MEMORY_THRESHOLD
+                : longEnv("SEKRETESS_FILE_IN_MEMORY_THRESHOLD", 0);
+        if (threshold > MAX_FILE_IN_MEMORY_THRESHOLD) {
+            throw new IllegalStateException("SEKRETESS_FILE_IN_MEMORY_THRESHOLD must be at most " + MAX_FILE_IN_MEMORY_THRESHOLD + ": " + threshold);
+        }
+        return (int) threshold;
+    }
+
+    private static ResumableUploadConfig resumableUploadConfig() {
+        String checkpointDirectory = System.getenv("SEKRETESS_FILE_UPLOAD_CHECKPOINT_DIR");
+        if (checkpointDirectory == null || checkpointDirectory.isBlank()) {
+            return null;
+        }
+        int chunkSize = fileChunkSize();
+        if (chunkSize == 0) {
+            throw new IllegalStateException("SEKRETESS_FILE_UPLOAD_CHECKPOINT_DIR requires SEKRETESS_FILE_CHUNK_SIZE, resumable uploads use the chunked format");
+        }
+        try {
+            return new ResumableUploadConfig(chunkSize,
+                    intEnv("SEKRETESS_FILE_UPLOAD_PART_SIZE", Math.max(chunkSize, ResumableUploadConfig.DEFAULT_PART_SIZE / chunkSize * chunkSize)),
+                    intEnv("SEKRETESS_FILE_UPLOAD_PARALLELISM", DEFAULT_FILE_UPLOAD_PARALLELISM),
+                    intEnv("SEKRETESS_FILE_UPLOAD_MAX_ATTEMPTS", DEFAULT_FILE_UPLOAD_MAX_ATTEMPTS),
+                    Duration.ofMillis(longEnv("SEKRETESS_FILE_UPLOAD_RETRY_BACKOFF_MILLIS", DEFAULT_FILE_UPLOAD_RETRY_BACKOFF_MILLIS)),
+                    Path.of(checkpointDirectory.trim()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid resumable upload configuration: " + e.getMessage(), e);
+        }
+    }
+
+    private static FileUploadCacheConfig fileUploadCacheConfig() {
+        long maximumSize = longEnv("SEKRETESS_FILE_UPLOAD_CACHE_MAX_SIZE", 0);
+        if (maximumSize == 0) {
+            return null;
+        }
+        return new FileUploadCacheConfig(maximumSize, Duration.ofSeconds(longEnv("SEKRETESS_FILE_UPLOAD_CACHE_EXPIRY_MARGIN_SECONDS",
+                FileUploadCacheConfig.DEFAULT_EXPIRY_MARGIN.toSeconds())));
+    }
+
+    private static int sessionLoadPageSize() {
+        return intEnv("SEKRETESS_SESSION_LOAD_PAGE_SIZE", DEFAULT_SESSION_LOAD_PAGE_SIZE);
+    }
+
+    private static SessionCacheConfig sessionCacheConfig() {
+        long expireAfterAccessSeconds = longEnv("SEKRETESS_SESSION_CACHE_EXPIRE_AFTER_ACCESS_SECONDS", 0);
+        return new SessionCacheConfig(
+                longEnv("SEKRETESS_SESSION_CACHE_MAX_SIZE", 0),
+                longEnv("SEKRETESS_SESSION_CACHE_MAX_WEIGHT_BYTES", 0),
+                expireAfterAccessSeconds > 0 ? Duration.ofSeconds(expireAfterAccessSeconds) : null,
+                longEnv("SEKRETESS_SESSION_CACHE_OFF_HEAP_BYTES", 0));
+    }
+
+    private static long longEnv(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        long parsed;
+        try {
+            parsed = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(name + " must be a number: " + value, e);
+        }
+        if (parsed < 0 || (parsed == 0 && defaultValue > 0)) {
+            throw new IllegalStateException(name + " must be positive: " + value);
+        }
+        return parsed;
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        long value = longEnv(name, defaultValue);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalStateException(name + " must be at most " + Integer.MAX_VALUE + ": " + value);
+        }
+        return (int) value;
     }
 }
@@ -0,0 +1,3 @@
+package io.sekretess.model;
+
+public record ConsumerIdentityData(String name, int deviceId, byte[] identityKey) {}
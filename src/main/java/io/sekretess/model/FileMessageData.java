@@ -11,5 +11,6 @@ public record FileMessageData(
         String ciphertextSha256,
         long plaintextSize,
         long ciphertextSize,
-        String mimeType
+        String mimeType,
+        Integer chunkSize
 ) {}
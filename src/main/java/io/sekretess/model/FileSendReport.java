@@ -0,0 +1,14 @@
+package io.sekretess.model;
+
+import java.util.Map;
+
+/**
+ * Outcome of a file sent to several consumers: the id of the file that was uploaded once, the number of consumers
+ * the file message was delivered to, and the failure for every consumer it could not be delivered to.
+ */
+public record FileSendReport(String fileId, int delivered, Map<String, Exception> failures) {
+
+    public boolean allDelivered() {
+        return failures.isEmpty();
+    }
+}
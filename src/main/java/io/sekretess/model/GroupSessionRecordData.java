@@ -0,0 +1,3 @@
+package io.sekretess.model;
+
+public record GroupSessionRecordData(String name, int deviceId, String distributionId, byte[] sessionRecord, byte[] businessDistributionMessage) {}
@@ -0,0 +1,3 @@
+package io.sekretess.model;
+
+public record SessionRecordData(String name, int deviceId, byte[] sessionRecord) {}
@@ -0,0 +1,3 @@
+package io.sekretess.model;
+
+public record VersionedSessionRecordData(String name, int deviceId, byte[] sessionRecord, long version) {}
@@ -0,0 +1,34 @@
+package io.sekretess.store;
+
+import io.sekretess.model.GroupSessionRecordData;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking variant of {@link GroupSessionStore}.
+ */
+public interface AsyncGroupSessionStore {
+    CompletionStage<Void> saveGroupSessionRecord(String name, int deviceId, String distributionId, byte[] sessionRecord);
+
+    CompletionStage<Void> saveSendDistributionMessageRecord(String name, int deviceId, String distributionId, byte[] businessDistributionMessage);
+
+    CompletionStage<GroupSessionRecordData> loadGroupSessionRecord(String name);
+
+    /**
+     * Blocking view of this store, which waits for every operation to complete.
+     */
+    default GroupSessionStore toBlocking() {
+        return new AsyncStoreAdapters.BlockingGroupSessionStore(this);
+    }
+
+    /**
+     * Runs the operations of a blocking store on {@code executor}.
+     */
+    static AsyncGroupSessionStore of(GroupSessionStore groupSessionStore, Executor executor) {
+        if (groupSessionStore instanceof AsyncStoreAdapters.BlockingGroupSessionStore blocking) {
+            return blocking.delegate();
+        }
+        return new AsyncStoreAdapters.ExecutorGroupSessionStore(groupSessionStore, executor);
+    }
+}
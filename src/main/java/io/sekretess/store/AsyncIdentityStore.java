@@ -0,0 +1,56 @@
+package io.sekretess.store;
+
+import io.sekretess.model.ConsumerIdentityData;
+import io.sekretess.model.IdentityKeyData;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking variant of {@link IdentityStore}.
+ */
+public interface AsyncIdentityStore {
+    CompletionStage<IdentityKeyData> loadIdentity(String username);
+
+    CompletionStage<Void> saveIdentity(String username, byte[] serializedIdentityKeyPair, int registrationId);
+
+    /**
+     * @see IdentityStore#supportsConsumerIdentities()
+     */
+    default boolean supportsConsumerIdentities() {
+        return false;
+    }
+
+    default CompletionStage<Void> saveConsumerIdentity(String name, int deviceId, byte[] identityKey) {
+        return CompletableFuture.failedFuture(
+                new UnsupportedOperationException("Consumer identities are not supported by " + getClass().getName()));
+    }
+
+    default CompletionStage<ConsumerIdentityData> loadConsumerIdentity(String name, int deviceId) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    default CompletionStage<Void> loadAllConsumerIdentities(int pageSize, Consumer<List<ConsumerIdentityData>> pageConsumer) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Blocking view of this store, which waits for every operation to complete.
+     */
+    default IdentityStore toBlocking() {
+        return new AsyncStoreAdapters.BlockingIdentityStore(this);
+    }
+
+    /**
+     * Runs the operations of a blocking store on {@code executor}.
+     */
+    static AsyncIdentityStore of(IdentityStore identityStore, Executor executor) {
+        if (identityStore instanceof AsyncStoreAdapters.BlockingIdentityStore blocking) {
+            return blocking.delegate();
+        }
+        return new AsyncStoreAdapters.ExecutorIdentityStore(identityStore, executor);
+    }
+}
@@ -0,0 +1,86 @@
+package io.sekretess.store;
+
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.model.VersionedSessionRecordData;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking variant of {@link SessionStore} for stores backed by asynchronous database drivers. Session writes
+ * from the protocol store are then not waited for while a message is encrypted and sent; the send completes once
+ * they are persisted. Use {@link #of} to run a blocking {@link SessionStore} on an executor and
+ * {@link #toBlocking()} to use an async store where a {@link SessionStore} is expected.
+ */
+public interface AsyncSessionStore {
+    CompletionStage<Void> saveSessionRecord(String name, int deviceId, byte[] sessionRecord);
+
+    /**
+     * Saves several sessions at once. The default implementation issues all saves concurrently.
+     */
+    default CompletionStage<Void> saveSessionRecords(List<SessionRecordData> sessions) {
+        return CompletableFuture.allOf(sessions.stream()
+                .map(session -> saveSessionRecord(session.name(), session.deviceId(), session.sessionRecord()).toCompletableFuture())
+                .toArray(CompletableFuture[]::new));
+    }
+
+    CompletionStage<SessionRecordData> loadSessionRecord(String name, int deviceId);
+
+    /**
+     * Streams all sessions to {@code pageConsumer} in pages of at most {@code pageSize} entries and completes
+     * after the last page.
+     */
+    CompletionStage<Void> loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer);
+
+    CompletionStage<Void> deleteSession(String name);
+
+    /**
+     * @see SessionStore#supportsKeyedLoad()
+     */
+    default boolean supportsKeyedLoad() {
+        return true;
+    }
+
+    /**
+     * @see SessionStore#supportsVersioning()
+     */
+    default boolean supportsVersioning() {
+        return false;
+    }
+
+    /**
+     * @see SessionStore#loadVersionedSessionRecord(String, int)
+     */
+    default CompletionStage<VersionedSessionRecordData> loadVersionedSessionRecord(String name, int deviceId) {
+        return loadSessionRecord(name, deviceId).thenApply(session -> session == null
+                ? null
+                : new VersionedSessionRecordData(name, deviceId, session.sessionRecord(), 0));
+    }
+
+    /**
+     * @see SessionStore#compareAndSetSessionRecord(String, int, byte[], long)
+     */
+    default CompletionStage<Boolean> compareAndSetSessionRecord(String name, int deviceId, byte[] sessionRecord, long expectedVersion) {
+        return saveSessionRecord(name, deviceId, sessionRecord).thenApply(ignored -> true);
+    }
+
+    /**
+     * Blocking view of this store, which waits for every operation to complete.
+     */
+    default SessionStore toBlocking() {
+        return new AsyncStoreAdapters.BlockingSessionStore(this);
+    }
+
+    /**
+     * Runs the operations of a blocking store on {@code executor}.
+     */
+    static AsyncSessionStore of(SessionStore sessionStore, Executor executor) {
+        if (sessionStore instanceof AsyncStoreAdapters.BlockingSessionStore blocking) {
+            return blocking.delegate();
+        }
+        return new AsyncStoreAdapters.ExecutorSessionStore(sessionStore, executor);
+    }
+}
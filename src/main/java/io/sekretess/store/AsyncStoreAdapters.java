@@ -0,0 +1,316 @@
+package io.sekretess.store;
+
+import io.sekretess.exception.StoreException;
+import io.sekretess.model.ConsumerIdentityData;
+import io.sekretess.model.GroupSessionData;
+import io.sekretess.model.GroupSessionRecordData;
+import io.sekretess.model.IdentityKeyData;
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.model.VersionedSessionRecordData;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Adapters between the blocking and the async store interfaces.
+ */
+final class AsyncStoreAdapters {
+
+    private AsyncStoreAdapters() {
+    }
+
+    /**
+     * Waits for {@code stage} and rethrows its failure as is when it is unchecked.
+     */
+    static <T> T join(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new StoreException("Store operation failed", e.getCause());
+        }
+    }
+
+    record BlockingSessionStore(AsyncSessionStore delegate) implements SessionStore {
+
+        @Override
+        public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+            saveSessionRecord(name, deviceId, Base64.getDecoder().decode(base64EncodedRecord));
+        }
+
+        @Override
+        public void saveSessions(List<SessionData> sessions) {
+            saveSessionRecords(sessions.stream().map(SessionStore::toSessionRecordData).toList());
+        }
+
+        @Override
+        public List<SessionData> loadAll() {
+            List<SessionData> sessions = new ArrayList<>();
+            loadAllRecords(Integer.MAX_VALUE, page -> page.forEach(session -> sessions.add(SessionStore.toSessionData(session))));
+            return sessions;
+        }
+
+        @Override
+        public void loadAll(int pageSize, Consumer<List<SessionData>> pageConsumer) {
+            loadAllRecords(pageSize, page -> pageConsumer.accept(page.stream().map(SessionStore::toSessionData).toList()));
+        }
+
+        @Override
+        public SessionData loadSession(String name, int deviceId) {
+            return SessionStore.toSessionData(loadSessionRecord(name, deviceId));
+        }
+
+        @Override
+        public void deleteSession(String name) {
+            join(delegate.deleteSession(name));
+        }
+
+        @Override
+        public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+            join(delegate.saveSessionRecord(name, deviceId, sessionRecord));
+        }
+
+        @Override
+        public void saveSessionRecords(List<SessionRecordData> sessions) {
+            join(delegate.saveSessionRecords(sessions));
+        }
+
+        @Override
+        public SessionRecordData loadSessionRecord(String name, int deviceId) {
+            return join(delegate.loadSessionRecord(name, deviceId));
+        }
+
+        @Override
+        public void loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+            }
+            join(delegate.loadAllRecords(pageSize, pageConsumer));
+        }
+
+        @Override
+        public boolean supportsKeyedLoad() {
+            return delegate.supportsKeyedLoad();
+        }
+
+        @Override
+        public boolean supportsVersioning() {
+            return delegate.supportsVersioning();
+        }
+
+        @Override
+        public VersionedSessionRecordData loadVersionedSessionRecord(String name, int deviceId) {
+            return join(delegate.loadVersionedSessionRecord(name, deviceId));
+        }
+
+        @Override
+        public boolean compareAndSetSessionRecord(String name, int deviceId, byte[] sessionRecord, long expectedVersion) {
+            return join(delegate.compareAndSetSessionRecord(name, deviceId, sessionRecord, expectedVersion));
+        }
+    }
+
+    record ExecutorSessionStore(SessionStore delegate, Executor executor) implements AsyncSessionStore {
+
+        @Override
+        public CompletionStage<Void> saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+            return CompletableFuture.runAsync(() -> delegate.saveSessionRecord(name, deviceId, sessionRecord), executor);
+        }
+
+        @Override
+        public CompletionStage<Void> saveSessionRecords(List<SessionRecordData> sessions) {
+            return CompletableFuture.runAsync(() -> delegate.saveSessionRecords(sessions), executor);
+        }
+
+        @Override
+        public CompletionStage<SessionRecordData> loadSessionRecord(String name, int deviceId) {
+            return CompletableFuture.supplyAsync(() -> delegate.loadSessionRecord(name, deviceId), executor);
+        }
+
+        @Override
+        public CompletionStage<Void> loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+            return CompletableFuture.runAsync(() -> delegate.loadAllRecords(pageSize, pageConsumer), executor);
+        }
+
+        @Override
+        public CompletionStage<Void> deleteSession(String name) {
+            return CompletableFuture.runAsync(() -> delegate.deleteSession(name), executor);
+        }
+
+        @Override
+        public boolean supportsKeyedLoad() {
+            return delegate.supportsKeyedLoad();
+        }
+
+        @Override
+        public boolean supportsVersioning() {
+            return delegate.supportsVersioning();
+        }
+
+        @Override
+        public CompletionStage<VersionedSessionRecordData> loadVersionedSessionRecord(String name, int deviceId) {
+            return CompletableFuture.supplyAsync(() -> delegate.loadVersionedSessionRecord(name, deviceId), executor);
+        }
+
+        @Override
+        public CompletionStage<Boolean> compareAndSetSessionRecord(String name, int deviceId, byte[] sessionRecord, long expectedVersion) {
+            return CompletableFuture.supplyAsync(() -> delegate.compareAndSetSessionRecord(name, deviceId, sessionRecord, expectedVersion), executor);
+        }
+
+        @Override
+        public SessionStore toBlocking() {
+            return delegate;
+        }
+    }
+
+    record BlockingGroupSessionStore(AsyncGroupSessionStore delegate) implements GroupSessionStore {
+
+        @Override
+        public void saveGroupSession(String name, int deviceId, String distributionId, String sessionRecord) {
+            saveGroupSessionRecord(name, deviceId, distributionId, decode(sessionRecord));
+        }
+
+        @Override
+        public void saveSendDistributionMessage(String name, int deviceId, String distributionId, String businessDistributionMessage) {
+            saveSendDistributionMessageRecord(name, deviceId, distributionId, decode(businessDistributionMessage));
+        }
+
+        @Override
+        public GroupSessionData loadGroupSession(String name) {
+            GroupSessionRecordData record = loadGroupSessionRecord(name);
+            if (record == null) {
+                return null;
+            }
+            return new GroupSessionData(record.name(), record.deviceId(), record.distributionId(),
+                    encode(record.sessionRecord()), encode(record.businessDistributionMessage()));
+        }
+
+        @Override
+        public void saveGroupSessionRecord(String name, int deviceId, String distributionId, byte[] sessionRecord) {
+            join(delegate.saveGroupSessionRecord(name, deviceId, distributionId, sessionRecord));
+        }
+
+        @Override
+        public void saveSendDistributionMessageRecord(String name, int deviceId, String distributionId, byte[] businessDistributionMessage) {
+            join(delegate.saveSendDistributionMessageRecord(name, deviceId, distributionId, businessDistributionMessage));
+        }
+
+        @Override
+        public GroupSessionRecordData loadGroupSessionRecord(String name) {
+            return join(delegate.loadGroupSessionRecord(name));
+        }
+    }
+
+    record ExecutorGroupSessionStore(GroupSessionStore delegate, Executor executor) implements AsyncGroupSessionStore {
+
+        @Override
+        public CompletionStage<Void> saveGroupSessionRecord(String name, int deviceId, String distributionId, byte[] sessionRecord) {
+            return CompletableFuture.runAsync(() -> delegate.saveGroupSessionRecord(name, deviceId, distributionId, sessionRecord), executor);
+        }
+
+        @Override
+        public CompletionStage<Void> saveSendDistributionMessageRecord(String name, int deviceId, String distributionId, byte[] businessDistributionMessage) {
+            return CompletableFuture.runAsync(() -> delegate.saveSendDistributionMessageRecord(name, deviceId, distributionId, businessDistributionMessage), executor);
+        }
+
+        @Override
+        public CompletionStage<GroupSessionRecordData> loadGroupSessionRecord(String name) {
+            return CompletableFuture.supplyAsync(() -> delegate.loadGroupSessionRecord(name), executor);
+        }
+
+        @Override
+        public GroupSessionStore toBlocking() {
+            return delegate;
+        }
+    }
+
+    record BlockingIdentityStore(AsyncIdentityStore delegate) implements IdentityStore {
+
+        @Override
+        public IdentityKeyData loadIdentity(String username) {
+            return join(delegate.loadIdentity(username));
+        }
+
+        @Override
+        public void saveIdentity(String username, byte[] serializedIdentityKeyPair, int registrationId) {
+            join(delegate.saveIdentity(username, serializedIdentityKeyPair, registrationId));
+        }
+
+        @Override
+        public boolean supportsConsumerIdentities() {
+            return delegate.supportsConsumerIdentities();
+        }
+
+        @Override
+        public void saveConsumerIdentity(String name, int deviceId, byte[] identityKey) {
+            join(delegate.saveConsumerIdentity(name, deviceId, identityKey));
+        }
+
+        @Override
+        public ConsumerIdentityData loadConsumerIdentity(String name, int deviceId) {
+            return join(delegate.loadConsumerIdentity(name, deviceId));
+        }
+
+        @Override
+        public void loadAllConsumerIdentities(int pageSize, Consumer<List<ConsumerIdentityData>> pageConsumer) {
+            join(delegate.loadAllConsumerIdentities(pageSize, pageConsumer));
+        }
+    }
+
+    record ExecutorIdentityStore(IdentityStore delegate, Executor executor) implements AsyncIdentityStore {
+
+        @Override
+        public CompletionStage<IdentityKeyData> loadIdentity(String username) {
+            return CompletableFuture.supplyAsync(() -> delegate.loadIdentity(username), executor);
+        }
+
+        @Override
+        public CompletionStage<Void> saveIdentity(String username, byte[] serializedIdentityKeyPair, int registrationId) {
+            return CompletableFuture.runAsync(() -> delegate.saveIdentity(username, serializedIdentityKeyPair, registrationId), executor);
+        }
+
+        @Override
+        public boolean supportsConsumerIdentities() {
+            return delegate.supportsConsumerIdentities();
+        }
+
+        @Override
+        public CompletionStage<Void> saveConsumerIdentity(String name, int deviceId, byte[] identityKey) {
+            return CompletableFuture.runAsync(() -> delegate.saveConsumerIdentity(name, deviceId, identityKey), executor);
+        }
+
+        @Override
+        public CompletionStage<ConsumerIdentityData> loadConsumerIdentity(String name, int deviceId) {
+            return CompletableFuture.supplyAsync(() -> delegate.loadConsumerIdentity(name, deviceId), executor);
+        }
+
+        @Override
+        public CompletionStage<Void> loadAllConsumerIdentities(int pageSize, Consumer<List<ConsumerIdentityData>> pageConsumer) {
+            return CompletableFuture.runAsync(() -> delegate.loadAllConsumerIdentities(pageSize, pageConsumer), executor);
+        }
+
+        @Override
+        public IdentityStore toBlocking() {
+            return delegate;
+        }
+    }
+
+    private static String encode(byte[] value) {
+        return value == null ? null : Base64.getEncoder().encodeToString(value);
+    }
+
+    private static byte[] decode(String value) {
+        return value == null ? null : Base64.getDecoder().decode(value);
+    }
+}
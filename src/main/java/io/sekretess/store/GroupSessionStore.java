@@ -1,8 +1,14 @@
 package io.sekretess.store;
 
 import io.sekretess.model.GroupSessionData;
+import io.sekretess.model.GroupSessionRecordData;
 
+import java.util.Base64;
 
+/**
+ * Persistence of the business sender key. Implementations only need the Base64 {@code String} methods; stores
+ * that hold binary natively can override the {@code byte[]} variants, which is what the SDK calls.
+ */
 public interface GroupSessionStore {
     void saveGroupSession(String name, int deviceId, String distributionId, String sessionRecord);
 
@@ -10,4 +16,28 @@ public interface GroupSessionStore {
 
     GroupSessionData loadGroupSession(String name);
 
+    default void saveGroupSessionRecord(String name, int deviceId, String distributionId, byte[] sessionRecord) {
+        saveGroupSession(name, deviceId, distributionId, encode(sessionRecord));
+    }
+
+    default void saveSendDistributionMessageRecord(String name, int deviceId, String distributionId, byte[] businessDistributionMessage) {
+        saveSendDistributionMessage(name, deviceId, distributionId, encode(businessDistributionMessage));
+    }
+
+    default GroupSessionRecordData loadGroupSessionRecord(String name) {
+        GroupSessionData groupSessionData = loadGroupSession(name);
+        if (groupSessionData == null) {
+            return null;
+        }
+        return new GroupSessionRecordData(groupSessionData.name(), groupSessionData.deviceId(), groupSessionData.distributionId(),
+                decode(groupSessionData.sessionRecord()), decode(groupSessionData.businessDistributionMessage()));
+    }
+
+    private static String encode(byte[] value) {
+        return value == null ? null : Base64.getEncoder().encodeToString(value);
+    }
+
+    private static byte[] decode(String value) {
+        return value == null ? null : Base64.getDecoder().decode(value);
+    }
 }
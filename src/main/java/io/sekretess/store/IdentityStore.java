@@ -1,10 +1,39 @@
 package io.sekretess.store;
 
+import io.sekretess.model.ConsumerIdentityData;
 import io.sekretess.model.IdentityKeyData;
 
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Persistence of the business identity and, optionally, of the identity keys of consumers. Stores that keep
+ * consumer identities return {@code true} from {@link #supportsConsumerIdentities()}; otherwise they only live
+ * in memory and are learned again from prekey bundles after a restart.
+ */
 public interface IdentityStore {
     IdentityKeyData loadIdentity(String username);
 
     void saveIdentity(String username, byte[] serializedIdentityKeyPair, int registrationId);
 
+    default boolean supportsConsumerIdentities() {
+        return false;
+    }
+
+    default void saveConsumerIdentity(String name, int deviceId, byte[] identityKey) {
+        throw new UnsupportedOperationException("Consumer identities are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Loads the identity key of a consumer, or returns {@code null} if none is stored.
+     */
+    default ConsumerIdentityData loadConsumerIdentity(String name, int deviceId) {
+        return null;
+    }
+
+    /**
+     * Streams all consumer identities to {@code pageConsumer} in pages of at most {@code pageSize} entries.
+     */
+    default void loadAllConsumerIdentities(int pageSize, Consumer<List<ConsumerIdentityData>> pageConsumer) {
+    }
 }
@@ -0,0 +1,150 @@
+package io.sekretess.store;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps serialized records in direct memory outside the Java heap, so that millions of cached sessions do not
+ * occupy the old generation. Memory is taken from slabs of up to {@value #SLAB_BYTES} bytes that are allocated
+ * on demand up to {@code capacityBytes} and never returned. Blocks are rounded up to {@value #BLOCK_ALIGNMENT}
+ * bytes and a freed block is only reused for a record of the same rounded size, so blocks never move.
+ * <p>
+ * Every block starts with a stamp that is unique per allocation. A reader copies the record and then checks the
+ * stamp, so a block freed and reused while it was read is detected instead of returning a mix of two records.
+ */
+final class OffHeapRecordArena {
+
+    static final int SLAB_BYTES = 64 * 1024 * 1024;
+    private static final int BLOCK_ALIGNMENT = 64;
+    private static final int STAMP_BYTES = Long.BYTES;
+
+    private final long capacityBytes;
+    // Replaced on growth, so that readers do not take the allocation lock.
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private final Map<Integer, ArrayDeque<Long>> freeBlocks = new HashMap<>();
+    private int slabPosition;
+    private long nextStamp = 1;
+    private long allocatedBytes;
+    private long usedBytes;
+
+    OffHeapRecordArena(long capacityBytes) {
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("capacityBytes must be positive: " + capacityBytes);
+        }
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Copies {@code record} into a block.
+     *
+     * @return the block, or {@code null} if the record does not fit into the remaining capacity
+     */
+    Block allocate(byte[] record) {
+        int blockBytes = blockBytes(record.length);
+        if (blockBytes > Math.min(SLAB_BYTES, capacityBytes)) {
+            return null;
+        }
+        long address;
+        long stamp;
+        synchronized (this) {
+            address = takeBlock(blockBytes);
+            if (address < 0) {
+                return null;
+            }
+            stamp = nextStamp++;
+            usedBytes += blockBytes;
+        }
+        ByteBuffer slab = slab(address);
+        int offset = offset(address);
+        // The stamp is changed before the contents, so a reader of the previous record sees either its own stamp
+        // with its own contents or a different stamp.
+        slab.putLong(offset, stamp);
+        VarHandle.storeStoreFence();
+        slab.put(offset + STAMP_BYTES, record);
+        return new Block(address, record.length, stamp);
+    }
+
+    /**
+     * Copies the record out of {@code block}.
+     *
+     * @return the record, or {@code null} if the block was freed and reused in the meantime
+     */
+    byte[] read(Block block) {
+        ByteBuffer slab = slab(block.address());
+        int offset = offset(block.address());
+        byte[] record = new byte[block.length()];
+        slab.get(offset + STAMP_BYTES, record);
+        VarHandle.loadLoadFence();
+        return slab.getLong(offset) == block.stamp() ? record : null;
+    }
+
+    /**
+     * Returns the block for reuse. Readers that still hold it get {@code null} once it is reused.
+     */
+    synchronized void free(Block block) {
+        int blockBytes = blockBytes(block.length());
+        freeBlocks.computeIfAbsent(blockBytes, size -> new ArrayDeque<>()).push(block.address());
+        usedBytes -= blockBytes;
+    }
+
+    /**
+     * Bytes taken by live records, including stamps and alignment.
+     */
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Direct memory reserved so far, at most {@code capacityBytes}.
+     */
+    synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    long capacityBytes() {
+        return capacityBytes;
+    }
+
+    private long takeBlock(int blockBytes) {
+        ArrayDeque<Long> free = freeBlocks.get(blockBytes);
+        if (free != null && !free.isEmpty()) {
+            return free.pop();
+        }
+        ByteBuffer[] current = slabs;
+        if (current.length == 0 || current[current.length - 1].capacity() - slabPosition < blockBytes) {
+            long slabBytes = Math.min(SLAB_BYTES, capacityBytes - allocatedBytes);
+            if (slabBytes < blockBytes) {
+                return -1;
+            }
+            current = Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = ByteBuffer.allocateDirect((int) slabBytes);
+            slabs = current;
+            allocatedBytes += slabBytes;
+            slabPosition = 0;
+        }
+        long address = ((long) (current.length - 1) << 32) | slabPosition;
+        slabPosition += blockBytes;
+        return address;
+    }
+
+    private ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static int blockBytes(int recordLength) {
+        return (recordLength + STAMP_BYTES + BLOCK_ALIGNMENT - 1) / BLOCK_ALIGNMENT * BLOCK_ALIGNMENT;
+    }
+
+    /**
+     * A record in the arena: the slab index in the upper and the offset in the lower half of {@code address}.
+     */
+    record Block(long address, int length, long stamp) {}
+}
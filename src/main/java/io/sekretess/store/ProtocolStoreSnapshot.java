@@ -0,0 +1,331 @@
+package io.sekretess.store;
+
+import io.sekretess.exception.StoreException;
+import org.signal.libsignal.protocol.IdentityKey;
+import org.signal.libsignal.protocol.InvalidKeyException;
+import org.signal.libsignal.protocol.InvalidMessageException;
+import org.signal.libsignal.protocol.SignalProtocolAddress;
+import org.signal.libsignal.protocol.groups.state.SenderKeyRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point-in-time copy of the sessions, consumer identities and sender keys cached by a
+ * {@link SekretessSignalProtocolStore}, kept in one checksummed file so that a restart does not have to read and
+ * validate every session from the {@link SessionStore}. A snapshot records the time it was started at, its
+ * watermark; sessions saved to the store after the watermark have to be read from the store on top of it, see
+ * {@link SessionStore#loadRecordsChangedSince}.
+ * <p>
+ * A snapshot is written to a temporary file, readable by the owner only where the file system allows it, that
+ * replaces the previous snapshot atomically, and is read through a memory mapping. It is only used by the business
+ * identity that wrote it and with the same {@code layout}, typically the consumer sharding of the instance.
+ * <p>
+ * Stores do not report deleted sessions as changes, so a snapshot is deleted whenever a session is deleted from a
+ * {@link #track tracked} store, and the next restart restores from the store.
+ */
+public final class ProtocolStoreSnapshot {
+
+    private static final int MAGIC = 0x534b5353;
+    private static final int FORMAT_VERSION = 1;
+    private static final byte END = 0;
+    private static final byte SESSION = 1;
+    private static final byte IDENTITY = 2;
+    private static final byte SENDER_KEY = 3;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final long MAX_WINDOW_BYTES = 1L << 30;
+
+    private final Path file;
+    private final AtomicLong generation = new AtomicLong();
+    private final Object replaceLock = new Object();
+
+    public ProtocolStoreSnapshot(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Deletes the snapshot whenever a session is deleted from {@code store}, and discards a snapshot that is being
+     * written at that time.
+     */
+    public void track(SekretessSignalProtocolStore store) {
+        store.addSessionDeletionListener(this::invalidate);
+    }
+
+    /**
+     * Deletes the snapshot, so that the next restore falls back to the stores.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        synchronized (replaceLock) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new StoreException("Failed to delete protocol store snapshot " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the current state of {@code store}, replacing the previous snapshot. Concurrent updates of the
+     * store may or may not be included; they are persisted after the watermark and picked up on restore.
+     *
+     * @return what was written, or {@code null} if the snapshot was invalidated while it was written
+     */
+    public synchronized Summary write(SekretessSignalProtocolStore store, String layout) {
+        long startGeneration = generation.get();
+        long watermarkMillis = System.currentTimeMillis();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int[] counts = new int[3];
+        try {
+            Files.deleteIfExists(temporary);
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.createFile(temporary, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            }
+        } catch (IOException e) {
+            throw new StoreException("Failed to create protocol store snapshot " + temporary, e);
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 checksum = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES), checksum));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(watermarkMillis);
+            writeBytes(out, layout.getBytes(StandardCharsets.UTF_8));
+            writeBytes(out, store.getIdentityKeyPair().getPublicKey().serialize());
+            store.forEachCachedSession((address, record) -> {
+                writeEntry(out, SESSION, address, record);
+                counts[0]++;
+            });
+            store.forEachCachedIdentity((address, identityKey) -> {
+                writeEntry(out, IDENTITY, address, identityKey.serialize());
+                counts[1]++;
+            });
+            store.forEachSenderKey((sender, distributionId, record) -> {
+                try {
+                    out.writeByte(SENDER_KEY);
+                    out.writeLong(distributionId.getMostSignificantBits());
+                    out.writeLong(distributionId.getLeastSignificantBits());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                writeEntry(out, sender, record);
+                counts[2]++;
+            });
+            out.writeByte(END);
+            out.flush();
+            // The checksum covers everything before it, so it is written past the checked stream.
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) checksum.getValue()));
+            channel.force(true);
+        } catch (IOException | UncheckedIOException e) {
+            throw new StoreException("Failed to write protocol store snapshot " + temporary, e);
+        }
+        synchronized (replaceLock) {
+            try {
+                if (generation.get() != startGeneration) {
+                    // A session was deleted while it may have been written, the snapshot could bring it back.
+                    Files.deleteIfExists(temporary);
+                    return null;
+                }
+                try {
+                    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                throw new StoreException("Failed to replace protocol store snapshot " + file, e);
+            }
+        }
+        return new Summary(watermarkMillis, counts[0], counts[1], counts[2]);
+    }
+
+    /**
+     * Caches the snapshot contents of the consumers accepted by {@code consumerFilter} in {@code store} without
+     * writing them back. Sender keys are restored regardless of the filter.
+     *
+     * @return what was restored, or {@code null} if there is no snapshot, it is damaged, or it was written by
+     * another identity or with another layout, in which case nothing was restored
+     */
+    public Summary restore(SekretessSignalProtocolStore store, String layout, Predicate<String> consumerFilter) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 4 * Integer.BYTES + Long.BYTES + 1 || checksum(channel, size - Integer.BYTES) != readChecksum(channel, size)) {
+                return null;
+            }
+            MappedReader reader = new MappedReader(channel, size - Integer.BYTES);
+            if (reader.getInt() != MAGIC || reader.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            long watermarkMillis = reader.getLong();
+            if (!layout.equals(new String(reader.getBytes(), StandardCharsets.UTF_8))
+                    || !Arrays.equals(reader.getBytes(), store.getIdentityKeyPair().getPublicKey().serialize())) {
+                return null;
+            }
+            int sessionCount = 0;
+            int identityCount = 0;
+            int senderKeyCount = 0;
+            for (byte type = reader.getByte(); type != END; type = reader.getByte()) {
+                UUID distributionId = type == SENDER_KEY ? new UUID(reader.getLong(), reader.getLong()) : null;
+                SignalProtocolAddress address = new SignalProtocolAddress(
+                        new String(reader.getBytes(), StandardCharsets.UTF_8), reader.getInt());
+                byte[] value = reader.getBytes();
+                switch (type) {
+                    case SESSION -> {
+                        if (consumerFilter.test(address.getName())) {
+                            // Records are not validated again: they were valid when cached and the checksum matched.
+                            store.restoreSession(address, value);
+                            sessionCount++;
+                        }
+                    }
+                    case IDENTITY -> {
+                        if (consumerFilter.test(address.getName())) {
+                            store.restoreIdentity(address, new IdentityKey(value));
+                            identityCount++;
+                        }
+                    }
+                    case SENDER_KEY -> {
+                        store.restoreSenderKey(address, distributionId, new SenderKeyRecord(value));
+                        senderKeyCount++;
+                    }
+                    default -> throw new IOException("Unknown entry type " + type);
+                }
+            }
+            return new Summary(watermarkMillis, sessionCount, identityCount, senderKeyCount);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new StoreException("Failed to read protocol store snapshot " + file, e);
+        } catch (InvalidKeyException | InvalidMessageException | BufferUnderflowException e) {
+            throw new StoreException("Corrupt protocol store snapshot " + file, e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private static long checksum(FileChannel channel, long length) throws IOException {
+        CRC32 checksum = new CRC32();
+        for (long position = 0; position < length; position += MAX_WINDOW_BYTES) {
+            checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW_BYTES, length - position)));
+        }
+        return checksum.getValue();
+    }
+
+    private static long readChecksum(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, size - Integer.BYTES + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+        return Integer.toUnsignedLong(buffer.getInt(0));
+    }
+
+    private static void writeEntry(DataOutputStream out, byte type, SignalProtocolAddress address, byte[] value) {
+        try {
+            out.writeByte(type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writeEntry(out, address, value);
+    }
+
+    private static void writeEntry(DataOutputStream out, SignalProtocolAddress address, byte[] value) {
+        try {
+            writeBytes(out, address.getName().getBytes(StandardCharsets.UTF_8));
+            out.writeInt(address.getDeviceId());
+            writeBytes(out, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    /**
+     * Watermark of a snapshot and the number of entries written or restored.
+     */
+    public record Summary(long watermarkMillis, int sessions, int identities, int senderKeys) {}
+
+    /**
+     * Reads the snapshot through memory mappings of at most 1 GB, moving the mapping forward when an entry
+     * crosses its end.
+     */
+    private static final class MappedReader {
+        private final FileChannel channel;
+        private final long length;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        private MappedReader(FileChannel channel, long length) throws IOException {
+            this.channel = channel;
+            this.length = length;
+            map(0);
+        }
+
+        private byte getByte() throws IOException {
+            return ensure(Byte.BYTES).get();
+        }
+
+        private int getInt() throws IOException {
+            return ensure(Integer.BYTES).getInt();
+        }
+
+        private long getLong() throws IOException {
+            return ensure(Long.BYTES).getLong();
+        }
+
+        private byte[] getBytes() throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                throw new IOException("Negative length in snapshot: " + length);
+            }
+            byte[] value = new byte[length];
+            ensure(length).get(value);
+            return value;
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                long position = windowStart + window.position();
+                if (length - position < bytes) {
+                    throw new BufferUnderflowException();
+                }
+                map(position);
+            }
+            return window;
+        }
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW_BYTES, length - position));
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package io.sekretess.store;
+
+import io.sekretess.exception.StoreException;
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.model.VersionedSessionRecordData;
+import io.sekretess.store.StoreResilienceConfig.OverloadPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * {@link SessionStore} decorator that isolates the send path from store latency. Every call runs on a dedicated
+ * pool behind a bulkhead of {@code maxConcurrentCalls} and is abandoned after {@code timeout}; a call that finds
+ * the bulkhead full is rejected at once. Depending on the {@link OverloadPolicy} failed session writes either
+ * throw a {@link StoreException} or are buffered and retried in the background, in which case later writes are
+ * buffered too until the buffer has drained, so that they reach the store in order. Reads see buffered writes.
+ * Full loads are not subject to the timeout. An abandoned write may still be applied by the store later, so its
+ * sessions count as in flight until the store call returns: further writes of them are buffered, or rejected with
+ * {@link OverloadPolicy#FAIL_FAST}, and retried only once it has returned, and a delete waits for it, so that a late
+ * write can neither overwrite a newer record nor bring back a deleted session.
+ */
+public class ResilientSessionStore implements SessionStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResilientSessionStore.class);
+    private static final int RETRY_BATCH_SIZE = 500;
+
+    private final SessionStore delegate;
+    private final StoreResilienceConfig config;
+    private final Semaphore bulkhead;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final Map<SessionKey, SessionRecordData> buffered = new LinkedHashMap<>();
+    // Guarded by buffered, like the buffer itself.
+    private final Map<SessionKey, Integer> writesInFlight = new HashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder bufferedWrites = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    public ResilientSessionStore(SessionStore delegate, StoreResilienceConfig config) {
+        this.delegate = delegate;
+        this.config = config;
+        this.bulkhead = new Semaphore(config.maxConcurrentCalls());
+        this.executor = new ThreadPoolExecutor(config.maxConcurrentCalls(), config.maxConcurrentCalls(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "sekretess-session-store-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        if (config.overloadPolicy() == OverloadPolicy.BUFFER) {
+            this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sekretess-session-store-retry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = config.retryInterval().toMillis();
+            retryScheduler.scheduleWithFixedDelay(this::retryQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.retryScheduler = null;
+        }
+    }
+
+    @Override
+    public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+        saveSessionRecord(name, deviceId, Base64.getDecoder().decode(base64EncodedRecord));
+    }
+
+    @Override
+    public void saveSessions(List<SessionData> sessions) {
+        saveSessionRecords(sessions.stream().map(SessionStore::toSessionRecordData).toList());
+    }
+
+    @Override
+    public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+        saveSessionRecords(List.of(new SessionRecordData(name, deviceId, sessionRecord)));
+    }
+
+    @Override
+    public void saveSessionRecords(List<SessionRecordData> sessions) {
+        if (config.overloadPolicy() == OverloadPolicy.FAIL_FAST) {
+            synchronized (buffered) {
+                if (anyInFlight(sessions)) {
+                    rejections.increment();
+                    throw new StoreException("Session store has not returned from an abandoned write of these sessions", null);
+                }
+            }
+            write("save sessions", sessions);
+            return;
+        }
+        if (bufferIfDraining(sessions)) {
+            return;
+        }
+        try {
+            write("save sessions", sessions);
+        } catch (RuntimeException e) {
+            buffer(sessions, e);
+        }
+    }
+
+    @Override
+    public List<SessionData> loadAll() {
+        List<SessionData> sessions = new ArrayList<>();
+        loadAllRecords(Integer.MAX_VALUE, page -> page.forEach(session -> sessions.add(SessionStore.toSessionData(session))));
+        return sessions;
+    }
+
+    @Override
+    public void loadAll(int pageSize, Consumer<List<SessionData>> pageConsumer) {
+        loadAllRecords(pageSize, page -> pageConsumer.accept(page.stream().map(SessionStore::toSessionData).toList()));
+    }
+
+    @Override
+    public void loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        loadWithOverlay(pageSize, pageConsumer, (size, consumer) -> delegate.loadAllRecords(size, consumer));
+    }
+
+    /**
+     * Buffered sessions are always reported, since they are not yet in the delegate.
+     */
+    @Override
+    public void loadRecordsChangedSince(long sinceMillis, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        loadWithOverlay(pageSize, pageConsumer, (size, consumer) -> delegate.loadRecordsChangedSince(sinceMillis, size, consumer));
+    }
+
+    @Override
+    public boolean supportsKeyedLoad() {
+        return delegate.supportsKeyedLoad();
+    }
+
+    @Override
+    public boolean supportsChangesSince() {
+        return delegate.supportsChangesSince();
+    }
+
+    private void loadWithOverlay(int pageSize, Consumer<List<SessionRecordData>> pageConsumer,
+                                 BiConsumer<Integer, Consumer<List<SessionRecordData>>> load) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        Map<SessionKey, SessionRecordData> overlay;
+        synchronized (buffered) {
+            overlay = new LinkedHashMap<>(buffered);
+        }
+        if (overlay.isEmpty()) {
+            load.accept(pageSize, pageConsumer);
+            return;
+        }
+        load.accept(pageSize, page -> pageConsumer.accept(page.stream()
+                .map(session -> {
+                    SessionRecordData pending = overlay.remove(new SessionKey(session.name(), session.deviceId()));
+                    return pending != null ? pending : session;
+                })
+                .toList()));
+        List<SessionRecordData> remaining = new ArrayList<>(overlay.values());
+        for (int from = 0; from < remaining.size(); from += pageSize) {
+            pageConsumer.accept(remaining.subList(from, Math.min(from + pageSize, remaining.size())));
+        }
+    }
+
+    @Override
+    public SessionData loadSession(String name, int deviceId) {
+        return SessionStore.toSessionData(loadSessionRecord(name, deviceId));
+    }
+
+    @Override
+    public SessionRecordData loadSessionRecord(String name, int deviceId) {
+        SessionRecordData pending = bufferedSession(name, deviceId);
+        return pending != null ? pending : call("load session", () -> delegate.loadSessionRecord(name, deviceId));
+    }
+
+    /**
+     * Drops the buffered writes of {@code name} and waits up to the timeout for writes of it that are still in
+     * flight, so that none of them is applied after the delete.
+     */
+    @Override
+    public void deleteSession(String name) {
+        synchronized (buffered) {
+            buffered.keySet().removeIf(key -> key.name().equals(name));
+            awaitWrites(key -> key.name().equals(name), "the deleted session");
+        }
+        call("delete session", () -> {
+            delegate.deleteSession(name);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean supportsVersioning() {
+        return delegate.supportsVersioning();
+    }
+
+    @Override
+    public VersionedSessionRecordData loadVersionedSessionRecord(String name, int deviceId) {
+        return call("load session", () -> delegate.loadVersionedSessionRecord(name, deviceId));
+    }
+
+    /**
+     * Always fails fast: a compare-and-set cannot be buffered.
+     */
+    @Override
+    public boolean compareAndSetSessionRecord(String name, int deviceId, byte[] sessionRecord, long expectedVersion) {
+        return call("save session", () -> delegate.compareAndSetSessionRecord(name, deviceId, sessionRecord, expectedVersion));
+    }
+
+    public StoreMetrics getMetrics() {
+        long callCount = calls.sum();
+        int pending;
+        synchronized (buffered) {
+            pending = buffered.size();
+        }
+        return new StoreMetrics(callCount, failures.sum(), timeouts.sum(), rejections.sum(), bufferedWrites.sum(), pending,
+                callCount == 0 ? 0 : latencyNanos.sum() / 1e6 / callCount, maxLatencyNanos.get() / 1e6);
+    }
+
+    /**
+     * Writes buffered sessions to the delegate, after waiting up to the timeout for abandoned writes of them to
+     * return. Sessions saved again in the meantime stay buffered with their newer record.
+     */
+    public void retryBufferedWrites() {
+        while (true) {
+            List<SessionRecordData> batch;
+            List<SessionKey> keys;
+            synchronized (buffered) {
+                awaitWrites(buffered::containsKey, "buffered sessions");
+                if (buffered.isEmpty()) {
+                    return;
+                }
+                batch = buffered.values().stream().limit(RETRY_BATCH_SIZE).toList();
+                keys = batch.stream().map(SessionKey::of).toList();
+                startWrites(keys);
+            }
+            call("save buffered sessions", keys, () -> {
+                delegate.saveSessionRecords(batch);
+                return null;
+            });
+            synchronized (buffered) {
+                batch.forEach(session -> buffered.remove(new SessionKey(session.name(), session.deviceId()), session));
+            }
+        }
+    }
+
+    /**
+     * Stops retrying, makes a last attempt to write buffered sessions and releases the call pool.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (retryScheduler != null) {
+            retryScheduler.shutdown();
+            try {
+                retryBufferedWrites();
+            } catch (RuntimeException e) {
+                logger.error("Dropping {} buffered sessions, store still unavailable! {}", getMetrics().pendingBufferedWrites(), e.getMessage(), e);
+            }
+        }
+        executor.shutdown();
+    }
+
+    private void write(String operation, List<SessionRecordData> sessions) {
+        List<SessionKey> keys = sessions.stream().map(SessionKey::of).toList();
+        synchronized (buffered) {
+            startWrites(keys);
+        }
+        call(operation, keys, () -> {
+            delegate.saveSessionRecords(sessions);
+            return null;
+        });
+    }
+
+    private <T> T call(String operation, Supplier<T> storeCall) {
+        return call(operation, List.of(), storeCall);
+    }
+
+    /**
+     * Runs {@code storeCall} on the call pool. The {@code writtenKeys}, passed to {@link #startWrites} by the caller,
+     * stay in flight until the store call returns, even if the caller gave up on it earlier.
+     */
+    private <T> T call(String operation, Collection<SessionKey> writtenKeys, Supplier<T> storeCall) {
+        if (!bulkhead.tryAcquire()) {
+            finishWrites(writtenKeys);
+            rejections.increment();
+            throw new StoreException("Session store busy, rejected " + operation + " with " + config.maxConcurrentCalls() + " calls in flight", null);
+        }
+        Runnable release = () -> {
+            bulkhead.release();
+            finishWrites(writtenKeys);
+        };
+        // Claimed by whichever comes first: the task starting, or the caller cancelling it before it ran.
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                long start = System.nanoTime();
+                try {
+                    return storeCall.get();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    calls.increment();
+                    latencyNanos.add(elapsed);
+                    maxLatencyNanos.accumulate(elapsed);
+                    release.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release.run();
+            throw new StoreException("Session store is closed, rejected " + operation, e);
+        }
+        try {
+            return future.get(config.timeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            cancel(future, claimed, release);
+            throw new StoreException("Session store timed out after " + config.timeout().toMillis() + " ms on " + operation, e);
+        } catch (ExecutionException e) {
+            failures.increment();
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new StoreException("Session store failed on " + operation, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(future, claimed, release);
+            throw new StoreException("Interrupted while waiting for " + operation, e);
+        }
+    }
+
+    private static void cancel(Future<?> future, AtomicBoolean claimed, Runnable release) {
+        // Not interrupted: an interrupt in the middle of FileChannel I/O closes the channel of file-backed stores.
+        future.cancel(false);
+        if (claimed.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+
+    /**
+     * Marks {@code keys} as in flight. Called holding the buffer monitor.
+     */
+    private void startWrites(Collection<SessionKey> keys) {
+        keys.forEach(key -> writesInFlight.merge(key, 1, Integer::sum));
+    }
+
+    private void finishWrites(Collection<SessionKey> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        synchronized (buffered) {
+            keys.forEach(key -> writesInFlight.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1));
+            buffered.notifyAll();
+        }
+    }
+
+    private boolean anyInFlight(List<SessionRecordData> sessions) {
+        return !writesInFlight.isEmpty() && sessions.stream().map(SessionKey::of).anyMatch(writesInFlight::containsKey);
+    }
+
+    /**
+     * Waits, holding the buffer monitor, until no write of a session matching {@code written} is in flight.
+     */
+    private void awaitWrites(Predicate<SessionKey> written, String sessions) {
+        long deadline = System.nanoTime() + config.timeout().toNanos();
+        while (writesInFlight.keySet().stream().anyMatch(written)) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                timeouts.increment();
+                throw new StoreException("Session store timed out after " + config.timeout().toMillis()
+                        + " ms waiting for abandoned writes of " + sessions + " to return", null);
+            }
+            try {
+                buffered.wait(remainingMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StoreException("Interrupted while waiting for abandoned writes of " + sessions, e);
+            }
+        }
+    }
+
+    private boolean bufferIfDraining(List<SessionRecordData> sessions) {
+        synchronized (buffered) {
+            if (buffered.isEmpty() && !anyInFlight(sessions)) {
+                return false;
+            }
+            addToBuffer(sessions, null);
+            return true;
+        }
+    }
+
+    private void buffer(List<SessionRecordData> sessions, RuntimeException failure) {
+        synchronized (buffered) {
+            addToBuffer(sessions, failure);
+        }
+        logger.warn("Buffered {} session writes after store failure: {}", sessions.size(), failure.getMessage());
+    }
+
+    private void addToBuffer(List<SessionRecordData> sessions, RuntimeException failure) {
+        long added = sessions.stream()
+                .filter(session -> !buffered.containsKey(new SessionKey(session.name(), session.deviceId())))
+                .map(session -> new SessionKey(session.name(), session.deviceId()))
+                .distinct()
+                .count();
+        if (buffered.size() + added > config.maxBufferedWrites()) {
+            rejections.increment();
+            throw new StoreException("Session write buffer is full with " + buffered.size() + " sessions", failure);
+        }
+        for (SessionRecordData session : sessions) {
+            SessionKey key = new SessionKey(session.name(), session.deviceId());
+            // Re-inserted at the end so that the retry writes sessions in the order they were last saved.
+            buffered.remove(key);
+            buffered.put(key, session);
+        }
+        bufferedWrites.add(sessions.size());
+    }
+
+    private SessionRecordData bufferedSession(String name, int deviceId) {
+        synchronized (buffered) {
+            return buffered.isEmpty() ? null : buffered.get(new SessionKey(name, deviceId));
+        }
+    }
+
+    private void retryQuietly() {
+        try {
+            retryBufferedWrites();
+        } catch (RuntimeException e) {
+            logger.warn("Retry of buffered session writes failed, {} still buffered: {}", getMetrics().pendingBufferedWrites(), e.getMessage());
+        }
+    }
+
+    private record SessionKey(String name, int deviceId) {
+
+        private static SessionKey of(SessionRecordData session) {
+            return new SessionKey(session.name(), session.deviceId());
+        }
+    }
+}
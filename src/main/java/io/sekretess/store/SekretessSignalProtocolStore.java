@@ -1,49 +1,654 @@
 package io.sekretess.store;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.sekretess.model.ConsumerIdentityData;
+import io.sekretess.model.VersionedSessionRecordData;
+import org.signal.libsignal.protocol.IdentityKey;
 import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.InvalidKeyException;
+import org.signal.libsignal.protocol.InvalidMessageException;
+import org.signal.libsignal.protocol.NoSessionException;
 import org.signal.libsignal.protocol.SignalProtocolAddress;
 import org.signal.libsignal.protocol.groups.state.SenderKeyRecord;
 import org.signal.libsignal.protocol.state.SessionRecord;
 import org.signal.libsignal.protocol.state.impl.InMemorySignalProtocolStore;
 
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 
 public class SekretessSignalProtocolStore extends InMemorySignalProtocolStore {
 
     private final SessionStore sessionStore;
+    private final TieredSessionStore tieredSessionStore;
+    private final AsyncSessionStore asyncSessionStore;
+    private final Map<SignalProtocolAddress, CompletableFuture<Void>> pendingSessionWrites = new ConcurrentHashMap<>();
+    // Latest record written through asyncSessionStore per session until its write succeeds. It may already have
+    // been used to encrypt a sent message, so it is what the session is reloaded from and written again.
+    private final Map<SignalProtocolAddress, byte[]> unpersistedSessions = new ConcurrentHashMap<>();
     private final GroupSessionStore groupSessionStore;
+    private final OffHeapRecordArena offHeapRecords;
+    private final Cache<SignalProtocolAddress, CachedSession> sessions;
+    private final IdentityStore consumerIdentityStore;
+    private final Cache<SignalProtocolAddress, IdentityKey> identities;
+    private final Map<SenderKeyName, byte[]> senderKeys = new ConcurrentHashMap<>();
+    private final List<Runnable> sessionDeletionListeners = new CopyOnWriteArrayList<>();
+    private final boolean optimisticLocking;
+    private final boolean reloadMissingSessions;
+    private final LongAdder sessionWritesIssued = new LongAdder();
+    private final LongAdder sessionWritesSkipped = new LongAdder();
+    private final LongAdder sessionWriteConflicts = new LongAdder();
+    private final LongAdder sessionWriteFailures = new LongAdder();
+    // libsignal calls storeSession on the encrypting thread, so conflicts are reported back per thread.
+    private final ThreadLocal<Set<SignalProtocolAddress>> sessionConflicts = ThreadLocal.withInitial(HashSet::new);
 
     public SekretessSignalProtocolStore(
             IdentityKeyPair identityKeyPair,
             int registrationId,
             SessionStore sessionStore,
             GroupSessionStore groupSessionStore
+    ) {
+        this(identityKeyPair, registrationId, sessionStore, groupSessionStore, SessionCacheConfig.unbounded());
+    }
+
+    public SekretessSignalProtocolStore(
+            IdentityKeyPair identityKeyPair,
+            int registrationId,
+            SessionStore sessionStore,
+            GroupSessionStore groupSessionStore,
+            SessionCacheConfig sessionCacheConfig
+    ) {
+        this(identityKeyPair, registrationId, sessionStore, groupSessionStore, sessionCacheConfig, false);
+    }
+
+    public SekretessSignalProtocolStore(
+            IdentityKeyPair identityKeyPair,
+            int registrationId,
+            SessionStore sessionStore,
+            GroupSessionStore groupSessionStore,
+            SessionCacheConfig sessionCacheConfig,
+            boolean optimisticLocking
+    ) {
+        this(identityKeyPair, registrationId, sessionStore, groupSessionStore, sessionCacheConfig, optimisticLocking, null);
+    }
+
+    /**
+     * With {@code optimisticLocking} every session write is a {@link SessionStore#compareAndSetSessionRecord}
+     * against the version the session was loaded with, so that several SDK instances can share one store.
+     * A rejected write drops the cached session and is reported through {@link #consumeSessionConflict}.
+     * <p>
+     * Consumer identity keys are written through to {@code identityStore} when it
+     * {@linkplain IdentityStore#supportsConsumerIdentities() supports} them, and cached with the same bounds as
+     * sessions. Without such a store they are kept in memory only.
+     */
+    public SekretessSignalProtocolStore(
+            IdentityKeyPair identityKeyPair,
+            int registrationId,
+            SessionStore sessionStore,
+            GroupSessionStore groupSessionStore,
+            SessionCacheConfig sessionCacheConfig,
+            boolean optimisticLocking,
+            IdentityStore identityStore
+    ) {
+        this(identityKeyPair, registrationId, sessionStore, null, groupSessionStore, sessionCacheConfig, optimisticLocking, identityStore);
+    }
+
+    /**
+     * Writes sessions through {@code asyncSessionStore} without waiting for them, so that persistence overlaps
+     * with encryption and sending. Writes of one session are applied in order; callers wait for them with
+     * {@link #pendingSessionWrites} before reporting a message as sent. Reads and deletes use the blocking view
+     * of the store after pending writes of the session completed.
+     */
+    public SekretessSignalProtocolStore(
+            IdentityKeyPair identityKeyPair,
+            int registrationId,
+            AsyncSessionStore asyncSessionStore,
+            GroupSessionStore groupSessionStore,
+            SessionCacheConfig sessionCacheConfig,
+            IdentityStore identityStore
+    ) {
+        this(identityKeyPair, registrationId, asyncSessionStore.toBlocking(), asyncSessionStore, groupSessionStore,
+                sessionCacheConfig, false, identityStore);
+    }
+
+    private SekretessSignalProtocolStore(
+            IdentityKeyPair identityKeyPair,
+            int registrationId,
+            SessionStore sessionStore,
+            AsyncSessionStore asyncSessionStore,
+            GroupSessionStore groupSessionStore,
+            SessionCacheConfig sessionCacheConfig,
+            boolean optimisticLocking,
+            IdentityStore identityStore
     ) {
         super(identityKeyPair, registrationId);
+        if (optimisticLocking && !sessionStore.supportsVersioning()) {
+            throw new IllegalArgumentException("Optimistic locking requires a SessionStore that supports versioning");
+        }
+        if (sessionCacheConfig.isBounded() && !sessionStore.supportsKeyedLoad()) {
+            throw new IllegalArgumentException("A bounded session cache requires a SessionStore that supports keyed loads");
+        }
         this.sessionStore = sessionStore;
+        this.tieredSessionStore = sessionStore instanceof TieredSessionStore tiered ? tiered : null;
+        this.asyncSessionStore = asyncSessionStore;
         this.groupSessionStore = groupSessionStore;
+        this.offHeapRecords = sessionCacheConfig.offHeapBytes() > 0 ? new OffHeapRecordArena(sessionCacheConfig.offHeapBytes()) : null;
+        this.sessions = buildSessionCache(sessionCacheConfig, this::sessionRemoved);
+        this.consumerIdentityStore = identityStore != null && identityStore.supportsConsumerIdentities() ? identityStore : null;
+        this.identities = buildIdentityCache(consumerIdentityStore != null ? sessionCacheConfig : SessionCacheConfig.unbounded());
+        this.optimisticLocking = optimisticLocking;
+        // An unbounded cache that owns every session holds all of them after the startup restore, so a miss
+        // means there is no session. Otherwise the store has to be asked.
+        this.reloadMissingSessions = sessionCacheConfig.isBounded() || optimisticLocking;
     }
 
+    private static Cache<SignalProtocolAddress, CachedSession> buildSessionCache(SessionCacheConfig config,
+                                                                               RemovalListener<SignalProtocolAddress, CachedSession> removalListener) {
+        // Maintenance runs on the calling thread so evictions are applied before the next store call returns.
+        Caffeine<SignalProtocolAddress, CachedSession> builder = Caffeine.newBuilder().executor(Runnable::run).recordStats()
+                .removalListener(removalListener);
+        if (config.maximumSize() > 0) {
+            builder.maximumSize(config.maximumSize());
+        }
+        if (config.maximumWeightBytes() > 0) {
+            builder.maximumWeight(config.maximumWeightBytes())
+                    .weigher((SignalProtocolAddress address, CachedSession session) -> session.length() + address.getName().length());
+        }
+        if (config.expireAfterAccess() != null) {
+            builder.expireAfterAccess(config.expireAfterAccess());
+        }
+        return builder.build();
+    }
+
+    private static Cache<SignalProtocolAddress, IdentityKey> buildIdentityCache(SessionCacheConfig config) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().executor(Runnable::run);
+        if (config.maximumSize() > 0) {
+            builder.maximumSize(config.maximumSize());
+        }
+        if (config.expireAfterAccess() != null) {
+            builder.expireAfterAccess(config.expireAfterAccess());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Deserializes the cached record. Sessions are kept serialized and only turned into a {@link SessionRecord}
+     * for the duration of an encrypt.
+     */
+    @Override
+    public SessionRecord loadSession(SignalProtocolAddress address) {
+        byte[] record = cachedRecord(address);
+        if (record == null) {
+            return null;
+        }
+        try {
+            return new SessionRecord(record);
+        } catch (InvalidMessageException e) {
+            throw new IllegalStateException("Failed to deserialize session record for " + address, e);
+        }
+    }
+
+    @Override
+    public List<SessionRecord> loadExistingSessions(List<SignalProtocolAddress> addresses) throws NoSessionException {
+        List<SessionRecord> records = new ArrayList<>(addresses.size());
+        for (SignalProtocolAddress address : addresses) {
+            SessionRecord record = loadSession(address);
+            if (record == null) {
+                throw new NoSessionException("no session for " + address);
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Override
+    public List<Integer> getSubDeviceSessions(String name) {
+        return sessions.asMap().keySet().stream()
+                .filter(address -> address.getName().equals(name) && address.getDeviceId() != 1)
+                .map(SignalProtocolAddress::getDeviceId)
+                .toList();
+    }
+
+    /**
+     * Caches the session and writes it through to the {@link SessionStore}, unless the serialized record is
+     * identical to the cached one, which is always the last persisted version, or with an {@link AsyncSessionStore}
+     * the last one written.
+     */
     @Override
     public void storeSession(SignalProtocolAddress address, SessionRecord record) {
-        super.storeSession(address, record);
-        sessionStore.saveSession(address.getName(), address.getDeviceId(), Base64.getEncoder().encodeToString(record.serialize()));
+        byte[] serialized = record.serialize();
+        if (optimisticLocking) {
+            compareAndSetSession(address, serialized);
+            return;
+        }
+        CachedSession previous = sessions.asMap().get(address);
+        if (previous != null && Arrays.equals(recordOf(previous), serialized)) {
+            sessionWritesSkipped.increment();
+            return;
+        }
+        CachedSession stored = newCachedSession(serialized, 0);
+        sessions.put(address, stored);
+        if (asyncSessionStore != null) {
+            saveSessionAsync(address, serialized);
+            return;
+        }
+        try {
+            sessionStore.saveSessionRecord(address.getName(), address.getDeviceId(), serialized);
+            sessionWritesIssued.increment();
+        } catch (RuntimeException e) {
+            // Keep the cache limited to persisted state so the next store of this record is not skipped.
+            sessions.asMap().remove(address, stored);
+            throw e;
+        }
+    }
+
+    private void saveSessionAsync(SignalProtocolAddress address, byte[] serialized) {
+        sessionWritesIssued.increment();
+        unpersistedSessions.put(address, serialized);
+        CompletableFuture<Void> write = pendingSessionWrites.compute(address, (key, pending) ->
+                (pending == null ? CompletableFuture.<Void>completedFuture(null) : pending.handle((ignored, failure) -> (Void) null))
+                        .thenCompose(ignored -> asyncSessionStore.saveSessionRecord(address.getName(), address.getDeviceId(), serialized)));
+        write.whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                pendingSessionWrites.remove(address, write);
+                unpersistedSessions.remove(address, serialized);
+            } else {
+                // Kept pending so that the failure reaches the next caller of pendingSessionWrites. The record
+                // stays cached: a message encrypted with it may have been sent, so falling back to the persisted
+                // record would reuse its message keys. It is written again by the next store or flush.
+                sessionWriteFailures.increment();
+            }
+        });
+    }
+
+    /**
+     * Completes when the session writes for {@code address} issued so far are persisted, or exceptionally with
+     * the failure of the last one, which is reported once. Always complete unless the store was created with an
+     * {@link AsyncSessionStore}.
+     */
+    public CompletableFuture<Void> pendingSessionWrites(SignalProtocolAddress address) {
+        CompletableFuture<Void> pending = pendingSessionWrites.get(address);
+        if (pending == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (pending.isCompletedExceptionally()) {
+            pendingSessionWrites.remove(address, pending);
+        }
+        return pending;
+    }
+
+    /**
+     * Completes when all session writes issued so far have completed, successfully or not. Sessions whose last
+     * write failed are written again first.
+     */
+    public CompletableFuture<Void> flushSessionWrites() {
+        unpersistedSessions.forEach((address, record) -> {
+            // Without a pending write the failure was already reported by pendingSessionWrites.
+            CompletableFuture<Void> pending = pendingSessionWrites.get(address);
+            if (pending == null || pending.isCompletedExceptionally()) {
+                saveSessionAsync(address, record);
+            }
+        });
+        return CompletableFuture.allOf(pendingSessionWrites.values().stream()
+                .map(pending -> pending.handle((ignored, failure) -> null))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    private void awaitSessionWrite(SignalProtocolAddress address) {
+        CompletableFuture<Void> pending = pendingSessionWrites.get(address);
+        if (pending != null) {
+            pending.handle((ignored, failure) -> null).join();
+        }
+    }
+
+    private void awaitSessionWrites(Predicate<SignalProtocolAddress> addressFilter) {
+        pendingSessionWrites.forEach((address, pending) -> {
+            if (addressFilter.test(address)) {
+                pending.handle((ignored, failure) -> null).join();
+            }
+        });
+    }
+
+    private void compareAndSetSession(SignalProtocolAddress address, byte[] serialized) {
+        CachedSession previous = sessions.asMap().get(address);
+        if (previous != null && Arrays.equals(recordOf(previous), serialized)) {
+            sessionWritesSkipped.increment();
+            return;
+        }
+        long expectedVersion = previous == null ? 0 : previous.version();
+        boolean stored;
+        try {
+            stored = sessionStore.compareAndSetSessionRecord(address.getName(), address.getDeviceId(), serialized, expectedVersion);
+        } catch (RuntimeException e) {
+            sessions.invalidate(address);
+            throw e;
+        }
+        sessionWritesIssued.increment();
+        if (stored) {
+            sessions.put(address, newCachedSession(serialized, expectedVersion + 1));
+        } else {
+            // Not thrown: the caller is libsignal, which is in the middle of an encrypt.
+            sessionWriteConflicts.increment();
+            sessions.invalidate(address);
+            sessionConflicts.get().add(address);
+        }
+    }
+
+    @Override
+    public IdentityKey getIdentity(SignalProtocolAddress address) {
+        return identities.get(address, this::loadPersistedIdentity);
+    }
+
+    /**
+     * Caches the identity and writes it through to the {@link IdentityStore}, unless it is already the
+     * trusted identity of {@code address}.
+     */
+    @Override
+    public IdentityChange saveIdentity(SignalProtocolAddress address, IdentityKey identityKey) {
+        IdentityKey previous = getIdentity(address);
+        if (identityKey.equals(previous)) {
+            return IdentityChange.NEW_OR_UNCHANGED;
+        }
+        if (consumerIdentityStore != null) {
+            consumerIdentityStore.saveConsumerIdentity(address.getName(), address.getDeviceId(), identityKey.serialize());
+        }
+        identities.put(address, identityKey);
+        return previous == null ? IdentityChange.NEW_OR_UNCHANGED : IdentityChange.REPLACED_EXISTING;
+    }
+
+    /**
+     * Trusts the first identity seen for an address and afterwards only that identity, like the in-memory store
+     * of libsignal.
+     */
+    @Override
+    public boolean isTrustedIdentity(SignalProtocolAddress address, IdentityKey identityKey, Direction direction) {
+        IdentityKey trusted = getIdentity(address);
+        return trusted == null || trusted.equals(identityKey);
+    }
+
+    /**
+     * Caches a consumer identity that was read from the {@link IdentityStore}, without writing it back.
+     */
+    public void restoreIdentity(SignalProtocolAddress address, IdentityKey identityKey) {
+        identities.put(address, identityKey);
+    }
+
+    /**
+     * Caches a session that was read from the {@link SessionStore}, without writing it back.
+     */
+    public void restoreSession(SignalProtocolAddress address, byte[] serializedRecord) {
+        sessions.put(address, newCachedSession(serializedRecord, 0));
+    }
+
+    /**
+     * Returns whether a session write for {@code address} on the current thread was rejected as a concurrent
+     * modification since the last call, and clears the flag. The message encrypted with the stale session
+     * must be discarded and encrypted again.
+     */
+    public boolean consumeSessionConflict(SignalProtocolAddress address) {
+        return sessionConflicts.get().remove(address);
+    }
+
+    /**
+     * Drops cached sessions and, if they are persisted, identities of the consumers matching
+     * {@code consumerFilter} without deleting them from the stores, e.g. after another instance took over
+     * these consumers.
+     *
+     * @return the number of sessions dropped
+     */
+    public int evictSessions(Predicate<String> consumerFilter) {
+        if (consumerIdentityStore != null) {
+            identities.asMap().keySet().removeIf(address -> consumerFilter.test(address.getName()));
+        }
+        if (tieredSessionStore != null) {
+            tieredSessionStore.dropDemotedSessions(consumerFilter);
+        }
+        unpersistedSessions.keySet().removeIf(address -> consumerFilter.test(address.getName()));
+        int before = sessions.asMap().size();
+        sessions.asMap().keySet().removeIf(address -> consumerFilter.test(address.getName()));
+        return before - sessions.asMap().size();
+    }
+
+    public boolean isOptimisticLocking() {
+        return optimisticLocking;
+    }
+
+    @Override
+    public boolean containsSession(SignalProtocolAddress address) {
+        return cachedSession(address) != null;
     }
 
     @Override
     public void deleteSession(SignalProtocolAddress address) {
-        super.deleteSession(address);
+        awaitSessionWrite(address);
+        unpersistedSessions.remove(address);
+        sessions.invalidate(address);
+        sessionDeletionListeners.forEach(Runnable::run);
         sessionStore.deleteSession(address.getName());
     }
 
+    @Override
+    public void deleteAllSessions(String name) {
+        awaitSessionWrites(address -> address.getName().equals(name));
+        unpersistedSessions.keySet().removeIf(address -> address.getName().equals(name));
+        sessions.asMap().keySet().removeIf(address -> address.getName().equals(name));
+        sessionDeletionListeners.forEach(Runnable::run);
+        sessionStore.deleteSession(name);
+    }
+
+    /**
+     * Runs {@code listener} whenever sessions are deleted, after they were dropped from the cache and before they
+     * are deleted from the session store.
+     */
+    void addSessionDeletionListener(Runnable listener) {
+        sessionDeletionListeners.add(listener);
+    }
+
     @Override
     public void storeSenderKey(SignalProtocolAddress sender, UUID distributionId, SenderKeyRecord record) {
+        byte[] serialized = record.serialize();
+        super.storeSenderKey(sender, distributionId, record);
+        senderKeys.put(new SenderKeyName(sender, distributionId), serialized);
+        groupSessionStore.saveGroupSessionRecord(sender.getName(), sender.getDeviceId(), distributionId.toString(), serialized);
+    }
+
+    /**
+     * Caches a sender key that was read from a snapshot, without writing it to the {@link GroupSessionStore}.
+     */
+    public void restoreSenderKey(SignalProtocolAddress sender, UUID distributionId, SenderKeyRecord record) {
         super.storeSenderKey(sender, distributionId, record);
-        groupSessionStore.saveGroupSession(sender.getName(), sender.getDeviceId(), distributionId.toString(), Base64.getEncoder().encodeToString(record.serialize()));
+        senderKeys.put(new SenderKeyName(sender, distributionId), record.serialize());
+    }
+
+    void forEachCachedSession(BiConsumer<SignalProtocolAddress, byte[]> action) {
+        sessions.asMap().forEach((address, session) -> {
+            byte[] record = recordOf(session);
+            // A record that was replaced while it was read is skipped, like a session stored after the iteration.
+            if (record != null) {
+                action.accept(address, record);
+            }
+        });
+    }
+
+    void forEachCachedIdentity(BiConsumer<SignalProtocolAddress, IdentityKey> action) {
+        identities.asMap().forEach(action);
+    }
+
+    void forEachSenderKey(SenderKeyConsumer action) {
+        senderKeys.forEach((name, record) -> action.accept(name.sender(), name.distributionId(), record));
+    }
+
+    /**
+     * Hit, miss and eviction counters of the session cache, for sizing {@link SessionCacheConfig}.
+     */
+    public CacheStats getSessionCacheStats() {
+        return sessions.stats();
+    }
+
+    public long getCachedSessionCount() {
+        return sessions.estimatedSize();
+    }
+
+    /**
+     * Direct memory taken by cached session records, or {@code 0} unless {@link SessionCacheConfig#offHeapBytes()}
+     * is set.
+     */
+    public long getOffHeapSessionBytes() {
+        return offHeapRecords != null ? offHeapRecords.usedBytes() : 0;
+    }
+
+    /**
+     * Hit counters of the session cache and the tiers below it, or {@code null} unless the session store is a
+     * {@link TieredSessionStore}.
+     */
+    public SessionTierStats getSessionTierStats() {
+        if (tieredSessionStore == null) {
+            return null;
+        }
+        CacheStats hot = sessions.stats();
+        return tieredSessionStore.getTierStats().withHotTier(hot.hitCount(), hot.missCount());
+    }
+
+    public long getCachedIdentityCount() {
+        return identities.estimatedSize();
+    }
+
+    public SessionWriteStats getSessionWriteStats() {
+        return new SessionWriteStats(sessionWritesIssued.sum(), sessionWritesSkipped.sum(), sessionWriteConflicts.sum(),
+                sessionWriteFailures.sum());
+    }
+
+    public SessionStore getSessionStore() {
+        return sessionStore;
     }
 
     public GroupSessionStore getGroupSessionStore() {
         return groupSessionStore;
     }
+
+    /**
+     * The store consumer identities are persisted in, or {@code null} if they are kept in memory only.
+     */
+    public IdentityStore getConsumerIdentityStore() {
+        return consumerIdentityStore;
+    }
+
+    private CachedSession cachedSession(SignalProtocolAddress address) {
+        if (asyncSessionStore != null && reloadMissingSessions) {
+            CachedSession cached = sessions.asMap().get(address);
+            if (cached != null) {
+                return cached;
+            }
+            // An evicted session may still be on its way to the store. Waiting inside the cache loader could
+            // deadlock with the write completion, which updates the same entry.
+            awaitSessionWrite(address);
+        }
+        return sessions.get(address, this::loadPersistedSession);
+    }
+
+    private CachedSession loadPersistedSession(SignalProtocolAddress address) {
+        if (!reloadMissingSessions) {
+            return null;
+        }
+        byte[] unpersisted = unpersistedSessions.get(address);
+        if (unpersisted != null) {
+            return newCachedSession(unpersisted, 0);
+        }
+        VersionedSessionRecordData persisted = sessionStore.loadVersionedSessionRecord(address.getName(), address.getDeviceId());
+        if (persisted == null || persisted.sessionRecord() == null) {
+            return null;
+        }
+        return newCachedSession(persisted.sessionRecord(), persisted.version());
+    }
+
+    private IdentityKey loadPersistedIdentity(SignalProtocolAddress address) {
+        if (consumerIdentityStore == null) {
+            return null;
+        }
+        ConsumerIdentityData persisted = consumerIdentityStore.loadConsumerIdentity(address.getName(), address.getDeviceId());
+        if (persisted == null || persisted.identityKey() == null) {
+            return null;
+        }
+        try {
+            return new IdentityKey(persisted.identityKey());
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException("Failed to deserialize identity key for " + address, e);
+        }
+    }
+
+    /**
+     * Hands sessions evicted by a cache bound to the {@link TieredSessionStore}, if any, and releases off-heap
+     * memory of every removed session.
+     */
+    private void sessionRemoved(SignalProtocolAddress address, CachedSession session, RemovalCause cause) {
+        if (address == null || session == null) {
+            return;
+        }
+        if (tieredSessionStore != null && cause.wasEvicted()) {
+            byte[] record = recordOf(session);
+            if (record != null) {
+                tieredSessionStore.demoteSession(address.getName(), address.getDeviceId(), record);
+            }
+        }
+        if (session.block() != null) {
+            offHeapRecords.free(session.block());
+        }
+    }
+
+    private byte[] cachedRecord(SignalProtocolAddress address) {
+        while (true) {
+            CachedSession cached = cachedSession(address);
+            if (cached == null) {
+                return null;
+            }
+            byte[] record = recordOf(cached);
+            if (record != null) {
+                return record;
+            }
+            // The off-heap block was reused while it was read, so the cache already holds a newer record.
+        }
+    }
+
+    private CachedSession newCachedSession(byte[] record, long version) {
+        OffHeapRecordArena.Block block = offHeapRecords != null ? offHeapRecords.allocate(record) : null;
+        return block != null ? new CachedSession(null, block, version) : new CachedSession(record, null, version);
+    }
+
+    /**
+     * Returns the serialized record, or {@code null} if it was off-heap and has been replaced concurrently.
+     */
+    private byte[] recordOf(CachedSession session) {
+        return session.record() != null ? session.record() : offHeapRecords.read(session.block());
+    }
+
+    /**
+     * A cached session, serialized either in {@code record} on the heap or in an off-heap {@code block}.
+     */
+    private record CachedSession(byte[] record, OffHeapRecordArena.Block block, long version) {
+
+        int length() {
+            return record != null ? record.length : block.length();
+        }
+    }
+
+    private record SenderKeyName(SignalProtocolAddress sender, UUID distributionId) {}
+
+    @FunctionalInterface
+    interface SenderKeyConsumer {
+        void accept(SignalProtocolAddress sender, UUID distributionId, byte[] record);
+    }
 }
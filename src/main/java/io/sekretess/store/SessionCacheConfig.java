@@ -0,0 +1,46 @@
+package io.sekretess.store;
+
+import java.time.Duration;
+
+/**
+ * Sizing of the session cache kept by {@link SekretessSignalProtocolStore}. A value of {@code 0} for
+ * {@code maximumSize} or {@code maximumWeightBytes} and a {@code null} {@code expireAfterAccess} leave
+ * the corresponding bound unset. At most one of {@code maximumSize} and {@code maximumWeightBytes} may be set.
+ * <p>
+ * With {@code offHeapBytes} set, serialized session records are kept in up to that much direct memory instead of
+ * on the heap, and only the index stays on the heap. Records that do not fit are kept on the heap. The JVM limits
+ * direct memory to the maximum heap size unless {@code -XX:MaxDirectMemorySize} is set.
+ */
+public record SessionCacheConfig(long maximumSize, long maximumWeightBytes, Duration expireAfterAccess, long offHeapBytes) {
+
+    public SessionCacheConfig {
+        if (maximumSize < 0 || maximumWeightBytes < 0 || offHeapBytes < 0) {
+            throw new IllegalArgumentException("Session cache bounds must not be negative");
+        }
+        if (maximumSize > 0 && maximumWeightBytes > 0) {
+            throw new IllegalArgumentException("Only one of maximumSize and maximumWeightBytes can be set");
+        }
+        if (expireAfterAccess != null && (expireAfterAccess.isNegative() || expireAfterAccess.isZero())) {
+            throw new IllegalArgumentException("expireAfterAccess must be positive: " + expireAfterAccess);
+        }
+    }
+
+    public SessionCacheConfig(long maximumSize, long maximumWeightBytes, Duration expireAfterAccess) {
+        this(maximumSize, maximumWeightBytes, expireAfterAccess, 0);
+    }
+
+    public static SessionCacheConfig unbounded() {
+        return new SessionCacheConfig(0, 0, null);
+    }
+
+    public SessionCacheConfig withOffHeapBytes(long offHeapBytes) {
+        return new SessionCacheConfig(maximumSize, maximumWeightBytes, expireAfterAccess, offHeapBytes);
+    }
+
+    /**
+     * A bounded cache may drop sessions, which then have to be reloaded from the {@link SessionStore}.
+     */
+    public boolean isBounded() {
+        return maximumSize > 0 || maximumWeightBytes > 0 || expireAfterAccess != null;
+    }
+}
@@ -1,13 +1,150 @@
 package io.sekretess.store;
 
 import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.model.VersionedSessionRecordData;
 
+import java.util.Base64;
 import java.util.List;
+import java.util.function.Consumer;
 
+/**
+ * Persistence of consumer sessions. Implementations only need the Base64 {@code String} methods; stores that
+ * hold binary natively can override the {@code byte[]} variants ({@link #saveSessionRecord},
+ * {@link #saveSessionRecords}, {@link #loadSessionRecord}, {@link #loadAllRecords}) to skip the Base64 round
+ * trip, which is what the SDK calls.
+ */
 public interface SessionStore {
     void saveSession(String name, int deviceId, String base64EncodedRecord);
 
+    /**
+     * Saves several sessions at once. The default implementation calls {@link #saveSession} for each entry;
+     * stores should override it with a batched write when used with {@link WriteBehindSessionStore}.
+     */
+    default void saveSessions(List<SessionData> sessions) {
+        sessions.forEach(sessionData -> saveSession(sessionData.name(), sessionData.deviceId(), sessionData.base64SessionRecord()));
+    }
+
     List<SessionData> loadAll();
 
+    /**
+     * Streams all sessions to {@code pageConsumer} in pages of at most {@code pageSize} entries.
+     * The default implementation pages over {@link #loadAll()}; stores backed by a database
+     * should override it with a cursor so that only one page is held in memory at a time.
+     */
+    default void loadAll(int pageSize, Consumer<List<SessionData>> pageConsumer) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        List<SessionData> sessions = loadAll();
+        for (int from = 0; from < sessions.size(); from += pageSize) {
+            pageConsumer.accept(sessions.subList(from, Math.min(from + pageSize, sessions.size())));
+        }
+    }
+
+    /**
+     * Loads a single session, or returns {@code null} if none is stored. Used to reload sessions that were
+     * evicted from the protocol store cache. The default implementation scans {@link #loadAll()}; stores
+     * that serve a bounded session cache have to override it with a keyed lookup and report so from
+     * {@link #supportsKeyedLoad()}.
+     */
+    default SessionData loadSession(String name, int deviceId) {
+        return loadAll().stream()
+                .filter(sessionData -> sessionData.name().equals(name) && sessionData.deviceId() == deviceId)
+                .findFirst()
+                .orElse(null);
+    }
+
     void deleteSession(String name);
+
+    default void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+        saveSession(name, deviceId, Base64.getEncoder().encodeToString(sessionRecord));
+    }
+
+    default void saveSessionRecords(List<SessionRecordData> sessions) {
+        saveSessions(sessions.stream().map(SessionStore::toSessionData).toList());
+    }
+
+    default SessionRecordData loadSessionRecord(String name, int deviceId) {
+        return toSessionRecordData(loadSession(name, deviceId));
+    }
+
+    default void loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        loadAll(pageSize, page -> pageConsumer.accept(page.stream().map(SessionStore::toSessionRecordData).toList()));
+    }
+
+    /**
+     * Streams the sessions saved at or after {@code sinceMillis}, the wall clock time of the saving process, like
+     * {@link #loadAllRecords}. Used to bring a {@link ProtocolStoreSnapshot} up to date on startup. The default
+     * implementation streams all sessions; stores that record modification times override it with an indexed
+     * query and report so from {@link #supportsChangesSince()}. Deleted sessions need not be reported.
+     */
+    default void loadRecordsChangedSince(long sinceMillis, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        loadAllRecords(pageSize, pageConsumer);
+    }
+
+    /**
+     * Whether {@link #loadSession} and {@link #loadSessionRecord} look the session up by its key instead of
+     * scanning {@link #loadAll()}. Required for a bounded session cache, which reloads every evicted session on
+     * its next use.
+     */
+    default boolean supportsKeyedLoad() {
+        return false;
+    }
+
+    /**
+     * Whether {@link #loadRecordsChangedSince} reads only the changed sessions. Required for a
+     * {@link ProtocolStoreSnapshot}, which would otherwise restore every session twice.
+     */
+    default boolean supportsChangesSince() {
+        return false;
+    }
+
+    /**
+     * Whether this store implements {@link #loadVersionedSessionRecord} and {@link #compareAndSetSessionRecord}
+     * with real optimistic concurrency control. Required when several SDK instances share one store.
+     */
+    default boolean supportsVersioning() {
+        return false;
+    }
+
+    /**
+     * Loads a session together with its version. The default implementation reports every stored session
+     * as version {@code 0}.
+     */
+    default VersionedSessionRecordData loadVersionedSessionRecord(String name, int deviceId) {
+        SessionRecordData sessionRecordData = loadSessionRecord(name, deviceId);
+        if (sessionRecordData == null) {
+            return null;
+        }
+        return new VersionedSessionRecordData(name, deviceId, sessionRecordData.sessionRecord(), 0);
+    }
+
+    /**
+     * Saves the session only if its stored version is still {@code expectedVersion}, where {@code 0} means
+     * the session must not exist yet. On success the stored version becomes {@code expectedVersion + 1}.
+     * The default implementation is a blind save that always succeeds.
+     *
+     * @return {@code false} if the session was modified concurrently and nothing was written
+     */
+    default boolean compareAndSetSessionRecord(String name, int deviceId, byte[] sessionRecord, long expectedVersion) {
+        saveSessionRecord(name, deviceId, sessionRecord);
+        return true;
+    }
+
+    static SessionData toSessionData(SessionRecordData sessionRecordData) {
+        if (sessionRecordData == null) {
+            return null;
+        }
+        String base64Record = sessionRecordData.sessionRecord() == null ? null : Base64.getEncoder().encodeToString(sessionRecordData.sessionRecord());
+        return new SessionData(sessionRecordData.name(), sessionRecordData.deviceId(), base64Record);
+    }
+
+    static SessionRecordData toSessionRecordData(SessionData sessionData) {
+        if (sessionData == null) {
+            return null;
+        }
+        byte[] record = sessionData.base64SessionRecord() == null ? null : Base64.getDecoder().decode(sessionData.base64SessionRecord());
+        return new SessionRecordData(sessionData.name(), sessionData.deviceId(), record);
+    }
 }
@@ -0,0 +1,42 @@
+package io.sekretess.store;
+
+/**
+ * Lookups served by each tier of a {@link TieredSessionStore}: the session cache of the protocol store (hot), the
+ * local tier (warm) and the wrapped store (cold). {@code coldMisses} counts lookups of sessions that do not exist.
+ * {@code demotions} counts sessions moved from the cache to the warm tier and {@code warmEvictions} sessions
+ * dropped from the warm tier, which are then only in the cold store.
+ */
+public record SessionTierStats(long hotHits,
+                               long hotMisses,
+                               long warmHits,
+                               long coldHits,
+                               long coldMisses,
+                               long demotions,
+                               long warmEvictions) {
+
+    public double hotHitRate() {
+        return rate(hotHits, hotHits + hotMisses);
+    }
+
+    /**
+     * Share of the lookups that missed the cache and were served by the warm tier.
+     */
+    public double warmHitRate() {
+        return rate(warmHits, warmHits + coldHits + coldMisses);
+    }
+
+    /**
+     * Share of the lookups that reached the cold store and found a session.
+     */
+    public double coldHitRate() {
+        return rate(coldHits, coldHits + coldMisses);
+    }
+
+    SessionTierStats withHotTier(long hotHits, long hotMisses) {
+        return new SessionTierStats(hotHits, hotMisses, warmHits, coldHits, coldMisses, demotions, warmEvictions);
+    }
+
+    private static double rate(long hits, long lookups) {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
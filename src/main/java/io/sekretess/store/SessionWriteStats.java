@@ -0,0 +1,13 @@
+package io.sekretess.store;
+
+/**
+ * Session writes sent to the {@link SessionStore}, writes skipped because the record was unchanged, with
+ * optimistic locking, writes rejected because another instance updated the session first and, with an
+ * {@link AsyncSessionStore}, writes that failed after the message was already sent.
+ */
+public record SessionWriteStats(long writesIssued, long writesSkipped, long writeConflicts, long writeFailures) {
+
+    public SessionWriteStats(long writesIssued, long writesSkipped, long writeConflicts) {
+        this(writesIssued, writesSkipped, writeConflicts, 0);
+    }
+}
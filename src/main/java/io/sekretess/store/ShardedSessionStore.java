@@ -0,0 +1,286 @@
+package io.sekretess.store;
+
+import io.sekretess.exception.StoreException;
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.model.VersionedSessionRecordData;
+import io.sekretess.util.StableHash;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * {@link SessionStore} that spreads sessions over several backing stores, for example several databases or
+ * several local files, by a hash of the consumer name. All devices of a consumer live in the same shard, so
+ * {@link #deleteSession} touches one store. Batched saves and full loads run against the shards in parallel;
+ * pages of full loads are handed to the consumer one at a time.
+ * <p>
+ * Consumers are assigned with rendezvous hashing, which is stable across JVMs and only moves about
+ * {@code 1/n} of the consumers when an n-th shard is added. The shards themselves are not moved: the order of
+ * the stores defines the assignment, and changing it requires migrating the sessions. The store owns its shards:
+ * {@link #close()} closes them.
+ */
+public class ShardedSessionStore implements SessionStore, AutoCloseable {
+
+    private final List<SessionStore> shards;
+    private final ExecutorService executor;
+
+    public ShardedSessionStore(List<? extends SessionStore> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.executor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "sekretess-session-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Index of the shard that stores the sessions of {@code consumer}.
+     */
+    public int shardOf(String consumer) {
+        if (shards.size() == 1) {
+            return 0;
+        }
+        int owner = 0;
+        long highest = Long.MIN_VALUE;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            long weight = StableHash.hash(consumer, shard);
+            if (weight > highest) {
+                highest = weight;
+                owner = shard;
+            }
+        }
+        return owner;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+        shard(name).saveSession(name, deviceId, base64EncodedRecord);
+    }
+
+    @Override
+    public void saveSessions(List<SessionData> sessions) {
+        List<List<SessionData>> byShard = partition(sessions, SessionData::name);
+        inParallel("save sessions", shard -> shards.get(shard).saveSessions(byShard.get(shard)), nonEmpty(byShard));
+    }
+
+    @Override
+    public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+        shard(name).saveSessionRecord(name, deviceId, sessionRecord);
+    }
+
+    @Override
+    public void saveSessionRecords(List<SessionRecordData> sessions) {
+        List<List<SessionRecordData>> byShard = partition(sessions, SessionRecordData::name);
+        inParallel("save sessions", shard -> shards.get(shard).saveSessionRecords(byShard.get(shard)), nonEmpty(byShard));
+    }
+
+    @Override
+    public List<SessionData> loadAll() {
+        List<SessionData> sessions = Collections.synchronizedList(new ArrayList<>());
+        inParallel("load all sessions", shard -> sessions.addAll(shards.get(shard).loadAll()), allShards());
+        return new ArrayList<>(sessions);
+    }
+
+    @Override
+    public void loadAll(int pageSize, Consumer<List<SessionData>> pageConsumer) {
+        Consumer<List<SessionData>> serialized = serialized(pageConsumer);
+        inParallel("load all sessions", shard -> shards.get(shard).loadAll(pageSize, serialized), allShards());
+    }
+
+    @Override
+    public void loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        Consumer<List<SessionRecordData>> serialized = serialized(pageConsumer);
+        inParallel("load all sessions", shard -> shards.get(shard).loadAllRecords(pageSize, serialized), allShards());
+    }
+
+    @Override
+    public void loadRecordsChangedSince(long sinceMillis, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        Consumer<List<SessionRecordData>> serialized = serialized(pageConsumer);
+        inParallel("load changed sessions",
+                shard -> shards.get(shard).loadRecordsChangedSince(sinceMillis, pageSize, serialized), allShards());
+    }
+
+    @Override
+    public boolean supportsKeyedLoad() {
+        return shards.stream().allMatch(SessionStore::supportsKeyedLoad);
+    }
+
+    @Override
+    public boolean supportsChangesSince() {
+        return shards.stream().allMatch(SessionStore::supportsChangesSince);
+    }
+
+    @Override
+    public SessionData loadSession(String name, int deviceId) {
+        return shard(name).loadSession(name, deviceId);
+    }
+
+    @Override
+    public SessionRecordData loadSessionRecord(String name, int deviceId) {
+        return shard(name).loadSessionRecord(name, deviceId);
+    }
+
+    @Override
+    public void deleteSession(String name) {
+        shard(name).deleteSession(name);
+    }
+
+    @Override
+    public boolean supportsVersioning() {
+        return shards.stream().allMatch(SessionStore::supportsVersioning);
+    }
+
+    @Override
+    public VersionedSessionRecordData loadVersionedSessionRecord(String name, int deviceId) {
+        return shard(name).loadVersionedSessionRecord(name, deviceId);
+    }
+
+    @Override
+    public boolean compareAndSetSessionRecord(String name, int deviceId, byte[] sessionRecord, long expectedVersion) {
+        return shard(name).compareAndSetSessionRecord(name, deviceId, sessionRecord, expectedVersion);
+    }
+
+    /**
+     * Releases the shard pool and closes every shard that is {@link AutoCloseable}. All shards are closed also when
+     * one fails; the first failure is thrown with the others suppressed.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        RuntimeException failure = null;
+        for (SessionStore shard : shards) {
+            if (!(shard instanceof AutoCloseable closeable)) {
+                continue;
+            }
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                RuntimeException cause = e instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : new StoreException("Session shard failed on close", e);
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private SessionStore shard(String consumer) {
+        return shards.get(shardOf(consumer));
+    }
+
+    private <T> List<List<T>> partition(List<T> sessions, Function<T, String> name) {
+        List<List<T>> byShard = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            byShard.add(new ArrayList<>());
+        }
+        sessions.forEach(session -> byShard.get(shardOf(name.apply(session))).add(session));
+        return byShard;
+    }
+
+    private static List<Integer> nonEmpty(List<? extends List<?>> byShard) {
+        return IntStream.range(0, byShard.size()).filter(shard -> !byShard.get(shard).isEmpty()).boxed().toList();
+    }
+
+    private List<Integer> allShards() {
+        return IntStream.range(0, shards.size()).boxed().toList();
+    }
+
+    private static <T> Consumer<List<T>> serialized(Consumer<List<T>> pageConsumer) {
+        Object lock = new Object();
+        return page -> {
+            synchronized (lock) {
+                pageConsumer.accept(page);
+            }
+        };
+    }
+
+    /**
+     * Runs {@code task} for every shard in {@code targetShards} and waits for all of them, also when one fails or the
+     * caller is interrupted, so that no shard is still calling a page consumer after this returns. Shards are never
+     * interrupted: an interrupt in the middle of FileChannel I/O closes the channel of file-backed shards for good.
+     * A single shard runs on the caller.
+     */
+    private void inParallel(String operation, Consumer<Integer> task, List<Integer> targetShards) {
+        if (targetShards.size() <= 1) {
+            targetShards.forEach(task);
+            return;
+        }
+        // Claimed by whichever comes first: the shard task starting, or an interrupted caller cancelling it.
+        List<AtomicBoolean> claims = targetShards.stream().map(shard -> new AtomicBoolean()).toList();
+        List<Future<?>> futures = IntStream.range(0, targetShards.size())
+                .<Future<?>>mapToObj(index -> executor.submit(() -> {
+                    if (claims.get(index).compareAndSet(false, true)) {
+                        task.accept(targetShards.get(index));
+                    }
+                }))
+                .toList();
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : new StoreException("Session shard failed on " + operation, e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                awaitStartedShards(futures, claims);
+                Thread.currentThread().interrupt();
+                throw new StoreException("Interrupted while waiting for " + operation, e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Cancels the shard tasks that have not started and waits, ignoring interrupts, for the ones that have.
+     */
+    private static void awaitStartedShards(List<Future<?>> futures, List<AtomicBoolean> claims) {
+        for (int index = 0; index < futures.size(); index++) {
+            Future<?> future = futures.get(index);
+            if (claims.get(index).compareAndSet(false, true)) {
+                future.cancel(false);
+                continue;
+            }
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    // Restored by the caller once every started shard returned.
+                }
+            }
+        }
+    }
+}
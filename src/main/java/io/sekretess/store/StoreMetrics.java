@@ -0,0 +1,16 @@
+package io.sekretess.store;
+
+/**
+ * Counters of {@link ResilientSessionStore}. {@code calls} and the latencies cover every call that reached the
+ * store, including those that timed out; {@code rejections} counts calls refused because the bulkhead was full.
+ * {@code bufferedWrites} counts session writes that were buffered and {@code pendingBufferedWrites} the sessions
+ * still waiting to be retried.
+ */
+public record StoreMetrics(long calls,
+                           long failures,
+                           long timeouts,
+                           long rejections,
+                           long bufferedWrites,
+                           int pendingBufferedWrites,
+                           double meanLatencyMillis,
+                           double maxLatencyMillis) {}
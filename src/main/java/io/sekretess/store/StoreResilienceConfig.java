@@ -0,0 +1,49 @@
+package io.sekretess.store;
+
+import java.time.Duration;
+
+/**
+ * Limits applied by {@link ResilientSessionStore}: each store call may take at most {@code timeout}, and at most
+ * {@code maxConcurrentCalls} calls may be in flight. With {@link OverloadPolicy#BUFFER}, session writes that time
+ * out, fail or are rejected are kept in memory, up to {@code maxBufferedWrites} sessions, and retried every
+ * {@code retryInterval}.
+ */
+public record StoreResilienceConfig(Duration timeout,
+                                    int maxConcurrentCalls,
+                                    OverloadPolicy overloadPolicy,
+                                    int maxBufferedWrites,
+                                    Duration retryInterval) {
+
+    public enum OverloadPolicy {
+        /**
+         * Store calls that time out or are rejected throw a {@link io.sekretess.exception.StoreException}.
+         */
+        FAIL_FAST,
+        /**
+         * Session writes are buffered instead; reads and deletes still fail fast.
+         */
+        BUFFER
+    }
+
+    public StoreResilienceConfig {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be positive: " + timeout);
+        }
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be positive: " + maxConcurrentCalls);
+        }
+        if (overloadPolicy == null) {
+            throw new IllegalArgumentException("overloadPolicy is required");
+        }
+        if (maxBufferedWrites < 0) {
+            throw new IllegalArgumentException("maxBufferedWrites must not be negative: " + maxBufferedWrites);
+        }
+        if (retryInterval == null || retryInterval.isNegative() || retryInterval.isZero()) {
+            throw new IllegalArgumentException("retryInterval must be positive: " + retryInterval);
+        }
+    }
+
+    public static StoreResilienceConfig failFast(Duration timeout, int maxConcurrentCalls) {
+        return new StoreResilienceConfig(timeout, maxConcurrentCalls, OverloadPolicy.FAIL_FAST, 0, Duration.ofSeconds(1));
+    }
+}
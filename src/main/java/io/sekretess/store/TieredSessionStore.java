@@ -0,0 +1,28 @@
+package io.sekretess.store;
+
+import java.util.function.Predicate;
+
+/**
+ * {@link SessionStore} with a local tier for sessions that the {@link SekretessSignalProtocolStore} evicted from
+ * its bounded cache. Evicted sessions are handed to {@link #demoteSession}; they are read back through
+ * {@link #loadSessionRecord} when used again, which moves them back into the cache.
+ */
+public interface TieredSessionStore extends SessionStore {
+
+    /**
+     * Keeps a session that was evicted from the cache. The record may be newer than the stored one while writes
+     * are pending. Must not throw; a session that cannot be kept is read from the store instead.
+     */
+    void demoteSession(String name, int deviceId, byte[] sessionRecord);
+
+    /**
+     * Drops demoted sessions of the consumers matching {@code consumerFilter}, e.g. after another instance took
+     * over these consumers.
+     */
+    void dropDemotedSessions(Predicate<String> consumerFilter);
+
+    /**
+     * Warm and cold tier counters; hot tier counters are filled in by the protocol store.
+     */
+    SessionTierStats getTierStats();
+}
@@ -0,0 +1,221 @@
+package io.sekretess.store;
+
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * {@link SessionStore} decorator that takes session writes off the send path. Saves are coalesced per session
+ * in a bounded dirty set and flushed to the delegate through {@link SessionStore#saveSessionRecords} once
+ * {@code batchSize} sessions are dirty or every {@code flushInterval}, whichever comes first. When the dirty set
+ * reaches {@code maxDirtySessions} the saving thread flushes synchronously, which bounds the durability window.
+ * Reads see pending writes; deletes and full loads are applied after pending writes.
+ */
+public class WriteBehindSessionStore implements SessionStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindSessionStore.class);
+
+    private final SessionStore delegate;
+    private final int batchSize;
+    private final int maxDirtySessions;
+    private final Map<SessionKey, SessionRecordData> dirty = new LinkedHashMap<>();
+    private Map<SessionKey, SessionRecordData> inFlight = Map.of();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+
+    public WriteBehindSessionStore(SessionStore delegate, int batchSize, Duration flushInterval, int maxDirtySessions) {
+        if (batchSize <= 0 || maxDirtySessions < batchSize) {
+            throw new IllegalArgumentException("batchSize must be positive and not exceed maxDirtySessions");
+        }
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("flushInterval must be positive: " + flushInterval);
+        }
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.maxDirtySessions = maxDirtySessions;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sekretess-session-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+        saveSessions(List.of(new SessionData(name, deviceId, base64EncodedRecord)));
+    }
+
+    @Override
+    public void saveSessions(List<SessionData> sessions) {
+        saveSessionRecords(sessions.stream().map(SessionStore::toSessionRecordData).toList());
+    }
+
+    @Override
+    public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+        saveSessionRecords(List.of(new SessionRecordData(name, deviceId, sessionRecord)));
+    }
+
+    @Override
+    public void saveSessionRecords(List<SessionRecordData> sessions) {
+        if (closed.get()) {
+            delegate.saveSessionRecords(sessions);
+            return;
+        }
+        int dirtyCount;
+        synchronized (this) {
+            sessions.forEach(sessionData -> dirty.put(new SessionKey(sessionData.name(), sessionData.deviceId()), sessionData));
+            dirtyCount = dirty.size();
+        }
+        if (dirtyCount >= maxDirtySessions || closed.get()) {
+            flush();
+        } else if (dirtyCount >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    @Override
+    public SessionData loadSession(String name, int deviceId) {
+        SessionRecordData pending = pendingSession(name, deviceId);
+        return pending != null ? SessionStore.toSessionData(pending) : delegate.loadSession(name, deviceId);
+    }
+
+    @Override
+    public SessionRecordData loadSessionRecord(String name, int deviceId) {
+        SessionRecordData pending = pendingSession(name, deviceId);
+        return pending != null ? pending : delegate.loadSessionRecord(name, deviceId);
+    }
+
+    @Override
+    public List<SessionData> loadAll() {
+        flush();
+        return delegate.loadAll();
+    }
+
+    @Override
+    public void loadAll(int pageSize, Consumer<List<SessionData>> pageConsumer) {
+        flush();
+        delegate.loadAll(pageSize, pageConsumer);
+    }
+
+    @Override
+    public void loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        flush();
+        delegate.loadAllRecords(pageSize, pageConsumer);
+    }
+
+    @Override
+    public void loadRecordsChangedSince(long sinceMillis, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        flush();
+        delegate.loadRecordsChangedSince(sinceMillis, pageSize, pageConsumer);
+    }
+
+    @Override
+    public boolean supportsKeyedLoad() {
+        return delegate.supportsKeyedLoad();
+    }
+
+    @Override
+    public boolean supportsChangesSince() {
+        return delegate.supportsChangesSince();
+    }
+
+    @Override
+    public void deleteSession(String name) {
+        flushLock.lock();
+        try {
+            synchronized (this) {
+                dirty.keySet().removeIf(key -> key.name().equals(name));
+            }
+            delegate.deleteSession(name);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all pending sessions to the delegate. Sessions that fail to persist stay dirty unless they were
+     * saved again in the meantime.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<SessionKey, SessionRecordData> batch;
+            synchronized (this) {
+                if (dirty.isEmpty()) {
+                    return;
+                }
+                batch = new LinkedHashMap<>(dirty);
+                dirty.clear();
+                inFlight = batch;
+            }
+            try {
+                List<SessionRecordData> sessions = new ArrayList<>(batch.values());
+                for (int from = 0; from < sessions.size(); from += batchSize) {
+                    delegate.saveSessionRecords(sessions.subList(from, Math.min(from + batchSize, sessions.size())));
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    batch.forEach(dirty::putIfAbsent);
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    inFlight = Map.of();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public synchronized int getDirtySessionCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Stops the background flush and writes all pending sessions. Later saves go straight to the delegate.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            scheduler.shutdown();
+            flush();
+        }
+    }
+
+    private synchronized SessionRecordData pendingSession(String name, int deviceId) {
+        SessionKey key = new SessionKey(name, deviceId);
+        SessionRecordData pending = dirty.get(key);
+        return pending != null ? pending : inFlight.get(key);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Exception happened when flushing sessions to store! {}", e.getMessage(), e);
+        }
+    }
+
+    private record SessionKey(String name, int deviceId) {}
+}
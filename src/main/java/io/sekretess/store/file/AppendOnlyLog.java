@@ -0,0 +1,556 @@
+package io.sekretess.store.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Key-value log backing the file stores. Every write appends records of the form
+ * {@code [int bodyLength][int crc32][byte type][int keyLength][key][value]} and updates an in-memory index of
+ * value offsets, so a read is a single lookup in the memory-mapped file. A log opened with {@code recordSaveTimes}
+ * writes puts as {@code [int bodyLength][int crc32][byte type][int keyLength][key][long savedAtMillis][value]} and
+ * keeps the save time in the index, so the keys changed since a point in time are found without reading values. A torn record at the end of the file is
+ * truncated on open. Once overwritten and deleted records take up enough of the file, the live records are copied
+ * to a new file on a background thread and the new file replaces the old one; writes are only blocked while the
+ * records appended during the copy are carried over. Both files are readable by the owner only where the file system
+ * supports POSIX permissions, and the directory is synced after the replacement so that it survives a crash.
+ */
+final class AppendOnlyLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppendOnlyLog.class);
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte TIMED_PUT = 3;
+    private static final long UNKNOWN_SAVE_TIME = Long.MAX_VALUE;
+    private static final int RECORD_HEADER_BYTES = 4 + 4;
+    private static final int BODY_HEADER_BYTES = 1 + 4;
+    private static final int MIN_REMAP_BYTES = 1024 * 1024;
+    private static final int COMPACTION_WRITE_BUFFER_BYTES = 1024 * 1024;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final Path path;
+    private final Path compactionPath;
+    private final FileStoreConfig config;
+    private final boolean recordSaveTimes;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Object compactionMonitor = new Object();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final ExecutorService compactionExecutor;
+    private volatile Segment segment;
+
+    AppendOnlyLog(Path path, FileStoreConfig config) {
+        this(path, config, false);
+    }
+
+    AppendOnlyLog(Path path, FileStoreConfig config, boolean recordSaveTimes) {
+        this.path = path;
+        this.compactionPath = path.resolveSibling(path.getFileName() + ".compact");
+        this.config = config;
+        this.recordSaveTimes = recordSaveTimes;
+        try {
+            Files.deleteIfExists(compactionPath);
+            FileChannel channel = openOwnerOnly(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment recovered = new Segment(channel);
+            long validBytes = recovered.replay(new BufferedInputStream(Channels.newInputStream(channel)), 0);
+            if (validBytes < channel.size()) {
+                logger.warn("Truncating {} bytes of incomplete records at the end of {}", channel.size() - validBytes, path);
+                channel.truncate(validBytes);
+            }
+            recovered.size = validBytes;
+            this.segment = recovered;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open " + path, e);
+        }
+        this.compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sekretess-file-store-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    byte[] get(String key) {
+        while (true) {
+            Segment current = segment;
+            Entry entry = current.index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            try {
+                return current.read(entry);
+            } catch (ClosedChannelException e) {
+                // Replaced by a compaction after the lookup, so the entry belongs to the old file.
+                if (current == segment) {
+                    throw new UncheckedIOException(e);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + path, e);
+            }
+        }
+    }
+
+    boolean contains(String key) {
+        return segment.index.containsKey(key);
+    }
+
+    Set<String> keys() {
+        return Set.copyOf(segment.index.keySet());
+    }
+
+    int size() {
+        return segment.index.size();
+    }
+
+    /**
+     * Returns the keys put at or after {@code sinceMillis}, looked up in the index. Keys whose last put has no save
+     * time, because it was written without {@code recordSaveTimes}, are always returned.
+     */
+    List<String> keysSavedSince(long sinceMillis) {
+        List<String> keys = new ArrayList<>();
+        segment.index.forEach((key, entry) -> {
+            if (entry.savedAtMillis() >= sinceMillis) {
+                keys.add(key);
+            }
+        });
+        return keys;
+    }
+
+    void put(String key, byte[] value) {
+        append(List.of(putRecord(key, value, System.currentTimeMillis())));
+    }
+
+    /**
+     * Appends all entries with a single write, and a single sync with {@code syncOnWrite}.
+     */
+    void putAll(Map<String, byte[]> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<PendingRecord> records = new ArrayList<>(entries.size());
+        long savedAtMillis = System.currentTimeMillis();
+        entries.forEach((key, value) -> records.add(putRecord(key, value, savedAtMillis)));
+        append(records);
+    }
+
+    void delete(String key) {
+        if (contains(key)) {
+            append(List.of(new PendingRecord(DELETE, key, new byte[0], UNKNOWN_SAVE_TIME)));
+        }
+    }
+
+    long sizeBytes() {
+        return segment.size;
+    }
+
+    long garbageBytes() {
+        return segment.garbageBytes;
+    }
+
+    /**
+     * Rewrites the log with only its live records. Runs in the background when the garbage threshold of
+     * {@link FileStoreConfig} is reached.
+     */
+    void compact() {
+        synchronized (compactionMonitor) {
+            try {
+                compactLog();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to compact " + path, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        compactionExecutor.shutdown();
+        try {
+            compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            if (!segment.channel.isOpen()) {
+                return;
+            }
+            segment.channel.force(true);
+            segment.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close " + path, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void append(List<PendingRecord> records) {
+        int length = 0;
+        for (PendingRecord record : records) {
+            length += record.length();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        records.forEach(record -> encode(buffer, record));
+        buffer.flip();
+        writeLock.lock();
+        try {
+            Segment current = segment;
+            long start = current.size;
+            while (buffer.hasRemaining()) {
+                current.channel.write(buffer, start + buffer.position());
+            }
+            if (config.syncOnWrite()) {
+                current.channel.force(false);
+            }
+            long position = start;
+            for (PendingRecord record : records) {
+                current.apply(record.name(), record.type(), position + record.length() - record.value().length,
+                        record.value().length, record.length(), record.savedAtMillis());
+                position += record.length();
+            }
+            current.size = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + path, e);
+        } finally {
+            writeLock.unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        Segment current = segment;
+        if (current.size < config.compactionMinBytes()
+                || current.garbageBytes < current.size * config.compactionGarbageRatio()
+                || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactionExecutor.execute(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    logger.error("Exception happened when compacting {}! {}", path, e.getMessage(), e);
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            compactionScheduled.set(false);
+        }
+    }
+
+    private void compactLog() throws IOException {
+        Segment old;
+        long snapshotEnd;
+        Map<String, Entry> snapshot;
+        writeLock.lock();
+        try {
+            old = segment;
+            snapshotEnd = old.size;
+            snapshot = new HashMap<>(old.index);
+        } finally {
+            writeLock.unlock();
+        }
+
+        FileChannel channel = openOwnerOnly(compactionPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment compacted = new Segment(channel);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(COMPACTION_WRITE_BUFFER_BYTES);
+            long position = 0;
+            for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                Entry live = entry.getValue();
+                if (live.recordLength() > buffer.remaining()) {
+                    position += flush(buffer, channel, position);
+                    if (live.recordLength() > buffer.capacity()) {
+                        buffer = ByteBuffer.allocate(live.recordLength());
+                    }
+                }
+                long recordPosition = position + buffer.position();
+                old.copyRecord(live, buffer);
+                compacted.index.put(entry.getKey(), new Entry(recordPosition + live.valuePosition() - live.recordStart(),
+                        live.valueLength(), live.recordLength(), live.savedAtMillis()));
+            }
+            position += flush(buffer, channel, position);
+
+            writeLock.lock();
+            try {
+                // Carry over what was appended while the live records were copied.
+                int tailLength = (int) (old.size - snapshotEnd);
+                ByteBuffer tail = ByteBuffer.allocate(tailLength);
+                while (tail.hasRemaining()) {
+                    old.channel.read(tail, snapshotEnd + tail.position());
+                }
+                tail.flip();
+                compacted.replay(new ByteArrayInputStream(tail.array(), 0, tailLength), position);
+                while (tail.hasRemaining()) {
+                    position += channel.write(tail, position);
+                }
+                compacted.size = position;
+                channel.force(true);
+                Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                segment = compacted;
+                old.channel.close();
+                forceDirectory(path);
+            } finally {
+                writeLock.unlock();
+            }
+            logger.info("Compacted {} from {} to {} bytes", path, snapshotEnd, compacted.size);
+        } catch (IOException | RuntimeException e) {
+            if (segment != compacted) {
+                channel.close();
+                Files.deleteIfExists(compactionPath);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Opens {@code file}, creating it readable and writable by the owner only where the file system supports POSIX
+     * permissions. An existing file is restricted the same way.
+     */
+    private static FileChannel openOwnerOnly(Path file, OpenOption... options) throws IOException {
+        if (!file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return FileChannel.open(file, options);
+        }
+        FileChannel channel = FileChannel.open(file, Set.of(options), PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        try {
+            if (!Files.getPosixFilePermissions(file).equals(OWNER_ONLY)) {
+                Files.setPosixFilePermissions(file, OWNER_ONLY);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not restrict {} to its owner: {}", file, e.getMessage());
+        }
+        return channel;
+    }
+
+    /**
+     * Syncs the directory of {@code file}, so that a rename into it is durable. Not every platform can open a
+     * directory, in which case the rename is left to the file system.
+     */
+    private static void forceDirectory(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static int flush(ByteBuffer buffer, FileChannel channel, long position) throws IOException {
+        buffer.flip();
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    private PendingRecord putRecord(String key, byte[] value, long savedAtMillis) {
+        return recordSaveTimes
+                ? new PendingRecord(TIMED_PUT, key, value, savedAtMillis)
+                : new PendingRecord(PUT, key, value, UNKNOWN_SAVE_TIME);
+    }
+
+    private static void encode(ByteBuffer buffer, PendingRecord record) {
+        int bodyLength = record.length() - RECORD_HEADER_BYTES;
+        int start = buffer.position();
+        buffer.putInt(bodyLength).putInt(0).put(record.type()).putInt(record.key().length).put(record.key());
+        if (record.type() == TIMED_PUT) {
+            buffer.putLong(record.savedAtMillis());
+        }
+        buffer.put(record.value());
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start + RECORD_HEADER_BYTES, bodyLength);
+        buffer.putInt(start + 4, (int) crc.getValue());
+    }
+
+    private record Entry(long valuePosition, int valueLength, int recordLength, long savedAtMillis) {
+
+        private long recordStart() {
+            return valuePosition + valueLength - recordLength;
+        }
+    }
+
+    private record PendingRecord(byte type, String name, byte[] key, byte[] value, long savedAtMillis) {
+
+        private PendingRecord(byte type, String name, byte[] value, long savedAtMillis) {
+            this(type, name, name.getBytes(StandardCharsets.UTF_8), value, savedAtMillis);
+        }
+
+        private int length() {
+            return RECORD_HEADER_BYTES + BODY_HEADER_BYTES + key.length + (type == TIMED_PUT ? Long.BYTES : 0) + value.length;
+        }
+    }
+
+    /**
+     * One log file with its index. Replaced as a whole by compaction, so readers that picked up a segment keep
+     * consistent offsets.
+     */
+    private static final class Segment {
+        private final FileChannel channel;
+        private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<>();
+        private volatile long size;
+        private volatile long garbageBytes;
+        private volatile MappedByteBuffer mapped;
+
+        private Segment(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Applies the records in {@code in}, which start at {@code startPosition} of this segment's file, to the
+         * index and returns the position after the last complete record.
+         */
+        private long replay(InputStream in, long startPosition) throws IOException {
+            DataInputStream data = new DataInputStream(in);
+            long position = startPosition;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] body;
+                int expectedCrc;
+                try {
+                    int bodyLength = data.readInt();
+                    expectedCrc = data.readInt();
+                    if (bodyLength < BODY_HEADER_BYTES) {
+                        return position;
+                    }
+                    body = data.readNBytes(bodyLength);
+                    if (body.length < bodyLength) {
+                        return position;
+                    }
+                } catch (EOFException e) {
+                    return position;
+                }
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != expectedCrc) {
+                    return position;
+                }
+                ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+                byte type = bodyBuffer.get();
+                int keyLength = bodyBuffer.getInt();
+                if (keyLength < 0 || keyLength > bodyBuffer.remaining()) {
+                    return position;
+                }
+                String key = new String(body, BODY_HEADER_BYTES, keyLength, StandardCharsets.UTF_8);
+                int valueOffset = BODY_HEADER_BYTES + keyLength;
+                long savedAtMillis = UNKNOWN_SAVE_TIME;
+                if (type == TIMED_PUT) {
+                    if (Long.BYTES > body.length - valueOffset) {
+                        return position;
+                    }
+                    savedAtMillis = bodyBuffer.getLong(valueOffset);
+                    valueOffset += Long.BYTES;
+                }
+                int recordLength = RECORD_HEADER_BYTES + body.length;
+                apply(key, type, position + RECORD_HEADER_BYTES + valueOffset, body.length - valueOffset, recordLength, savedAtMillis);
+                position += recordLength;
+            }
+        }
+
+        private void apply(String key, byte type, long valuePosition, int valueLength, int recordLength, long savedAtMillis) {
+            Entry previous;
+            if (type == PUT || type == TIMED_PUT) {
+                previous = index.put(key, new Entry(valuePosition, valueLength, recordLength, savedAtMillis));
+            } else {
+                previous = index.remove(key);
+                garbageBytes += recordLength;
+            }
+            if (previous != null) {
+                garbageBytes += previous.recordLength();
+            }
+        }
+
+        /**
+         * Copies the whole record of {@code entry}, checksum included, to {@code target}.
+         */
+        private void copyRecord(Entry entry, ByteBuffer target) throws IOException {
+            long start = entry.recordStart();
+            int length = entry.recordLength();
+            MappedByteBuffer buffer = mapped;
+            if (buffer == null || start + length > buffer.capacity()) {
+                buffer = remap(start + length);
+            }
+            if (buffer != null) {
+                target.put(target.position(), buffer, (int) start, length);
+            } else {
+                ByteBuffer slice = target.slice(target.position(), length);
+                while (slice.hasRemaining()) {
+                    if (channel.read(slice, start + slice.position()) < 0) {
+                        throw new EOFException("Record beyond end of log at " + start);
+                    }
+                }
+            }
+            target.position(target.position() + length);
+        }
+
+        private byte[] read(Entry entry) throws IOException {
+            long end = entry.valuePosition() + entry.valueLength();
+            MappedByteBuffer buffer = mapped;
+            if (buffer == null || end > buffer.capacity()) {
+                buffer = remap(end);
+            }
+            byte[] value = new byte[entry.valueLength()];
+            if (buffer != null) {
+                buffer.get((int) entry.valuePosition(), value);
+                return value;
+            }
+            ByteBuffer target = ByteBuffer.wrap(value);
+            while (target.hasRemaining()) {
+                if (channel.read(target, entry.valuePosition() + target.position()) < 0) {
+                    throw new EOFException("Record beyond end of log at " + entry.valuePosition());
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Maps the file again once enough was appended behind the current mapping. Returns {@code null} if reads
+         * of {@code end} should go through the channel instead.
+         */
+        private synchronized MappedByteBuffer remap(long end) throws IOException {
+            MappedByteBuffer current = mapped;
+            if (current != null && end <= current.capacity()) {
+                return current;
+            }
+            long fileSize = channel.size();
+            long mappedSize = current == null ? 0 : current.capacity();
+            if (fileSize > Integer.MAX_VALUE || end > fileSize || fileSize - mappedSize < Math.max(MIN_REMAP_BYTES, mappedSize / 8)) {
+                return null;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            return mapped;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.sekretess.store.file;
+
+import io.sekretess.model.GroupSessionData;
+import io.sekretess.model.GroupSessionRecordData;
+import io.sekretess.store.GroupSessionStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * Embedded {@link GroupSessionStore} that keeps sender keys in an append-only log file. Saving the sender key keeps
+ * the stored distribution message, and saving a distribution message clears the sender key.
+ */
+public class FileGroupSessionStore implements GroupSessionStore, AutoCloseable {
+
+    private final AppendOnlyLog log;
+
+    public FileGroupSessionStore(Path file) {
+        this(file, FileStoreConfig.defaults());
+    }
+
+    public FileGroupSessionStore(Path file, FileStoreConfig config) {
+        this.log = new AppendOnlyLog(file, config);
+    }
+
+    @Override
+    public void saveGroupSession(String name, int deviceId, String distributionId, String sessionRecord) {
+        saveGroupSessionRecord(name, deviceId, distributionId, decode(sessionRecord));
+    }
+
+    @Override
+    public void saveSendDistributionMessage(String name, int deviceId, String distributionId, String businessDistributionMessage) {
+        saveSendDistributionMessageRecord(name, deviceId, distributionId, decode(businessDistributionMessage));
+    }
+
+    @Override
+    public GroupSessionData loadGroupSession(String name) {
+        GroupSessionRecordData record = loadGroupSessionRecord(name);
+        if (record == null) {
+            return null;
+        }
+        return new GroupSessionData(record.name(), record.deviceId(), record.distributionId(),
+                encode(record.sessionRecord()), encode(record.businessDistributionMessage()));
+    }
+
+    @Override
+    public synchronized void saveGroupSessionRecord(String name, int deviceId, String distributionId, byte[] sessionRecord) {
+        GroupSessionRecordData existing = loadGroupSessionRecord(name);
+        byte[] businessDistributionMessage = existing != null ? existing.businessDistributionMessage() : null;
+        log.put(name, serialize(new GroupSessionRecordData(name, deviceId, distributionId, sessionRecord, businessDistributionMessage)));
+    }
+
+    @Override
+    public synchronized void saveSendDistributionMessageRecord(String name, int deviceId, String distributionId, byte[] businessDistributionMessage) {
+        log.put(name, serialize(new GroupSessionRecordData(name, deviceId, distributionId, null, businessDistributionMessage)));
+    }
+
+    @Override
+    public GroupSessionRecordData loadGroupSessionRecord(String name) {
+        byte[] value = log.get(name);
+        return value == null ? null : deserialize(name, value);
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    private static byte[] serialize(GroupSessionRecordData record) {
+        byte[] distributionId = record.distributionId() == null ? null : record.distributionId().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + lengthOf(distributionId) + lengthOf(record.sessionRecord())
+                + lengthOf(record.businessDistributionMessage()));
+        buffer.putInt(record.deviceId());
+        putBytes(buffer, distributionId);
+        putBytes(buffer, record.sessionRecord());
+        putBytes(buffer, record.businessDistributionMessage());
+        return buffer.array();
+    }
+
+    private static GroupSessionRecordData deserialize(String name, byte[] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        int deviceId = buffer.getInt();
+        byte[] distributionId = getBytes(buffer);
+        return new GroupSessionRecordData(name, deviceId,
+                distributionId == null ? null : new String(distributionId, StandardCharsets.UTF_8),
+                getBytes(buffer), getBytes(buffer));
+    }
+
+    private static int lengthOf(byte[] value) {
+        return 4 + (value == null ? 0 : value.length);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    private static String encode(byte[] value) {
+        return value == null ? null : Base64.getEncoder().encodeToString(value);
+    }
+
+    private static byte[] decode(String value) {
+        return value == null ? null : Base64.getDecoder().decode(value);
+    }
+}
@@ -0,0 +1,101 @@
+package io.sekretess.store.file;
+
+import io.sekretess.model.ConsumerIdentityData;
+import io.sekretess.model.IdentityKeyData;
+import io.sekretess.store.IdentityStore;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Embedded {@link IdentityStore} that keeps business identities and consumer identity keys in an append-only log
+ * file. The file holds the private identity key and should be readable by the SDK process only.
+ */
+public class FileIdentityStore implements IdentityStore, AutoCloseable {
+
+    // Consumer keys start with a separator, which a business username never does.
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final AppendOnlyLog log;
+
+    public FileIdentityStore(Path file) {
+        this(file, FileStoreConfig.durable());
+    }
+
+    public FileIdentityStore(Path file, FileStoreConfig config) {
+        this.log = new AppendOnlyLog(file, config);
+    }
+
+    @Override
+    public IdentityKeyData loadIdentity(String username) {
+        byte[] value = log.get(username);
+        if (value == null) {
+            return null;
+        }
+        int registrationId = ByteBuffer.wrap(value).getInt();
+        return new IdentityKeyData(username, Arrays.copyOfRange(value, 4, value.length), registrationId);
+    }
+
+    @Override
+    public void saveIdentity(String username, byte[] serializedIdentityKeyPair, int registrationId) {
+        log.put(username, ByteBuffer.allocate(4 + serializedIdentityKeyPair.length)
+                .putInt(registrationId)
+                .put(serializedIdentityKeyPair)
+                .array());
+    }
+
+    @Override
+    public boolean supportsConsumerIdentities() {
+        return true;
+    }
+
+    @Override
+    public void saveConsumerIdentity(String name, int deviceId, byte[] identityKey) {
+        log.put(consumerKey(name, deviceId), identityKey);
+    }
+
+    @Override
+    public ConsumerIdentityData loadConsumerIdentity(String name, int deviceId) {
+        byte[] identityKey = log.get(consumerKey(name, deviceId));
+        return identityKey == null ? null : new ConsumerIdentityData(name, deviceId, identityKey);
+    }
+
+    @Override
+    public void loadAllConsumerIdentities(int pageSize, Consumer<List<ConsumerIdentityData>> pageConsumer) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        List<ConsumerIdentityData> page = new ArrayList<>(Math.min(pageSize, 1024));
+        for (String key : log.keys()) {
+            if (key.isEmpty() || key.charAt(0) != KEY_SEPARATOR) {
+                continue;
+            }
+            byte[] identityKey = log.get(key);
+            if (identityKey == null) {
+                continue;
+            }
+            int separator = key.lastIndexOf(KEY_SEPARATOR);
+            page.add(new ConsumerIdentityData(key.substring(1, separator), Integer.parseInt(key.substring(separator + 1)), identityKey));
+            if (page.size() == pageSize) {
+                pageConsumer.accept(page);
+                page = new ArrayList<>(Math.min(pageSize, 1024));
+            }
+        }
+        if (!page.isEmpty()) {
+            pageConsumer.accept(page);
+        }
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    private static String consumerKey(String name, int deviceId) {
+        return KEY_SEPARATOR + name + KEY_SEPARATOR + deviceId;
+    }
+}
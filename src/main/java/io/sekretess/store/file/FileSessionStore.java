@@ -0,0 +1,198 @@
+package io.sekretess.store.file;
+
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.store.SessionStore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Embedded {@link SessionStore} that keeps sessions in an append-only log file. A save is one buffered append,
+ * and a batch from {@link #saveSessionRecords} is one append, so it keeps up with per-message writes on a single
+ * node. Every record carries its save time, which serves {@link #loadRecordsChangedSince} from the in-memory index;
+ * sessions last saved by an earlier SDK version are always reported as changed. The file must not be shared between
+ * processes.
+ */
+public class FileSessionStore implements SessionStore, AutoCloseable {
+
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final AppendOnlyLog log;
+    private final Map<String, Set<Integer>> deviceIdsByName = new ConcurrentHashMap<>();
+    // Saves share the lock and deletes take it exclusively, so a save cannot add its device to the set of a consumer
+    // that is being deleted, or have its record deleted after it was tracked again.
+    private final ReadWriteLock deleteLock = new ReentrantReadWriteLock();
+
+    public FileSessionStore(Path file) {
+        this(file, FileStoreConfig.defaults());
+    }
+
+    public FileSessionStore(Path file, FileStoreConfig config) {
+        this.log = new AppendOnlyLog(file, config, true);
+        for (String key : log.keys()) {
+            SessionKey sessionKey = SessionKey.parse(key);
+            deviceIdsOf(sessionKey.name()).add(sessionKey.deviceId());
+        }
+    }
+
+    @Override
+    public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+        saveSessionRecord(name, deviceId, Base64.getDecoder().decode(base64EncodedRecord));
+    }
+
+    @Override
+    public void saveSessions(List<SessionData> sessions) {
+        saveSessionRecords(sessions.stream().map(SessionStore::toSessionRecordData).toList());
+    }
+
+    @Override
+    public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+        deleteLock.readLock().lock();
+        try {
+            deviceIdsOf(name).add(deviceId);
+            log.put(new SessionKey(name, deviceId).toString(), sessionRecord);
+        } finally {
+            deleteLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveSessionRecords(List<SessionRecordData> sessions) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        deleteLock.readLock().lock();
+        try {
+            for (SessionRecordData session : sessions) {
+                deviceIdsOf(session.name()).add(session.deviceId());
+                entries.put(new SessionKey(session.name(), session.deviceId()).toString(), session.sessionRecord());
+            }
+            log.putAll(entries);
+        } finally {
+            deleteLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SessionData> loadAll() {
+        List<SessionData> sessions = new ArrayList<>();
+        loadAllRecords(Integer.MAX_VALUE, page -> page.forEach(session -> sessions.add(SessionStore.toSessionData(session))));
+        return sessions;
+    }
+
+    @Override
+    public void loadAll(int pageSize, Consumer<List<SessionData>> pageConsumer) {
+        loadAllRecords(pageSize, page -> pageConsumer.accept(page.stream().map(SessionStore::toSessionData).toList()));
+    }
+
+    @Override
+    public SessionData loadSession(String name, int deviceId) {
+        return SessionStore.toSessionData(loadSessionRecord(name, deviceId));
+    }
+
+    @Override
+    public SessionRecordData loadSessionRecord(String name, int deviceId) {
+        byte[] sessionRecord = log.get(new SessionKey(name, deviceId).toString());
+        return sessionRecord == null ? null : new SessionRecordData(name, deviceId, sessionRecord);
+    }
+
+    @Override
+    public void loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        loadRecords(log.keys(), pageSize, pageConsumer);
+    }
+
+    @Override
+    public void loadRecordsChangedSince(long sinceMillis, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        loadRecords(log.keysSavedSince(sinceMillis), pageSize, pageConsumer);
+    }
+
+    @Override
+    public boolean supportsKeyedLoad() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsChangesSince() {
+        return true;
+    }
+
+    @Override
+    public void deleteSession(String name) {
+        deleteLock.writeLock().lock();
+        try {
+            Set<Integer> deviceIds = deviceIdsByName.remove(name);
+            if (deviceIds != null) {
+                deviceIds.forEach(deviceId -> log.delete(new SessionKey(name, deviceId).toString()));
+            }
+        } finally {
+            deleteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the current sessions. Normally done in the background.
+     */
+    public void compact() {
+        log.compact();
+    }
+
+    public int size() {
+        return log.size();
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    private void loadRecords(Collection<String> keys, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        List<SessionRecordData> page = new ArrayList<>(Math.min(pageSize, 1024));
+        for (String key : keys) {
+            byte[] sessionRecord = log.get(key);
+            if (sessionRecord == null) {
+                continue;
+            }
+            SessionKey sessionKey = SessionKey.parse(key);
+            page.add(new SessionRecordData(sessionKey.name(), sessionKey.deviceId(), sessionRecord));
+            if (page.size() == pageSize) {
+                pageConsumer.accept(page);
+                page = new ArrayList<>(Math.min(pageSize, 1024));
+            }
+        }
+        if (!page.isEmpty()) {
+            pageConsumer.accept(page);
+        }
+    }
+
+    private Set<Integer> deviceIdsOf(String name) {
+        return deviceIdsByName.computeIfAbsent(name, key -> ConcurrentHashMap.newKeySet());
+    }
+
+    private record SessionKey(String name, int deviceId) {
+
+        private static SessionKey parse(String key) {
+            int separator = key.lastIndexOf(KEY_SEPARATOR);
+            return new SessionKey(key.substring(0, separator), Integer.parseInt(key.substring(separator + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return name + KEY_SEPARATOR + deviceId;
+        }
+    }
+}
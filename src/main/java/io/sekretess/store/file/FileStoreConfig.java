@@ -0,0 +1,27 @@
+package io.sekretess.store.file;
+
+/**
+ * Tuning of the append-only logs behind the file stores. With {@code syncOnWrite} every write is forced to disk
+ * before it returns; otherwise writes survive a crash of the JVM but not of the operating system. A log is
+ * compacted in the background once it is larger than {@code compactionMinBytes} and at least
+ * {@code compactionGarbageRatio} of it is taken by overwritten or deleted records.
+ */
+public record FileStoreConfig(boolean syncOnWrite, double compactionGarbageRatio, long compactionMinBytes) {
+
+    public FileStoreConfig {
+        if (compactionGarbageRatio <= 0 || compactionGarbageRatio >= 1) {
+            throw new IllegalArgumentException("compactionGarbageRatio must be between 0 and 1: " + compactionGarbageRatio);
+        }
+        if (compactionMinBytes < 0) {
+            throw new IllegalArgumentException("compactionMinBytes must not be negative: " + compactionMinBytes);
+        }
+    }
+
+    public static FileStoreConfig defaults() {
+        return new FileStoreConfig(false, 0.5, 4 * 1024 * 1024);
+    }
+
+    public static FileStoreConfig durable() {
+        return new FileStoreConfig(true, 0.5, 4 * 1024 * 1024);
+    }
+}
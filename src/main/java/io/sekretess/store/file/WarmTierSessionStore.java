@@ -0,0 +1,192 @@
+package io.sekretess.store.file;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.store.SessionStore;
+import io.sekretess.store.SessionTierStats;
+import io.sekretess.store.TieredSessionStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * {@link TieredSessionStore} that keeps demoted sessions in a local append-only log with memory-mapped reads, in
+ * front of a cold {@link SessionStore} that stays authoritative: every write goes to the cold store, and a session
+ * read from the warm tier leaves it again, since it moves back into the cache. Which demoted sessions stay is
+ * decided by access frequency, with the same W-TinyLFU policy as the session cache, up to {@code maximumSize}
+ * sessions. The warm tier is a cache and is cleared on open.
+ */
+public class WarmTierSessionStore implements TieredSessionStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmTierSessionStore.class);
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final SessionStore coldStore;
+    private final AppendOnlyLog log;
+    private final Cache<String, Boolean> index;
+    private final LongAdder warmHits = new LongAdder();
+    private final LongAdder coldHits = new LongAdder();
+    private final LongAdder coldMisses = new LongAdder();
+    private final LongAdder demotions = new LongAdder();
+    private final LongAdder warmEvictions = new LongAdder();
+
+    public WarmTierSessionStore(SessionStore coldStore, Path file, long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear warm session tier " + file, e);
+        }
+        this.coldStore = coldStore;
+        this.log = new AppendOnlyLog(file, FileStoreConfig.defaults());
+        this.index = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .executor(Runnable::run)
+                .removalListener((String key, Boolean present, RemovalCause cause) -> {
+                    if (cause != RemovalCause.REPLACED) {
+                        log.delete(key);
+                    }
+                    if (cause.wasEvicted()) {
+                        warmEvictions.increment();
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public void demoteSession(String name, int deviceId, byte[] sessionRecord) {
+        String key = key(name, deviceId);
+        try {
+            log.put(key, sessionRecord);
+            index.put(key, Boolean.TRUE);
+            demotions.increment();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to demote session of {} to the warm tier, it will be read from the store: {}", name, e.getMessage());
+            index.invalidate(key);
+        }
+    }
+
+    @Override
+    public void dropDemotedSessions(Predicate<String> consumerFilter) {
+        index.asMap().keySet().removeIf(key -> consumerFilter.test(key.substring(0, key.lastIndexOf(KEY_SEPARATOR))));
+    }
+
+    @Override
+    public SessionTierStats getTierStats() {
+        return new SessionTierStats(0, 0, warmHits.sum(), coldHits.sum(), coldMisses.sum(), demotions.sum(), warmEvictions.sum());
+    }
+
+    /**
+     * Number of sessions in the warm tier.
+     */
+    public long getWarmSessionCount() {
+        return index.estimatedSize();
+    }
+
+    @Override
+    public SessionRecordData loadSessionRecord(String name, int deviceId) {
+        String key = key(name, deviceId);
+        if (index.asMap().containsKey(key)) {
+            byte[] sessionRecord = log.get(key);
+            // Removing it also deletes it from the log; the session is back in the cache from now on.
+            index.invalidate(key);
+            if (sessionRecord != null) {
+                warmHits.increment();
+                return new SessionRecordData(name, deviceId, sessionRecord);
+            }
+        }
+        SessionRecordData cold = coldStore.loadSessionRecord(name, deviceId);
+        if (cold == null) {
+            coldMisses.increment();
+        } else {
+            coldHits.increment();
+        }
+        return cold;
+    }
+
+    @Override
+    public SessionData loadSession(String name, int deviceId) {
+        return SessionStore.toSessionData(loadSessionRecord(name, deviceId));
+    }
+
+    @Override
+    public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+        saveSessionRecord(name, deviceId, Base64.getDecoder().decode(base64EncodedRecord));
+    }
+
+    @Override
+    public void saveSessions(List<SessionData> sessions) {
+        saveSessionRecords(sessions.stream().map(SessionStore::toSessionRecordData).toList());
+    }
+
+    @Override
+    public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+        index.invalidate(key(name, deviceId));
+        coldStore.saveSessionRecord(name, deviceId, sessionRecord);
+    }
+
+    @Override
+    public void saveSessionRecords(List<SessionRecordData> sessions) {
+        sessions.forEach(session -> index.invalidate(key(session.name(), session.deviceId())));
+        coldStore.saveSessionRecords(sessions);
+    }
+
+    @Override
+    public List<SessionData> loadAll() {
+        return coldStore.loadAll();
+    }
+
+    @Override
+    public void loadAll(int pageSize, Consumer<List<SessionData>> pageConsumer) {
+        coldStore.loadAll(pageSize, pageConsumer);
+    }
+
+    @Override
+    public void loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        coldStore.loadAllRecords(pageSize, pageConsumer);
+    }
+
+    @Override
+    public void loadRecordsChangedSince(long sinceMillis, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        coldStore.loadRecordsChangedSince(sinceMillis, pageSize, pageConsumer);
+    }
+
+    @Override
+    public boolean supportsKeyedLoad() {
+        return coldStore.supportsKeyedLoad();
+    }
+
+    @Override
+    public boolean supportsChangesSince() {
+        return coldStore.supportsChangesSince();
+    }
+
+    @Override
+    public void deleteSession(String name) {
+        dropDemotedSessions(name::equals);
+        coldStore.deleteSession(name);
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    private static String key(String name, int deviceId) {
+        return name + KEY_SEPARATOR + deviceId;
+    }
+}
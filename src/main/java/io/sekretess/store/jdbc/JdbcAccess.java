@@ -0,0 +1,121 @@
+package io.sekretess.store.jdbc;
+
+import io.sekretess.exception.StoreException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Base64;
+
+/**
+ * Connection handling and record column access shared by the JDBC stores.
+ */
+final class JdbcAccess {
+
+    private static final int UPSERT_ATTEMPTS = 3;
+
+    private final DataSource dataSource;
+    private final boolean binaryColumns;
+
+    JdbcAccess(DataSource dataSource, boolean binaryColumns) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is required");
+        }
+        this.dataSource = dataSource;
+        this.binaryColumns = binaryColumns;
+    }
+
+    <T> T withConnection(String action, SqlCallback<T> callback) {
+        try (Connection connection = dataSource.getConnection()) {
+            return callback.apply(connection);
+        } catch (SQLException e) {
+            throw new StoreException("Failed to " + action, e);
+        }
+    }
+
+    /**
+     * Runs {@code callback} in one transaction, which is also what PostgreSQL needs to stream a result set
+     * with a fetch size instead of reading it whole.
+     */
+    <T> T inTransaction(String action, SqlCallback<T> callback) {
+        return withConnection(action, connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                T result = callback.apply(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    /**
+     * Runs {@code upsert} like {@link #withConnection}, or like {@link #inTransaction} if {@code transactional}, and
+     * again, up to {@value #UPSERT_ATTEMPTS} times in all, when {@code dialect} reports that it lost a race with a
+     * concurrent write of the same key.
+     */
+    <T> T upsert(SqlDialect dialect, String action, boolean transactional, SqlCallback<T> upsert) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactional ? inTransaction(action, upsert) : withConnection(action, upsert);
+            } catch (StoreException e) {
+                if (attempt == UPSERT_ATTEMPTS || !(e.getCause() instanceof SQLException cause) || !dialect.isUpsertConflict(cause)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    void execute(String action, String... statements) {
+        withConnection(action, connection -> {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : statements) {
+                    statement.execute(sql);
+                }
+            }
+            return null;
+        });
+    }
+
+    void setRecord(PreparedStatement statement, int index, byte[] record) throws SQLException {
+        if (record == null) {
+            statement.setNull(index, binaryColumns ? Types.VARBINARY : Types.VARCHAR);
+        } else if (binaryColumns) {
+            statement.setBytes(index, record);
+        } else {
+            statement.setString(index, Base64.getEncoder().encodeToString(record));
+        }
+    }
+
+    byte[] getRecord(ResultSet resultSet, int index) throws SQLException {
+        if (binaryColumns) {
+            return resultSet.getBytes(index);
+        }
+        String value = resultSet.getString(index);
+        return value == null ? null : Base64.getDecoder().decode(value);
+    }
+
+    static boolean isConstraintViolation(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+    }
+
+    @FunctionalInterface
+    interface SqlCallback<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+}
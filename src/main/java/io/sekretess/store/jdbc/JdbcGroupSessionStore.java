@@ -0,0 +1,126 @@
+package io.sekretess.store.jdbc;
+
+import io.sekretess.model.GroupSessionData;
+import io.sekretess.model.GroupSessionRecordData;
+import io.sekretess.store.GroupSessionStore;
+import io.sekretess.store.jdbc.SqlDialect.Column;
+import io.sekretess.store.jdbc.SqlDialect.Update;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Reference {@link GroupSessionStore} on a JDBC {@link DataSource}. Saving the sender key keeps the stored
+ * distribution message, and saving a distribution message clears the sender key; both are single upserts.
+ */
+public class JdbcGroupSessionStore implements GroupSessionStore {
+
+    private final JdbcStoreConfig config;
+    private final JdbcAccess jdbc;
+    private final String table;
+    private final String saveSessionSql;
+    private final String saveDistributionMessageSql;
+
+    public JdbcGroupSessionStore(DataSource dataSource, JdbcStoreConfig config) {
+        this.config = config;
+        this.jdbc = new JdbcAccess(dataSource, config.binaryColumns());
+        this.table = config.table("group_session");
+        String recordType = config.dialect().recordType(config.binaryColumns());
+        List<Column> columns = List.of(
+                new Column("name", "VARCHAR(255)"),
+                new Column("device_id", "INTEGER"),
+                new Column("distribution_id", "VARCHAR(255)"),
+                new Column("session_record", recordType),
+                new Column("distribution_message", recordType));
+        this.saveSessionSql = config.dialect().upsert(table, columns, 1, List.of(
+                Update.value("device_id"), Update.value("distribution_id"), Update.value("session_record")));
+        this.saveDistributionMessageSql = config.dialect().upsert(table, columns, 1, List.of(
+                Update.value("device_id"), Update.value("distribution_id"), Update.clear("session_record"),
+                Update.value("distribution_message")));
+    }
+
+    /**
+     * Creates the group session table if it does not exist yet.
+     */
+    public void createSchema() {
+        String recordType = config.dialect().recordType(config.binaryColumns());
+        jdbc.execute("create table " + table, "CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "name VARCHAR(255) NOT NULL PRIMARY KEY, "
+                + "device_id INTEGER NOT NULL, "
+                + "distribution_id VARCHAR(255), "
+                + "session_record " + recordType + ", "
+                + "distribution_message " + recordType + ")");
+    }
+
+    @Override
+    public void saveGroupSession(String name, int deviceId, String distributionId, String sessionRecord) {
+        saveGroupSessionRecord(name, deviceId, distributionId, decode(sessionRecord));
+    }
+
+    @Override
+    public void saveSendDistributionMessage(String name, int deviceId, String distributionId, String businessDistributionMessage) {
+        saveSendDistributionMessageRecord(name, deviceId, distributionId, decode(businessDistributionMessage));
+    }
+
+    @Override
+    public GroupSessionData loadGroupSession(String name) {
+        GroupSessionRecordData record = loadGroupSessionRecord(name);
+        if (record == null) {
+            return null;
+        }
+        return new GroupSessionData(record.name(), record.deviceId(), record.distributionId(),
+                encode(record.sessionRecord()), encode(record.businessDistributionMessage()));
+    }
+
+    @Override
+    public void saveGroupSessionRecord(String name, int deviceId, String distributionId, byte[] sessionRecord) {
+        upsert(saveSessionSql, name, deviceId, distributionId, sessionRecord, null);
+    }
+
+    @Override
+    public void saveSendDistributionMessageRecord(String name, int deviceId, String distributionId, byte[] businessDistributionMessage) {
+        upsert(saveDistributionMessageSql, name, deviceId, distributionId, null, businessDistributionMessage);
+    }
+
+    @Override
+    public GroupSessionRecordData loadGroupSessionRecord(String name) {
+        return jdbc.withConnection("load group session of " + name, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT device_id, distribution_id, "
+                    + "session_record, distribution_message FROM " + table + " WHERE name = ?")) {
+                statement.setString(1, name);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return null;
+                    }
+                    return new GroupSessionRecordData(name, resultSet.getInt(1), resultSet.getString(2),
+                            jdbc.getRecord(resultSet, 3), jdbc.getRecord(resultSet, 4));
+                }
+            }
+        });
+    }
+
+    private void upsert(String sql, String name, int deviceId, String distributionId, byte[] sessionRecord,
+                        byte[] distributionMessage) {
+        jdbc.upsert(config.dialect(), "save group session of " + name, false, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, name);
+                statement.setInt(2, deviceId);
+                statement.setString(3, distributionId);
+                jdbc.setRecord(statement, 4, sessionRecord);
+                jdbc.setRecord(statement, 5, distributionMessage);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private static String encode(byte[] value) {
+        return value == null ? null : Base64.getEncoder().encodeToString(value);
+    }
+
+    private static byte[] decode(String value) {
+        return value == null ? null : Base64.getDecoder().decode(value);
+    }
+}
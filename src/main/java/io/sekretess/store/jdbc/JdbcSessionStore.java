@@ -0,0 +1,271 @@
+package io.sekretess.store.jdbc;
+
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.model.VersionedSessionRecordData;
+import io.sekretess.store.SessionStore;
+import io.sekretess.store.jdbc.SqlDialect.Column;
+import io.sekretess.store.jdbc.SqlDialect.Update;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reference {@link SessionStore} on a JDBC {@link DataSource}. Batched saves are one transaction of prepared
+ * upsert batches, {@code loadAll} streams rows with the configured fetch size, and every row carries a version
+ * so that the store can be shared by several SDK instances with optimistic locking. Rows also record when they
+ * were last saved, which serves {@link #loadRecordsChangedSince} from an index.
+ * <p>
+ * Drivers send a batch in one round trip only when asked to: use {@code reWriteBatchedInserts=true} with
+ * PostgreSQL and {@code rewriteBatchedStatements=true} with MySQL, where streaming also needs
+ * {@code useCursorFetch=true}.
+ */
+public class JdbcSessionStore implements SessionStore {
+
+    private final JdbcStoreConfig config;
+    private final JdbcAccess jdbc;
+    private final String table;
+    private final String upsertSql;
+    private final String insertSql;
+
+    public JdbcSessionStore(DataSource dataSource, JdbcStoreConfig config) {
+        this.config = config;
+        this.jdbc = new JdbcAccess(dataSource, config.binaryColumns());
+        this.table = config.table("session");
+        List<Column> columns = List.of(
+                new Column("name", "VARCHAR(255)"),
+                new Column("device_id", "INTEGER"),
+                new Column("session_record", config.dialect().recordType(config.binaryColumns())),
+                new Column("version", "BIGINT"),
+                new Column("updated_at", "BIGINT"));
+        this.upsertSql = config.dialect().upsert(table, columns, 2,
+                List.of(Update.value("session_record"), Update.increment("version"), Update.value("updated_at")));
+        this.insertSql = SqlDialect.insert(table, columns);
+    }
+
+    /**
+     * Creates the session table and its index on the save time if they do not exist yet.
+     */
+    public void createSchema() {
+        jdbc.execute("create table " + table, "CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "name VARCHAR(255) NOT NULL, "
+                + "device_id INTEGER NOT NULL, "
+                + "session_record " + config.dialect().recordType(config.binaryColumns()) + " NOT NULL, "
+                + "version BIGINT NOT NULL, "
+                + "updated_at BIGINT NOT NULL, "
+                + "PRIMARY KEY (name, device_id)"
+                + config.dialect().inlineIndex(table, "updated_at") + ")");
+        String createIndex = config.dialect().createIndex(table, "updated_at");
+        if (createIndex != null) {
+            jdbc.execute("create index on " + table, createIndex);
+        }
+    }
+
+    @Override
+    public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+        saveSessionRecord(name, deviceId, Base64.getDecoder().decode(base64EncodedRecord));
+    }
+
+    @Override
+    public void saveSessions(List<SessionData> sessions) {
+        saveSessionRecords(sessions.stream().map(SessionStore::toSessionRecordData).toList());
+    }
+
+    @Override
+    public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+        jdbc.upsert(config.dialect(), "save session of " + name, false, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(upsertSql)) {
+                bindUpsert(statement, name, deviceId, sessionRecord);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Saves all sessions in one transaction. Duplicates keep the last entry, and rows are written in key
+     * order so that concurrent batches lock them in the same order.
+     */
+    @Override
+    public void saveSessionRecords(List<SessionRecordData> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        Map<String, SessionRecordData> latest = new LinkedHashMap<>();
+        for (SessionRecordData session : sessions) {
+            latest.put(session.name() + '\u0000' + session.deviceId(), session);
+        }
+        List<SessionRecordData> ordered = new ArrayList<>(latest.values());
+        ordered.sort(Comparator.comparing(SessionRecordData::name).thenComparingInt(SessionRecordData::deviceId));
+
+        jdbc.upsert(config.dialect(), "save " + ordered.size() + " sessions", true, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(upsertSql)) {
+                int batched = 0;
+                for (SessionRecordData session : ordered) {
+                    bindUpsert(statement, session.name(), session.deviceId(), session.sessionRecord());
+                    statement.addBatch();
+                    if (++batched == config.batchSize()) {
+                        statement.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    statement.executeBatch();
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<SessionData> loadAll() {
+        List<SessionData> sessions = new ArrayList<>();
+        loadAllRecords(config.fetchSize(), page -> page.forEach(session -> sessions.add(SessionStore.toSessionData(session))));
+        return sessions;
+    }
+
+    @Override
+    public void loadAll(int pageSize, Consumer<List<SessionData>> pageConsumer) {
+        loadAllRecords(pageSize, page -> pageConsumer.accept(page.stream().map(SessionStore::toSessionData).toList()));
+    }
+
+    @Override
+    public SessionData loadSession(String name, int deviceId) {
+        return SessionStore.toSessionData(loadSessionRecord(name, deviceId));
+    }
+
+    @Override
+    public SessionRecordData loadSessionRecord(String name, int deviceId) {
+        VersionedSessionRecordData session = loadVersionedSessionRecord(name, deviceId);
+        return session == null ? null : new SessionRecordData(name, deviceId, session.sessionRecord());
+    }
+
+    @Override
+    public void loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        loadRecords("load sessions", "SELECT name, device_id, session_record FROM " + table, null, pageSize, pageConsumer);
+    }
+
+    @Override
+    public void loadRecordsChangedSince(long sinceMillis, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        loadRecords("load sessions changed since " + sinceMillis,
+                "SELECT name, device_id, session_record FROM " + table + " WHERE updated_at >= ?", sinceMillis, pageSize, pageConsumer);
+    }
+
+    @Override
+    public boolean supportsKeyedLoad() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsChangesSince() {
+        return true;
+    }
+
+    private void loadRecords(String operation, String sql, Long sinceMillis, int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        jdbc.inTransaction(operation, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(config.fetchSize());
+                if (sinceMillis != null) {
+                    statement.setLong(1, sinceMillis);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    List<SessionRecordData> page = new ArrayList<>(Math.min(pageSize, config.fetchSize()));
+                    while (resultSet.next()) {
+                        page.add(new SessionRecordData(resultSet.getString(1), resultSet.getInt(2), jdbc.getRecord(resultSet, 3)));
+                        if (page.size() == pageSize) {
+                            pageConsumer.accept(page);
+                            page = new ArrayList<>(Math.min(pageSize, config.fetchSize()));
+                        }
+                    }
+                    if (!page.isEmpty()) {
+                        pageConsumer.accept(page);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteSession(String name) {
+        jdbc.withConnection("delete sessions of " + name, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE name = ?")) {
+                statement.setString(1, name);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public boolean supportsVersioning() {
+        return true;
+    }
+
+    @Override
+    public VersionedSessionRecordData loadVersionedSessionRecord(String name, int deviceId) {
+        return jdbc.withConnection("load session of " + name, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT session_record, version FROM " + table + " WHERE name = ? AND device_id = ?")) {
+                statement.setString(1, name);
+                statement.setInt(2, deviceId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return null;
+                    }
+                    return new VersionedSessionRecordData(name, deviceId, jdbc.getRecord(resultSet, 1), resultSet.getLong(2));
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean compareAndSetSessionRecord(String name, int deviceId, byte[] sessionRecord, long expectedVersion) {
+        return jdbc.withConnection("save session of " + name, connection -> {
+            if (expectedVersion == 0) {
+                try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+                    bindUpsert(statement, name, deviceId, sessionRecord);
+                    return statement.executeUpdate() == 1;
+                } catch (SQLException e) {
+                    if (JdbcAccess.isConstraintViolation(e)) {
+                        return false;
+                    }
+                    throw e;
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE " + table
+                    + " SET session_record = ?, version = version + 1, updated_at = ? WHERE name = ? AND device_id = ? AND version = ?")) {
+                jdbc.setRecord(statement, 1, sessionRecord);
+                statement.setLong(2, System.currentTimeMillis());
+                statement.setString(3, name);
+                statement.setInt(4, deviceId);
+                statement.setLong(5, expectedVersion);
+                return statement.executeUpdate() == 1;
+            } catch (SQLException e) {
+                // A row another transaction changed meanwhile no longer has the expected version either.
+                if (config.dialect().isUpsertConflict(e)) {
+                    return false;
+                }
+                throw e;
+            }
+        });
+    }
+
+    private void bindUpsert(PreparedStatement statement, String name, int deviceId, byte[] sessionRecord) throws SQLException {
+        statement.setString(1, name);
+        statement.setInt(2, deviceId);
+        jdbc.setRecord(statement, 3, sessionRecord);
+        statement.setLong(4, 1);
+        statement.setLong(5, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,37 @@
+package io.sekretess.store.jdbc;
+
+import java.util.regex.Pattern;
+
+/**
+ * Settings of the JDBC stores. Records are kept in binary columns ({@code BYTEA}, {@code BLOB}) unless
+ * {@code binaryColumns} is off, in which case they are stored as Base64 text. Batched saves are sent in
+ * statement batches of {@code batchSize}, and {@code loadAll} reads rows with the driver fetch size
+ * {@code fetchSize}. Tables are named {@code <tablePrefix>session} and {@code <tablePrefix>group_session}.
+ */
+public record JdbcStoreConfig(SqlDialect dialect, String tablePrefix, boolean binaryColumns, int batchSize, int fetchSize) {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    public JdbcStoreConfig {
+        if (dialect == null) {
+            throw new IllegalArgumentException("dialect is required");
+        }
+        if (tablePrefix == null || !IDENTIFIER.matcher(tablePrefix).matches()) {
+            throw new IllegalArgumentException("tablePrefix must be a plain SQL identifier: " + tablePrefix);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetchSize must be positive: " + fetchSize);
+        }
+    }
+
+    public static JdbcStoreConfig defaults(SqlDialect dialect) {
+        return new JdbcStoreConfig(dialect, "sekretess_", true, 500, 1_000);
+    }
+
+    String table(String name) {
+        return tablePrefix + name;
+    }
+}
@@ -0,0 +1,143 @@
+package io.sekretess.store.jdbc;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * SQL differences between the databases supported by the JDBC stores: column types and the single-statement
+ * upsert. H2 uses the standard {@code MERGE}, PostgreSQL {@code ON CONFLICT} and MySQL {@code ON DUPLICATE KEY}.
+ * Only the latter two are atomic: H2's {@code MERGE} can lose a race with a concurrent write of the same key, which
+ * {@link #isUpsertConflict} reports so that the upsert is run again.
+ */
+public enum SqlDialect {
+    H2("VARBINARY", "VARCHAR") {
+        @Override
+        String upsert(String table, List<Column> columns, int keyColumns, List<Update> updates) {
+            String source = columns.stream().map(column -> "CAST(? AS " + column.type() + ")").collect(Collectors.joining(", "));
+            String on = columns.subList(0, keyColumns).stream()
+                    .map(column -> "t." + column.name() + " = s." + column.name())
+                    .collect(Collectors.joining(" AND "));
+            return "MERGE INTO " + table + " t USING (VALUES (" + source + ")) s(" + names(columns, "") + ") ON " + on
+                    + " WHEN MATCHED THEN UPDATE SET " + assignments(updates, "s.", "t.")
+                    + " WHEN NOT MATCHED THEN INSERT (" + names(columns, "") + ") VALUES (" + names(columns, "s.") + ")";
+        }
+
+        @Override
+        boolean isUpsertConflict(SQLException e) {
+            // A duplicate key from an insert racing another one, or H2's CONCURRENT_UPDATE_1 (90131) from an update
+            // of a row another transaction changed.
+            return JdbcAccess.isConstraintViolation(e) || "90131".equals(e.getSQLState());
+        }
+    },
+    POSTGRESQL("BYTEA", "TEXT") {
+        @Override
+        String upsert(String table, List<Column> columns, int keyColumns, List<Update> updates) {
+            return insert(table, columns) + " ON CONFLICT (" + names(columns.subList(0, keyColumns), "") + ") DO UPDATE SET "
+                    + assignments(updates, "EXCLUDED.", table + ".");
+        }
+    },
+    MYSQL("MEDIUMBLOB", "MEDIUMTEXT") {
+        @Override
+        String upsert(String table, List<Column> columns, int keyColumns, List<Update> updates) {
+            return insert(table, columns) + " ON DUPLICATE KEY UPDATE " + updates.stream()
+                    .map(update -> update.column() + " = " + switch (update.kind()) {
+                        case VALUE -> "VALUES(" + update.column() + ")";
+                        case INCREMENT -> update.column() + " + 1";
+                        case CLEAR -> "NULL";
+                    })
+                    .collect(Collectors.joining(", "));
+        }
+
+        @Override
+        String inlineIndex(String table, String column) {
+            return ", INDEX " + table + "_" + column + " (" + column + ")";
+        }
+
+        @Override
+        String createIndex(String table, String column) {
+            return null;
+        }
+    };
+
+    private final String binaryType;
+    private final String textType;
+
+    SqlDialect(String binaryType, String textType) {
+        this.binaryType = binaryType;
+        this.textType = textType;
+    }
+
+    String recordType(boolean binaryColumns) {
+        return binaryColumns ? binaryType : textType;
+    }
+
+    /**
+     * Inserts a row with every column bound in order, or applies {@code updates} to the row with the same first
+     * {@code keyColumns} columns.
+     */
+    abstract String upsert(String table, List<Column> columns, int keyColumns, List<Update> updates);
+
+    /**
+     * Returns whether {@code e} means that an {@link #upsert} lost a race with a concurrent write of the same key, so
+     * that running it again sees that write and succeeds.
+     */
+    boolean isUpsertConflict(SQLException e) {
+        return false;
+    }
+
+    /**
+     * Index definition to append to the column list of {@code CREATE TABLE}, for databases without
+     * {@code CREATE INDEX IF NOT EXISTS}.
+     */
+    String inlineIndex(String table, String column) {
+        return "";
+    }
+
+    /**
+     * Statement that creates an index on {@code column} unless it exists, or {@code null} if the index is declared
+     * with {@link #inlineIndex}.
+     */
+    String createIndex(String table, String column) {
+        return "CREATE INDEX IF NOT EXISTS " + table + "_" + column + " ON " + table + " (" + column + ")";
+    }
+
+    static String insert(String table, List<Column> columns) {
+        return "INSERT INTO " + table + " (" + names(columns, "") + ") VALUES ("
+                + columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+    }
+
+    private static String names(List<Column> columns, String prefix) {
+        return columns.stream().map(column -> prefix + column.name()).collect(Collectors.joining(", "));
+    }
+
+    private static String assignments(List<Update> updates, String newValue, String currentValue) {
+        return updates.stream()
+                .map(update -> update.column() + " = " + switch (update.kind()) {
+                    case VALUE -> newValue + update.column();
+                    case INCREMENT -> currentValue + update.column() + " + 1";
+                    case CLEAR -> "NULL";
+                })
+                .collect(Collectors.joining(", "));
+    }
+
+    record Column(String name, String type) {
+    }
+
+    record Update(String column, Kind kind) {
+
+        enum Kind {VALUE, INCREMENT, CLEAR}
+
+        static Update value(String column) {
+            return new Update(column, Kind.VALUE);
+        }
+
+        static Update increment(String column) {
+            return new Update(column, Kind.INCREMENT);
+        }
+
+        static Update clear(String column) {
+            return new Update(column, Kind.CLEAR);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.sekretess.store.migration;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of a {@link StoreMigration}. Sessions are read in pages of {@code pageSize} and written by
+ * {@code parallelism} threads, with at most two pages per thread in memory. Progress is logged, and written to
+ * {@code checkpointFile} if set, every {@code checkpointEveryPages} pages. With {@code verifyWrites} every written
+ * session is read back from the destination and compared.
+ */
+public record MigrationConfig(int pageSize, int parallelism, Path checkpointFile, int checkpointEveryPages, boolean verifyWrites) {
+
+    public MigrationConfig {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (checkpointEveryPages <= 0) {
+            throw new IllegalArgumentException("checkpointEveryPages must be positive: " + checkpointEveryPages);
+        }
+    }
+
+    public static MigrationConfig defaults() {
+        return new MigrationConfig(1_000, Runtime.getRuntime().availableProcessors(), null, 10, false);
+    }
+
+    public MigrationConfig withCheckpointFile(Path checkpointFile) {
+        return new MigrationConfig(pageSize, parallelism, checkpointFile, checkpointEveryPages, verifyWrites);
+    }
+
+    public MigrationConfig withVerifyWrites(boolean verifyWrites) {
+        return new MigrationConfig(pageSize, parallelism, checkpointFile, checkpointEveryPages, verifyWrites);
+    }
+}
@@ -0,0 +1,15 @@
+package io.sekretess.store.migration;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a session migration: sessions read from the source, written to the destination, skipped because
+ * an earlier run had already written them, and not copied because their record does not decode.
+ */
+public record MigrationReport(long sessionsRead, long sessionsWritten, long sessionsResumed, long invalidSessions, Duration elapsed) {
+
+    public double sessionsPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : sessionsWritten * 1e9 / nanos;
+    }
+}
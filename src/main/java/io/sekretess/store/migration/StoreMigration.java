@@ -0,0 +1,377 @@
+package io.sekretess.store.migration;
+
+import io.sekretess.exception.StoreException;
+import io.sekretess.model.GroupSessionRecordData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.store.GroupSessionStore;
+import io.sekretess.store.SessionStore;
+import org.signal.libsignal.protocol.InvalidKeyException;
+import org.signal.libsignal.protocol.InvalidMessageException;
+import org.signal.libsignal.protocol.InvalidSessionException;
+import org.signal.libsignal.protocol.InvalidVersionException;
+import org.signal.libsignal.protocol.LegacyMessageException;
+import org.signal.libsignal.protocol.groups.state.SenderKeyRecord;
+import org.signal.libsignal.protocol.message.SenderKeyDistributionMessage;
+import org.signal.libsignal.protocol.state.SessionRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copies sessions and the business sender keys from one store implementation to another without loading them
+ * all into memory. Sessions are streamed from the source with {@link SessionStore#loadAllRecords}, decoded to
+ * make sure they are valid, and written to the destination in batches by several threads; the destination
+ * must allow concurrent {@link SessionStore#saveSessionRecords} calls. Writes are plain saves, so running a
+ * migration again is harmless.
+ * <p>
+ * With a checkpoint file, a migration that failed or was stopped resumes after the last sessions known to be
+ * written, and the file is deleted once all sessions are migrated. Resuming relies on the source returning its
+ * sessions in the same order as before; a fingerprint of the skipped sessions is checked, and if the order
+ * changed all sessions are migrated again.
+ */
+public final class StoreMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(StoreMigration.class);
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final MigrationConfig config;
+
+    public StoreMigration(MigrationConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Copies all sessions of {@code source} to {@code destination}.
+     */
+    public MigrationReport migrateSessions(SessionStore source, SessionStore destination) {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        Checkpoint checkpoint = readCheckpoint();
+        if (checkpoint.sessions() > 0) {
+            logger.info("Resuming session migration after {} sessions", checkpoint.sessions());
+        }
+        try {
+            new Pass(destination, checkpoint, counters, start).run(source);
+        } catch (SourceOrderChangedException e) {
+            logger.warn("Sessions are returned in another order than when the checkpoint was written, migrating all sessions again");
+            counters = new Counters();
+            new Pass(destination, Checkpoint.START, counters, start).run(source);
+        }
+        deleteCheckpoint();
+        MigrationReport report = counters.report(start);
+        logger.info("Migrated {} sessions in {} ms, {} sessions/s, {} resumed, {} invalid", report.sessionsWritten(),
+                report.elapsed().toMillis(), Math.round(report.sessionsPerSecond()), report.sessionsResumed(), report.invalidSessions());
+        return report;
+    }
+
+    /**
+     * Copies the sender keys and distribution messages of the businesses {@code names}. Records that do not decode
+     * are not copied.
+     *
+     * @return the number of businesses copied
+     */
+    public int migrateGroupSessions(GroupSessionStore source, GroupSessionStore destination, Collection<String> names) {
+        int migrated = 0;
+        for (String name : names) {
+            GroupSessionRecordData groupSession = source.loadGroupSessionRecord(name);
+            if (groupSession == null) {
+                continue;
+            }
+            try {
+                if (groupSession.sessionRecord() != null) {
+                    new SenderKeyRecord(groupSession.sessionRecord());
+                }
+                if (groupSession.businessDistributionMessage() != null) {
+                    new SenderKeyDistributionMessage(groupSession.businessDistributionMessage());
+                }
+            } catch (InvalidMessageException | InvalidKeyException | LegacyMessageException | InvalidVersionException | IllegalArgumentException e) {
+                logger.warn("Skipping invalid group session of {}: {}", name, e.getMessage());
+                continue;
+            }
+            // Saving a distribution message starts a new sender key, so it goes first.
+            if (groupSession.businessDistributionMessage() != null) {
+                destination.saveSendDistributionMessageRecord(name, groupSession.deviceId(), groupSession.distributionId(),
+                        groupSession.businessDistributionMessage());
+            }
+            if (groupSession.sessionRecord() != null) {
+                destination.saveGroupSessionRecord(name, groupSession.deviceId(), groupSession.distributionId(), groupSession.sessionRecord());
+            }
+            migrated++;
+        }
+        logger.info("Migrated {} group sessions", migrated);
+        return migrated;
+    }
+
+    private Checkpoint readCheckpoint() {
+        if (config.checkpointFile() == null) {
+            return Checkpoint.START;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(config.checkpointFile())) {
+            properties.load(reader);
+            return new Checkpoint(Long.parseLong(properties.getProperty("sessions")), Long.parseLong(properties.getProperty("fingerprint")));
+        } catch (NoSuchFileException e) {
+            return Checkpoint.START;
+        } catch (IOException | NumberFormatException e) {
+            throw new StoreException("Failed to read migration checkpoint " + config.checkpointFile(), e);
+        }
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        if (config.checkpointFile() == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("sessions", Long.toString(checkpoint.sessions()));
+        properties.setProperty("fingerprint", Long.toString(checkpoint.fingerprint()));
+        Path file = config.checkpointFile();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporary)) {
+                properties.store(writer, "sekretess session migration");
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new StoreException("Failed to write migration checkpoint " + file, e);
+        }
+    }
+
+    private void deleteCheckpoint() {
+        if (config.checkpointFile() == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(config.checkpointFile());
+        } catch (IOException e) {
+            throw new StoreException("Failed to delete migration checkpoint " + config.checkpointFile(), e);
+        }
+    }
+
+    private static long fingerprint(long fingerprint, SessionRecordData session) {
+        fingerprint = (fingerprint ^ session.name().hashCode()) * FNV_PRIME;
+        return (fingerprint ^ session.deviceId()) * FNV_PRIME;
+    }
+
+    /**
+     * Number of sessions at the start of the source stream that were written, and a fingerprint of their keys.
+     */
+    private record Checkpoint(long sessions, long fingerprint) {
+        static final Checkpoint START = new Checkpoint(0, 0xcbf29ce484222325L);
+    }
+
+    private static final class Counters {
+        final LongAdder read = new LongAdder();
+        final LongAdder written = new LongAdder();
+        final LongAdder resumed = new LongAdder();
+        final LongAdder invalid = new LongAdder();
+
+        MigrationReport report(long startNanos) {
+            return new MigrationReport(read.sum(), written.sum(), resumed.sum(), invalid.sum(),
+                    Duration.ofNanos(System.nanoTime() - startNanos));
+        }
+    }
+
+    private static final class SourceOrderChangedException extends RuntimeException {
+        SourceOrderChangedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * One pass over the source. The reading thread skips the sessions covered by the checkpoint and hands pages
+     * to the writers; pages may finish out of order, so the checkpoint only advances over pages that finished
+     * together with all pages before them.
+     */
+    private final class Pass {
+        private final SessionStore destination;
+        private final Checkpoint resumeFrom;
+        private final Counters counters;
+        private final long startNanos;
+        private final ExecutorService executor;
+        private final Semaphore pagesInMemory;
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private final TreeMap<Long, Checkpoint> finishedPages = new TreeMap<>();
+        private long position;
+        private long fingerprint;
+        private long nextPage;
+        private long nextPageToCommit;
+        private int pagesSinceCheckpoint;
+        private Checkpoint lastCommitted;
+
+        private Pass(SessionStore destination, Checkpoint resumeFrom, Counters counters, long startNanos) {
+            this.destination = destination;
+            this.resumeFrom = resumeFrom;
+            this.counters = counters;
+            this.startNanos = startNanos;
+            this.fingerprint = Checkpoint.START.fingerprint();
+            this.executor = Executors.newFixedThreadPool(config.parallelism(), runnable -> {
+                Thread thread = new Thread(runnable, "sekretess-migration");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.pagesInMemory = new Semaphore(2 * config.parallelism());
+        }
+
+        private void run(SessionStore source) {
+            try {
+                source.loadAllRecords(config.pageSize(), this::submit);
+                if (position < resumeFrom.sessions()) {
+                    throw new SourceOrderChangedException();
+                }
+            } finally {
+                executor.shutdown();
+                awaitWriters();
+                if (failure.get() != null) {
+                    checkpointAfterFailure();
+                }
+            }
+            RuntimeException failed = failure.get();
+            if (failed != null) {
+                throw failed;
+            }
+        }
+
+        /**
+         * Records the sessions written before a failure, so that a new run resumes after them.
+         */
+        private synchronized void checkpointAfterFailure() {
+            if (lastCommitted != null && pagesSinceCheckpoint > 0) {
+                writeCheckpoint(lastCommitted);
+            }
+        }
+
+        private void submit(List<SessionRecordData> page) {
+            RuntimeException failed = failure.get();
+            if (failed != null) {
+                // Stops the source stream; the error is rethrown by run.
+                throw failed;
+            }
+            List<SessionRecordData> sessions = new ArrayList<>(page.size());
+            for (SessionRecordData session : page) {
+                position++;
+                fingerprint = fingerprint(fingerprint, session);
+                if (position <= resumeFrom.sessions()) {
+                    counters.resumed.increment();
+                    if (position == resumeFrom.sessions() && fingerprint != resumeFrom.fingerprint()) {
+                        throw new SourceOrderChangedException();
+                    }
+                } else {
+                    sessions.add(session);
+                }
+            }
+            counters.read.add(page.size());
+            if (sessions.isEmpty()) {
+                return;
+            }
+            long pageNumber = nextPage++;
+            Checkpoint end = new Checkpoint(position, fingerprint);
+            try {
+                pagesInMemory.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StoreException("Interrupted while migrating sessions", e);
+            }
+            executor.execute(() -> {
+                try {
+                    write(sessions);
+                    finished(pageNumber, end);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pagesInMemory.release();
+                }
+            });
+        }
+
+        private void write(List<SessionRecordData> page) {
+            List<SessionRecordData> valid = new ArrayList<>(page.size());
+            for (SessionRecordData session : page) {
+                if (decodes(session)) {
+                    valid.add(session);
+                } else {
+                    counters.invalid.increment();
+                }
+            }
+            if (valid.isEmpty()) {
+                return;
+            }
+            destination.saveSessionRecords(valid);
+            if (config.verifyWrites()) {
+                for (SessionRecordData session : valid) {
+                    SessionRecordData stored = destination.loadSessionRecord(session.name(), session.deviceId());
+                    if (stored == null || !Arrays.equals(stored.sessionRecord(), session.sessionRecord())) {
+                        throw new StoreException("Session of " + session.name() + " differs in the destination after migration", null);
+                    }
+                }
+            }
+            counters.written.add(valid.size());
+        }
+
+        private boolean decodes(SessionRecordData session) {
+            if (session.sessionRecord() == null) {
+                logger.warn("Skipping empty session of {}", session.name());
+                return false;
+            }
+            try {
+                new SessionRecord(session.sessionRecord());
+                return true;
+            } catch (InvalidMessageException | InvalidSessionException | IllegalArgumentException e) {
+                logger.warn("Skipping invalid session of {}: {}", session.name(), e.getMessage());
+                return false;
+            }
+        }
+
+        private synchronized void finished(long pageNumber, Checkpoint end) {
+            finishedPages.put(pageNumber, end);
+            Checkpoint committed = null;
+            while (finishedPages.containsKey(nextPageToCommit)) {
+                committed = finishedPages.remove(nextPageToCommit++);
+                lastCommitted = committed;
+                pagesSinceCheckpoint++;
+            }
+            if (committed != null && pagesSinceCheckpoint >= config.checkpointEveryPages()) {
+                pagesSinceCheckpoint = 0;
+                writeCheckpoint(committed);
+                MigrationReport progress = counters.report(startNanos);
+                logger.info("Migrated {} sessions, {} sessions/s", progress.sessionsWritten(), Math.round(progress.sessionsPerSecond()));
+            }
+        }
+
+        private void awaitWriters() {
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.info("Waiting for session migration writers to finish");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                throw new StoreException("Interrupted while migrating sessions", e);
+            }
+        }
+    }
+}
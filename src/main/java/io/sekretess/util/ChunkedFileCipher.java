@@ -0,0 +1,60 @@
+package io.sekretess.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * The segmented AES-256-GCM file format: the plaintext is split into chunks of a fixed size, only the last one may
+ * be shorter, and every chunk is sealed on its own and followed by its 16-byte tag. The nonce of chunk {@code i} is
+ * the 8-byte random nonce prefix followed by {@code i} as a big-endian 32-bit integer, and the associated data is
+ * {@code i} as a big-endian 64-bit integer followed by {@code 1} for the last chunk and {@code 0} for all others,
+ * so chunks cannot be reordered, and the ciphertext cannot be truncated at a chunk boundary. An empty file is one
+ * empty last chunk.
+ */
+final class ChunkedFileCipher {
+
+    static final String ALGORITHM = "AES-256-GCM-CHUNKED";
+    static final int NONCE_PREFIX_SIZE_BYTES = 8;
+    static final int TAG_SIZE_BYTES = 16;
+    private static final long MAX_CHUNKS = 1L << 32;
+
+    private ChunkedFileCipher() {
+    }
+
+    static long chunkCount(long plaintextSize, int chunkSize) {
+        long chunks = Math.max(1, (plaintextSize + chunkSize - 1) / chunkSize);
+        if (chunks > MAX_CHUNKS) {
+            throw new IllegalArgumentException("File of " + plaintextSize + " bytes needs more than " + MAX_CHUNKS + " chunks of " + chunkSize + " bytes!");
+        }
+        return chunks;
+    }
+
+    static long ciphertextSize(long plaintextSize, int chunkSize) {
+        return plaintextSize + chunkCount(plaintextSize, chunkSize) * TAG_SIZE_BYTES;
+    }
+
+    static byte[] seal(byte[] key, byte[] noncePrefix, long index, boolean last, ByteBuffer plaintext) throws GeneralSecurityException {
+        Cipher cipher = init(Cipher.ENCRYPT_MODE, key, noncePrefix, index, last);
+        byte[] ciphertext = new byte[cipher.getOutputSize(plaintext.remaining())];
+        cipher.doFinal(plaintext, ByteBuffer.wrap(ciphertext));
+        return ciphertext;
+    }
+
+    static byte[] open(byte[] key, byte[] noncePrefix, long index, boolean last, byte[] ciphertext) throws GeneralSecurityException {
+        return init(Cipher.DECRYPT_MODE, key, noncePrefix, index, last).doFinal(ciphertext);
+    }
+
+    private static Cipher init(int mode, byte[] key, byte[] noncePrefix, long index, boolean last) throws GeneralSecurityException {
+        byte[] nonce = ByteBuffer.allocate(NONCE_PREFIX_SIZE_BYTES + Integer.BYTES)
+                .put(noncePrefix)
+                .putInt((int) index)
+                .array();
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_SIZE_BYTES * 8, nonce));
+        cipher.updateAAD(ByteBuffer.allocate(Long.BYTES + 1).putLong(index).put((byte) (last ? 1 : 0)).array());
+        return cipher;
+    }
+}
@@ -0,0 +1,413 @@
+package io.sekretess.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A file that is encrypted with AES-256-GCM while it is uploaded, without writing the ciphertext to disk. The
+ * ciphertext SHA-256 is computed on the fly and available from {@link #ciphertextSha256()} once the
+ * {@link #bodyPublisher()} has been read completely. The body can be published once, since a second encryption
+ * with the same key and IV would reuse the GCM nonce. With a chunk size, the file is encrypted in the
+ * {@link ChunkedFileCipher} format, with chunks sealed in parallel on the executor it was created with. Small files
+ * may instead be encrypted up front into memory, in which case the ciphertext SHA-256 is available right away.
+ */
+public final class EncryptedFileUpload {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Plaintext of the chunks sealed ahead of the reader; at least one chunk is always sealed ahead.
+    private static final long SEALING_WINDOW_BYTES = 64L * 1024 * 1024;
+
+    private final Path inputFile;
+    private final byte[] key;
+    private final byte[] iv;
+    private final int tagLengthBits;
+    private final int chunkSize;
+    private final long plaintextSize;
+    private final String mimeType;
+    private final Executor sealExecutor;
+    private final byte[] ciphertext;
+    private final AtomicBoolean published = new AtomicBoolean();
+    private volatile String ciphertextSha256;
+    private final MessageDigest partDigest;
+    private long nextPart;
+
+    EncryptedFileUpload(Path inputFile, byte[] key, byte[] iv, int tagLengthBits, int chunkSize, long plaintextSize, String mimeType,
+                        Executor sealExecutor) {
+        this(inputFile, key, iv, tagLengthBits, chunkSize, plaintextSize, mimeType, sealExecutor, null);
+    }
+
+    /**
+     * Creates an upload of {@code ciphertext}, the already encrypted file, or of the file encrypted while it is
+     * uploaded if {@code ciphertext} is {@code null}. Chunks are sealed on {@code sealExecutor}.
+     */
+    EncryptedFileUpload(Path inputFile, byte[] key, byte[] iv, int tagLengthBits, int chunkSize, long plaintextSize, String mimeType,
+                        Executor sealExecutor, byte[] ciphertext) {
+        this.inputFile = inputFile;
+        this.key = key;
+        this.iv = iv;
+        this.tagLengthBits = tagLengthBits;
+        this.chunkSize = chunkSize;
+        this.plaintextSize = plaintextSize;
+        this.mimeType = mimeType;
+        this.sealExecutor = sealExecutor;
+        this.ciphertext = ciphertext;
+        try {
+            this.partDigest = MessageDigest.getInstance("SHA-256");
+            if (ciphertext != null) {
+                this.ciphertextSha256 = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(ciphertext));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available!", e);
+        }
+    }
+
+    /**
+     * Publishes the ciphertext with a known content length, encrypting the file as the body is read. The publisher
+     * can be subscribed to once.
+     *
+     * @throws IllegalStateException if a body publisher was already created
+     */
+    public HttpRequest.BodyPublisher bodyPublisher() {
+        if (!published.compareAndSet(false, true)) {
+            throw new IllegalStateException("Encrypted file upload can only be published once! " + inputFile);
+        }
+        if (ciphertext != null) {
+            return HttpRequest.BodyPublishers.ofByteArray(ciphertext);
+        }
+        AtomicBoolean subscribed = new AtomicBoolean();
+        return HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> {
+            if (!subscribed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Encrypted file upload can only be published once! " + inputFile);
+            }
+            try {
+                if (chunkSize > 0) {
+                    return new ChunkedCiphertextInputStream(FileChannel.open(inputFile), MessageDigest.getInstance("SHA-256"));
+                }
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(tagLengthBits, iv));
+                return new CiphertextInputStream(FileChannel.open(inputFile), cipher, MessageDigest.getInstance("SHA-256"));
+            } catch (IOException | GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to open file for encryption! " + inputFile, e);
+            }
+        }), ciphertextSize());
+    }
+
+    /**
+     * Returns the Base64 encoded SHA-256 of the ciphertext.
+     *
+     * @throws IllegalStateException if the body of a file encrypted while it is uploaded has not been read completely
+     */
+    public String ciphertextSha256() {
+        String digest = ciphertextSha256;
+        if (digest == null) {
+            throw new IllegalStateException("Encrypted file has not been uploaded completely! " + inputFile);
+        }
+        return digest;
+    }
+
+    public String encodedKey() {
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    /**
+     * Returns the IV, or the nonce prefix of the chunks for the chunked format.
+     */
+    public String encodedIv() {
+        return Base64.getEncoder().encodeToString(iv);
+    }
+
+    /**
+     * Returns {@code AES-256-GCM}, or {@code AES-256-GCM-CHUNKED} for the chunked format.
+     */
+    public String algorithm() {
+        return chunkSize > 0 ? ChunkedFileCipher.ALGORITHM : "AES-256-GCM";
+    }
+
+    /**
+     * Returns the plaintext size of a chunk, or {@code 0} if the file is encrypted as a whole.
+     */
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    public long plaintextSize() {
+        return plaintextSize;
+    }
+
+    public long ciphertextSize() {
+        return chunkSize > 0 ? ChunkedFileCipher.ciphertextSize(plaintextSize, chunkSize) : plaintextSize + tagLengthBits / 8;
+    }
+
+    public String mimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Returns whether the file was encrypted into memory up front instead of while it is uploaded.
+     */
+    public boolean inMemory() {
+        return ciphertext != null;
+    }
+
+    /**
+     * Reads the plaintext from a {@link FileChannel} into a direct buffer of {@value #BUFFER_SIZE} bytes, encrypts
+     * it and hashes the ciphertext it returns. Fails if the file does not have the size it had when the upload was
+     * created, as the content length is already sent.
+     */
+    private final class CiphertextInputStream extends InputStream {
+        private final FileChannel plaintext;
+        private final Cipher cipher;
+        private final MessageDigest digest;
+        private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] output;
+        private int position;
+        private int limit;
+        private long plaintextRead;
+        private boolean finished;
+
+        private CiphertextInputStream(FileChannel plaintext, Cipher cipher, MessageDigest digest) {
+            this.plaintext = plaintext;
+            this.cipher = cipher;
+            this.digest = digest;
+            this.output = new byte[cipher.getOutputSize(BUFFER_SIZE)];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (finished) {
+                    return -1;
+                }
+                fill();
+            }
+            int count = Math.min(length, limit - position);
+            System.arraycopy(output, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        private void fill() throws IOException {
+            try {
+                input.clear();
+                int read = plaintext.read(input);
+                if (read == -1) {
+                    if (plaintextRead != plaintextSize) {
+                        throw new IOException("File changed while encrypting! " + inputFile);
+                    }
+                    limit = cipher.doFinal(output, 0);
+                    finished = true;
+                } else {
+                    plaintextRead += read;
+                    if (plaintextRead > plaintextSize) {
+                        throw new IOException("File changed while encrypting! " + inputFile);
+                    }
+                    limit = cipher.update(input.flip(), ByteBuffer.wrap(output));
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to encrypt file! " + inputFile, e);
+            }
+            position = 0;
+            digest.update(output, 0, limit);
+            if (finished) {
+                ciphertextSha256 = Base64.getEncoder().encodeToString(digest.digest());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            plaintext.close();
+        }
+    }
+
+    /**
+     * Returns the number of parts of {@code partSize} plaintext bytes, a multiple of the chunk size, the ciphertext
+     * is uploaded in.
+     */
+    public long partCount(int partSize) {
+        int chunksPerPart = chunksPerPart(partSize);
+        return (ChunkedFileCipher.chunkCount(plaintextSize, chunkSize) + chunksPerPart - 1) / chunksPerPart;
+    }
+
+    /**
+     * Seals the chunks of part {@code part}, in parallel on the seal executor, and returns their ciphertext.
+     * Parts have to be sealed in order, starting with part {@code 0}; the ciphertext hash is complete once the last
+     * part is sealed. Sealing a part again yields the same ciphertext, as the nonces are derived from the chunk index,
+     * so parts of an interrupted upload can be sealed again with the same key.
+     *
+     * @throws IllegalStateException if the body was published, or the parts are not sealed in order
+     */
+    public byte[] sealPart(long part, int partSize) throws IOException {
+        int chunksPerPart = chunksPerPart(partSize);
+        if (part == 0 && !published.compareAndSet(false, true)) {
+            throw new IllegalStateException("Encrypted file upload can only be published once! " + inputFile);
+        }
+        if (part != nextPart) {
+            throw new IllegalStateException("Part " + part + " sealed out of order, expected part " + nextPart + "! " + inputFile);
+        }
+        long chunkCount = ChunkedFileCipher.chunkCount(plaintextSize, chunkSize);
+        long firstChunk = part * chunksPerPart;
+        long lastChunk = Math.min(chunkCount, firstChunk + chunksPerPart);
+        List<CompletableFuture<byte[]>> chunks = new ArrayList<>();
+        try (FileChannel plaintext = FileChannel.open(inputFile)) {
+            for (long chunk = firstChunk; chunk < lastChunk; chunk++) {
+                chunks.add(sealChunk(plaintext, chunk, chunkCount));
+            }
+            ByteArrayOutputStream ciphertext = new ByteArrayOutputStream((int) (lastChunk - firstChunk) * (chunkSize + ChunkedFileCipher.TAG_SIZE_BYTES));
+            for (CompletableFuture<byte[]> chunk : chunks) {
+                ciphertext.writeBytes(join(chunk));
+            }
+            byte[] sealed = ciphertext.toByteArray();
+            partDigest.update(sealed);
+            nextPart++;
+            if (lastChunk == chunkCount) {
+                if (plaintext.size() != plaintextSize) {
+                    throw new IOException("File changed while encrypting! " + inputFile);
+                }
+                ciphertextSha256 = Base64.getEncoder().encodeToString(partDigest.digest());
+            }
+            return sealed;
+        } finally {
+            chunks.forEach(chunk -> chunk.cancel(false));
+        }
+    }
+
+    private int chunksPerPart(int partSize) {
+        if (chunkSize == 0 || partSize <= 0 || partSize % chunkSize != 0) {
+            throw new IllegalArgumentException("Part size " + partSize + " must be a multiple of the chunk size " + chunkSize + "!");
+        }
+        return partSize / chunkSize;
+    }
+
+    private CompletableFuture<byte[]> sealChunk(FileChannel plaintext, long index, long chunkCount) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return ChunkedFileCipher.seal(key, iv, index, index == chunkCount - 1, readChunk(plaintext, index));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (GeneralSecurityException e) {
+                throw new CompletionException(new IOException("Failed to encrypt file! " + inputFile, e));
+            }
+        }, sealExecutor);
+    }
+
+    private ByteBuffer readChunk(FileChannel plaintext, long index) throws IOException {
+        long offset = index * chunkSize;
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(chunkSize, plaintextSize - offset));
+        while (chunk.hasRemaining()) {
+            if (plaintext.read(chunk, offset + chunk.position()) == -1) {
+                throw new IOException("File changed while encrypting! " + inputFile);
+            }
+        }
+        return chunk.flip();
+    }
+
+    private byte[] join(CompletableFuture<byte[]> chunk) throws IOException {
+        try {
+            return chunk.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("Failed to encrypt file! " + inputFile, e.getCause());
+        }
+    }
+
+    /**
+     * Seals chunks ahead of the reader on the seal executor and returns and hashes them in order. At most two chunks
+     * per processor are sealed ahead, and no more than {@value #SEALING_WINDOW_BYTES} bytes of plaintext, so large
+     * chunks do not pile up in memory.
+     */
+    private final class ChunkedCiphertextInputStream extends InputStream {
+        private final FileChannel plaintext;
+        private final MessageDigest digest;
+        private final long chunkCount;
+        private final int window = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 2L,
+                SEALING_WINDOW_BYTES / chunkSize));
+        private final Deque<CompletableFuture<byte[]>> sealing = new ArrayDeque<>();
+        private long nextChunk;
+        private byte[] current = new byte[0];
+        private int position;
+
+        private ChunkedCiphertextInputStream(FileChannel plaintext, MessageDigest digest) {
+            this.plaintext = plaintext;
+            this.digest = digest;
+            this.chunkCount = ChunkedFileCipher.chunkCount(plaintextSize, chunkSize);
+            while (nextChunk < chunkCount && sealing.size() < window) {
+                sealNext();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (position == current.length) {
+                if (sealing.isEmpty()) {
+                    return -1;
+                }
+                nextSealedChunk();
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        private void nextSealedChunk() throws IOException {
+            current = join(sealing.poll());
+            position = 0;
+            digest.update(current);
+            if (nextChunk < chunkCount) {
+                sealNext();
+            } else if (sealing.isEmpty()) {
+                if (plaintext.size() != plaintextSize) {
+                    throw new IOException("File changed while encrypting! " + inputFile);
+                }
+                ciphertextSha256 = Base64.getEncoder().encodeToString(digest.digest());
+            }
+        }
+
+        private void sealNext() {
+            sealing.add(sealChunk(plaintext, nextChunk++, chunkCount));
+        }
+
+        @Override
+        public void close() throws IOException {
+            sealing.forEach(chunk -> chunk.cancel(false));
+            sealing.clear();
+            plaintext.close();
+        }
+    }
+}
@@ -1,30 +1,37 @@
 package io.sekretess.util;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.security.DigestOutputStream;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public final class FileEncryptionUtil {
 
     private static final int AES_KEY_SIZE_BYTES = 32;
     private static final int GCM_IV_SIZE_BYTES = 12;
     private static final int GCM_TAG_LENGTH_BITS = 128;
+    private static final int NIO_BUFFER_SIZE = 1024 * 1024;
 
     private FileEncryptionUtil() {
     }
 
+    /**
+     * Encrypts {@code inputFile} into a temp file through {@link FileChannel}s and direct buffers of
+     * {@value #NIO_BUFFER_SIZE} bytes, and hashes the ciphertext as it is written. Uploads encrypt while they are
+     * sent instead, see {@link #encryptForUpload(Path)}.
+     */
     public static EncryptedFilePayload encrypt(Path inputFile) throws IOException, GeneralSecurityException {
         byte[] key = new byte[AES_KEY_SIZE_BYTES];
         byte[] iv = new byte[GCM_IV_SIZE_BYTES];
@@ -39,21 +46,23 @@ public final class FileEncryptionUtil {
         Path encryptedFile = Files.createTempFile("sekretess-file-", ".bin");
         long plaintextSize = Files.size(inputFile);
 
-        try (InputStream inputStream = Files.newInputStream(inputFile);
-             OutputStream outputStream = Files.newOutputStream(encryptedFile, StandardOpenOption.TRUNCATE_EXISTING);
-             DigestOutputStream digestOutputStream = new DigestOutputStream(outputStream, messageDigest);
-             CipherOutputStream cipherOutputStream = new CipherOutputStream(digestOutputStream, cipher)) {
-            inputStream.transferTo(cipherOutputStream);
-        } catch (IOException e) {
+        try (FileChannel input = FileChannel.open(inputFile, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(encryptedFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer ciphertext = ByteBuffer.allocateDirect(cipher.getOutputSize(NIO_BUFFER_SIZE));
+            ByteBuffer plaintext = ByteBuffer.allocateDirect(NIO_BUFFER_SIZE);
+            while (input.read(plaintext) != -1) {
+                plaintext.flip();
+                encryptBlock(cipher, plaintext, ciphertext, messageDigest, output);
+                plaintext.clear();
+            }
+            ciphertext.clear();
+            cipher.doFinal(ByteBuffer.allocate(0), ciphertext);
+            writeDigested(ciphertext.flip(), messageDigest, output);
+        } catch (IOException | GeneralSecurityException e) {
             Files.deleteIfExists(encryptedFile);
             throw e;
         }
 
-        String mimeType = Files.probeContentType(inputFile);
-        if (mimeType == null || mimeType.isBlank()) {
-            mimeType = "application/octet-stream";
-        }
-
         return new EncryptedFilePayload(
                 encryptedFile,
                 Base64.getEncoder().encodeToString(key),
@@ -61,7 +70,183 @@ public final class FileEncryptionUtil {
                 Base64.getEncoder().encodeToString(messageDigest.digest()),
                 plaintextSize,
                 Files.size(encryptedFile),
-                mimeType
+                mimeTypeOf(inputFile)
         );
     }
+
+    /**
+     * Prepares {@code inputFile} to be encrypted while it is uploaded, without a temp file. The ciphertext is the
+     * same AES-256-GCM ciphertext {@link #encrypt(Path)} writes.
+     */
+    public static EncryptedFileUpload encryptForUpload(Path inputFile) throws IOException {
+        return encryptForUpload(inputFile, 0);
+    }
+
+    /**
+     * Prepares {@code inputFile} to be encrypted while it is uploaded, in chunks of {@code chunkSize} plaintext bytes
+     * that are sealed in parallel on the common fork-join pool, or as a whole if {@code chunkSize} is {@code 0}.
+     */
+    public static EncryptedFileUpload encryptForUpload(Path inputFile, int chunkSize) throws IOException {
+        return encryptForUpload(inputFile, chunkSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Prepares {@code inputFile} to be encrypted while it is uploaded like {@link #encryptForUpload(Path, int)}, with
+     * chunks sealed on {@code sealExecutor}.
+     */
+    public static EncryptedFileUpload encryptForUpload(Path inputFile, int chunkSize, Executor sealExecutor) throws IOException {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("Chunk size must not be negative! " + chunkSize);
+        }
+        byte[] key = new byte[AES_KEY_SIZE_BYTES];
+        byte[] iv = new byte[chunkSize > 0 ? ChunkedFileCipher.NONCE_PREFIX_SIZE_BYTES : GCM_IV_SIZE_BYTES];
+        SecureRandom secureRandom = new SecureRandom();
+        secureRandom.nextBytes(key);
+        secureRandom.nextBytes(iv);
+        long plaintextSize = Files.size(inputFile);
+        if (chunkSize > 0) {
+            ChunkedFileCipher.chunkCount(plaintextSize, chunkSize);
+        }
+        return new EncryptedFileUpload(inputFile, key, iv, GCM_TAG_LENGTH_BITS, chunkSize, plaintextSize, mimeTypeOf(inputFile),
+                sealExecutor);
+    }
+
+    /**
+     * Encrypts {@code inputFile} into memory if it is smaller than {@code inMemoryThreshold} bytes, reading it with
+     * a single read, and otherwise prepares it to be encrypted while it is uploaded like
+     * {@link #encryptForUpload(Path, int)}. The ciphertext is the same in both cases.
+     */
+    public static EncryptedFileUpload encryptForUpload(Path inputFile, int chunkSize, int inMemoryThreshold) throws IOException {
+        return encryptForUpload(inputFile, chunkSize, inMemoryThreshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encrypts {@code inputFile} like {@link #encryptForUpload(Path, int, int)}, with chunks of files encrypted while
+     * they are uploaded sealed on {@code sealExecutor}.
+     */
+    public static EncryptedFileUpload encryptForUpload(Path inputFile, int chunkSize, int inMemoryThreshold, Executor sealExecutor)
+            throws IOException {
+        EncryptedFileUpload encryptedFile = encryptInMemory(inputFile, chunkSize, inMemoryThreshold, sealExecutor);
+        return encryptedFile != null ? encryptedFile : encryptForUpload(inputFile, chunkSize, sealExecutor);
+    }
+
+    /**
+     * Encrypts {@code inputFile} into memory if it is smaller than {@code inMemoryThreshold} bytes, reading it with
+     * a single read, or returns {@code null} without reading it otherwise. The size is taken from the open channel
+     * and the MIME type from the file name, so a small file costs no other file system calls.
+     */
+    public static EncryptedFileUpload encryptInMemory(Path inputFile, int chunkSize, int inMemoryThreshold, Executor sealExecutor)
+            throws IOException {
+        if (inMemoryThreshold <= 0) {
+            return null;
+        }
+        try (FileChannel input = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            long plaintextSize = input.size();
+            if (plaintextSize >= inMemoryThreshold) {
+                return null;
+            }
+            ByteBuffer plaintext = ByteBuffer.allocate((int) plaintextSize);
+            while (plaintext.hasRemaining()) {
+                if (input.read(plaintext) == -1) {
+                    throw new IOException("File changed while encrypting! " + inputFile);
+                }
+            }
+            return encryptInMemory(inputFile, plaintext.flip(), chunkSize, sealExecutor);
+        }
+    }
+
+    /**
+     * Prepares {@code inputFile} to be encrypted in chunks with the key and nonce prefix of an earlier upload of it,
+     * so that parts of an interrupted upload can be sealed again. The file must not have changed.
+     */
+    public static EncryptedFileUpload encryptForUpload(Path inputFile, int chunkSize, String encodedKey, String encodedIv) throws IOException {
+        return encryptForUpload(inputFile, chunkSize, encodedKey, encodedIv, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Prepares {@code inputFile} to be encrypted with the key and nonce prefix of an earlier upload like
+     * {@link #encryptForUpload(Path, int, String, String)}, with chunks sealed on {@code sealExecutor}.
+     */
+    public static EncryptedFileUpload encryptForUpload(Path inputFile, int chunkSize, String encodedKey, String encodedIv,
+                                                       Executor sealExecutor) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive! " + chunkSize);
+        }
+        byte[] key = Base64.getDecoder().decode(encodedKey);
+        byte[] iv = Base64.getDecoder().decode(encodedIv);
+        if (key.length != AES_KEY_SIZE_BYTES || iv.length != ChunkedFileCipher.NONCE_PREFIX_SIZE_BYTES) {
+            throw new IllegalArgumentException("Invalid key or nonce prefix for chunked file encryption!");
+        }
+        return new EncryptedFileUpload(inputFile, key, iv, GCM_TAG_LENGTH_BITS, chunkSize, Files.size(inputFile), mimeTypeOf(inputFile),
+                sealExecutor);
+    }
+
+    private static EncryptedFileUpload encryptInMemory(Path inputFile, ByteBuffer plaintext, int chunkSize, Executor sealExecutor)
+            throws IOException {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("Chunk size must not be negative! " + chunkSize);
+        }
+        byte[] key = new byte[AES_KEY_SIZE_BYTES];
+        byte[] iv = new byte[chunkSize > 0 ? ChunkedFileCipher.NONCE_PREFIX_SIZE_BYTES : GCM_IV_SIZE_BYTES];
+        SecureRandom secureRandom = new SecureRandom();
+        secureRandom.nextBytes(key);
+        secureRandom.nextBytes(iv);
+        int plaintextSize = plaintext.remaining();
+        try {
+            byte[] ciphertext;
+            if (chunkSize > 0) {
+                long chunkCount = ChunkedFileCipher.chunkCount(plaintextSize, chunkSize);
+                ByteBuffer sealed = ByteBuffer.allocate((int) ChunkedFileCipher.ciphertextSize(plaintextSize, chunkSize));
+                for (long index = 0; index < chunkCount; index++) {
+                    ByteBuffer chunk = plaintext.slice(plaintext.position(), Math.min(chunkSize, plaintext.remaining()));
+                    plaintext.position(plaintext.position() + chunk.remaining());
+                    sealed.put(ChunkedFileCipher.seal(key, iv, index, index == chunkCount - 1, chunk));
+                }
+                ciphertext = sealed.array();
+            } else {
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(GCM_TAG_LENGTH_BITS, iv));
+                ciphertext = new byte[cipher.getOutputSize(plaintextSize)];
+                cipher.doFinal(plaintext, ByteBuffer.wrap(ciphertext));
+            }
+            return new EncryptedFileUpload(inputFile, key, iv, GCM_TAG_LENGTH_BITS, chunkSize, plaintextSize, mimeTypeOfName(inputFile), sealExecutor,
+                    ciphertext);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt file! " + inputFile, e);
+        }
+    }
+
+    private static void encryptBlock(Cipher cipher, ByteBuffer plaintext, ByteBuffer ciphertext, MessageDigest messageDigest,
+                                     FileChannel output) throws GeneralSecurityException, IOException {
+        ciphertext.clear();
+        cipher.update(plaintext, ciphertext);
+        writeDigested(ciphertext.flip(), messageDigest, output);
+    }
+
+    private static void writeDigested(ByteBuffer ciphertext, MessageDigest messageDigest, FileChannel output) throws IOException {
+        messageDigest.update(ciphertext.duplicate());
+        while (ciphertext.hasRemaining()) {
+            output.write(ciphertext);
+        }
+    }
+
+    private static String mimeTypeOf(Path inputFile) throws IOException {
+        String mimeType = Files.probeContentType(inputFile);
+        if (mimeType == null || mimeType.isBlank()) {
+            mimeType = "application/octet-stream";
+        }
+        return mimeType;
+    }
+
+    /**
+     * Looks the MIME type up by the file name extension in the JDK's built-in table, without touching the file.
+     */
+    private static String mimeTypeOfName(Path inputFile) {
+        Path fileName = inputFile.getFileName();
+        String mimeType = fileName != null ? URLConnection.getFileNameMap().getContentTypeFor(fileName.toString()) : null;
+        if (mimeType == null || mimeType.isBlank()) {
+            mimeType = "application/octet-stream";
+        }
+        return mimeType;
+    }
 }
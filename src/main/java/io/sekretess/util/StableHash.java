@@ -0,0 +1,48 @@
+package io.sekretess.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit FNV-1a over the UTF-8 bytes with the MurmurHash3 finalizer, which spreads similar consumer names over the
+ * whole range. The result is the same on every JVM, so all instances agree on where a consumer is placed.
+ */
+public final class StableHash {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private StableHash() {
+    }
+
+    public static long hash(String value) {
+        return finalizeHash(fnv1a(value));
+    }
+
+    /**
+     * Hash of {@code value} combined with {@code salt}, for example a shard index in rendezvous hashing.
+     */
+    public static long hash(String value, int salt) {
+        long hash = fnv1a(value);
+        hash ^= salt;
+        hash *= FNV_PRIME;
+        return finalizeHash(hash);
+    }
+
+    private static long fnv1a(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long finalizeHash(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
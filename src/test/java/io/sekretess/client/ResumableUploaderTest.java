@@ -0,0 +1,250 @@
+package io.sekretess.client;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.sekretess.client.request.CompleteUpload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ResumableUploader against a local stub of the upload endpoints.
+ */
+class ResumableUploaderTest {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final int PART_SIZE = 4 * CHUNK_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private StubUploadServer server;
+    private SekretessServerClient serverClient;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubUploadServer();
+        serverClient = new SekretessServerClient(HttpClient.newHttpClient(), "key", "secret", server.url());
+        byte[] plaintext = new byte[10 * PART_SIZE + 100];
+        new Random(42).nextBytes(plaintext);
+        file = tempDir.resolve("payload.bin");
+        Files.write(file, plaintext);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void upload_UploadsAllPartsAndCompletesWithCiphertextHash() throws Exception {
+        // Arrange
+        ResumableUploader uploader = new ResumableUploader(serverClient, config(3));
+
+        // Act
+        ResumableUploadResult result = uploader.upload(file, "consumer");
+
+        // Assert
+        assertThat(result.response().fileId()).isEqualTo("file-1");
+        assertThat(result.partsResumed()).isZero();
+        assertThat(server.parts).hasSize(11);
+        assertThat(server.completedSha256).isEqualTo(result.encryptedFile().ciphertextSha256());
+        assertThat(server.ciphertext()).hasSize((int) result.encryptedFile().ciphertextSize());
+        assertThat(result.encryptedFile().algorithm()).isEqualTo("AES-256-GCM-CHUNKED");
+        assertThat(tempDir.resolve("checkpoints")).isEmptyDirectory();
+    }
+
+    @Test
+    void upload_RetriesOnlyFailedParts() throws Exception {
+        // Arrange
+        server.failuresByPart.put(5L, new AtomicInteger(2));
+        ResumableUploader uploader = new ResumableUploader(serverClient, config(3));
+
+        // Act
+        uploader.upload(file, "consumer");
+
+        // Assert
+        assertThat(server.attemptsByPart.get(5L)).hasValue(3);
+        assertThat(server.attemptsByPart).allSatisfy((part, attempts) -> {
+            if (part != 5L) {
+                assertThat(attempts).hasValue(1);
+            }
+        });
+        assertThat(server.completedSha256).isNotNull();
+    }
+
+    @Test
+    void upload_ResumesFromCheckpointWithSameCiphertext() throws Exception {
+        // Arrange
+        server.failuresByPart.put(7L, new AtomicInteger(Integer.MAX_VALUE));
+        assertThatThrownBy(() -> new ResumableUploader(serverClient, config(2)).upload(file, "consumer"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("can be resumed");
+        assertThat(tempDir.resolve("checkpoints")).isNotEmptyDirectory();
+        Map<Long, byte[]> partsBeforeRestart = Map.copyOf(server.parts);
+        server.failuresByPart.clear();
+        server.attemptsByPart.clear();
+
+        // Act
+        ResumableUploadResult result = new ResumableUploader(serverClient, config(2)).upload(file, "consumer");
+
+        // Assert
+        assertThat(result.partsResumed()).isEqualTo(partsBeforeRestart.size());
+        assertThat(server.attemptsByPart.keySet()).doesNotContainAnyElementsOf(partsBeforeRestart.keySet());
+        partsBeforeRestart.forEach((part, ciphertext) -> assertThat(server.parts.get(part)).isEqualTo(ciphertext));
+        assertThat(server.startedUploads).hasValue(1);
+        assertThat(server.completedSha256).isEqualTo(sha256(server.ciphertext()));
+        assertThat(tempDir.resolve("checkpoints")).isEmptyDirectory();
+    }
+
+    @Test
+    void upload_StartsOverWhenServerForgotUpload() throws Exception {
+        // Arrange
+        server.failuresByPart.put(1L, new AtomicInteger(Integer.MAX_VALUE));
+        assertThatThrownBy(() -> new ResumableUploader(serverClient, config(1)).upload(file, "consumer"))
+                .isInstanceOf(IOException.class);
+        server.failuresByPart.clear();
+        server.parts.clear();
+        server.forgetUploads = true;
+
+        // Act
+        ResumableUploadResult result = new ResumableUploader(serverClient, config(1)).upload(file, "consumer");
+
+        // Assert
+        assertThat(result.partsResumed()).isZero();
+        assertThat(server.startedUploads).hasValue(2);
+        assertThat(server.parts).hasSize(11);
+    }
+
+    @Test
+    void upload_StartsOverWhenFileWasRewrittenWithSameSizeAndModificationTime() throws Exception {
+        // Arrange
+        server.failuresByPart.put(1L, new AtomicInteger(Integer.MAX_VALUE));
+        assertThatThrownBy(() -> new ResumableUploader(serverClient, config(1)).upload(file, "consumer"))
+                .isInstanceOf(IOException.class);
+        server.failuresByPart.clear();
+        FileTime lastModified = Files.getLastModifiedTime(file);
+        byte[] rewritten = new byte[(int) Files.size(file)];
+        new Random(7).nextBytes(rewritten);
+        Files.write(file, rewritten);
+        Files.setLastModifiedTime(file, lastModified);
+
+        // Act
+        ResumableUploadResult result = new ResumableUploader(serverClient, config(1)).upload(file, "consumer");
+
+        // Assert
+        assertThat(result.partsResumed()).isZero();
+        assertThat(server.startedUploads).hasValue(2);
+        assertThat(server.completedSha256).isEqualTo(sha256(server.ciphertext()));
+    }
+
+    private ResumableUploadConfig config(int parallelism) {
+        return new ResumableUploadConfig(CHUNK_SIZE, PART_SIZE, parallelism, 3, Duration.ofMillis(1), tempDir.resolve("checkpoints"));
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    /**
+     * Implements the resumable upload endpoints in memory, with parts that fail a given number of times.
+     */
+    private static final class StubUploadServer {
+        private static final Pattern PART = Pattern.compile(".*/resumable/([^/]+)/parts/(\\d+)");
+
+        private final HttpServer httpServer;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final Map<Long, byte[]> parts = new ConcurrentHashMap<>();
+        private final Map<Long, AtomicInteger> failuresByPart = new ConcurrentHashMap<>();
+        private final Map<Long, AtomicInteger> attemptsByPart = new ConcurrentHashMap<>();
+        private final AtomicInteger startedUploads = new AtomicInteger();
+        private volatile boolean forgetUploads;
+        private volatile String completedSha256;
+
+        private StubUploadServer() throws IOException {
+            httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            httpServer.createContext("/api/v1/businesses/uploads/resumable", this::handle);
+            httpServer.setExecutor(executor);
+            httpServer.start();
+        }
+
+        private String url() {
+            return "http://127.0.0.1:" + httpServer.getAddress().getPort();
+        }
+
+        private byte[] ciphertext() {
+            ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+            for (long part = 0; parts.containsKey(part); part++) {
+                ciphertext.writeBytes(parts.get(part));
+            }
+            return ciphertext.toByteArray();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            Matcher part = PART.matcher(path);
+            if (exchange.getRequestMethod().equals("POST") && path.endsWith("/resumable")) {
+                respond(exchange, 201, "{\"uploadId\":\"upload-" + startedUploads.incrementAndGet() + "\"}");
+            } else if (exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, forgetUploads ? 404 : 200, "{\"receivedParts\":" + parts.keySet() + "}");
+            } else if (exchange.getRequestMethod().equals("PUT") && part.matches()) {
+                long number = Long.parseLong(part.group(2));
+                attemptsByPart.computeIfAbsent(number, ignored -> new AtomicInteger()).incrementAndGet();
+                AtomicInteger failures = failuresByPart.get(number);
+                if (failures != null && failures.getAndDecrement() > 0) {
+                    respond(exchange, 503, "");
+                } else {
+                    parts.put(number, body);
+                    respond(exchange, 204, null);
+                }
+            } else if (exchange.getRequestMethod().equals("POST") && path.endsWith("/complete")) {
+                completedSha256 = new Gson().fromJson(new String(body, StandardCharsets.UTF_8), CompleteUpload.class).ciphertextSha256();
+                respond(exchange, 200, "{\"fileId\":\"file-1\",\"fileToken\":\"token\",\"expiresAt\":\"2026-01-01T00:00:00Z\"}");
+            } else {
+                respond(exchange, 404, "");
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+                exchange.getResponseBody().write(bytes);
+            }
+            exchange.close();
+        }
+
+        private void stop() {
+            httpServer.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
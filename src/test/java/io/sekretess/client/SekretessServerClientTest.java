@@ -4,6 +4,8 @@ import io.sekretess.client.response.ConsumerKeysResponse;
 import io.sekretess.client.response.FileUploadResponse;
 import io.sekretess.client.response.SendAdsMessageResponse;
 import io.sekretess.client.response.SendMessageResponse;
+import io.sekretess.util.EncryptedFileUpload;
+import io.sekretess.util.FileEncryptionUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -13,15 +15,19 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -224,6 +230,49 @@ class SekretessServerClientTest {
                 .hasMessageContaining("500");
     }
 
+    @Test
+    void uploadFile_SendsStreamedCiphertextWithContentLength() throws Exception {
+        Path inputFile = tempDir.resolve("payload.txt");
+        Files.writeString(inputFile, "plaintext");
+        EncryptedFileUpload encryptedFile = FileEncryptionUtil.encryptForUpload(inputFile);
+
+        when(tokenProvider.fetchToken()).thenReturn("test-token");
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(httpResponse);
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body()).thenReturn("{\"fileId\":\"file-123\",\"fileToken\":\"signed-token\",\"expiresAt\":\"2026-01-01T00:00:00Z\"}");
+
+        FileUploadResponse response = serverClient.uploadFile(encryptedFile, "test-consumer");
+
+        assertThat(response.fileId()).isEqualTo("file-123");
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpClient).send(requestCaptor.capture(), any(HttpResponse.BodyHandler.class));
+        long contentLength = requestCaptor.getValue().bodyPublisher().orElseThrow().contentLength();
+        assertThat(contentLength).isGreaterThan(encryptedFile.ciphertextSize());
+    }
+
+    @Test
+    void uploadFile_NamesNoConsumer_WhenUploadingForSeveralConsumers() throws Exception {
+        Path inputFile = tempDir.resolve("payload.txt");
+        Files.writeString(inputFile, "plaintext");
+        EncryptedFileUpload encryptedFile = FileEncryptionUtil.encryptForUpload(inputFile);
+
+        when(tokenProvider.fetchToken()).thenReturn("test-token");
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(httpResponse);
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body()).thenReturn("{\"fileId\":\"file-123\",\"fileToken\":\"signed-token\",\"expiresAt\":\"2026-01-01T00:00:00Z\"}");
+
+        FileUploadResponse response = serverClient.uploadFile(encryptedFile);
+
+        assertThat(response.fileId()).isEqualTo("file-123");
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpClient).send(requestCaptor.capture(), any(HttpResponse.BodyHandler.class));
+        String body = new String(readBody(requestCaptor.getValue().bodyPublisher().orElseThrow()), StandardCharsets.ISO_8859_1);
+        assertThat(body).doesNotContain("name=\"consumerName\"");
+        assertThat(body.split("name=\"file\"", -1)).hasSize(2);
+    }
+
     // ==================== sendAdsMessage Tests ====================
 
     @Test
@@ -505,4 +554,34 @@ class SekretessServerClientTest {
                     .isInstanceOf(IllegalArgumentException.class);
         }
     }
+
+    private static byte[] readBody(HttpRequest.BodyPublisher publisher) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                body.writeBytes(bytes);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get();
+        return body.toByteArray();
+    }
 }
@@ -133,6 +133,20 @@ class ExceptionTest {
         assertThat(exception.getMessage()).hasSize(500);
     }
 
+    @Test
+    void testStoreExceptionKeepsCause() {
+        // Arrange
+        java.sql.SQLException cause = new java.sql.SQLException("Table not found");
+
+        // Act
+        StoreException exception = new StoreException("Failed to load sessions", cause);
+
+        // Assert
+        assertThat(exception).isInstanceOf(RuntimeException.class);
+        assertThat(exception.getMessage()).isEqualTo("Failed to load sessions");
+        assertThat(exception.getCause()).isSameAs(cause);
+    }
+
     @Test
     void testMultipleExceptionsIndependently() {
         // Act & Assert
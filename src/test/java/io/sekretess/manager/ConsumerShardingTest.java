@@ -0,0 +1,166 @@
+package io.sekretess.manager;
+
+import io.sekretess.exception.MessageSendException;
+import io.sekretess.store.InMemoryGroupSessionStore;
+import io.sekretess.store.InMemorySessionStore;
+import io.sekretess.store.SekretessSignalProtocolStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.SignalProtocolAddress;
+import org.signal.libsignal.protocol.state.SessionRecord;
+import org.signal.libsignal.protocol.util.KeyHelper;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ConsumerSharding and sharded SekretessManager instances sharing one session store.
+ */
+class ConsumerShardingTest {
+
+    private static final int CONSUMERS = 300;
+
+    private InMemorySessionStore sessionStore;
+    private InMemoryGroupSessionStore groupSessionStore;
+    private IdentityKeyPair identityKeyPair;
+    private int registrationId;
+    private final List<SekretessSignalProtocolStore> protocolStores = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        sessionStore = new InMemorySessionStore();
+        groupSessionStore = new InMemoryGroupSessionStore();
+        identityKeyPair = IdentityKeyPair.generate();
+        registrationId = KeyHelper.generateRegistrationId(false);
+        String emptySession = Base64.getEncoder().encodeToString(new SessionRecord().serialize());
+        for (int i = 0; i < CONSUMERS; i++) {
+            sessionStore.saveSession("consumer" + i, 123, emptySession);
+        }
+    }
+
+    @Test
+    void shardOf_IsDeterministicAndBalanced() {
+        // Arrange
+        ConsumerSharding first = new ConsumerSharding(0, 3, ConsumerSharding.DEFAULT_VIRTUAL_NODES);
+        ConsumerSharding second = new ConsumerSharding(2, 3, ConsumerSharding.DEFAULT_VIRTUAL_NODES);
+        int[] counts = new int[3];
+
+        // Act
+        for (int i = 0; i < 3000; i++) {
+            String consumer = "consumer" + i;
+            assertThat(first.shardOf(consumer)).isEqualTo(second.shardOf(consumer));
+            counts[first.shardOf(consumer)]++;
+        }
+
+        // Assert
+        for (int count : counts) {
+            assertThat(count).isBetween(800, 1200);
+        }
+    }
+
+    @Test
+    void withShards_OnlyMovesConsumersToTheNewShard() {
+        // Arrange
+        ConsumerSharding threeShards = new ConsumerSharding(0, 3, ConsumerSharding.DEFAULT_VIRTUAL_NODES);
+        ConsumerSharding fourShards = threeShards.withShards(0, 4);
+        int moved = 0;
+
+        // Act
+        for (int i = 0; i < 3000; i++) {
+            String consumer = "consumer" + i;
+            if (threeShards.shardOf(consumer) != fourShards.shardOf(consumer)) {
+                assertThat(fourShards.shardOf(consumer)).isEqualTo(3);
+                moved++;
+            }
+        }
+
+        // Assert
+        assertThat(moved).isBetween(500, 1000);
+    }
+
+    @Test
+    void constructor_RejectsInvalidShards() {
+        // Act & Assert
+        assertThatThrownBy(() -> new ConsumerSharding(3, 3, 16)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConsumerSharding(0, 0, 16)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConsumerSharding(0, 2, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void instances_LoadOnlyOwnedSessions() {
+        // Act
+        List<SekretessManager> managers = startInstances(3);
+
+        // Assert
+        assertEachConsumerCachedByOwnerOnly(managers);
+    }
+
+    @Test
+    void reshard_MovesSessionsToNewInstance() {
+        // Arrange
+        List<SekretessManager> managers = startInstances(3);
+
+        // Act
+        for (int shard = 0; shard < managers.size(); shard++) {
+            managers.get(shard).reshard(shard, 4);
+        }
+        managers.add(startInstance(new ConsumerSharding(3, 4, ConsumerSharding.DEFAULT_VIRTUAL_NODES)));
+
+        // Assert
+        assertEachConsumerCachedByOwnerOnly(managers);
+        assertThat(managers.get(3).getConsumerSharding().shardCount()).isEqualTo(4);
+    }
+
+    @Test
+    void sendMessageToConsumer_RejectsConsumerOwnedByAnotherShard() {
+        // Arrange
+        SekretessManager manager = startInstance(new ConsumerSharding(0, 2, ConsumerSharding.DEFAULT_VIRTUAL_NODES));
+        String consumer = IntStream.range(0, CONSUMERS).mapToObj(i -> "consumer" + i)
+                .filter(name -> !manager.ownsConsumer(name))
+                .findFirst()
+                .orElseThrow();
+
+        // Act & Assert
+        assertThatThrownBy(() -> manager.sendMessageToConsumer("Hello!", consumer))
+                .isInstanceOf(MessageSendException.class)
+                .hasMessageContaining("owned by shard 1");
+    }
+
+    private List<SekretessManager> startInstances(int shardCount) {
+        List<SekretessManager> managers = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            managers.add(startInstance(new ConsumerSharding(shard, shardCount, ConsumerSharding.DEFAULT_VIRTUAL_NODES)));
+        }
+        return managers;
+    }
+
+    private SekretessManager startInstance(ConsumerSharding consumerSharding) {
+        SekretessSignalProtocolStore protocolStore = new SekretessSignalProtocolStore(
+                identityKeyPair, registrationId, sessionStore, groupSessionStore
+        );
+        protocolStores.add(protocolStore);
+        SekretessManagerFactory.restoreSessions(protocolStore, consumerSharding::owns);
+        return new SekretessManager(protocolStore, null, consumerSharding);
+    }
+
+    private void assertEachConsumerCachedByOwnerOnly(List<SekretessManager> managers) {
+        for (int i = 0; i < CONSUMERS; i++) {
+            String consumer = "consumer" + i;
+            SignalProtocolAddress address = new SignalProtocolAddress(consumer, 123);
+            int owners = 0;
+            for (int shard = 0; shard < managers.size(); shard++) {
+                boolean owns = managers.get(shard).ownsConsumer(consumer);
+                assertThat(protocolStores.get(shard).containsSession(address)).isEqualTo(owns);
+                owners += owns ? 1 : 0;
+            }
+            assertThat(owners).isEqualTo(1);
+        }
+        assertThat(protocolStores.stream().mapToLong(SekretessSignalProtocolStore::getCachedSessionCount).sum())
+                .isEqualTo(CONSUMERS);
+    }
+}
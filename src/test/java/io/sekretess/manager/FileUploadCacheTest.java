@@ -0,0 +1,173 @@
+package io.sekretess.manager;
+
+import io.sekretess.model.FileMessageData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for FileUploadCache.
+ */
+class FileUploadCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger uploads = new AtomicInteger();
+
+    @Test
+    void getOrUpload_ReusesUploadOfFileWithSameContent() throws Exception {
+        // Arrange
+        FileUploadCache cache = new FileUploadCache(new FileUploadCacheConfig(10, Duration.ofMinutes(1)));
+        Path first = Files.writeString(tempDir.resolve("terms.pdf"), "terms");
+        Path second = Files.writeString(tempDir.resolve("terms-copy.pdf"), "terms");
+        String expiresAt = Instant.now().plus(Duration.ofHours(1)).toString();
+
+        // Act
+        FileMessageData uploaded = cache.getOrUpload(first, 0, () -> upload(expiresAt));
+        FileMessageData reused = cache.getOrUpload(second, 0, () -> upload(expiresAt));
+
+        // Assert
+        assertThat(uploads).hasValue(1);
+        assertThat(reused).isSameAs(uploaded);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+        assertThat(cache.stats().hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void getOrUpload_UploadsFileWithDifferentContent() throws Exception {
+        // Arrange
+        FileUploadCache cache = new FileUploadCache(new FileUploadCacheConfig(10, Duration.ofMinutes(1)));
+        String expiresAt = Instant.now().plus(Duration.ofHours(1)).toString();
+        cache.getOrUpload(Files.writeString(tempDir.resolve("january.pdf"), "january"), 0, () -> upload(expiresAt));
+
+        // Act
+        FileMessageData uploaded = cache.getOrUpload(Files.writeString(tempDir.resolve("february.pdf"), "february"), 0, () -> upload(expiresAt));
+
+        // Assert
+        assertThat(uploads).hasValue(2);
+        assertThat(uploaded.fileId()).isEqualTo("file-2");
+    }
+
+    @Test
+    void getOrUpload_UploadsAgainForOtherChunkSize() throws Exception {
+        // Arrange
+        FileUploadCache cache = new FileUploadCache(new FileUploadCacheConfig(10, Duration.ofMinutes(1)));
+        Path file = Files.writeString(tempDir.resolve("terms.pdf"), "terms");
+        String expiresAt = Instant.now().plus(Duration.ofHours(1)).toString();
+        cache.getOrUpload(file, 0, () -> upload(expiresAt));
+
+        // Act
+        cache.getOrUpload(file, 64 * 1024, () -> upload(expiresAt));
+        cache.getOrUpload(file, 0, () -> upload(expiresAt));
+
+        // Assert
+        assertThat(uploads).hasValue(2);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void getOrUpload_SharesUploadInProgressWithConcurrentSends() throws Exception {
+        // Arrange
+        FileUploadCache cache = new FileUploadCache(new FileUploadCacheConfig(10, Duration.ofMinutes(1)));
+        Path file = Files.writeString(tempDir.resolve("terms.pdf"), "terms");
+        String expiresAt = Instant.now().plus(Duration.ofHours(1)).toString();
+        CountDownLatch uploading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<FileMessageData> first = CompletableFuture.supplyAsync(() -> getOrUpload(cache, file, () -> {
+            uploading.countDown();
+            release.await();
+            return upload(expiresAt);
+        }));
+        assertThat(uploading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Act
+        CompletableFuture<FileMessageData> second = CompletableFuture.supplyAsync(() -> getOrUpload(cache, file, () -> upload(expiresAt)));
+        Thread.sleep(50);
+        release.countDown();
+
+        // Assert
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+        assertThat(uploads).hasValue(1);
+    }
+
+    @Test
+    void getOrUpload_DoesNotCacheUploadThatExpiresWithinMargin() throws Exception {
+        // Arrange
+        FileUploadCache cache = new FileUploadCache(new FileUploadCacheConfig(10, Duration.ofMinutes(5)));
+        Path file = Files.writeString(tempDir.resolve("terms.pdf"), "terms");
+        String expiresAt = Instant.now().plus(Duration.ofMinutes(1)).toString();
+
+        // Act
+        cache.getOrUpload(file, 0, () -> upload(expiresAt));
+        cache.getOrUpload(file, 0, () -> upload(expiresAt));
+
+        // Assert
+        assertThat(uploads).hasValue(2);
+        assertThat(cache.stats().hitCount()).isZero();
+    }
+
+    @Test
+    void getOrUpload_DoesNotCacheUploadWithoutValidExpiry() throws Exception {
+        // Arrange
+        FileUploadCache cache = new FileUploadCache(new FileUploadCacheConfig(10, Duration.ofMinutes(1)));
+        Path file = Files.writeString(tempDir.resolve("terms.pdf"), "terms");
+
+        // Act
+        cache.getOrUpload(file, 0, () -> upload("tomorrow"));
+        cache.getOrUpload(file, 0, () -> upload(null));
+
+        // Assert
+        assertThat(uploads).hasValue(2);
+    }
+
+    @Test
+    void getOrUpload_EvictsUploadsBeyondMaximumSize() throws Exception {
+        // Arrange
+        FileUploadCache cache = new FileUploadCache(new FileUploadCacheConfig(1, Duration.ofMinutes(1)));
+        String expiresAt = Instant.now().plus(Duration.ofHours(1)).toString();
+        Path first = Files.writeString(tempDir.resolve("first.pdf"), "first");
+        cache.getOrUpload(first, 0, () -> upload(expiresAt));
+        cache.getOrUpload(Files.writeString(tempDir.resolve("second.pdf"), "second"), 0, () -> upload(expiresAt));
+
+        // Act
+        cache.getOrUpload(first, 0, () -> upload(expiresAt));
+
+        // Assert
+        assertThat(uploads).hasValue(3);
+        assertThat(cache.stats().evictionCount()).isPositive();
+    }
+
+    @Test
+    void constructor_RejectsInvalidConfig() {
+        assertThatThrownBy(() -> new FileUploadCacheConfig(0, Duration.ofMinutes(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new FileUploadCacheConfig(10, Duration.ofMinutes(-1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static FileMessageData getOrUpload(FileUploadCache cache, Path file, FileUploadCache.Upload upload) {
+        try {
+            return cache.getOrUpload(file, 0, upload);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private FileUploadCache.UploadedFile upload(String expiresAt) {
+        String fileId = "file-" + uploads.incrementAndGet();
+        return new FileUploadCache.UploadedFile(new FileMessageData("file", "AES-256-GCM", "SHA-256", fileId, "token",
+                "key", "iv", "sha", 5, 21, "application/pdf", null), expiresAt);
+    }
+}
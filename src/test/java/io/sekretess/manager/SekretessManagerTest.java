@@ -1,5 +1,6 @@
 package io.sekretess.manager;
 
+import io.sekretess.client.ResumableUploadConfig;
 import io.sekretess.client.SekretessServerClient;
 import io.sekretess.client.response.ConsumerKeysResponse;
 import io.sekretess.client.response.FileUploadResponse;
@@ -7,15 +8,20 @@ import io.sekretess.client.response.SendAdsMessageResponse;
 import io.sekretess.client.response.SendMessageResponse;
 import io.sekretess.exception.MessageSendException;
 import io.sekretess.exception.PrekeyBundleException;
+import io.sekretess.model.FileSendReport;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.store.AsyncSessionStore;
 import io.sekretess.store.InMemoryGroupSessionStore;
 import io.sekretess.store.InMemoryIdentityStore;
 import io.sekretess.store.InMemorySessionStore;
+import io.sekretess.store.InMemoryVersionedSessionStore;
 import io.sekretess.store.SekretessSignalProtocolStore;
+import io.sekretess.store.SessionCacheConfig;
+import io.sekretess.util.EncryptedFileUpload;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.signal.libsignal.protocol.IdentityKey;
@@ -24,17 +30,28 @@ import org.signal.libsignal.protocol.SignalProtocolAddress;
 import org.signal.libsignal.protocol.ecc.ECKeyPair;
 import org.signal.libsignal.protocol.kem.KEMKeyPair;
 import org.signal.libsignal.protocol.kem.KEMKeyType;
+import org.signal.libsignal.protocol.message.PreKeySignalMessage;
 import org.signal.libsignal.protocol.util.KeyHelper;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -169,6 +186,25 @@ class SekretessManagerTest {
         // Manager is properly initialized with the mock
     }
 
+    @Test
+    void close_RemovesShutdownHook() throws Exception {
+        // Arrange
+        List<String> closed = new ArrayList<>();
+        manager.addResource(() -> closed.add("store"));
+        manager.closeOnShutdown();
+        manager.closeOnShutdown();
+        Field field = SekretessManager.class.getDeclaredField("shutdownHook");
+        field.setAccessible(true);
+        Thread shutdownHook = (Thread) field.get(manager);
+
+        // Act
+        manager.close();
+
+        // Assert
+        assertThat(closed).containsExactly("store");
+        assertThat(Runtime.getRuntime().removeShutdownHook(shutdownHook)).isFalse();
+    }
+
     // ==================== sendMessageToConsumer Tests ====================
 
     @Test
@@ -284,23 +320,20 @@ class SekretessManagerTest {
 
         ConsumerKeysResponse consumerKeys = generateValidConsumerKeys(consumer);
         when(mockServerClient.getConsumerKeys(consumer)).thenReturn(consumerKeys);
-        when(mockServerClient.uploadFile(any(Path.class), eq(consumer)))
+        when(mockServerClient.uploadFile(any(EncryptedFileUpload.class), eq(consumer)))
                 .thenAnswer(invocation -> {
-                    Path encryptedPath = invocation.getArgument(0);
-                    assertThat(Files.exists(encryptedPath)).isTrue();
-                    assertThat(Files.readAllBytes(encryptedPath)).isNotEqualTo(plaintext);
+                    EncryptedFileUpload encryptedFile = invocation.getArgument(0);
+                    byte[] ciphertext = readBody(encryptedFile.bodyPublisher());
+                    assertThat(ciphertext).hasSize((int) encryptedFile.ciphertextSize()).isNotEqualTo(plaintext);
                     return new FileUploadResponse("file-123", "signed-token", "2026-01-01T00:00:00Z");
                 });
         when(mockServerClient.sendFileMessage(anyString(), eq(consumer)))
                 .thenReturn(new SendMessageResponse(consumerKeys.ik(), false));
 
-        ArgumentCaptor<Path> uploadPathCaptor = ArgumentCaptor.forClass(Path.class);
-
         assertThatNoException().isThrownBy(() -> realManager.sendFileToConsumer(filePath, consumer));
 
-        verify(mockServerClient).uploadFile(uploadPathCaptor.capture(), eq(consumer));
+        verify(mockServerClient).uploadFile(any(EncryptedFileUpload.class), eq(consumer));
         verify(mockServerClient).sendFileMessage(anyString(), eq(consumer));
-        assertThat(Files.exists(uploadPathCaptor.getValue())).isFalse();
     }
 
     @Test
@@ -308,15 +341,179 @@ class SekretessManagerTest {
         Path filePath = tempDir.resolve("payload.txt");
         Files.writeString(filePath, "file-content");
 
-        ArgumentCaptor<Path> uploadPathCaptor = ArgumentCaptor.forClass(Path.class);
-        when(mockServerClient.uploadFile(uploadPathCaptor.capture(), eq("file-consumer")))
+        when(mockServerClient.uploadFile(any(EncryptedFileUpload.class), eq("file-consumer")))
                 .thenThrow(new IOException("upload failed"));
 
         assertThatThrownBy(() -> manager.sendFileToConsumer(filePath, "file-consumer"))
                 .isInstanceOf(MessageSendException.class)
                 .hasMessageContaining("upload failed");
 
-        assertThat(Files.exists(uploadPathCaptor.getValue())).isFalse();
+        verify(mockServerClient, never()).sendFileMessage(anyString(), anyString());
+    }
+
+    @Test
+    void sendFileToConsumer_ThrowsMessageSendException_WhenBodyWasNotUploadedCompletely() throws Exception {
+        Path filePath = tempDir.resolve("payload.txt");
+        Files.writeString(filePath, "file-content");
+
+        when(mockServerClient.uploadFile(any(EncryptedFileUpload.class), eq("file-consumer")))
+                .thenReturn(new FileUploadResponse("file-123", "signed-token", "2026-01-01T00:00:00Z"));
+
+        assertThatThrownBy(() -> manager.sendFileToConsumer(filePath, "file-consumer"))
+                .isInstanceOf(MessageSendException.class)
+                .hasMessageContaining("not been uploaded completely");
+
+        verify(mockServerClient, never()).sendFileMessage(anyString(), anyString());
+    }
+
+    @Test
+    void sendFileToConsumer_ReusesCachedUpload_WhenFileWasSentToAnotherConsumerBefore() throws Exception {
+        // Arrange
+        Path filePath = tempDir.resolve("terms.pdf");
+        Files.writeString(filePath, "terms");
+        SekretessManager realManager = new SekretessManager(new SekretessSignalProtocolStore(
+                IdentityKeyPair.generate(), KeyHelper.generateRegistrationId(false), sessionStore, groupSessionStore
+        ), mockServerClient);
+        realManager.setFileUploadCache(new FileUploadCacheConfig(10, Duration.ofMinutes(1)));
+        for (String consumer : List.of("consumer-1", "consumer-2")) {
+            ConsumerKeysResponse consumerKeys = generateValidConsumerKeys(consumer);
+            when(mockServerClient.getConsumerKeys(consumer)).thenReturn(consumerKeys);
+            when(mockServerClient.sendFileMessage(anyString(), eq(consumer)))
+                    .thenReturn(new SendMessageResponse(consumerKeys.ik(), false));
+        }
+        when(mockServerClient.uploadFile(any(EncryptedFileUpload.class)))
+                .thenAnswer(invocation -> {
+                    readBody(invocation.<EncryptedFileUpload>getArgument(0).bodyPublisher());
+                    return new FileUploadResponse("file-123", "signed-token", Instant.now().plus(Duration.ofHours(1)).toString());
+                });
+
+        // Act
+        realManager.sendFileToConsumer(filePath, "consumer-1");
+        realManager.sendFileToConsumer(filePath, "consumer-2");
+        realManager.sendFileToConsumers(filePath, List.of("consumer-1", "consumer-2"));
+
+        // Assert
+        verify(mockServerClient, times(1)).uploadFile(any(EncryptedFileUpload.class));
+        verify(mockServerClient, never()).uploadFile(any(EncryptedFileUpload.class), anyString());
+        verify(mockServerClient, times(2)).sendFileMessage(anyString(), eq("consumer-1"));
+        verify(mockServerClient, times(2)).sendFileMessage(anyString(), eq("consumer-2"));
+        assertThat(realManager.getFileUploadCacheStats().hitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void getFileUploadCacheStats_ReturnsNull_WhenCacheIsDisabled() {
+        assertThat(manager.getFileUploadCacheStats()).isNull();
+    }
+
+    @Test
+    void setResumableUpload_RejectsChunkSizeOtherThanFileChunkSize() {
+        // Arrange
+        manager.setFileChunkSize(64 * 1024);
+
+        // Act & Assert
+        assertThatThrownBy(() -> manager.setResumableUpload(ResumableUploadConfig.defaults(tempDir)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("chunk size");
+        manager.setFileChunkSize(ResumableUploadConfig.DEFAULT_CHUNK_SIZE);
+        manager.setResumableUpload(ResumableUploadConfig.defaults(tempDir));
+    }
+
+    // ==================== sendFileToConsumers Tests ====================
+
+    @Test
+    void sendFileToConsumers_UploadsOnceAndSendsFileMessageToEveryConsumer() throws Exception {
+        // Arrange
+        Path filePath = tempDir.resolve("payload.txt");
+        Files.writeString(filePath, "file-content");
+        SekretessManager realManager = new SekretessManager(new SekretessSignalProtocolStore(
+                IdentityKeyPair.generate(), KeyHelper.generateRegistrationId(false), sessionStore, groupSessionStore
+        ), mockServerClient);
+        realManager.setFileSendParallelism(4);
+        List<String> consumers = List.of("consumer-1", "consumer-2", "consumer-3", "consumer-1");
+        for (String consumer : List.of("consumer-1", "consumer-2", "consumer-3")) {
+            ConsumerKeysResponse consumerKeys = generateValidConsumerKeys(consumer);
+            when(mockServerClient.getConsumerKeys(consumer)).thenReturn(consumerKeys);
+            when(mockServerClient.sendFileMessage(anyString(), eq(consumer)))
+                    .thenReturn(new SendMessageResponse(consumerKeys.ik(), false));
+        }
+        when(mockServerClient.uploadFile(any(EncryptedFileUpload.class)))
+                .thenAnswer(invocation -> {
+                    readBody(invocation.<EncryptedFileUpload>getArgument(0).bodyPublisher());
+                    return new FileUploadResponse("file-123", "signed-token", "2026-01-01T00:00:00Z");
+                });
+
+        // Act
+        FileSendReport report = realManager.sendFileToConsumers(filePath, consumers);
+
+        // Assert
+        assertThat(report.fileId()).isEqualTo("file-123");
+        assertThat(report.delivered()).isEqualTo(3);
+        assertThat(report.allDelivered()).isTrue();
+        verify(mockServerClient).uploadFile(any(EncryptedFileUpload.class));
+        verify(mockServerClient, never()).uploadFile(any(EncryptedFileUpload.class), anyString());
+        verify(mockServerClient, times(3)).sendFileMessage(anyString(), anyString());
+    }
+
+    @Test
+    void sendFileToConsumers_ReportsConsumersThatFailed() throws Exception {
+        // Arrange
+        Path filePath = tempDir.resolve("payload.txt");
+        Files.writeString(filePath, "file-content");
+        SekretessManager realManager = new SekretessManager(new SekretessSignalProtocolStore(
+                IdentityKeyPair.generate(), KeyHelper.generateRegistrationId(false), sessionStore, groupSessionStore
+        ), mockServerClient);
+        ConsumerKeysResponse consumerKeys = generateValidConsumerKeys("good-consumer");
+        when(mockServerClient.getConsumerKeys("good-consumer")).thenReturn(consumerKeys);
+        when(mockServerClient.getConsumerKeys("bad-consumer")).thenThrow(new IOException("no keys"));
+        when(mockServerClient.sendFileMessage(anyString(), eq("good-consumer")))
+                .thenReturn(new SendMessageResponse(consumerKeys.ik(), false));
+        when(mockServerClient.uploadFile(any(EncryptedFileUpload.class)))
+                .thenAnswer(invocation -> {
+                    readBody(invocation.<EncryptedFileUpload>getArgument(0).bodyPublisher());
+                    return new FileUploadResponse("file-123", "signed-token", "2026-01-01T00:00:00Z");
+                });
+
+        // Act
+        FileSendReport report = realManager.sendFileToConsumers(filePath, List.of("good-consumer", "bad-consumer"));
+
+        // Assert
+        assertThat(report.delivered()).isEqualTo(1);
+        assertThat(report.failures()).containsOnlyKeys("bad-consumer");
+        assertThat(report.failures().get("bad-consumer")).isInstanceOf(PrekeyBundleException.class);
+    }
+
+    @Test
+    void sendFileToConsumers_ThrowsMessageSendException_WhenManagerIsClosed() throws Exception {
+        // Arrange
+        Path filePath = tempDir.resolve("payload.txt");
+        Files.writeString(filePath, "file-content");
+        when(mockServerClient.uploadFile(any(EncryptedFileUpload.class)))
+                .thenAnswer(invocation -> {
+                    readBody(invocation.<EncryptedFileUpload>getArgument(0).bodyPublisher());
+                    return new FileUploadResponse("file-123", "signed-token", "2026-01-01T00:00:00Z");
+                });
+        manager.close();
+
+        // Act & Assert
+        assertThatThrownBy(() -> manager.sendFileToConsumers(filePath, List.of("consumer-1")))
+                .isInstanceOf(MessageSendException.class)
+                .hasMessageContaining("closed");
+        verify(mockServerClient, never()).sendFileMessage(anyString(), anyString());
+    }
+
+    @Test
+    void sendFileToConsumers_ThrowsMessageSendException_WhenUploadFails() throws Exception {
+        // Arrange
+        Path filePath = tempDir.resolve("payload.txt");
+        Files.writeString(filePath, "file-content");
+        when(mockServerClient.uploadFile(any(EncryptedFileUpload.class)))
+                .thenThrow(new IOException("upload failed"));
+
+        // Act & Assert
+        assertThatThrownBy(() -> manager.sendFileToConsumers(filePath, List.of("consumer-1", "consumer-2")))
+                .isInstanceOf(MessageSendException.class)
+                .hasMessageContaining("upload failed");
+        verify(mockServerClient, never()).sendFileMessage(anyString(), anyString());
     }
 
     // ==================== deleteUserSession Edge Cases ====================
@@ -515,6 +712,67 @@ class SekretessManagerTest {
         verify(mockServerClient, times(2)).sendMessage(anyString(), eq(consumer));
     }
 
+    @Test
+    void sendMessageToConsumer_RetriesEncrypt_WhenSharedSessionWasAdvancedByAnotherInstance() throws Exception {
+        // Arrange
+        String consumer = "shared-consumer";
+        IdentityKeyPair businessIdentityKeyPair = IdentityKeyPair.generate();
+        int registrationId = KeyHelper.generateRegistrationId(false);
+        InMemoryVersionedSessionStore sharedSessionStore = new InMemoryVersionedSessionStore();
+
+        SekretessSignalProtocolStore firstProtocolStore = new SekretessSignalProtocolStore(
+                businessIdentityKeyPair, registrationId, sharedSessionStore, groupSessionStore, SessionCacheConfig.unbounded(), true
+        );
+        SekretessSignalProtocolStore secondProtocolStore = new SekretessSignalProtocolStore(
+                businessIdentityKeyPair, registrationId, sharedSessionStore, groupSessionStore, SessionCacheConfig.unbounded(), true
+        );
+        SekretessManager firstManager = new SekretessManager(firstProtocolStore, mockServerClient);
+        SekretessManager secondManager = new SekretessManager(secondProtocolStore, mockServerClient);
+
+        ConsumerKeysResponse consumerKeys = generateValidConsumerKeys(consumer);
+        when(mockServerClient.getConsumerKeys(consumer)).thenReturn(consumerKeys);
+        when(mockServerClient.sendMessage(anyString(), eq(consumer))).thenReturn(new SendMessageResponse(consumerKeys.ik(), false));
+
+        // Act - the second instance advances the session the first instance still has cached
+        firstManager.sendMessageToConsumer("First message", consumer);
+        secondManager.sendMessageToConsumer("Second message", consumer);
+        firstManager.sendMessageToConsumer("Third message", consumer);
+
+        // Assert
+        verify(mockServerClient, times(1)).getConsumerKeys(consumer);
+        verify(mockServerClient, times(3)).sendMessage(anyString(), eq(consumer));
+        assertThat(firstManager.getSessionWriteStats().writeConflicts()).isEqualTo(1);
+        assertThat(sharedSessionStore.version(consumer)).isEqualTo(4);
+    }
+
+    @Test
+    void sendMessageToConsumer_ContinuesSentSession_WhenAsyncSessionWriteFailed() throws Exception {
+        // Arrange
+        String consumer = "async-consumer";
+        SekretessSignalProtocolStore asyncProtocolStore = new SekretessSignalProtocolStore(IdentityKeyPair.generate(),
+                KeyHelper.generateRegistrationId(false), new FailingAsyncSessionStore(), groupSessionStore,
+                new SessionCacheConfig(10, 0, null), null);
+        SekretessManager asyncManager = new SekretessManager(asyncProtocolStore, mockServerClient);
+        ConsumerKeysResponse consumerKeys = generateValidConsumerKeys(consumer);
+        when(mockServerClient.getConsumerKeys(consumer)).thenReturn(consumerKeys);
+        List<String> sentMessages = new ArrayList<>();
+        when(mockServerClient.sendMessage(anyString(), eq(consumer))).thenAnswer(invocation -> {
+            sentMessages.add(invocation.getArgument(0));
+            return new SendMessageResponse(consumerKeys.ik(), false);
+        });
+
+        // Act
+        asyncManager.sendMessageToConsumer("First message", consumer);
+        asyncManager.sendMessageToConsumer("Second message", consumer);
+
+        // Assert
+        verify(mockServerClient, times(1)).getConsumerKeys(consumer);
+        assertThat(sentMessages).extracting(message ->
+                new PreKeySignalMessage(Base64.getDecoder().decode(message)).getWhisperMessage().getCounter())
+                .containsExactly(0, 1);
+        assertThat(asyncManager.getSessionWriteStats().writeFailures()).isPositive();
+    }
+
     @Test
     void sendAdsMessage_Success_WithValidGroupSession() throws Exception {
         // Arrange
@@ -665,4 +923,60 @@ class SekretessManagerTest {
         field.setAccessible(true);
         field.set(manager, value);
     }
+
+    private static byte[] readBody(HttpRequest.BodyPublisher publisher) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                body.writeBytes(bytes);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get();
+        return body.toByteArray();
+    }
+
+    /**
+     * Async session store whose writes always fail, like a database that went away after the session was loaded.
+     */
+    private static class FailingAsyncSessionStore implements AsyncSessionStore {
+
+        @Override
+        public CompletionStage<Void> saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+            return CompletableFuture.failedFuture(new IllegalStateException("database unavailable"));
+        }
+
+        @Override
+        public CompletionStage<SessionRecordData> loadSessionRecord(String name, int deviceId) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<Void> loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<Void> deleteSession(String name) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
 }
@@ -0,0 +1,158 @@
+package io.sekretess.store;
+
+import io.sekretess.exception.StoreException;
+import io.sekretess.model.GroupSessionRecordData;
+import io.sekretess.model.SessionRecordData;
+import org.junit.jupiter.api.Test;
+import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.SignalProtocolAddress;
+import org.signal.libsignal.protocol.state.SessionRecord;
+import org.signal.libsignal.protocol.util.KeyHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the async store interfaces, their adapters and async session writes of the protocol store.
+ */
+class AsyncStoreAdaptersTest {
+
+    @Test
+    void testExecutorAdapterRoundTrip() {
+        // Arrange
+        InMemorySessionStore sessionStore = new InMemorySessionStore();
+        AsyncSessionStore asyncSessionStore = AsyncSessionStore.of(sessionStore, Runnable::run);
+
+        // Act
+        asyncSessionStore.saveSessionRecord("consumer", 123, new byte[]{1, 2}).toCompletableFuture().join();
+        SessionRecordData loaded = asyncSessionStore.loadSessionRecord("consumer", 123).toCompletableFuture().join();
+
+        // Assert
+        assertThat(loaded.sessionRecord()).containsExactly(1, 2);
+        assertThat(asyncSessionStore.toBlocking()).isSameAs(sessionStore);
+    }
+
+    @Test
+    void testBlockingAdapterWaitsForAsyncStore() {
+        // Arrange
+        InMemoryAsyncGroupSessionStore asyncGroupSessionStore = new InMemoryAsyncGroupSessionStore();
+        GroupSessionStore groupSessionStore = asyncGroupSessionStore.toBlocking();
+
+        // Act
+        groupSessionStore.saveSendDistributionMessage("business", 1, "dist-1", "BAU=");
+        groupSessionStore.saveGroupSessionRecord("business", 1, "dist-1", new byte[]{7});
+
+        // Assert
+        assertThat(groupSessionStore.loadGroupSession("business").businessDistributionMessage()).isEqualTo("BAU=");
+        assertThat(groupSessionStore.loadGroupSessionRecord("business").sessionRecord()).containsExactly(7);
+        assertThat(AsyncGroupSessionStore.of(groupSessionStore, Runnable::run)).isSameAs(asyncGroupSessionStore);
+    }
+
+    @Test
+    void testBlockingAdapterUnwrapsFailures() {
+        // Arrange
+        SessionStore sessionStore = new FailingAsyncSessionStore(new IllegalStateException("database unavailable")).toBlocking();
+        SessionStore checkedFailure = new FailingAsyncSessionStore(new IOException("connection reset")).toBlocking();
+
+        // Act & Assert
+        assertThatThrownBy(() -> sessionStore.saveSessionRecord("consumer", 123, new byte[]{1}))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("database unavailable");
+        assertThatThrownBy(() -> checkedFailure.deleteSession("consumer"))
+                .isInstanceOf(StoreException.class)
+                .hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void testProtocolStoreDoesNotWaitForAsyncSessionWrites() {
+        // Arrange
+        InMemorySessionStore sessionStore = new InMemorySessionStore();
+        List<Runnable> queued = new ArrayList<>();
+        SekretessSignalProtocolStore store = new SekretessSignalProtocolStore(IdentityKeyPair.generate(),
+                KeyHelper.generateRegistrationId(false), AsyncSessionStore.of(sessionStore, queued::add),
+                new InMemoryGroupSessionStore(), SessionCacheConfig.unbounded(), null);
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+
+        // Act
+        store.storeSession(address, new SessionRecord());
+        CompletableFuture<Void> pending = store.pendingSessionWrites(address);
+
+        // Assert
+        assertThat(pending).isNotDone();
+        assertThat(sessionStore.size()).isZero();
+        assertThat(store.loadSession(address)).isNotNull();
+        queued.forEach(Runnable::run);
+        assertThat(pending).isCompleted();
+        assertThat(sessionStore.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testProtocolStoreReportsFailedAsyncSessionWriteOnce() {
+        // Arrange
+        SekretessSignalProtocolStore store = new SekretessSignalProtocolStore(IdentityKeyPair.generate(),
+                KeyHelper.generateRegistrationId(false), new FailingAsyncSessionStore(new IllegalStateException("database unavailable")),
+                new InMemoryGroupSessionStore(), SessionCacheConfig.unbounded(), null);
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+
+        // Act
+        store.storeSession(address, new SessionRecord());
+
+        // Assert
+        assertThatThrownBy(() -> store.pendingSessionWrites(address).join())
+                .isInstanceOf(CompletionException.class)
+                .hasRootCauseMessage("database unavailable");
+        assertThat(store.pendingSessionWrites(address)).isCompleted();
+        assertThat(store.containsSession(address)).isFalse();
+    }
+
+    private static class InMemoryAsyncGroupSessionStore implements AsyncGroupSessionStore {
+        private final GroupSessionStore delegate = new InMemoryGroupSessionStore();
+
+        @Override
+        public CompletionStage<Void> saveGroupSessionRecord(String name, int deviceId, String distributionId, byte[] sessionRecord) {
+            delegate.saveGroupSessionRecord(name, deviceId, distributionId, sessionRecord);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<Void> saveSendDistributionMessageRecord(String name, int deviceId, String distributionId, byte[] businessDistributionMessage) {
+            delegate.saveSendDistributionMessageRecord(name, deviceId, distributionId, businessDistributionMessage);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<GroupSessionRecordData> loadGroupSessionRecord(String name) {
+            return CompletableFuture.completedFuture(delegate.loadGroupSessionRecord(name));
+        }
+    }
+
+    private record FailingAsyncSessionStore(Throwable failure) implements AsyncSessionStore {
+
+        @Override
+        public CompletionStage<Void> saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+            return CompletableFuture.failedFuture(failure);
+        }
+
+        @Override
+        public CompletionStage<SessionRecordData> loadSessionRecord(String name, int deviceId) {
+            return CompletableFuture.failedFuture(failure);
+        }
+
+        @Override
+        public CompletionStage<Void> loadAllRecords(int pageSize, Consumer<List<SessionRecordData>> pageConsumer) {
+            return CompletableFuture.failedFuture(failure);
+        }
+
+        @Override
+        public CompletionStage<Void> deleteSession(String name) {
+            return CompletableFuture.failedFuture(failure);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package io.sekretess.store;
 
 import io.sekretess.model.GroupSessionData;
+import io.sekretess.model.GroupSessionRecordData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Base64;
+
 import static org.assertj.core.api.Assertions.*;
 
 /**
@@ -149,5 +152,36 @@ class InMemoryGroupSessionStoreTest {
         // Assert
         assertThat(loaded.deviceId()).isEqualTo(0);
     }
-}
 
+    @Test
+    void testBinaryRecordBridgesToBase64() {
+        // Arrange
+        byte[] distributionMessage = new byte[]{9, 8, 7};
+        byte[] senderKeyRecord = new byte[]{1, 2, 3};
+
+        // Act
+        store.saveSendDistributionMessageRecord("business", 1, "dist-id", distributionMessage);
+        store.saveGroupSessionRecord("business", 1, "dist-id", senderKeyRecord);
+
+        // Assert
+        GroupSessionData stored = store.loadGroupSession("business");
+        assertThat(stored.sessionRecord()).isEqualTo(Base64.getEncoder().encodeToString(senderKeyRecord));
+        GroupSessionRecordData loaded = store.loadGroupSessionRecord("business");
+        assertThat(loaded.distributionId()).isEqualTo("dist-id");
+        assertThat(loaded.sessionRecord()).isEqualTo(senderKeyRecord);
+        assertThat(loaded.businessDistributionMessage()).isEqualTo(distributionMessage);
+    }
+
+    @Test
+    void testLoadGroupSessionRecordWithoutSenderKey() {
+        // Arrange
+        store.saveSendDistributionMessageRecord("business", 1, "dist-id", new byte[]{1});
+
+        // Act
+        GroupSessionRecordData loaded = store.loadGroupSessionRecord("business");
+
+        // Assert
+        assertThat(loaded.sessionRecord()).isNull();
+        assertThat(store.loadGroupSessionRecord("unknown")).isNull();
+    }
+}
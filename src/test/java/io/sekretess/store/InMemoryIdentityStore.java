@@ -1,9 +1,13 @@
 package io.sekretess.store;
 
+import io.sekretess.model.ConsumerIdentityData;
 import io.sekretess.model.IdentityKeyData;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * In-memory implementation of IdentityStore for testing.
@@ -11,6 +15,7 @@ import java.util.Map;
 public class InMemoryIdentityStore implements IdentityStore {
 
     private final Map<String, IdentityKeyData> store = new HashMap<>();
+    private final Map<String, ConsumerIdentityData> consumerIdentities = new HashMap<>();
 
     @Override
     public IdentityKeyData loadIdentity(String username) {
@@ -22,11 +27,35 @@ public class InMemoryIdentityStore implements IdentityStore {
         store.put(username, new IdentityKeyData(username, serializedIdentityKeyPair, registrationId));
     }
 
+    @Override
+    public boolean supportsConsumerIdentities() {
+        return true;
+    }
+
+    @Override
+    public void saveConsumerIdentity(String name, int deviceId, byte[] identityKey) {
+        consumerIdentities.put(name + ":" + deviceId, new ConsumerIdentityData(name, deviceId, identityKey));
+    }
+
+    @Override
+    public ConsumerIdentityData loadConsumerIdentity(String name, int deviceId) {
+        return consumerIdentities.get(name + ":" + deviceId);
+    }
+
+    @Override
+    public void loadAllConsumerIdentities(int pageSize, Consumer<List<ConsumerIdentityData>> pageConsumer) {
+        List<ConsumerIdentityData> all = new ArrayList<>(consumerIdentities.values());
+        for (int from = 0; from < all.size(); from += pageSize) {
+            pageConsumer.accept(all.subList(from, Math.min(from + pageSize, all.size())));
+        }
+    }
+
     /**
      * Clear all stored identities (useful for test cleanup).
      */
     public void clear() {
         store.clear();
+        consumerIdentities.clear();
     }
 
     /**
@@ -35,5 +64,12 @@ public class InMemoryIdentityStore implements IdentityStore {
     public int size() {
         return store.size();
     }
+
+    /**
+     * Get the number of stored consumer identities.
+     */
+    public int consumerIdentityCount() {
+        return consumerIdentities.size();
+    }
 }
 
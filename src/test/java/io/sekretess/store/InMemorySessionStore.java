@@ -24,6 +24,17 @@ public class InMemorySessionStore implements SessionStore {
         return new ArrayList<>(store.values());
     }
 
+    @Override
+    public SessionData loadSession(String name, int deviceId) {
+        SessionData sessionData = store.get(name);
+        return sessionData != null && sessionData.deviceId() == deviceId ? sessionData : null;
+    }
+
+    @Override
+    public boolean supportsKeyedLoad() {
+        return true;
+    }
+
     @Override
     public void deleteSession(String name) {
         store.remove(name);
@@ -1,9 +1,12 @@
 package io.sekretess.store;
 
 import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
@@ -163,5 +166,77 @@ class InMemorySessionStoreTest {
         // Assert
         assertThat(all.get(0).deviceId()).isEqualTo(0);
     }
-}
 
+    @Test
+    void testLoadAllInPages() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            store.saveSession("consumer" + i, 1, "record" + i);
+        }
+        List<Integer> pageSizes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        // Act
+        store.loadAll(2, page -> {
+            pageSizes.add(page.size());
+            page.forEach(sessionData -> names.add(sessionData.name()));
+        });
+
+        // Assert
+        assertThat(pageSizes).containsExactly(2, 2, 1);
+        assertThat(names).containsExactlyInAnyOrder("consumer0", "consumer1", "consumer2", "consumer3", "consumer4");
+    }
+
+    @Test
+    void testLoadAllInPagesEmpty() {
+        // Arrange
+        List<List<SessionData>> pages = new ArrayList<>();
+
+        // Act
+        store.loadAll(10, pages::add);
+
+        // Assert
+        assertThat(pages).isEmpty();
+    }
+
+    @Test
+    void testLoadAllInPagesRejectsNonPositivePageSize() {
+        // Act & Assert
+        assertThatThrownBy(() -> store.loadAll(0, page -> {
+        })).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testBinaryRecordBridgesToBase64() {
+        // Arrange
+        byte[] record = new byte[]{0, 1, 2, (byte) 0xFF};
+
+        // Act
+        store.saveSessionRecord("consumer", 1, record);
+
+        // Assert
+        assertThat(store.loadAll().get(0).base64SessionRecord()).isEqualTo(Base64.getEncoder().encodeToString(record));
+        SessionRecordData loaded = store.loadSessionRecord("consumer", 1);
+        assertThat(loaded.name()).isEqualTo("consumer");
+        assertThat(loaded.sessionRecord()).isEqualTo(record);
+        assertThat(store.loadSessionRecord("unknown", 1)).isNull();
+    }
+
+    @Test
+    void testLoadAllRecordsInPages() {
+        // Arrange
+        store.saveSessionRecords(List.of(
+                new SessionRecordData("consumer1", 1, new byte[]{1}),
+                new SessionRecordData("consumer2", 1, new byte[]{2}),
+                new SessionRecordData("consumer3", 1, new byte[]{3})));
+        List<SessionRecordData> loaded = new ArrayList<>();
+
+        // Act
+        store.loadAllRecords(2, loaded::addAll);
+
+        // Assert
+        assertThat(loaded).hasSize(3);
+        assertThat(loaded.stream().map(data -> data.sessionRecord()[0]))
+                .containsExactlyInAnyOrder((byte) 1, (byte) 2, (byte) 3);
+    }
+}
@@ -0,0 +1,68 @@
+package io.sekretess.store;
+
+import io.sekretess.model.SessionData;
+import io.sekretess.model.VersionedSessionRecordData;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory implementation of a versioned SessionStore for testing optimistic locking.
+ */
+public class InMemoryVersionedSessionStore implements SessionStore {
+
+    private final Map<String, VersionedSessionRecordData> store = new HashMap<>();
+
+    @Override
+    public synchronized void saveSession(String name, int deviceId, String base64EncodedRecord) {
+        VersionedSessionRecordData current = store.get(name);
+        long version = current == null ? 1 : current.version() + 1;
+        store.put(name, new VersionedSessionRecordData(name, deviceId, Base64.getDecoder().decode(base64EncodedRecord), version));
+    }
+
+    @Override
+    public synchronized List<SessionData> loadAll() {
+        List<SessionData> sessions = new ArrayList<>();
+        store.values().forEach(session -> sessions.add(new SessionData(session.name(), session.deviceId(),
+                Base64.getEncoder().encodeToString(session.sessionRecord()))));
+        return sessions;
+    }
+
+    @Override
+    public synchronized void deleteSession(String name) {
+        store.remove(name);
+    }
+
+    @Override
+    public boolean supportsVersioning() {
+        return true;
+    }
+
+    @Override
+    public synchronized VersionedSessionRecordData loadVersionedSessionRecord(String name, int deviceId) {
+        VersionedSessionRecordData session = store.get(name);
+        return session != null && session.deviceId() == deviceId ? session : null;
+    }
+
+    @Override
+    public synchronized boolean compareAndSetSessionRecord(String name, int deviceId, byte[] sessionRecord, long expectedVersion) {
+        VersionedSessionRecordData current = store.get(name);
+        long currentVersion = current == null ? 0 : current.version();
+        if (currentVersion != expectedVersion) {
+            return false;
+        }
+        store.put(name, new VersionedSessionRecordData(name, deviceId, sessionRecord, expectedVersion + 1));
+        return true;
+    }
+
+    /**
+     * Get the stored version of a session, or 0 if none is stored.
+     */
+    public synchronized long version(String name) {
+        VersionedSessionRecordData session = store.get(name);
+        return session == null ? 0 : session.version();
+    }
+}
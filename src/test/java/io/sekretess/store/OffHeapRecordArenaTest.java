@@ -0,0 +1,65 @@
+package io.sekretess.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for OffHeapRecordArena.
+ */
+class OffHeapRecordArenaTest {
+
+    @Test
+    void allocate_ReadsBackRecord() {
+        // Arrange
+        OffHeapRecordArena arena = new OffHeapRecordArena(1024 * 1024);
+
+        // Act
+        OffHeapRecordArena.Block block = arena.allocate(new byte[]{1, 2, 3});
+
+        // Assert
+        assertThat(arena.read(block)).containsExactly(1, 2, 3);
+        assertThat(arena.usedBytes()).isEqualTo(64);
+        assertThat(arena.allocatedBytes()).isEqualTo(1024 * 1024);
+    }
+
+    @Test
+    void free_ReusesBlockAndDetectsStaleReads() {
+        // Arrange
+        OffHeapRecordArena arena = new OffHeapRecordArena(1024 * 1024);
+        OffHeapRecordArena.Block freed = arena.allocate(new byte[]{1});
+        arena.free(freed);
+
+        // Act
+        OffHeapRecordArena.Block reused = arena.allocate(new byte[]{2});
+
+        // Assert
+        assertThat(reused.address()).isEqualTo(freed.address());
+        assertThat(arena.read(freed)).isNull();
+        assertThat(arena.read(reused)).containsExactly(2);
+        assertThat(arena.usedBytes()).isEqualTo(64);
+    }
+
+    @Test
+    void allocate_ReturnsNullWhenCapacityIsExhausted() {
+        // Arrange
+        OffHeapRecordArena arena = new OffHeapRecordArena(128);
+        arena.allocate(new byte[56]);
+
+        // Act
+        OffHeapRecordArena.Block second = arena.allocate(new byte[56]);
+        OffHeapRecordArena.Block third = arena.allocate(new byte[1]);
+
+        // Assert
+        assertThat(second).isNotNull();
+        assertThat(third).isNull();
+        assertThat(arena.allocate(new byte[200])).isNull();
+    }
+
+    @Test
+    void constructor_RejectsNonPositiveCapacity() {
+        // Act & Assert
+        assertThatThrownBy(() -> new OffHeapRecordArena(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,146 @@
+package io.sekretess.store;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import io.sekretess.model.SessionData;
+import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.SessionBuilder;
+import org.signal.libsignal.protocol.SessionCipher;
+import org.signal.libsignal.protocol.SignalProtocolAddress;
+import org.signal.libsignal.protocol.ecc.ECKeyPair;
+import org.signal.libsignal.protocol.kem.KEMKeyPair;
+import org.signal.libsignal.protocol.kem.KEMKeyType;
+import org.signal.libsignal.protocol.state.PreKeyBundle;
+import org.signal.libsignal.protocol.util.KeyHelper;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap footprint and GC activity of the session cache with records on the heap and off the heap. Every consumer
+ * gets a copy of one real session, and the measured phase encrypts for random consumers, which deserializes,
+ * ratchets and stores their sessions. Not run by the build; run each mode in its own JVM with the same heap size,
+ * e.g. {@code java -Xmx4g -XX:MaxDirectMemorySize=4g -cp target/classes:target/test-classes:<dependencies>
+ * io.sekretess.store.OffHeapSessionCacheBenchmark heap|off-heap [sessions] [encrypts]}.
+ */
+public class OffHeapSessionCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        boolean offHeap = args.length > 0 && args[0].equals("off-heap");
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        int encrypts = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        AtomicLong maxPauseMillis = trackMaxGcPause();
+
+        long heapBefore = usedHeapAfterGc();
+        SessionCacheConfig config = offHeap
+                ? SessionCacheConfig.unbounded().withOffHeapBytes(4L * 1024 * 1024 * 1024)
+                : SessionCacheConfig.unbounded();
+        SekretessSignalProtocolStore store = new SekretessSignalProtocolStore(IdentityKeyPair.generate(),
+                KeyHelper.generateRegistrationId(false), new DiscardingSessionStore(), new InMemoryGroupSessionStore(), config);
+        byte[] record = establishedSession();
+        for (int i = 0; i < sessions; i++) {
+            store.restoreSession(new SignalProtocolAddress("consumer" + i, 1), record.clone());
+        }
+        long heapAfterRestore = usedHeapAfterGc();
+
+        long collectionsBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        maxPauseMillis.set(0);
+        Random random = new Random(42);
+        byte[] message = "benchmark message".getBytes(StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        for (int i = 0; i < encrypts; i++) {
+            new SessionCipher(store, new SignalProtocolAddress("consumer" + random.nextInt(sessions), 1)).encrypt(message);
+        }
+        long encryptNanos = System.nanoTime() - start;
+
+        System.out.printf("%-8s %,d sessions of %,d bytes: heap %,d MB (%,d bytes/session), direct %,d MB%n",
+                offHeap ? "off-heap" : "heap", sessions, record.length, (heapAfterRestore - heapBefore) >> 20,
+                (heapAfterRestore - heapBefore) / sessions, directMemoryUsed() >> 20);
+        System.out.printf("%-8s %,d encrypts: %,.0f encrypts/s, %d collections, %,d ms GC, max pause %,d ms%n",
+                offHeap ? "off-heap" : "heap", encrypts, encrypts / (encryptNanos / 1e9),
+                gcCount() - collectionsBefore, gcMillis() - gcMillisBefore, maxPauseMillis.get());
+    }
+
+    private static byte[] establishedSession() throws Exception {
+        IdentityKeyPair consumerIdentity = IdentityKeyPair.generate();
+        ECKeyPair preKey = ECKeyPair.generate();
+        ECKeyPair signedPreKey = ECKeyPair.generate();
+        KEMKeyPair kyberPreKey = KEMKeyPair.generate(KEMKeyType.KYBER_1024);
+        PreKeyBundle bundle = new PreKeyBundle(KeyHelper.generateRegistrationId(false), 1,
+                1, preKey.getPublicKey(),
+                2, signedPreKey.getPublicKey(), consumerIdentity.getPrivateKey().calculateSignature(signedPreKey.getPublicKey().serialize()),
+                consumerIdentity.getPublicKey(),
+                3, kyberPreKey.getPublicKey(), consumerIdentity.getPrivateKey().calculateSignature(kyberPreKey.getPublicKey().serialize()));
+        SignalProtocolAddress address = new SignalProtocolAddress("template", 1);
+        SekretessSignalProtocolStore template = new SekretessSignalProtocolStore(IdentityKeyPair.generate(),
+                KeyHelper.generateRegistrationId(false), new DiscardingSessionStore(), new InMemoryGroupSessionStore());
+        new SessionBuilder(template, address).process(bundle);
+        return template.loadSession(address).serialize();
+    }
+
+    private static AtomicLong trackMaxGcPause() {
+        AtomicLong maxPauseMillis = new AtomicLong();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    long duration = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                            .getGcInfo().getDuration();
+                    maxPauseMillis.accumulateAndGet(duration, Math::max);
+                }
+            }, null, null);
+        }
+        return maxPauseMillis;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directMemoryUsed() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    /**
+     * Keeps nothing, so that only the cache occupies memory.
+     */
+    private static final class DiscardingSessionStore implements SessionStore {
+
+        @Override
+        public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+        }
+
+        @Override
+        public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+        }
+
+        @Override
+        public List<SessionData> loadAll() {
+            return List.of();
+        }
+
+        @Override
+        public void deleteSession(String name) {
+        }
+    }
+}
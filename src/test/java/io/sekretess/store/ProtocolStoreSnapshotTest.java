@@ -0,0 +1,218 @@
+package io.sekretess.store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.SignalProtocolAddress;
+import org.signal.libsignal.protocol.groups.GroupSessionBuilder;
+import org.signal.libsignal.protocol.state.SessionRecord;
+import org.signal.libsignal.protocol.util.KeyHelper;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for ProtocolStoreSnapshot.
+ */
+class ProtocolStoreSnapshotTest {
+
+    private static final String LAYOUT = "shard 0 of 1";
+
+    @TempDir
+    Path directory;
+
+    private IdentityKeyPair identityKeyPair;
+    private int registrationId;
+    private ProtocolStoreSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        identityKeyPair = IdentityKeyPair.generate();
+        registrationId = KeyHelper.generateRegistrationId(false);
+        snapshot = new ProtocolStoreSnapshot(directory.resolve("protocol.snapshot"));
+    }
+
+    @Test
+    void restore_RestoresSessionsIdentitiesAndSenderKeys() throws Exception {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore();
+        SignalProtocolAddress consumer = new SignalProtocolAddress("consumer", 1);
+        SignalProtocolAddress business = new SignalProtocolAddress("business", 1);
+        UUID distributionId = UUID.randomUUID();
+        store.storeSession(consumer, new SessionRecord());
+        store.saveIdentity(consumer, IdentityKeyPair.generate().getPublicKey());
+        new GroupSessionBuilder(store).create(business, distributionId);
+        ProtocolStoreSnapshot.Summary written = snapshot.write(store, LAYOUT);
+        InMemorySessionStore restartedSessionStore = new InMemorySessionStore();
+        SekretessSignalProtocolStore restarted = createStore(restartedSessionStore);
+
+        // Act
+        ProtocolStoreSnapshot.Summary restored = snapshot.restore(restarted, LAYOUT, consumerName -> true);
+
+        // Assert
+        assertThat(restored).isEqualTo(written);
+        assertThat(restored).isEqualTo(new ProtocolStoreSnapshot.Summary(written.watermarkMillis(), 1, 1, 1));
+        assertThat(restarted.loadSession(consumer).serialize()).isEqualTo(store.loadSession(consumer).serialize());
+        assertThat(restarted.getIdentity(consumer)).isEqualTo(store.getIdentity(consumer));
+        assertThat(restarted.loadSenderKey(business, distributionId).serialize())
+                .isEqualTo(store.loadSenderKey(business, distributionId).serialize());
+        assertThat(restartedSessionStore.size()).isZero();
+        assertThat(Files.exists(directory.resolve("protocol.snapshot.tmp"))).isFalse();
+    }
+
+    @Test
+    void restore_SkipsConsumersRejectedByFilter() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore();
+        store.storeSession(new SignalProtocolAddress("kept", 1), new SessionRecord());
+        store.storeSession(new SignalProtocolAddress("dropped", 1), new SessionRecord());
+        snapshot.write(store, LAYOUT);
+        SekretessSignalProtocolStore restarted = createStore();
+
+        // Act
+        ProtocolStoreSnapshot.Summary restored = snapshot.restore(restarted, LAYOUT, "kept"::equals);
+
+        // Assert
+        assertThat(restored.sessions()).isEqualTo(1);
+        assertThat(restarted.containsSession(new SignalProtocolAddress("kept", 1))).isTrue();
+        assertThat(restarted.containsSession(new SignalProtocolAddress("dropped", 1))).isFalse();
+    }
+
+    @Test
+    void restore_ReturnsNullWithoutSnapshot() {
+        // Act
+        ProtocolStoreSnapshot.Summary restored = snapshot.restore(createStore(), LAYOUT, consumerName -> true);
+
+        // Assert
+        assertThat(restored).isNull();
+    }
+
+    @Test
+    void restore_RejectsDamagedSnapshot() throws Exception {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore();
+        store.storeSession(new SignalProtocolAddress("consumer", 1), new SessionRecord());
+        snapshot.write(store, LAYOUT);
+        byte[] contents = Files.readAllBytes(snapshot.getFile());
+        contents[contents.length / 2] ^= 0x01;
+        Files.write(snapshot.getFile(), contents);
+        SekretessSignalProtocolStore restarted = createStore();
+
+        // Act
+        ProtocolStoreSnapshot.Summary restored = snapshot.restore(restarted, LAYOUT, consumerName -> true);
+
+        // Assert
+        assertThat(restored).isNull();
+        assertThat(restarted.getCachedSessionCount()).isZero();
+    }
+
+    @Test
+    void restore_RejectsOtherLayoutAndOtherIdentity() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore();
+        store.storeSession(new SignalProtocolAddress("consumer", 1), new SessionRecord());
+        snapshot.write(store, LAYOUT);
+        SekretessSignalProtocolStore otherIdentity = new SekretessSignalProtocolStore(IdentityKeyPair.generate(), registrationId,
+                new InMemorySessionStore(), new InMemoryGroupSessionStore());
+
+        // Act
+        ProtocolStoreSnapshot.Summary otherLayoutRestore = snapshot.restore(createStore(), "shard 0 of 2", consumerName -> true);
+        ProtocolStoreSnapshot.Summary otherIdentityRestore = snapshot.restore(otherIdentity, LAYOUT, consumerName -> true);
+
+        // Assert
+        assertThat(otherLayoutRestore).isNull();
+        assertThat(otherIdentityRestore).isNull();
+        assertThat(otherIdentity.getCachedSessionCount()).isZero();
+    }
+
+    @Test
+    void write_ReplacesPreviousSnapshot() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore();
+        store.storeSession(new SignalProtocolAddress("first", 1), new SessionRecord());
+        snapshot.write(store, LAYOUT);
+        store.deleteSession(new SignalProtocolAddress("first", 1));
+        store.storeSession(new SignalProtocolAddress("second", 1), new SessionRecord());
+
+        // Act
+        snapshot.write(store, LAYOUT);
+        SekretessSignalProtocolStore restarted = createStore();
+        snapshot.restore(restarted, LAYOUT, consumerName -> true);
+
+        // Assert
+        assertThat(restarted.containsSession(new SignalProtocolAddress("first", 1))).isFalse();
+        assertThat(restarted.containsSession(new SignalProtocolAddress("second", 1))).isTrue();
+    }
+
+    @Test
+    void track_DeletesSnapshotWhenSessionIsDeleted() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore();
+        SignalProtocolAddress consumer = new SignalProtocolAddress("consumer", 1);
+        store.storeSession(consumer, new SessionRecord());
+        snapshot.track(store);
+        snapshot.write(store, LAYOUT);
+
+        // Act
+        store.deleteSession(consumer);
+
+        // Assert
+        assertThat(Files.exists(snapshot.getFile())).isFalse();
+        assertThat(snapshot.restore(createStore(), LAYOUT, consumerName -> true)).isNull();
+    }
+
+    @Test
+    void write_DiscardsSnapshotInvalidatedWhileWriting() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore();
+        store.storeSession(new SignalProtocolAddress("consumer", 1), new SessionRecord());
+        store.storeSession(new SignalProtocolAddress("deleted", 1), new SessionRecord());
+        SekretessSignalProtocolStore invalidatingStore = new SekretessSignalProtocolStore(identityKeyPair, registrationId,
+                new InMemorySessionStore(), new InMemoryGroupSessionStore()) {
+            @Override
+            void forEachCachedSession(BiConsumer<SignalProtocolAddress, byte[]> action) {
+                store.forEachCachedSession(action);
+                snapshot.invalidate();
+            }
+        };
+
+        // Act
+        ProtocolStoreSnapshot.Summary written = snapshot.write(invalidatingStore, LAYOUT);
+
+        // Assert
+        assertThat(written).isNull();
+        assertThat(Files.exists(snapshot.getFile())).isFalse();
+        assertThat(Files.exists(directory.resolve("protocol.snapshot.tmp"))).isFalse();
+    }
+
+    @Test
+    void write_CreatesSnapshotReadableByOwnerOnly() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        // Arrange
+        SekretessSignalProtocolStore store = createStore();
+        store.storeSession(new SignalProtocolAddress("consumer", 1), new SessionRecord());
+
+        // Act
+        snapshot.write(store, LAYOUT);
+
+        // Assert
+        assertThat(Files.getPosixFilePermissions(snapshot.getFile()))
+                .containsExactlyInAnyOrder(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+    }
+
+    private SekretessSignalProtocolStore createStore() {
+        return createStore(new InMemorySessionStore());
+    }
+
+    private SekretessSignalProtocolStore createStore(SessionStore sessionStore) {
+        return new SekretessSignalProtocolStore(identityKeyPair, registrationId, sessionStore, new InMemoryGroupSessionStore());
+    }
+}
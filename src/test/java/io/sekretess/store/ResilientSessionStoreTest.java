@@ -0,0 +1,302 @@
+package io.sekretess.store;
+
+import io.sekretess.exception.StoreException;
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.store.file.FileSessionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ResilientSessionStore.
+ */
+class ResilientSessionStoreTest {
+
+    private final StallingSessionStore delegate = new StallingSessionStore();
+    private ResilientSessionStore store;
+
+    @AfterEach
+    void tearDown() {
+        delegate.release();
+        store.close();
+    }
+
+    @Test
+    void testFailFastTimesOut() {
+        // Arrange
+        store = new ResilientSessionStore(delegate, StoreResilienceConfig.failFast(Duration.ofMillis(50), 4));
+        delegate.stall();
+
+        // Act & Assert
+        assertThatThrownBy(() -> store.saveSessionRecord("consumer1", 1, new byte[]{1}))
+                .isInstanceOf(StoreException.class)
+                .hasMessageContaining("timed out");
+        assertThat(store.getMetrics().timeouts()).isEqualTo(1);
+    }
+
+    @Test
+    void testBulkheadRejectsWhenFull() throws Exception {
+        // Arrange
+        store = new ResilientSessionStore(delegate, StoreResilienceConfig.failFast(Duration.ofSeconds(5), 1));
+        delegate.stall();
+        CompletableFuture<Void> inFlight = CompletableFuture.runAsync(() -> store.saveSessionRecord("consumer1", 1, new byte[]{1}));
+        assertThat(delegate.entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Act & Assert
+        assertThatThrownBy(() -> store.loadSessionRecord("consumer2", 1))
+                .isInstanceOf(StoreException.class)
+                .hasMessageContaining("busy");
+        assertThat(store.getMetrics().rejections()).isEqualTo(1);
+        delegate.release();
+        inFlight.get(5, TimeUnit.SECONDS);
+        assertThat(delegate.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testBufferPolicyKeepsWritesUntilStoreRecovers() {
+        // Arrange
+        store = new ResilientSessionStore(delegate, new StoreResilienceConfig(Duration.ofMillis(50), 4,
+                StoreResilienceConfig.OverloadPolicy.BUFFER, 10, Duration.ofHours(1)));
+        delegate.stall();
+
+        // Act
+        store.saveSessionRecord("consumer1", 1, new byte[]{1});
+        store.saveSessionRecord("consumer1", 1, new byte[]{2});
+
+        // Assert
+        assertThat(store.getMetrics().pendingBufferedWrites()).isEqualTo(1);
+        assertThat(store.loadSessionRecord("consumer1", 1).sessionRecord()).containsExactly(2);
+        delegate.release();
+        store.retryBufferedWrites();
+        assertThat(store.getMetrics().pendingBufferedWrites()).isZero();
+        assertThat(delegate.loadSessionRecord("consumer1", 1).sessionRecord()).containsExactly(2);
+    }
+
+    @Test
+    void testBufferPolicyRejectsWhenBufferIsFull() {
+        // Arrange
+        store = new ResilientSessionStore(delegate, new StoreResilienceConfig(Duration.ofMillis(50), 4,
+                StoreResilienceConfig.OverloadPolicy.BUFFER, 1, Duration.ofHours(1)));
+        delegate.stall();
+        store.saveSessionRecord("consumer1", 1, new byte[]{1});
+
+        // Act & Assert
+        assertThatThrownBy(() -> store.saveSessionRecord("consumer2", 1, new byte[]{2}))
+                .isInstanceOf(StoreException.class)
+                .hasMessageContaining("buffer is full");
+    }
+
+    @Test
+    void testRetryWaitsForAbandonedWriteOfSameSession() throws Exception {
+        // Arrange
+        AbandonedWriteSessionStore slowStore = new AbandonedWriteSessionStore();
+        store = new ResilientSessionStore(slowStore, new StoreResilienceConfig(Duration.ofMillis(500), 4,
+                StoreResilienceConfig.OverloadPolicy.BUFFER, 10, Duration.ofHours(1)));
+        store.saveSessionRecord("consumer1", 1, new byte[]{1});
+        store.saveSessionRecord("consumer1", 1, new byte[]{2});
+
+        // Act
+        CompletableFuture<Void> retry = CompletableFuture.runAsync(store::retryBufferedWrites);
+        Thread.sleep(100);
+        boolean retriedBeforeAbandonedWriteReturned = retry.isDone();
+        slowStore.release();
+        retry.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertThat(retriedBeforeAbandonedWriteReturned).isFalse();
+        assertThat(slowStore.loadSessionRecord("consumer1", 1).sessionRecord()).containsExactly(2);
+        assertThat(store.getMetrics().pendingBufferedWrites()).isZero();
+    }
+
+    @Test
+    void testDeleteWaitsForAbandonedWriteOfDeletedSession() throws Exception {
+        // Arrange
+        AbandonedWriteSessionStore slowStore = new AbandonedWriteSessionStore();
+        store = new ResilientSessionStore(slowStore, new StoreResilienceConfig(Duration.ofMillis(500), 4,
+                StoreResilienceConfig.OverloadPolicy.BUFFER, 10, Duration.ofHours(1)));
+        store.saveSessionRecord("consumer1", 1, new byte[]{1});
+
+        // Act
+        CompletableFuture<Void> delete = CompletableFuture.runAsync(() -> store.deleteSession("consumer1"));
+        Thread.sleep(100);
+        slowStore.release();
+        delete.get(5, TimeUnit.SECONDS);
+        store.retryBufferedWrites();
+
+        // Assert
+        assertThat(slowStore.loadSessionRecord("consumer1", 1)).isNull();
+        assertThat(store.getMetrics().pendingBufferedWrites()).isZero();
+    }
+
+    @Test
+    void testFailFastRejectsWriteWhileAbandonedWriteOfSameSessionRuns() {
+        // Arrange
+        AbandonedWriteSessionStore slowStore = new AbandonedWriteSessionStore();
+        store = new ResilientSessionStore(slowStore, StoreResilienceConfig.failFast(Duration.ofMillis(50), 4));
+        assertThatThrownBy(() -> store.saveSessionRecord("consumer1", 1, new byte[]{1}))
+                .hasMessageContaining("timed out");
+
+        // Act & Assert
+        assertThatThrownBy(() -> store.saveSessionRecord("consumer1", 1, new byte[]{2}))
+                .isInstanceOf(StoreException.class)
+                .hasMessageContaining("abandoned write");
+        store.saveSessionRecord("consumer2", 1, new byte[]{3});
+        slowStore.release();
+    }
+
+    @Test
+    void testTimedOutWriteKeepsFileStoreUsable(@TempDir Path tempDir) throws Exception {
+        // Arrange
+        try (SlowFileSessionStore fileStore = new SlowFileSessionStore(tempDir.resolve("sessions.log"))) {
+            store = new ResilientSessionStore(fileStore, StoreResilienceConfig.failFast(Duration.ofMillis(50), 4));
+            assertThatThrownBy(() -> store.saveSessionRecord("consumer1", 1, new byte[]{1}))
+                    .hasMessageContaining("timed out");
+
+            // Act
+            fileStore.release();
+            assertThat(fileStore.finished.await(5, TimeUnit.SECONDS)).isTrue();
+            store.saveSessionRecord("consumer2", 1, new byte[]{2});
+
+            // Assert
+            assertThat(fileStore.interrupted).isFalse();
+            assertThat(store.loadSessionRecord("consumer1", 1).sessionRecord()).containsExactly(1);
+            assertThat(store.loadSessionRecord("consumer2", 1).sessionRecord()).containsExactly(2);
+        }
+    }
+
+    @Test
+    void testConfigRejectsInvalidValues() {
+        // Act & Assert
+        assertThatThrownBy(() -> StoreResilienceConfig.failFast(Duration.ZERO, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StoreResilienceConfig.failFast(Duration.ofSeconds(1), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Blocks the first save until released and ignores interrupts, like a store call that cannot be cancelled.
+     */
+    private static class AbandonedWriteSessionStore extends InMemorySessionStore {
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicBoolean first = new AtomicBoolean(true);
+
+        void release() {
+            released.countDown();
+        }
+
+        @Override
+        public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+            if (first.compareAndSet(true, false)) {
+                boolean interrupted = false;
+                while (released.getCount() > 0) {
+                    try {
+                        released.await();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                super.saveSession(name, deviceId, base64EncodedRecord);
+            }
+        }
+
+        @Override
+        public synchronized void deleteSession(String name) {
+            super.deleteSession(name);
+        }
+
+        @Override
+        public synchronized List<SessionData> loadAll() {
+            return super.loadAll();
+        }
+    }
+
+    /**
+     * Blocks the first save until released, like a slow disk, and then writes it to the log.
+     */
+    private static class SlowFileSessionStore extends FileSessionStore {
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final AtomicBoolean first = new AtomicBoolean(true);
+        private volatile boolean interrupted;
+
+        SlowFileSessionStore(Path file) {
+            super(file);
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        @Override
+        public void saveSessionRecords(List<SessionRecordData> sessions) {
+            if (!first.compareAndSet(true, false)) {
+                super.saveSessionRecords(sessions);
+                return;
+            }
+            try {
+                while (released.getCount() > 0) {
+                    try {
+                        released.await();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                super.saveSessionRecords(sessions);
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    /**
+     * Blocks every save while stalled.
+     */
+    private static class StallingSessionStore extends InMemorySessionStore {
+        private volatile CountDownLatch stalled = new CountDownLatch(0);
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        void stall() {
+            stalled = new CountDownLatch(1);
+        }
+
+        void release() {
+            stalled.countDown();
+        }
+
+        @Override
+        public synchronized void saveSession(String name, int deviceId, String base64EncodedRecord) {
+            entered.countDown();
+            try {
+                stalled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted", e);
+            }
+            super.saveSession(name, deviceId, base64EncodedRecord);
+        }
+
+        @Override
+        public synchronized List<SessionData> loadAll() {
+            return super.loadAll();
+        }
+    }
+}
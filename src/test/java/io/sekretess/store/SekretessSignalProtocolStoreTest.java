@@ -0,0 +1,394 @@
+package io.sekretess.store;
+
+import io.sekretess.model.SessionData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.signal.libsignal.protocol.IdentityKey;
+import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.SignalProtocolAddress;
+import org.signal.libsignal.protocol.state.IdentityKeyStore;
+import org.signal.libsignal.protocol.state.SessionRecord;
+import org.signal.libsignal.protocol.util.KeyHelper;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the session cache of SekretessSignalProtocolStore.
+ */
+class SekretessSignalProtocolStoreTest {
+
+    private CountingSessionStore sessionStore;
+    private InMemoryGroupSessionStore groupSessionStore;
+    private IdentityKeyPair identityKeyPair;
+    private int registrationId;
+
+    @BeforeEach
+    void setUp() {
+        sessionStore = new CountingSessionStore();
+        groupSessionStore = new InMemoryGroupSessionStore();
+        identityKeyPair = IdentityKeyPair.generate();
+        registrationId = KeyHelper.generateRegistrationId(false);
+    }
+
+    @Test
+    void storeSession_WritesThroughAndServesFromCache() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(SessionCacheConfig.unbounded());
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+
+        // Act
+        store.storeSession(address, new SessionRecord());
+
+        // Assert
+        assertThat(sessionStore.size()).isEqualTo(1);
+        assertThat(store.loadSession(address)).isNotNull();
+        assertThat(store.containsSession(address)).isTrue();
+        assertThat(store.getSessionCacheStats().hitCount()).isEqualTo(2);
+        assertThat(sessionStore.singleLoads).isZero();
+    }
+
+    @Test
+    void loadSession_UnboundedCacheDoesNotQueryStoreOnMiss() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(SessionCacheConfig.unbounded());
+        sessionStore.saveSession("consumer", 123, "");
+
+        // Act
+        SessionRecord record = store.loadSession(new SignalProtocolAddress("consumer", 123));
+
+        // Assert
+        assertThat(record).isNull();
+        assertThat(sessionStore.singleLoads).isZero();
+        assertThat(store.getSessionCacheStats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void loadSession_BoundedCacheReloadsEvictedSession() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(new SessionCacheConfig(1, 0, null));
+        SignalProtocolAddress first = new SignalProtocolAddress("consumer1", 123);
+        SignalProtocolAddress second = new SignalProtocolAddress("consumer2", 123);
+        store.storeSession(first, new SessionRecord());
+        store.storeSession(second, new SessionRecord());
+
+        // Act
+        SessionRecord reloadedFirst = store.loadSession(first);
+        SessionRecord reloadedSecond = store.loadSession(second);
+
+        // Assert
+        assertThat(reloadedFirst).isNotNull();
+        assertThat(reloadedSecond).isNotNull();
+        assertThat(store.getCachedSessionCount()).isEqualTo(1);
+        assertThat(store.getSessionCacheStats().evictionCount()).isGreaterThanOrEqualTo(1);
+        assertThat(sessionStore.singleLoads).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void loadSession_BoundedCacheReturnsNullForUnknownConsumer() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(new SessionCacheConfig(10, 0, Duration.ofMinutes(5)));
+
+        // Act & Assert
+        assertThat(store.loadSession(new SignalProtocolAddress("unknown", 123))).isNull();
+        assertThat(store.containsSession(new SignalProtocolAddress("unknown", 123))).isFalse();
+        assertThat(sessionStore.singleLoads).isEqualTo(2);
+    }
+
+    @Test
+    void deleteSession_RemovesFromCacheAndStore() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(new SessionCacheConfig(10, 0, null));
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        store.storeSession(address, new SessionRecord());
+
+        // Act
+        store.deleteSession(address);
+
+        // Assert
+        assertThat(store.loadSession(address)).isNull();
+        assertThat(sessionStore.size()).isZero();
+    }
+
+    @Test
+    void storeSession_SkipsWriteWhenRecordUnchanged() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(SessionCacheConfig.unbounded());
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        store.storeSession(address, new SessionRecord());
+
+        // Act
+        store.storeSession(address, store.loadSession(address));
+
+        // Assert
+        assertThat(sessionStore.saves).isEqualTo(1);
+        assertThat(store.getSessionWriteStats()).isEqualTo(new SessionWriteStats(1, 1, 0));
+    }
+
+    @Test
+    void storeSession_WritesWhenRecordChanged() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(SessionCacheConfig.unbounded());
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        store.restoreSession(address, new byte[]{1, 2, 3});
+
+        // Act
+        store.storeSession(address, new SessionRecord());
+
+        // Assert
+        assertThat(sessionStore.saves).isEqualTo(1);
+        assertThat(store.getSessionWriteStats()).isEqualTo(new SessionWriteStats(1, 0, 0));
+    }
+
+    @Test
+    void restoreSession_CachesWithoutWritingBack() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(SessionCacheConfig.unbounded());
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+
+        // Act
+        store.restoreSession(address, new SessionRecord().serialize());
+        store.storeSession(address, new SessionRecord());
+
+        // Assert
+        assertThat(store.containsSession(address)).isTrue();
+        assertThat(sessionStore.saves).isZero();
+        assertThat(store.getSessionWriteStats().writesSkipped()).isEqualTo(1);
+    }
+
+    @Test
+    void storeSession_OffHeapCacheKeepsRecordsOutsideHeap() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(new SessionCacheConfig(1, 0, null, 1024 * 1024));
+        SignalProtocolAddress first = new SignalProtocolAddress("consumer1", 123);
+        SignalProtocolAddress second = new SignalProtocolAddress("consumer2", 123);
+
+        // Act
+        store.storeSession(first, new SessionRecord());
+        long usedWithOneSession = store.getOffHeapSessionBytes();
+        store.storeSession(second, new SessionRecord());
+        store.storeSession(second, new SessionRecord());
+        SessionRecord reloadedFirst = store.loadSession(first);
+
+        // Assert
+        assertThat(usedWithOneSession).isPositive();
+        assertThat(store.getOffHeapSessionBytes()).isEqualTo(usedWithOneSession);
+        assertThat(reloadedFirst).isNotNull();
+        assertThat(store.loadSession(second)).isNotNull();
+        assertThat(store.getSessionWriteStats()).isEqualTo(new SessionWriteStats(2, 1, 0));
+    }
+
+    @Test
+    void storeSession_FailedWriteIsRetriedOnNextStore() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(SessionCacheConfig.unbounded());
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        sessionStore.failNextSave = true;
+
+        // Act
+        assertThatThrownBy(() -> store.storeSession(address, new SessionRecord()))
+                .isInstanceOf(IllegalStateException.class);
+        store.storeSession(address, new SessionRecord());
+
+        // Assert
+        assertThat(sessionStore.saves).isEqualTo(1);
+        assertThat(store.getSessionWriteStats()).isEqualTo(new SessionWriteStats(1, 0, 0));
+    }
+
+    @Test
+    void storeSession_OptimisticLockingReportsConcurrentWrite() {
+        // Arrange
+        InMemoryVersionedSessionStore sharedStore = new InMemoryVersionedSessionStore();
+        SekretessSignalProtocolStore first = createVersionedStore(sharedStore);
+        SekretessSignalProtocolStore second = createVersionedStore(sharedStore);
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        first.storeSession(address, new SessionRecord());
+
+        // Act
+        second.storeSession(address, new SessionRecord());
+
+        // Assert
+        assertThat(sharedStore.version("consumer")).isEqualTo(1);
+        assertThat(second.consumeSessionConflict(address)).isTrue();
+        assertThat(second.consumeSessionConflict(address)).isFalse();
+        assertThat(first.consumeSessionConflict(address)).isFalse();
+        assertThat(second.getSessionWriteStats()).isEqualTo(new SessionWriteStats(1, 0, 1));
+        assertThat(second.loadSession(address)).isNotNull();
+    }
+
+    @Test
+    void storeSession_OptimisticLockingRecreatesDeletedSession() {
+        // Arrange
+        InMemoryVersionedSessionStore sharedStore = new InMemoryVersionedSessionStore();
+        SekretessSignalProtocolStore first = createVersionedStore(sharedStore);
+        SekretessSignalProtocolStore second = createVersionedStore(sharedStore);
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        first.storeSession(address, new SessionRecord());
+
+        // Act
+        second.deleteSession(address);
+        second.storeSession(address, new SessionRecord());
+
+        // Assert
+        assertThat(sharedStore.version("consumer")).isEqualTo(1);
+        assertThat(second.consumeSessionConflict(address)).isFalse();
+        assertThat(first.containsSession(address)).isTrue();
+    }
+
+    @Test
+    void constructor_OptimisticLockingRequiresVersionedStore() {
+        // Act & Assert
+        assertThatThrownBy(() -> new SekretessSignalProtocolStore(identityKeyPair, registrationId, sessionStore,
+                groupSessionStore, SessionCacheConfig.unbounded(), true))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void saveIdentity_PersistedIdentityIsTrustedAfterRestart() {
+        // Arrange
+        InMemoryIdentityStore identityStore = new InMemoryIdentityStore();
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        IdentityKey consumerIdentity = IdentityKeyPair.generate().getPublicKey();
+        IdentityKey otherIdentity = IdentityKeyPair.generate().getPublicKey();
+        createStore(identityStore).saveIdentity(address, consumerIdentity);
+
+        // Act
+        SekretessSignalProtocolStore restarted = createStore(identityStore);
+
+        // Assert
+        assertThat(identityStore.consumerIdentityCount()).isEqualTo(1);
+        assertThat(restarted.getIdentity(address)).isEqualTo(consumerIdentity);
+        assertThat(restarted.isTrustedIdentity(address, consumerIdentity, IdentityKeyStore.Direction.SENDING)).isTrue();
+        assertThat(restarted.isTrustedIdentity(address, otherIdentity, IdentityKeyStore.Direction.SENDING)).isFalse();
+    }
+
+    @Test
+    void saveIdentity_SkipsWriteWhenIdentityUnchanged() {
+        // Arrange
+        CountingIdentityStore identityStore = new CountingIdentityStore();
+        SekretessSignalProtocolStore store = createStore(identityStore);
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        IdentityKey consumerIdentity = IdentityKeyPair.generate().getPublicKey();
+
+        // Act
+        IdentityKeyStore.IdentityChange first = store.saveIdentity(address, consumerIdentity);
+        IdentityKeyStore.IdentityChange second = store.saveIdentity(address, consumerIdentity);
+        IdentityKeyStore.IdentityChange replaced = store.saveIdentity(address, IdentityKeyPair.generate().getPublicKey());
+
+        // Assert
+        assertThat(first).isEqualTo(IdentityKeyStore.IdentityChange.NEW_OR_UNCHANGED);
+        assertThat(second).isEqualTo(IdentityKeyStore.IdentityChange.NEW_OR_UNCHANGED);
+        assertThat(replaced).isEqualTo(IdentityKeyStore.IdentityChange.REPLACED_EXISTING);
+        assertThat(identityStore.consumerIdentitySaves).isEqualTo(2);
+    }
+
+    @Test
+    void saveIdentity_WithoutIdentityStoreKeepsIdentitiesInMemory() {
+        // Arrange
+        SekretessSignalProtocolStore store = createStore(SessionCacheConfig.unbounded());
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        IdentityKey consumerIdentity = IdentityKeyPair.generate().getPublicKey();
+
+        // Act
+        store.saveIdentity(address, consumerIdentity);
+
+        // Assert
+        assertThat(store.getConsumerIdentityStore()).isNull();
+        assertThat(store.getIdentity(address)).isEqualTo(consumerIdentity);
+        assertThat(store.getCachedIdentityCount()).isEqualTo(1);
+    }
+
+    @Test
+    void sessionCacheConfig_RejectsSizeAndWeightTogether() {
+        // Act & Assert
+        assertThatThrownBy(() -> new SessionCacheConfig(10, 1024, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SessionCacheConfig(0, 0, Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void boundedSessionCache_RejectsStoreWithoutKeyedLoad() {
+        // Arrange
+        SessionStore scanningStore = new InMemorySessionStore() {
+            @Override
+            public boolean supportsKeyedLoad() {
+                return false;
+            }
+        };
+
+        // Act & Assert
+        assertThatThrownBy(() -> new SekretessSignalProtocolStore(identityKeyPair, registrationId, scanningStore, groupSessionStore,
+                new SessionCacheConfig(10, 0, null)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("keyed loads");
+        assertThat(new SekretessSignalProtocolStore(identityKeyPair, registrationId, scanningStore, groupSessionStore,
+                SessionCacheConfig.unbounded())).isNotNull();
+    }
+
+    @Test
+    void storeSession_FailedAsyncWriteKeepsSessionCachedAndIsWrittenAgainOnFlush() {
+        // Arrange
+        SekretessSignalProtocolStore store = new SekretessSignalProtocolStore(identityKeyPair, registrationId,
+                AsyncSessionStore.of(sessionStore, Runnable::run), groupSessionStore, new SessionCacheConfig(10, 0, null), null);
+        SignalProtocolAddress address = new SignalProtocolAddress("consumer", 123);
+        sessionStore.failNextSave = true;
+
+        // Act
+        store.storeSession(address, new SessionRecord());
+        assertThat(store.pendingSessionWrites(address)).isCompletedExceptionally();
+        store.flushSessionWrites().join();
+
+        // Assert
+        assertThat(store.getSessionWriteStats().writeFailures()).isEqualTo(1);
+        assertThat(store.containsSession(address)).isTrue();
+        assertThat(sessionStore.size()).isEqualTo(1);
+        assertThat(store.pendingSessionWrites(address)).isCompleted().isNotCompletedExceptionally();
+    }
+
+    private SekretessSignalProtocolStore createStore(SessionCacheConfig config) {
+        return new SekretessSignalProtocolStore(identityKeyPair, registrationId, sessionStore, groupSessionStore, config);
+    }
+
+    private SekretessSignalProtocolStore createStore(IdentityStore identityStore) {
+        return new SekretessSignalProtocolStore(identityKeyPair, registrationId, sessionStore, groupSessionStore,
+                SessionCacheConfig.unbounded(), false, identityStore);
+    }
+
+    private SekretessSignalProtocolStore createVersionedStore(SessionStore store) {
+        return new SekretessSignalProtocolStore(identityKeyPair, registrationId, store, groupSessionStore, SessionCacheConfig.unbounded(), true);
+    }
+
+    private static class CountingSessionStore extends InMemorySessionStore {
+        private int singleLoads;
+        private int saves;
+        private boolean failNextSave;
+
+        @Override
+        public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+            if (failNextSave) {
+                failNextSave = false;
+                throw new IllegalStateException("database unavailable");
+            }
+            saves++;
+            super.saveSession(name, deviceId, base64EncodedRecord);
+        }
+
+        @Override
+        public SessionData loadSession(String name, int deviceId) {
+            singleLoads++;
+            return super.loadSession(name, deviceId);
+        }
+    }
+
+    private static class CountingIdentityStore extends InMemoryIdentityStore {
+        private int consumerIdentitySaves;
+
+        @Override
+        public void saveConsumerIdentity(String name, int deviceId, byte[] identityKey) {
+            consumerIdentitySaves++;
+            super.saveConsumerIdentity(name, deviceId, identityKey);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package io.sekretess.store;
+
+import io.sekretess.exception.StoreException;
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ShardedSessionStore.
+ */
+class ShardedSessionStoreTest {
+
+    private List<InMemorySessionStore> shards;
+    private ShardedSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        shards = List.of(new InMemorySessionStore(), new InMemorySessionStore(), new InMemorySessionStore());
+        store = new ShardedSessionStore(shards);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void saveSession_RoutesEveryConsumerToOneShard() {
+        // Act
+        for (int i = 0; i < 300; i++) {
+            store.saveSession("consumer" + i, 1, "AQ==");
+        }
+
+        // Assert
+        assertThat(shards).allSatisfy(shard -> assertThat(shard.size()).isBetween(60, 140));
+        assertThat(shards.stream().mapToInt(InMemorySessionStore::size).sum()).isEqualTo(300);
+        assertThat(shards.get(store.shardOf("consumer7")).loadSession("consumer7", 1)).isNotNull();
+        assertThat(store.loadSession("consumer7", 1).base64SessionRecord()).isEqualTo("AQ==");
+    }
+
+    @Test
+    void saveSessionRecords_SplitsBatchAcrossShards() {
+        // Arrange
+        List<SessionRecordData> sessions = IntStream.range(0, 50)
+                .mapToObj(i -> new SessionRecordData("consumer" + i, 1, new byte[]{(byte) i}))
+                .toList();
+
+        // Act
+        store.saveSessionRecords(sessions);
+
+        // Assert
+        assertThat(store.loadAll()).hasSize(50);
+        assertThat(store.loadSessionRecord("consumer42", 1).sessionRecord()).containsExactly(42);
+    }
+
+    @Test
+    void loadAllRecords_MergesPagesOfAllShards() {
+        // Arrange
+        for (int i = 0; i < 100; i++) {
+            store.saveSessionRecord("consumer" + i, 1, new byte[]{1});
+        }
+        List<SessionRecordData> loaded = new ArrayList<>();
+
+        // Act
+        store.loadAllRecords(7, page -> {
+            assertThat(page).hasSizeLessThanOrEqualTo(7);
+            loaded.addAll(page);
+        });
+
+        // Assert
+        assertThat(loaded).extracting(SessionRecordData::name).doesNotHaveDuplicates().hasSize(100);
+    }
+
+    @Test
+    void deleteSession_RemovesFromOwningShard() {
+        // Arrange
+        store.saveSession("deleted", 1, "AQ==");
+        store.saveSession("kept", 1, "Ag==");
+
+        // Act
+        store.deleteSession("deleted");
+
+        // Assert
+        assertThat(store.loadSession("deleted", 1)).isNull();
+        assertThat(store.loadAll()).extracting(SessionData::name).containsExactly("kept");
+    }
+
+    @Test
+    void loadAll_PropagatesShardFailure() {
+        // Arrange
+        ShardedSessionStore failing = new ShardedSessionStore(List.of(new InMemorySessionStore(), new InMemorySessionStore() {
+            @Override
+            public List<SessionData> loadAll() {
+                throw new IllegalStateException("shard down");
+            }
+        }));
+
+        // Act & Assert
+        assertThatThrownBy(failing::loadAll).isInstanceOf(IllegalStateException.class).hasMessage("shard down");
+        failing.close();
+    }
+
+    @Test
+    void loadAll_InterruptedCallerWaitsForShardsWithoutInterruptingThem() throws Exception {
+        // Arrange
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicBoolean shardInterrupted = new AtomicBoolean();
+        ShardedSessionStore slow = new ShardedSessionStore(List.of(new InMemorySessionStore(), new InMemorySessionStore() {
+            @Override
+            public List<SessionData> loadAll() {
+                entered.countDown();
+                while (released.getCount() > 0) {
+                    try {
+                        released.await();
+                    } catch (InterruptedException e) {
+                        shardInterrupted.set(true);
+                    }
+                }
+                return super.loadAll();
+            }
+        }));
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                slow.loadAll();
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        caller.start();
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Act
+        caller.interrupt();
+        caller.join(200);
+        boolean returnedBeforeShard = !caller.isAlive();
+        released.countDown();
+        caller.join(5000);
+
+        // Assert
+        assertThat(returnedBeforeShard).isFalse();
+        assertThat(thrown.get()).isInstanceOf(StoreException.class).hasMessageContaining("Interrupted");
+        assertThat(shardInterrupted).isFalse();
+        slow.close();
+    }
+
+    @Test
+    void shardOf_KeepsMostConsumersWhenShardIsAdded() {
+        // Arrange
+        ShardedSessionStore fourShards = new ShardedSessionStore(List.of(new InMemorySessionStore(),
+                new InMemorySessionStore(), new InMemorySessionStore(), new InMemorySessionStore()));
+
+        // Act
+        long moved = IntStream.range(0, 1000)
+                .filter(i -> store.shardOf("consumer" + i) != fourShards.shardOf("consumer" + i))
+                .count();
+
+        // Assert
+        assertThat(moved).isBetween(150L, 350L);
+        fourShards.close();
+    }
+
+    @Test
+    void close_ClosesEveryCloseableShard() {
+        // Arrange
+        List<String> closed = new ArrayList<>();
+        ShardedSessionStore closing = new ShardedSessionStore(List.of(new ClosingSessionStore("first", closed, false),
+                new InMemorySessionStore(), new ClosingSessionStore("second", closed, true)));
+
+        // Act & Assert
+        assertThatThrownBy(closing::close).isInstanceOf(StoreException.class).hasMessageContaining("close");
+        assertThat(closed).containsExactly("first", "second");
+    }
+
+    @Test
+    void constructor_RejectsEmptyShardList() {
+        // Act & Assert
+        assertThatThrownBy(() -> new ShardedSessionStore(List.of())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static class ClosingSessionStore extends InMemorySessionStore implements AutoCloseable {
+        private final String name;
+        private final List<String> closed;
+        private final boolean failOnClose;
+
+        ClosingSessionStore(String name, List<String> closed, boolean failOnClose) {
+            this.name = name;
+            this.closed = closed;
+            this.failOnClose = failOnClose;
+        }
+
+        @Override
+        public void close() throws Exception {
+            closed.add(name);
+            if (failOnClose) {
+                throw new IOException("disk gone");
+            }
+        }
+    }
+}
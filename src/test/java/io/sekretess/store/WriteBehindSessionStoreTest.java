@@ -0,0 +1,187 @@
+package io.sekretess.store;
+
+import io.sekretess.model.SessionData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for WriteBehindSessionStore.
+ */
+class WriteBehindSessionStoreTest {
+
+    private BatchRecordingSessionStore delegate;
+    private WriteBehindSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new BatchRecordingSessionStore();
+        store = new WriteBehindSessionStore(delegate, 3, Duration.ofHours(1), 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void testSaveIsDeferredUntilFlush() {
+        // Act
+        store.saveSession("consumer1", 1, "record1");
+
+        // Assert
+        assertThat(delegate.size()).isZero();
+        assertThat(store.getDirtySessionCount()).isEqualTo(1);
+
+        store.flush();
+        assertThat(delegate.size()).isEqualTo(1);
+        assertThat(delegate.batchSizes).containsExactly(1);
+        assertThat(store.getDirtySessionCount()).isZero();
+    }
+
+    @Test
+    void testRepeatedSavesAreCoalesced() {
+        // Arrange
+        store.saveSession("consumer1", 1, "record1");
+        store.saveSession("consumer1", 1, "record2");
+
+        // Act
+        store.flush();
+
+        // Assert
+        assertThat(delegate.batchSizes).containsExactly(1);
+        assertThat(delegate.loadAll().get(0).base64SessionRecord()).isEqualTo("record2");
+    }
+
+    @Test
+    void testLoadSessionSeesPendingWrite() {
+        // Arrange
+        delegate.saveSession("consumer1", 1, "stale");
+        store.saveSession("consumer1", 1, "fresh");
+
+        // Act
+        SessionData loaded = store.loadSession("consumer1", 1);
+
+        // Assert
+        assertThat(loaded.base64SessionRecord()).isEqualTo("fresh");
+    }
+
+    @Test
+    void testDeleteDropsPendingWrite() {
+        // Arrange
+        store.saveSession("consumer1", 1, "record1");
+
+        // Act
+        store.deleteSession("consumer1");
+        store.flush();
+
+        // Assert
+        assertThat(delegate.size()).isZero();
+        assertThat(store.loadSession("consumer1", 1)).isNull();
+    }
+
+    @Test
+    void testBatchSizeTriggersBackgroundFlush() throws Exception {
+        // Act
+        store.saveSession("consumer1", 1, "record1");
+        store.saveSession("consumer2", 1, "record2");
+        store.saveSession("consumer3", 1, "record3");
+
+        // Assert
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (delegate.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(delegate.size()).isEqualTo(3);
+    }
+
+    @Test
+    void testFullDirtySetFlushesOnCallingThread() {
+        // Arrange
+        WriteBehindSessionStore bounded = new WriteBehindSessionStore(delegate, 5, Duration.ofHours(1), 5);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            bounded.saveSession("consumer" + i, 1, "record" + i);
+        }
+
+        // Assert
+        assertThat(delegate.size()).isEqualTo(5);
+        assertThat(bounded.getDirtySessionCount()).isZero();
+        bounded.close();
+    }
+
+    @Test
+    void testFailedFlushKeepsSessionsDirty() {
+        // Arrange
+        store.saveSession("consumer1", 1, "record1");
+        delegate.failNextBatch = true;
+
+        // Act & Assert
+        assertThatThrownBy(() -> store.flush()).isInstanceOf(IllegalStateException.class);
+        assertThat(store.getDirtySessionCount()).isEqualTo(1);
+
+        store.flush();
+        assertThat(delegate.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testCloseFlushesPendingWrites() {
+        // Arrange
+        store.saveSession("consumer1", 1, "record1");
+        store.saveSession("consumer2", 1, "record2");
+
+        // Act
+        store.close();
+
+        // Assert
+        assertThat(delegate.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testLoadAllFlushesFirst() {
+        // Arrange
+        store.saveSession("consumer1", 1, "record1");
+
+        // Act
+        List<SessionData> all = store.loadAll();
+
+        // Assert
+        assertThat(all).hasSize(1);
+    }
+
+    @Test
+    void testRejectsInvalidConfiguration() {
+        // Act & Assert
+        assertThatThrownBy(() -> new WriteBehindSessionStore(delegate, 0, Duration.ofSeconds(1), 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new WriteBehindSessionStore(delegate, 10, Duration.ofSeconds(1), 5))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static class BatchRecordingSessionStore extends InMemorySessionStore {
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private volatile boolean failNextBatch;
+
+        @Override
+        public synchronized void saveSessions(List<SessionData> sessions) {
+            if (failNextBatch) {
+                failNextBatch = false;
+                throw new IllegalStateException("database unavailable");
+            }
+            batchSizes.add(sessions.size());
+            super.saveSessions(sessions);
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.sekretess.store.conformance;
+
+import io.sekretess.model.GroupSessionRecordData;
+import io.sekretess.store.GroupSessionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Behavior every {@link GroupSessionStore} has to show: extend it and implement {@link #createStore()}. Stores
+ * that are {@link AutoCloseable} are closed after each test.
+ */
+public abstract class GroupSessionStoreConformanceTest {
+
+    protected GroupSessionStore store;
+
+    /**
+     * Returns a new, empty store.
+     */
+    protected abstract GroupSessionStore createStore() throws Exception;
+
+    @BeforeEach
+    void createConformanceStore() throws Exception {
+        store = createStore();
+    }
+
+    @AfterEach
+    void closeConformanceStore() throws Exception {
+        if (store instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void saveGroupSessionRecord_KeepsDistributionMessage() {
+        // Arrange
+        store.saveSendDistributionMessageRecord("business", 1, "dist-1", new byte[]{9});
+
+        // Act
+        store.saveGroupSessionRecord("business", 1, "dist-1", new byte[]{1, 2});
+
+        // Assert
+        GroupSessionRecordData record = store.loadGroupSessionRecord("business");
+        assertThat(record.name()).isEqualTo("business");
+        assertThat(record.deviceId()).isEqualTo(1);
+        assertThat(record.distributionId()).isEqualTo("dist-1");
+        assertThat(record.sessionRecord()).containsExactly(1, 2);
+        assertThat(record.businessDistributionMessage()).containsExactly(9);
+    }
+
+    @Test
+    void saveSendDistributionMessageRecord_StartsNewSenderKey() {
+        // Arrange
+        store.saveGroupSessionRecord("business", 1, "dist-1", new byte[]{1});
+
+        // Act
+        store.saveSendDistributionMessageRecord("business", 1, "dist-2", new byte[]{4, 5});
+
+        // Assert
+        GroupSessionRecordData record = store.loadGroupSessionRecord("business");
+        assertThat(record.distributionId()).isEqualTo("dist-2");
+        assertThat(record.sessionRecord()).isNull();
+        assertThat(record.businessDistributionMessage()).containsExactly(4, 5);
+    }
+
+    @Test
+    void saveGroupSession_Base64IsReadBackAsRecord() {
+        // Act
+        store.saveSendDistributionMessage("business", 1, "dist-1", Base64.getEncoder().encodeToString(new byte[]{9}));
+        store.saveGroupSession("business", 1, "dist-1", Base64.getEncoder().encodeToString(new byte[]{1, 2}));
+
+        // Assert
+        GroupSessionRecordData record = store.loadGroupSessionRecord("business");
+        assertThat(record.sessionRecord()).containsExactly(1, 2);
+        assertThat(record.businessDistributionMessage()).containsExactly(9);
+        assertThat(store.loadGroupSession("business").sessionRecord()).isEqualTo("AQI=");
+    }
+
+    @Test
+    void loadGroupSessionRecord_ReturnsNullForUnknownBusinessAndKeepsBusinessesApart() {
+        // Arrange
+        store.saveGroupSessionRecord("first", 1, "dist-1", new byte[]{1});
+        store.saveGroupSessionRecord("second", 1, "dist-2", new byte[]{2});
+
+        // Act & Assert
+        assertThat(store.loadGroupSessionRecord("unknown")).isNull();
+        assertThat(store.loadGroupSession("unknown")).isNull();
+        assertThat(store.loadGroupSessionRecord("first").sessionRecord()).containsExactly(1);
+        assertThat(store.loadGroupSessionRecord("second").sessionRecord()).containsExactly(2);
+    }
+
+    @Test
+    void saveGroupSessionRecord_ConcurrentSavesKeepOneCompleteRecord() throws Exception {
+        // Act
+        SessionStoreConformanceTest.runConcurrently(thread -> {
+            for (int i = 0; i < 100; i++) {
+                store.saveGroupSessionRecord("business", 1, "dist-" + thread, new byte[]{(byte) thread, (byte) thread});
+            }
+        });
+
+        // Assert
+        GroupSessionRecordData record = store.loadGroupSessionRecord("business");
+        byte thread = record.sessionRecord()[0];
+        assertThat(record.sessionRecord()).containsExactly(thread, thread);
+        assertThat(record.distributionId()).isEqualTo("dist-" + thread);
+    }
+}
@@ -0,0 +1,120 @@
+package io.sekretess.store.conformance;
+
+import io.sekretess.model.ConsumerIdentityData;
+import io.sekretess.model.IdentityKeyData;
+import io.sekretess.store.IdentityStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Behavior every {@link IdentityStore} has to show: extend it and implement {@link #createStore()}. Consumer
+ * identity tests are skipped for stores that do not support them. Stores that are {@link AutoCloseable} are
+ * closed after each test.
+ */
+public abstract class IdentityStoreConformanceTest {
+
+    protected IdentityStore store;
+
+    /**
+     * Returns a new, empty store.
+     */
+    protected abstract IdentityStore createStore() throws Exception;
+
+    @BeforeEach
+    void createConformanceStore() throws Exception {
+        store = createStore();
+    }
+
+    @AfterEach
+    void closeConformanceStore() throws Exception {
+        if (store instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void saveIdentity_IsReadBack() {
+        // Act
+        store.saveIdentity("business", new byte[]{1, 2, 3}, 4242);
+
+        // Assert
+        IdentityKeyData identity = store.loadIdentity("business");
+        assertThat(identity.username()).isEqualTo("business");
+        assertThat(identity.serializedIdentityKeyPair()).containsExactly(1, 2, 3);
+        assertThat(identity.registrationId()).isEqualTo(4242);
+        assertThat(store.loadIdentity("unknown")).isNull();
+    }
+
+    @Test
+    void saveIdentity_OverwritesPreviousIdentity() {
+        // Arrange
+        store.saveIdentity("business", new byte[]{1}, 1);
+
+        // Act
+        store.saveIdentity("business", new byte[]{2}, 2);
+
+        // Assert
+        assertThat(store.loadIdentity("business").serializedIdentityKeyPair()).containsExactly(2);
+        assertThat(store.loadIdentity("business").registrationId()).isEqualTo(2);
+    }
+
+    @Test
+    void saveConsumerIdentity_IsReadBackPerDevice() {
+        assumeTrue(store.supportsConsumerIdentities());
+
+        // Act
+        store.saveConsumerIdentity("consumer", 1, new byte[]{1});
+        store.saveConsumerIdentity("consumer", 2, new byte[]{2});
+        store.saveConsumerIdentity("consumer", 1, new byte[]{3});
+
+        // Assert
+        assertThat(store.loadConsumerIdentity("consumer", 1).identityKey()).containsExactly(3);
+        assertThat(store.loadConsumerIdentity("consumer", 2).identityKey()).containsExactly(2);
+        assertThat(store.loadConsumerIdentity("consumer", 3)).isNull();
+    }
+
+    @Test
+    void loadAllConsumerIdentities_ReturnsConsumersButNotBusiness() {
+        assumeTrue(store.supportsConsumerIdentities());
+
+        // Arrange
+        store.saveIdentity("business", new byte[]{9}, 1);
+        for (int i = 0; i < 25; i++) {
+            store.saveConsumerIdentity("consumer" + i, 1, new byte[]{(byte) i});
+        }
+        List<ConsumerIdentityData> identities = new ArrayList<>();
+
+        // Act
+        store.loadAllConsumerIdentities(10, page -> {
+            assertThat(page).hasSizeBetween(1, 10);
+            identities.addAll(page);
+        });
+
+        // Assert
+        assertThat(identities).extracting(ConsumerIdentityData::name).doesNotHaveDuplicates().hasSize(25);
+    }
+
+    @Test
+    void saveConsumerIdentity_ConcurrentSavesAreAllKept() throws Exception {
+        assumeTrue(store.supportsConsumerIdentities());
+
+        // Act
+        SessionStoreConformanceTest.runConcurrently(thread -> {
+            for (int i = 0; i < 100; i++) {
+                store.saveConsumerIdentity("consumer" + thread + "-" + i, 1, new byte[]{(byte) thread});
+            }
+        });
+
+        // Assert
+        List<ConsumerIdentityData> identities = new ArrayList<>();
+        store.loadAllConsumerIdentities(100, identities::addAll);
+        assertThat(identities).hasSize(SessionStoreConformanceTest.THREADS * 100);
+    }
+}
@@ -0,0 +1,124 @@
+package io.sekretess.store.conformance;
+
+import io.sekretess.store.SessionStore;
+import io.sekretess.store.file.FileSessionStore;
+import io.sekretess.store.jdbc.JdbcSessionStore;
+import io.sekretess.store.jdbc.JdbcStoreConfig;
+import io.sekretess.store.jdbc.SqlDialect;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Throughput and latency percentiles of {@link SessionStore#saveSessionRecord}, the call the SDK makes for every
+ * message, and the duration of a full {@link SessionStore#loadAllRecords}, with records of
+ * {@value SessionStoreConformanceTest#RECORD_BYTES} bytes. Call {@link #run} with your own store, or start it
+ * for the bundled stores with
+ * {@code java -cp target/classes:target/test-classes:<dependencies> io.sekretess.store.conformance.SessionStoreBenchmark [consumers] [saves] [threads]}.
+ * Not run by the build.
+ */
+public class SessionStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int consumers = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int saves = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        Path directory = Files.createTempDirectory("sekretess-store-benchmark");
+        try {
+            try (FileSessionStore store = new FileSessionStore(directory.resolve("sessions.log"))) {
+                System.out.println(run("file", store, consumers, saves, threads));
+            }
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:file:" + directory.resolve("sessions") + ";DB_CLOSE_DELAY=-1");
+            JdbcSessionStore store = new JdbcSessionStore(dataSource, JdbcStoreConfig.defaults(SqlDialect.H2));
+            store.createSchema();
+            System.out.println(run("jdbc h2", store, consumers, saves, threads));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Saves {@code saves} records for {@code consumers} consumers from {@code threads} threads after a warm-up,
+     * then loads all sessions once.
+     */
+    public static Result run(String name, SessionStore store, int consumers, int saves, int threads) throws Exception {
+        byte[] record = new byte[SessionStoreConformanceTest.RECORD_BYTES];
+        new Random(42).nextBytes(record);
+        // Warm up the JIT, connection pools and caches before measuring.
+        saveConcurrently(store, consumers, Math.min(saves, 10_000), threads, record);
+
+        long start = System.nanoTime();
+        long[] latencies = saveConcurrently(store, consumers, saves, threads, record);
+        long saveNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long[] loaded = new long[1];
+        store.loadAllRecords(1_000, page -> loaded[0] += page.size());
+        long loadNanos = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(name, saves / (saveNanos / 1e9), percentile(latencies, 0.5), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e3, loaded[0], loadNanos / 1e6);
+    }
+
+    private static long[] saveConcurrently(SessionStore store, int consumers, int saves, int threads, byte[] record) throws Exception {
+        long[] latencies = new long[saves];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = new Future<?>[threads];
+            for (int thread = 0; thread < threads; thread++) {
+                int first = thread;
+                futures[thread] = executor.submit(() -> {
+                    start.await();
+                    byte[] threadRecord = record.clone();
+                    for (int i = first; i < saves; i += threads) {
+                        threadRecord[0] = (byte) i;
+                        long begin = System.nanoTime();
+                        store.saveSessionRecord("consumer" + (i % consumers), 1, threadRecord);
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return latencies;
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        return sortedNanos[(int) Math.min(sortedNanos.length - 1, Math.ceil(percentile * sortedNanos.length) - 1)] / 1e3;
+    }
+
+    /**
+     * Save throughput, save latencies in microseconds and the duration of a full load in milliseconds.
+     */
+    public record Result(String name, double savesPerSecond, double p50Micros, double p99Micros, double p999Micros,
+                         double maxMicros, long sessionsLoaded, double loadAllMillis) {
+
+        @Override
+        public String toString() {
+            return String.format("%-10s %,10.0f saves/s  p50 %,8.1f us  p99 %,8.1f us  p99.9 %,8.1f us  max %,9.1f us  "
+                    + "loadAll %,d sessions in %,.0f ms", name, savesPerSecond, p50Micros, p99Micros, p999Micros, maxMicros,
+                    sessionsLoaded, loadAllMillis);
+        }
+    }
+}
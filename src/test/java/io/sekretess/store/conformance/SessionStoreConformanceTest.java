@@ -0,0 +1,293 @@
+package io.sekretess.store.conformance;
+
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.store.SessionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Behavior every {@link SessionStore} has to show for the SDK's write-through use: extend it, implement
+ * {@link #createStore()} and run it with the other tests of the implementation. Stores that are
+ * {@link AutoCloseable} are closed after each test. Records are random bytes of
+ * {@value #RECORD_BYTES} bytes, about the size of an established session.
+ */
+public abstract class SessionStoreConformanceTest {
+
+    protected static final int RECORD_BYTES = 1_500;
+    protected static final int THREADS = 8;
+    private static final int SAVES_PER_THREAD = 200;
+
+    protected SessionStore store;
+    private final Random random = new Random(42);
+
+    /**
+     * Returns a new, empty store.
+     */
+    protected abstract SessionStore createStore() throws Exception;
+
+    @BeforeEach
+    void createConformanceStore() throws Exception {
+        store = createStore();
+    }
+
+    @AfterEach
+    void closeConformanceStore() throws Exception {
+        if (store instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void saveSessionRecord_IsReadBack() {
+        // Arrange
+        byte[] record = record();
+
+        // Act
+        store.saveSessionRecord("consumer", 1, record);
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer", 1).sessionRecord()).isEqualTo(record);
+        assertThat(store.loadSession("consumer", 1).base64SessionRecord()).isEqualTo(Base64.getEncoder().encodeToString(record));
+        assertThat(store.loadSessionRecord("consumer", 2)).isNull();
+        assertThat(store.loadSessionRecord("unknown", 1)).isNull();
+    }
+
+    @Test
+    void saveSession_Base64IsReadBackAsRecord() {
+        // Arrange
+        byte[] record = record();
+
+        // Act
+        store.saveSession("consumer", 1, Base64.getEncoder().encodeToString(record));
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer", 1).sessionRecord()).isEqualTo(record);
+    }
+
+    @Test
+    void saveSessionRecord_OverwritesPreviousRecord() {
+        // Arrange
+        store.saveSessionRecord("consumer", 1, record());
+        byte[] latest = record();
+
+        // Act
+        store.saveSessionRecord("consumer", 1, latest);
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer", 1).sessionRecord()).isEqualTo(latest);
+        assertThat(loadAllRecords()).hasSize(1);
+    }
+
+    @Test
+    void saveSessionRecord_KeepsDevicesApart() {
+        // Arrange
+        byte[] first = record();
+        byte[] second = record();
+
+        // Act
+        store.saveSessionRecord("consumer", 1, first);
+        store.saveSessionRecord("consumer", 2, second);
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer", 1).sessionRecord()).isEqualTo(first);
+        assertThat(store.loadSessionRecord("consumer", 2).sessionRecord()).isEqualTo(second);
+    }
+
+    @Test
+    void saveSessionRecords_SavesWholeBatch() {
+        // Arrange
+        List<SessionRecordData> sessions = IntStream.range(0, 250)
+                .mapToObj(i -> new SessionRecordData("consumer" + i, 1, record()))
+                .toList();
+
+        // Act
+        store.saveSessionRecords(sessions);
+
+        // Assert
+        assertThat(loadAllRecords()).hasSize(250);
+        assertThat(store.loadSessionRecord("consumer249", 1).sessionRecord()).isEqualTo(sessions.get(249).sessionRecord());
+    }
+
+    @Test
+    void deleteSession_RemovesAllDevicesOfConsumerOnly() {
+        // Arrange
+        store.saveSessionRecord("deleted", 1, record());
+        store.saveSessionRecord("deleted", 2, record());
+        store.saveSessionRecord("kept", 1, record());
+
+        // Act
+        store.deleteSession("deleted");
+        store.deleteSession("unknown");
+
+        // Assert
+        assertThat(store.loadSessionRecord("deleted", 1)).isNull();
+        assertThat(store.loadSessionRecord("deleted", 2)).isNull();
+        assertThat(store.loadSessionRecord("kept", 1)).isNotNull();
+        assertThat(loadAllRecords()).extracting(SessionRecordData::name).containsExactly("kept");
+    }
+
+    @Test
+    void deleteSession_AllowsSavingAgain() {
+        // Arrange
+        store.saveSessionRecord("consumer", 1, record());
+        store.deleteSession("consumer");
+        byte[] renegotiated = record();
+
+        // Act
+        store.saveSessionRecord("consumer", 1, renegotiated);
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer", 1).sessionRecord()).isEqualTo(renegotiated);
+    }
+
+    @Test
+    void loadAll_ReturnsEverySessionOncePerPage() {
+        // Arrange
+        for (int i = 0; i < 25; i++) {
+            store.saveSessionRecord("consumer" + i, 1, record());
+        }
+        List<Integer> pageSizes = new ArrayList<>();
+        List<SessionData> sessions = new ArrayList<>();
+
+        // Act
+        store.loadAll(10, page -> {
+            pageSizes.add(page.size());
+            sessions.addAll(page);
+        });
+
+        // Assert
+        assertThat(pageSizes).allSatisfy(size -> assertThat(size).isBetween(1, 10));
+        assertThat(sessions).extracting(SessionData::name).doesNotHaveDuplicates().hasSize(25);
+        assertThat(store.loadAll()).hasSize(25);
+    }
+
+    @Test
+    void saveSessionRecord_ConcurrentSavesOfDifferentConsumersAreAllKept() throws Exception {
+        // Arrange
+        byte[][] records = new byte[THREADS][];
+        for (int thread = 0; thread < THREADS; thread++) {
+            records[thread] = record();
+        }
+
+        // Act
+        runConcurrently(thread -> {
+            for (int i = 0; i < SAVES_PER_THREAD; i++) {
+                store.saveSessionRecord("consumer" + thread + "-" + i, 1, records[thread]);
+            }
+        });
+
+        // Assert
+        assertThat(loadAllRecords()).hasSize(THREADS * SAVES_PER_THREAD);
+        for (int thread = 0; thread < THREADS; thread++) {
+            assertThat(store.loadSessionRecord("consumer" + thread + "-" + (SAVES_PER_THREAD - 1), 1).sessionRecord())
+                    .isEqualTo(records[thread]);
+        }
+    }
+
+    @Test
+    void saveSessionRecord_ConcurrentSavesOfSameConsumerKeepOneCompleteRecord() throws Exception {
+        // Arrange
+        byte[][] records = new byte[THREADS][];
+        for (int thread = 0; thread < THREADS; thread++) {
+            records[thread] = record();
+        }
+
+        // Act
+        runConcurrently(thread -> {
+            for (int i = 0; i < SAVES_PER_THREAD; i++) {
+                store.saveSessionRecord("consumer", 1, records[thread]);
+            }
+        });
+
+        // Assert
+        byte[] stored = store.loadSessionRecord("consumer", 1).sessionRecord();
+        assertThat(loadAllRecords()).hasSize(1);
+        assertThat(records).anySatisfy(record -> assertThat(record).isEqualTo(stored));
+    }
+
+    @Test
+    void loadSessionRecord_ReadsOwnWritesUnderConcurrency() throws Exception {
+        // Arrange
+        Queue<String> staleReads = new ConcurrentLinkedQueue<>();
+
+        // Act
+        runConcurrently(thread -> {
+            Random threadRandom = new Random(thread);
+            for (int i = 0; i < SAVES_PER_THREAD; i++) {
+                byte[] record = new byte[RECORD_BYTES];
+                threadRandom.nextBytes(record);
+                String consumer = "consumer" + thread;
+                store.saveSessionRecord(consumer, 1, record);
+                SessionRecordData loaded = store.loadSessionRecord(consumer, 1);
+                if (loaded == null || !Arrays.equals(loaded.sessionRecord(), record)) {
+                    staleReads.add(consumer + " after save " + i);
+                }
+            }
+        });
+
+        // Assert
+        assertThat(staleReads).isEmpty();
+    }
+
+    /**
+     * A record of realistic size with random contents.
+     */
+    protected byte[] record() {
+        byte[] record = new byte[RECORD_BYTES];
+        random.nextBytes(record);
+        return record;
+    }
+
+    private List<SessionRecordData> loadAllRecords() {
+        List<SessionRecordData> sessions = new ArrayList<>();
+        store.loadAllRecords(100, sessions::addAll);
+        return sessions;
+    }
+
+    /**
+     * Runs {@code task} on {@value #THREADS} threads that start together, and rethrows the first failure.
+     */
+    protected static void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int threadIndex = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(threadIndex);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    protected interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+}
@@ -0,0 +1,21 @@
+package io.sekretess.store.file;
+
+import io.sekretess.store.GroupSessionStore;
+import io.sekretess.store.conformance.GroupSessionStoreConformanceTest;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+/**
+ * Runs the GroupSessionStore conformance tests against FileGroupSessionStore.
+ */
+class FileGroupSessionStoreConformanceTest extends GroupSessionStoreConformanceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Override
+    protected GroupSessionStore createStore() {
+        return new FileGroupSessionStore(tempDir.resolve("group.log"));
+    }
+}
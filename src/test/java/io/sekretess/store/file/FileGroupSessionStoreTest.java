@@ -0,0 +1,110 @@
+package io.sekretess.store.file;
+
+import io.sekretess.model.ConsumerIdentityData;
+import io.sekretess.model.GroupSessionData;
+import io.sekretess.model.GroupSessionRecordData;
+import io.sekretess.model.IdentityKeyData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for FileGroupSessionStore and FileIdentityStore.
+ */
+class FileGroupSessionStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSaveGroupSessionKeepsDistributionMessage() {
+        try (FileGroupSessionStore store = new FileGroupSessionStore(tempDir.resolve("group.log"))) {
+            // Act
+            store.saveSendDistributionMessageRecord("business", 1, "dist-1", new byte[]{1});
+            store.saveGroupSessionRecord("business", 1, "dist-1", new byte[]{2, 3});
+
+            // Assert
+            GroupSessionRecordData record = store.loadGroupSessionRecord("business");
+            assertThat(record.distributionId()).isEqualTo("dist-1");
+            assertThat(record.sessionRecord()).containsExactly(2, 3);
+            assertThat(record.businessDistributionMessage()).containsExactly(1);
+        }
+    }
+
+    @Test
+    void testSaveDistributionMessageClearsSessionRecord() {
+        try (FileGroupSessionStore store = new FileGroupSessionStore(tempDir.resolve("group.log"))) {
+            // Arrange
+            store.saveGroupSession("business", 1, "dist-1", "AQ==");
+
+            // Act
+            store.saveSendDistributionMessage("business", 1, "dist-2", "Ag==");
+
+            // Assert
+            GroupSessionData data = store.loadGroupSession("business");
+            assertThat(data.distributionId()).isEqualTo("dist-2");
+            assertThat(data.sessionRecord()).isNull();
+            assertThat(data.businessDistributionMessage()).isEqualTo("Ag==");
+            assertThat(store.loadGroupSession("unknown")).isNull();
+        }
+    }
+
+    @Test
+    void testGroupSessionSurvivesReopen() {
+        // Arrange
+        Path file = tempDir.resolve("group.log");
+        try (FileGroupSessionStore store = new FileGroupSessionStore(file)) {
+            store.saveGroupSessionRecord("business", 1, "dist-1", new byte[]{5});
+        }
+
+        // Act & Assert
+        try (FileGroupSessionStore store = new FileGroupSessionStore(file)) {
+            assertThat(store.loadGroupSessionRecord("business").sessionRecord()).containsExactly(5);
+        }
+    }
+
+    @Test
+    void testIdentitySurvivesReopen() {
+        // Arrange
+        Path file = tempDir.resolve("identity.log");
+        try (FileIdentityStore store = new FileIdentityStore(file)) {
+            store.saveIdentity("business", new byte[]{9, 8, 7}, 42);
+        }
+
+        // Act & Assert
+        try (FileIdentityStore store = new FileIdentityStore(file)) {
+            IdentityKeyData identity = store.loadIdentity("business");
+            assertThat(identity.registrationId()).isEqualTo(42);
+            assertThat(identity.serializedIdentityKeyPair()).containsExactly(9, 8, 7);
+            assertThat(store.loadIdentity("unknown")).isNull();
+        }
+    }
+
+    @Test
+    void testConsumerIdentitiesSurviveReopen() {
+        // Arrange
+        Path file = tempDir.resolve("identity.log");
+        try (FileIdentityStore store = new FileIdentityStore(file)) {
+            store.saveIdentity("business", new byte[]{9}, 42);
+            store.saveConsumerIdentity("consumer1", 123, new byte[]{1});
+            store.saveConsumerIdentity("consumer2", 123, new byte[]{2});
+            store.saveConsumerIdentity("consumer1", 123, new byte[]{3});
+        }
+
+        // Act & Assert
+        try (FileIdentityStore store = new FileIdentityStore(file)) {
+            List<ConsumerIdentityData> identities = new ArrayList<>();
+            store.loadAllConsumerIdentities(1, identities::addAll);
+            assertThat(store.supportsConsumerIdentities()).isTrue();
+            assertThat(identities).extracting(ConsumerIdentityData::name).containsExactlyInAnyOrder("consumer1", "consumer2");
+            assertThat(store.loadConsumerIdentity("consumer1", 123).identityKey()).containsExactly(3);
+            assertThat(store.loadConsumerIdentity("business", 123)).isNull();
+            assertThat(store.loadIdentity("business").registrationId()).isEqualTo(42);
+        }
+    }
+}
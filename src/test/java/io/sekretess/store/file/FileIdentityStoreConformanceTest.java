@@ -0,0 +1,21 @@
+package io.sekretess.store.file;
+
+import io.sekretess.store.IdentityStore;
+import io.sekretess.store.conformance.IdentityStoreConformanceTest;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+/**
+ * Runs the IdentityStore conformance tests against FileIdentityStore.
+ */
+class FileIdentityStoreConformanceTest extends IdentityStoreConformanceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Override
+    protected IdentityStore createStore() {
+        return new FileIdentityStore(tempDir.resolve("identity.log"), FileStoreConfig.defaults());
+    }
+}
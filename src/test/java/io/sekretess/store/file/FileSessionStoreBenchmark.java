@@ -0,0 +1,110 @@
+package io.sekretess.store.file;
+
+import io.sekretess.model.SessionData;
+import io.sekretess.store.SessionStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of per-message session saves with FileSessionStore compared to a naive store that writes one file per
+ * session. Not run by the build; start it with
+ * {@code java -cp target/classes:target/test-classes:<dependencies> io.sekretess.store.file.FileSessionStoreBenchmark [sessions] [saves]}.
+ */
+public class FileSessionStoreBenchmark {
+
+    private static final int RECORD_BYTES = 1_500;
+
+    public static void main(String[] args) throws IOException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int saves = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        byte[] record = new byte[RECORD_BYTES];
+        new Random(42).nextBytes(record);
+
+        Path directory = Files.createTempDirectory("sekretess-store-benchmark");
+        try {
+            try (FileSessionStore store = new FileSessionStore(directory.resolve("sessions.log"))) {
+                run("file log", store, sessions, saves, record);
+            }
+            try (FileSessionStore store = new FileSessionStore(directory.resolve("sessions-sync.log"), FileStoreConfig.durable())) {
+                run("file log, sync on write", store, sessions, Math.min(saves, 10_000), record);
+            }
+            run("file per session", new NaiveFileSessionStore(Files.createDirectory(directory.resolve("naive"))), sessions, saves, record);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(String name, SessionStore store, int sessions, int saves, byte[] record) {
+        // Warm up the JIT and the file system before measuring.
+        for (int i = 0; i < Math.min(saves, 10_000); i++) {
+            store.saveSessionRecord("warmup" + (i % sessions), 123, record);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < saves; i++) {
+            record[0] = (byte) i;
+            store.saveSessionRecord("consumer" + (i % sessions), 123, record);
+        }
+        long saveNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int[] loaded = new int[1];
+        store.loadAllRecords(1_000, page -> loaded[0] += page.size());
+        long loadNanos = System.nanoTime() - start;
+
+        System.out.printf("%-26s %,12.0f saves/s %,10.1f us/save   loadAll %,d sessions in %,d ms%n",
+                name, saves / (saveNanos / 1e9), saveNanos / 1e3 / saves, loaded[0], loadNanos / 1_000_000);
+    }
+
+    /**
+     * Stores every session in its own file, rewritten on each save.
+     */
+    private static final class NaiveFileSessionStore implements SessionStore {
+        private final Path directory;
+
+        private NaiveFileSessionStore(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+            try {
+                Files.writeString(directory.resolve(name + "." + deviceId), base64EncodedRecord);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public List<SessionData> loadAll() {
+            try (Stream<Path> files = Files.list(directory)) {
+                return files.map(file -> {
+                    String fileName = file.getFileName().toString();
+                    int separator = fileName.lastIndexOf('.');
+                    try {
+                        return new SessionData(fileName.substring(0, separator), Integer.parseInt(fileName.substring(separator + 1)),
+                                new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).toList();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void deleteSession(String name) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
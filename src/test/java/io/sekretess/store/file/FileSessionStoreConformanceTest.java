@@ -0,0 +1,21 @@
+package io.sekretess.store.file;
+
+import io.sekretess.store.SessionStore;
+import io.sekretess.store.conformance.SessionStoreConformanceTest;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+/**
+ * Runs the SessionStore conformance tests against FileSessionStore.
+ */
+class FileSessionStoreConformanceTest extends SessionStoreConformanceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Override
+    protected SessionStore createStore() {
+        return new FileSessionStore(tempDir.resolve("sessions.log"));
+    }
+}
@@ -0,0 +1,255 @@
+package io.sekretess.store.file;
+
+import io.sekretess.model.SessionRecordData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for FileSessionStore and the append-only log behind it.
+ */
+class FileSessionStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private FileSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("sessions.log");
+        store = new FileSessionStore(file, new FileStoreConfig(false, 0.5, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void testSaveAndLoadSessionRecord() {
+        // Act
+        store.saveSessionRecord("consumer1", 123, new byte[]{1, 2, 3});
+        store.saveSession("consumer2", 123, "BAU=");
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer1", 123).sessionRecord()).containsExactly(1, 2, 3);
+        assertThat(store.loadSession("consumer2", 123).base64SessionRecord()).isEqualTo("BAU=");
+        assertThat(store.loadSessionRecord("consumer1", 1)).isNull();
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testSessionsSurviveReopen() {
+        // Arrange
+        store.saveSessionRecord("consumer1", 123, new byte[]{1});
+        store.saveSessionRecord("consumer1", 123, new byte[]{2});
+        store.saveSessionRecords(List.of(
+                new SessionRecordData("consumer2", 123, new byte[]{3}),
+                new SessionRecordData("consumer3", 123, new byte[]{4})));
+        store.deleteSession("consumer3");
+        store.close();
+
+        // Act
+        store = new FileSessionStore(file);
+
+        // Assert
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.loadSessionRecord("consumer1", 123).sessionRecord()).containsExactly(2);
+        assertThat(store.loadSessionRecord("consumer3", 123)).isNull();
+    }
+
+    @Test
+    void testIncompleteRecordIsTruncatedOnOpen() throws IOException {
+        // Arrange
+        store.saveSessionRecord("consumer1", 123, new byte[]{1});
+        store.close();
+        long validSize = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 42, 7, 7}));
+        }
+
+        // Act
+        store = new FileSessionStore(file);
+        store.saveSessionRecord("consumer2", 123, new byte[]{2});
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer1", 123).sessionRecord()).containsExactly(1);
+        assertThat(store.loadSessionRecord("consumer2", 123).sessionRecord()).containsExactly(2);
+        assertThat(Files.size(file)).isGreaterThan(validSize);
+    }
+
+    @Test
+    void testDeleteRemovesAllDevicesOfConsumer() {
+        // Arrange
+        store.saveSessionRecord("consumer1", 1, new byte[]{1});
+        store.saveSessionRecord("consumer1", 2, new byte[]{2});
+        store.saveSessionRecord("consumer2", 1, new byte[]{3});
+
+        // Act
+        store.deleteSession("consumer1");
+
+        // Assert
+        assertThat(store.loadAll()).extracting("name").containsExactly("consumer2");
+    }
+
+    @Test
+    void testLoadAllRecordsInPages() {
+        // Arrange
+        for (int i = 0; i < 25; i++) {
+            store.saveSessionRecord("consumer" + i, 123, new byte[]{(byte) i});
+        }
+        List<Integer> pageSizes = new ArrayList<>();
+
+        // Act
+        store.loadAllRecords(10, page -> pageSizes.add(page.size()));
+
+        // Assert
+        assertThat(pageSizes).containsExactly(10, 10, 5);
+        assertThatThrownBy(() -> store.loadAllRecords(0, page -> {}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testLoadRecordsChangedSinceSurvivesCompactionAndReopen() throws InterruptedException {
+        // Arrange
+        store.saveSessionRecord("consumer1", 123, new byte[]{1});
+        store.saveSessionRecord("consumer2", 123, new byte[]{2});
+        Thread.sleep(5);
+        long sinceMillis = System.currentTimeMillis();
+        store.saveSessionRecord("consumer2", 123, new byte[]{3});
+        store.saveSessionRecords(List.of(new SessionRecordData("consumer3", 123, new byte[]{4})));
+        store.compact();
+        store.close();
+        store = new FileSessionStore(file);
+        List<SessionRecordData> changed = new ArrayList<>();
+
+        // Act
+        store.loadRecordsChangedSince(sinceMillis, 10, changed::addAll);
+
+        // Assert
+        assertThat(store.supportsChangesSince()).isTrue();
+        assertThat(changed).extracting("name").containsExactlyInAnyOrder("consumer2", "consumer3");
+    }
+
+    @Test
+    void testSessionsWithoutSaveTimeAreReportedAsChanged() {
+        // Arrange
+        store.close();
+        try (AppendOnlyLog log = new AppendOnlyLog(file, FileStoreConfig.defaults())) {
+            log.put("consumer1\u0000123", new byte[]{1});
+        }
+        store = new FileSessionStore(file);
+        List<SessionRecordData> changed = new ArrayList<>();
+
+        // Act
+        store.loadRecordsChangedSince(System.currentTimeMillis(), 10, changed::addAll);
+
+        // Assert
+        assertThat(changed).extracting("name").containsExactly("consumer1");
+    }
+
+    @Test
+    void testCompactionKeepsOnlyLiveRecords() throws IOException {
+        // Arrange
+        for (int i = 0; i < 100; i++) {
+            store.saveSessionRecord("consumer" + (i % 10), 123, new byte[]{(byte) i});
+        }
+        store.deleteSession("consumer0");
+        long sizeBefore = Files.size(file);
+
+        // Act
+        store.compact();
+        store.saveSessionRecord("consumer1", 123, new byte[]{-1});
+
+        // Assert
+        assertThat(Files.size(file)).isLessThan(sizeBefore);
+        assertThat(store.size()).isEqualTo(9);
+        assertThat(store.loadSessionRecord("consumer1", 123).sessionRecord()).containsExactly(-1);
+        assertThat(store.loadSessionRecord("consumer9", 123).sessionRecord()).containsExactly(99);
+        store.close();
+        store = new FileSessionStore(file);
+        assertThat(store.size()).isEqualTo(9);
+        assertThat(store.loadSessionRecord("consumer1", 123).sessionRecord()).containsExactly(-1);
+    }
+
+    @Test
+    void testLogAndCompactedLogAreReadableByOwnerOnly() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        // Arrange
+        store.saveSessionRecord("consumer1", 123, new byte[]{1});
+        Set<PosixFilePermission> ownerOnly = Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+        assertThat(Files.getPosixFilePermissions(file)).isEqualTo(ownerOnly);
+
+        // Act
+        store.saveSessionRecord("consumer1", 123, new byte[]{2});
+        store.compact();
+
+        // Assert
+        assertThat(Files.getPosixFilePermissions(file)).isEqualTo(ownerOnly);
+    }
+
+    @Test
+    void testDeleteDuringConcurrentSavesLeavesNoUntrackedSessions() throws Exception {
+        // Arrange
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                store.saveSessionRecord("consumer", i % 4, new byte[]{(byte) i});
+            }
+        });
+
+        // Act
+        writer.start();
+        while (writer.isAlive()) {
+            store.deleteSession("consumer");
+        }
+        writer.join();
+        store.deleteSession("consumer");
+
+        // Assert
+        assertThat(store.size()).isZero();
+        for (int deviceId = 0; deviceId < 4; deviceId++) {
+            assertThat(store.loadSessionRecord("consumer", deviceId)).isNull();
+        }
+    }
+
+    @Test
+    void testConcurrentWritesDuringCompaction() throws Exception {
+        // Arrange
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                store.saveSessionRecord("consumer" + (i % 100), 123, new byte[]{(byte) (i / 100)});
+            }
+        });
+
+        // Act
+        writer.start();
+        while (writer.isAlive()) {
+            store.compact();
+        }
+        writer.join();
+
+        // Assert
+        assertThat(store.size()).isEqualTo(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(store.loadSessionRecord("consumer" + i, 123).sessionRecord()).containsExactly((byte) 199);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.sekretess.store.file;
+
+import io.sekretess.store.InMemoryGroupSessionStore;
+import io.sekretess.store.InMemorySessionStore;
+import io.sekretess.store.SekretessSignalProtocolStore;
+import io.sekretess.store.SessionCacheConfig;
+import io.sekretess.store.SessionTierStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.SignalProtocolAddress;
+import org.signal.libsignal.protocol.state.SessionRecord;
+import org.signal.libsignal.protocol.util.KeyHelper;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for WarmTierSessionStore.
+ */
+class WarmTierSessionStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private InMemorySessionStore coldStore;
+
+    @BeforeEach
+    void setUp() {
+        coldStore = new InMemorySessionStore();
+    }
+
+    @Test
+    void testDemotedSessionIsReadOnceFromWarmTier() {
+        try (WarmTierSessionStore store = new WarmTierSessionStore(coldStore, tempDir.resolve("warm.log"), 10)) {
+            // Arrange
+            store.saveSessionRecord("consumer", 1, new byte[]{1});
+            store.demoteSession("consumer", 1, new byte[]{2});
+
+            // Act
+            byte[] warm = store.loadSessionRecord("consumer", 1).sessionRecord();
+            byte[] cold = store.loadSessionRecord("consumer", 1).sessionRecord();
+
+            // Assert
+            assertThat(warm).containsExactly(2);
+            assertThat(cold).containsExactly(1);
+            assertThat(store.getWarmSessionCount()).isZero();
+            assertThat(store.getTierStats()).isEqualTo(new SessionTierStats(0, 0, 1, 1, 0, 1, 0));
+        }
+    }
+
+    @Test
+    void testSaveReplacesDemotedSession() {
+        try (WarmTierSessionStore store = new WarmTierSessionStore(coldStore, tempDir.resolve("warm.log"), 10)) {
+            // Arrange
+            store.demoteSession("consumer", 1, new byte[]{1});
+
+            // Act
+            store.saveSessionRecord("consumer", 1, new byte[]{2});
+
+            // Assert
+            assertThat(store.getWarmSessionCount()).isZero();
+            assertThat(store.loadSessionRecord("consumer", 1).sessionRecord()).containsExactly(2);
+        }
+    }
+
+    @Test
+    void testDeleteAndDropRemoveDemotedSessions() {
+        try (WarmTierSessionStore store = new WarmTierSessionStore(coldStore, tempDir.resolve("warm.log"), 10)) {
+            // Arrange
+            store.demoteSession("deleted", 1, new byte[]{1});
+            store.demoteSession("dropped", 1, new byte[]{2});
+            store.demoteSession("kept", 1, new byte[]{3});
+
+            // Act
+            store.deleteSession("deleted");
+            store.dropDemotedSessions("dropped"::equals);
+
+            // Assert
+            assertThat(store.getWarmSessionCount()).isEqualTo(1);
+            assertThat(store.loadSessionRecord("deleted", 1)).isNull();
+            assertThat(store.loadSessionRecord("dropped", 1)).isNull();
+            assertThat(store.loadSessionRecord("kept", 1).sessionRecord()).containsExactly(3);
+            assertThat(store.getTierStats().coldMisses()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void testWarmTierIsBoundedAndClearedOnOpen() {
+        // Arrange
+        Path file = tempDir.resolve("warm.log");
+        try (WarmTierSessionStore store = new WarmTierSessionStore(coldStore, file, 2)) {
+            for (int i = 0; i < 5; i++) {
+                store.demoteSession("consumer" + i, 1, new byte[]{(byte) i});
+            }
+
+            // Assert
+            assertThat(store.getWarmSessionCount()).isEqualTo(2);
+            assertThat(store.getTierStats().warmEvictions()).isEqualTo(3);
+        }
+
+        // Act
+        try (WarmTierSessionStore reopened = new WarmTierSessionStore(coldStore, file, 2)) {
+            // Assert
+            assertThat(reopened.getWarmSessionCount()).isZero();
+            assertThat(reopened.loadSessionRecord("consumer4", 1)).isNull();
+        }
+    }
+
+    @Test
+    void testSessionEvictedFromCacheIsServedFromWarmTier() {
+        try (WarmTierSessionStore warmStore = new WarmTierSessionStore(coldStore, tempDir.resolve("warm.log"), 10)) {
+            // Arrange
+            SekretessSignalProtocolStore store = new SekretessSignalProtocolStore(IdentityKeyPair.generate(),
+                    KeyHelper.generateRegistrationId(false), warmStore, new InMemoryGroupSessionStore(),
+                    new SessionCacheConfig(1, 0, null));
+            SignalProtocolAddress first = new SignalProtocolAddress("consumer1", 1);
+            SignalProtocolAddress second = new SignalProtocolAddress("consumer2", 1);
+            store.storeSession(first, new SessionRecord());
+            store.storeSession(second, new SessionRecord());
+
+            // Act
+            SessionRecord reloaded = store.loadSession(first);
+
+            // Assert
+            assertThat(reloaded).isNotNull();
+            SessionTierStats stats = store.getSessionTierStats();
+            assertThat(stats.demotions()).isGreaterThanOrEqualTo(1);
+            assertThat(stats.warmHits()).isEqualTo(1);
+            assertThat(stats.coldHits()).isZero();
+            assertThat(stats.hotMisses()).isEqualTo(1);
+        }
+    }
+}
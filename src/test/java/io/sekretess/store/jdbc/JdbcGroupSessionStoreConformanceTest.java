@@ -0,0 +1,22 @@
+package io.sekretess.store.jdbc;
+
+import io.sekretess.store.GroupSessionStore;
+import io.sekretess.store.conformance.GroupSessionStoreConformanceTest;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.util.UUID;
+
+/**
+ * Runs the GroupSessionStore conformance tests against JdbcGroupSessionStore on an in-memory H2 database.
+ */
+class JdbcGroupSessionStoreConformanceTest extends GroupSessionStoreConformanceTest {
+
+    @Override
+    protected GroupSessionStore createStore() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcGroupSessionStore store = new JdbcGroupSessionStore(dataSource, JdbcStoreConfig.defaults(SqlDialect.H2));
+        store.createSchema();
+        return store;
+    }
+}
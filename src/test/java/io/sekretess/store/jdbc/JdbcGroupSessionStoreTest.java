@@ -0,0 +1,55 @@
+package io.sekretess.store.jdbc;
+
+import io.sekretess.model.GroupSessionRecordData;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for JdbcGroupSessionStore against an in-memory H2 database.
+ */
+class JdbcGroupSessionStoreTest {
+
+    private JdbcGroupSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        store = new JdbcGroupSessionStore(dataSource, JdbcStoreConfig.defaults(SqlDialect.H2));
+        store.createSchema();
+    }
+
+    @Test
+    void testSaveGroupSessionKeepsDistributionMessage() {
+        // Act
+        store.saveSendDistributionMessageRecord("business", 1, "dist-1", new byte[]{9});
+        store.saveGroupSessionRecord("business", 1, "dist-1", new byte[]{1, 2});
+
+        // Assert
+        GroupSessionRecordData record = store.loadGroupSessionRecord("business");
+        assertThat(record.deviceId()).isEqualTo(1);
+        assertThat(record.distributionId()).isEqualTo("dist-1");
+        assertThat(record.sessionRecord()).containsExactly(1, 2);
+        assertThat(record.businessDistributionMessage()).containsExactly(9);
+    }
+
+    @Test
+    void testSaveDistributionMessageClearsSenderKey() {
+        // Arrange
+        store.saveGroupSessionRecord("business", 1, "dist-1", new byte[]{1});
+
+        // Act
+        store.saveSendDistributionMessage("business", 1, "dist-2", "BAU=");
+
+        // Assert
+        assertThat(store.loadGroupSession("business").sessionRecord()).isNull();
+        assertThat(store.loadGroupSession("business").businessDistributionMessage()).isEqualTo("BAU=");
+        assertThat(store.loadGroupSession("business").distributionId()).isEqualTo("dist-2");
+        assertThat(store.loadGroupSession("unknown")).isNull();
+    }
+}
@@ -0,0 +1,90 @@
+package io.sekretess.store.jdbc;
+
+import io.sekretess.model.SessionRecordData;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of JdbcSessionStore on an embedded H2 file database: one autocommit upsert per save compared to
+ * batched saves, and {@code loadAll} with several fetch sizes. Not run by the build; start it with
+ * {@code java -cp target/classes:target/test-classes:<dependencies> io.sekretess.store.jdbc.JdbcSessionStoreBenchmark [sessions]}.
+ */
+public class JdbcSessionStoreBenchmark {
+
+    private static final int RECORD_BYTES = 1_500;
+
+    public static void main(String[] args) throws IOException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        byte[] record = new byte[RECORD_BYTES];
+        new Random(42).nextBytes(record);
+
+        Path directory = Files.createTempDirectory("sekretess-jdbc-benchmark");
+        try {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:file:" + directory.resolve("sessions") + ";DB_CLOSE_DELAY=-1");
+
+            JdbcSessionStore store = new JdbcSessionStore(dataSource, JdbcStoreConfig.defaults(SqlDialect.H2));
+            store.createSchema();
+            saveOneByOne(store, "warmup", Math.min(sessions, 2_000), record);
+            saveOneByOne(store, "consumer", sessions, record);
+
+            for (int batchSize : new int[]{50, 500}) {
+                JdbcSessionStore batchedStore = new JdbcSessionStore(dataSource,
+                        new JdbcStoreConfig(SqlDialect.H2, "sekretess_", true, batchSize, 1_000));
+                saveBatched(batchedStore, batchSize, sessions, record);
+            }
+
+            for (int fetchSize : new int[]{10, 100, 1_000}) {
+                JdbcSessionStore fetchingStore = new JdbcSessionStore(dataSource,
+                        new JdbcStoreConfig(SqlDialect.H2, "sekretess_", true, 500, fetchSize));
+                long start = System.nanoTime();
+                int[] loaded = new int[1];
+                fetchingStore.loadAllRecords(1_000, page -> loaded[0] += page.size());
+                System.out.printf("%-28s loadAll %,d sessions in %,d ms%n",
+                        "fetch size " + fetchSize, loaded[0], (System.nanoTime() - start) / 1_000_000);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void saveOneByOne(JdbcSessionStore store, String prefix, int sessions, byte[] record) {
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            record[0] = (byte) i;
+            store.saveSessionRecord(prefix + i, 123, record);
+        }
+        report("autocommit upsert", sessions, System.nanoTime() - start);
+    }
+
+    private static void saveBatched(JdbcSessionStore store, int batchSize, int sessions, byte[] record) {
+        List<SessionRecordData> batch = new ArrayList<>(batchSize);
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            record[0] = (byte) i;
+            batch.add(new SessionRecordData("consumer" + i, 123, record.clone()));
+            if (batch.size() == batchSize) {
+                store.saveSessionRecords(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            store.saveSessionRecords(batch);
+        }
+        report("batched upsert, batch " + batchSize, sessions, System.nanoTime() - start);
+    }
+
+    private static void report(String name, int saves, long nanos) {
+        System.out.printf("%-28s %,12.0f saves/s %,10.1f us/save%n", name, saves / (nanos / 1e9), nanos / 1e3 / saves);
+    }
+}
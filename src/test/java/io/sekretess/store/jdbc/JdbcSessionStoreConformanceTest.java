@@ -0,0 +1,22 @@
+package io.sekretess.store.jdbc;
+
+import io.sekretess.store.SessionStore;
+import io.sekretess.store.conformance.SessionStoreConformanceTest;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.util.UUID;
+
+/**
+ * Runs the SessionStore conformance tests against JdbcSessionStore on an in-memory H2 database.
+ */
+class JdbcSessionStoreConformanceTest extends SessionStoreConformanceTest {
+
+    @Override
+    protected SessionStore createStore() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcSessionStore store = new JdbcSessionStore(dataSource, JdbcStoreConfig.defaults(SqlDialect.H2));
+        store.createSchema();
+        return store;
+    }
+}
@@ -0,0 +1,178 @@
+package io.sekretess.store.jdbc;
+
+import io.sekretess.exception.StoreException;
+import io.sekretess.model.SessionRecordData;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for JdbcSessionStore against an in-memory H2 database.
+ */
+class JdbcSessionStoreTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        store = createStore("sekretess_", true);
+    }
+
+    private JdbcSessionStore createStore(String tablePrefix, boolean binaryColumns) {
+        JdbcSessionStore jdbcSessionStore = new JdbcSessionStore(dataSource,
+                new JdbcStoreConfig(SqlDialect.H2, tablePrefix, binaryColumns, 3, 2));
+        jdbcSessionStore.createSchema();
+        return jdbcSessionStore;
+    }
+
+    @Test
+    void testSaveAndLoadSessionRecord() {
+        // Act
+        store.saveSessionRecord("consumer1", 123, new byte[]{1, 2, 3});
+        store.saveSession("consumer2", 123, "BAU=");
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer1", 123).sessionRecord()).containsExactly(1, 2, 3);
+        assertThat(store.loadSession("consumer2", 123).base64SessionRecord()).isEqualTo("BAU=");
+        assertThat(store.loadSessionRecord("consumer1", 1)).isNull();
+    }
+
+    @Test
+    void testSaveAndLoadWithTextColumns() {
+        // Arrange
+        JdbcSessionStore textStore = createStore("text_", false);
+
+        // Act
+        textStore.saveSessionRecord("consumer1", 123, new byte[]{1, 2, 3});
+        textStore.saveSessionRecords(List.of(new SessionRecordData("consumer2", 123, new byte[]{4, 5})));
+
+        // Assert
+        assertThat(textStore.loadSessionRecord("consumer1", 123).sessionRecord()).containsExactly(1, 2, 3);
+        assertThat(textStore.loadSession("consumer2", 123).base64SessionRecord()).isEqualTo("BAU=");
+    }
+
+    @Test
+    void testSaveOverwritesAndIncrementsVersion() {
+        // Act
+        store.saveSessionRecord("consumer1", 123, new byte[]{1});
+        store.saveSessionRecord("consumer1", 123, new byte[]{2});
+
+        // Assert
+        assertThat(store.loadVersionedSessionRecord("consumer1", 123).sessionRecord()).containsExactly(2);
+        assertThat(store.loadVersionedSessionRecord("consumer1", 123).version()).isEqualTo(2);
+    }
+
+    @Test
+    void testBatchedSaveSpanningSeveralBatches() {
+        // Arrange
+        List<SessionRecordData> sessions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sessions.add(new SessionRecordData("consumer" + i, 123, new byte[]{(byte) i}));
+        }
+        sessions.add(new SessionRecordData("consumer0", 123, new byte[]{42}));
+
+        // Act
+        store.saveSessionRecords(sessions);
+
+        // Assert
+        assertThat(store.loadAll()).hasSize(10);
+        assertThat(store.loadSessionRecord("consumer0", 123).sessionRecord()).containsExactly(42);
+        assertThat(store.loadSessionRecord("consumer9", 123).sessionRecord()).containsExactly(9);
+    }
+
+    @Test
+    void testLoadAllRecordsInPages() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            store.saveSessionRecord("consumer" + i, 123, new byte[]{(byte) i});
+        }
+        List<Integer> pageSizes = new ArrayList<>();
+
+        // Act
+        store.loadAllRecords(2, page -> pageSizes.add(page.size()));
+
+        // Assert
+        assertThat(pageSizes).containsExactly(2, 2, 1);
+        assertThatThrownBy(() -> store.loadAllRecords(0, page -> {
+        })).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testLoadRecordsChangedSinceReturnsOnlyLaterSaves() throws InterruptedException {
+        // Arrange
+        store.createSchema();
+        store.saveSessionRecord("unchanged", 1, new byte[]{1});
+        store.saveSessionRecord("updated", 1, new byte[]{1});
+        Thread.sleep(5);
+        long since = System.currentTimeMillis();
+        store.saveSessionRecord("updated", 1, new byte[]{2});
+        store.compareAndSetSessionRecord("created", 1, new byte[]{3}, 0);
+        List<String> changed = new ArrayList<>();
+
+        // Act
+        store.loadRecordsChangedSince(since, 10, page -> page.forEach(session -> changed.add(session.name())));
+
+        // Assert
+        assertThat(changed).containsExactlyInAnyOrder("updated", "created");
+    }
+
+    @Test
+    void testDeleteSessionRemovesAllDevices() {
+        // Arrange
+        store.saveSessionRecord("consumer1", 1, new byte[]{1});
+        store.saveSessionRecord("consumer1", 2, new byte[]{2});
+        store.saveSessionRecord("consumer2", 1, new byte[]{3});
+
+        // Act
+        store.deleteSession("consumer1");
+
+        // Assert
+        assertThat(store.loadSessionRecord("consumer1", 1)).isNull();
+        assertThat(store.loadSessionRecord("consumer1", 2)).isNull();
+        assertThat(store.loadSessionRecord("consumer2", 1)).isNotNull();
+    }
+
+    @Test
+    void testCompareAndSetSessionRecord() {
+        // Act & Assert
+        assertThat(store.supportsVersioning()).isTrue();
+        assertThat(store.compareAndSetSessionRecord("consumer1", 123, new byte[]{1}, 0)).isTrue();
+        assertThat(store.compareAndSetSessionRecord("consumer1", 123, new byte[]{2}, 0)).isFalse();
+        assertThat(store.compareAndSetSessionRecord("consumer1", 123, new byte[]{2}, 1)).isTrue();
+        assertThat(store.compareAndSetSessionRecord("consumer1", 123, new byte[]{3}, 1)).isFalse();
+        assertThat(store.loadVersionedSessionRecord("consumer1", 123).version()).isEqualTo(2);
+        assertThat(store.loadSessionRecord("consumer1", 123).sessionRecord()).containsExactly(2);
+    }
+
+    @Test
+    void testFailuresAreReportedAsStoreException() {
+        // Arrange
+        JdbcSessionStore withoutSchema = new JdbcSessionStore(dataSource,
+                new JdbcStoreConfig(SqlDialect.H2, "missing_", true, 500, 1_000));
+
+        // Act & Assert
+        assertThatThrownBy(() -> withoutSchema.saveSessionRecord("consumer1", 123, new byte[]{1}))
+                .isInstanceOf(StoreException.class)
+                .hasMessageContaining("consumer1");
+    }
+
+    @Test
+    void testConfigRejectsInvalidValues() {
+        // Act & Assert
+        assertThatThrownBy(() -> new JdbcStoreConfig(SqlDialect.H2, "sessions; DROP TABLE x", true, 1, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new JdbcStoreConfig(SqlDialect.H2, "sekretess_", true, 0, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new JdbcStoreConfig(null, "sekretess_", true, 1, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,190 @@
+package io.sekretess.store.migration;
+
+import io.sekretess.model.GroupSessionRecordData;
+import io.sekretess.model.SessionData;
+import io.sekretess.model.SessionRecordData;
+import io.sekretess.store.InMemoryGroupSessionStore;
+import io.sekretess.store.InMemorySessionStore;
+import io.sekretess.store.SekretessSignalProtocolStore;
+import io.sekretess.store.SessionStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.SignalProtocolAddress;
+import org.signal.libsignal.protocol.groups.GroupSessionBuilder;
+import org.signal.libsignal.protocol.message.SenderKeyDistributionMessage;
+import org.signal.libsignal.protocol.state.SessionRecord;
+import org.signal.libsignal.protocol.util.KeyHelper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for StoreMigration.
+ */
+class StoreMigrationTest {
+
+    private static final int SESSIONS = 100;
+
+    @TempDir
+    Path tempDir;
+
+    private InMemorySessionStore source;
+    private ConcurrentSessionStore destination;
+
+    @BeforeEach
+    void setUp() {
+        source = new InMemorySessionStore();
+        byte[] record = new SessionRecord().serialize();
+        for (int i = 0; i < SESSIONS; i++) {
+            source.saveSessionRecord("consumer" + i, 1, record);
+        }
+        destination = new ConcurrentSessionStore();
+    }
+
+    @Test
+    void migrateSessions_CopiesAllSessionsInParallel() {
+        // Arrange
+        StoreMigration migration = new StoreMigration(new MigrationConfig(7, 4, null, 1, true));
+
+        // Act
+        MigrationReport report = migration.migrateSessions(source, destination);
+
+        // Assert
+        assertThat(report.sessionsRead()).isEqualTo(SESSIONS);
+        assertThat(report.sessionsWritten()).isEqualTo(SESSIONS);
+        assertThat(report.sessionsResumed()).isZero();
+        assertThat(report.sessionsPerSecond()).isPositive();
+        assertThat(destination.sessions).hasSize(SESSIONS);
+    }
+
+    @Test
+    void migrateSessions_SkipsSessionsThatDoNotDecode() {
+        // Arrange
+        source.saveSessionRecord("broken", 1, new byte[]{1, 2, 3});
+        StoreMigration migration = new StoreMigration(new MigrationConfig(10, 2, null, 1, false));
+
+        // Act
+        MigrationReport report = migration.migrateSessions(source, destination);
+
+        // Assert
+        assertThat(report.invalidSessions()).isEqualTo(1);
+        assertThat(report.sessionsWritten()).isEqualTo(SESSIONS);
+        assertThat(destination.loadSessionRecord("broken", 1)).isNull();
+    }
+
+    @Test
+    void migrateSessions_ResumesAfterFailureFromCheckpoint() {
+        // Arrange
+        Path checkpointFile = tempDir.resolve("migration.checkpoint");
+        MigrationConfig config = new MigrationConfig(10, 1, checkpointFile, 1, false);
+        destination.failOnBatch = 4;
+        assertThatThrownBy(() -> new StoreMigration(config).migrateSessions(source, destination))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(checkpointFile).exists();
+
+        // Act
+        MigrationReport report = new StoreMigration(config).migrateSessions(source, destination);
+
+        // Assert
+        assertThat(report.sessionsResumed()).isEqualTo(30);
+        assertThat(report.sessionsWritten()).isEqualTo(SESSIONS - 30);
+        assertThat(destination.sessions).hasSize(SESSIONS);
+        assertThat(checkpointFile).doesNotExist();
+    }
+
+    @Test
+    void migrateSessions_StartsOverWhenSourceOrderChanged() throws Exception {
+        // Arrange
+        Path checkpointFile = tempDir.resolve("migration.checkpoint");
+        Files.writeString(checkpointFile, "sessions=50\nfingerprint=1\n");
+        StoreMigration migration = new StoreMigration(new MigrationConfig(10, 2, checkpointFile, 1, false));
+
+        // Act
+        MigrationReport report = migration.migrateSessions(source, destination);
+
+        // Assert
+        assertThat(report.sessionsResumed()).isZero();
+        assertThat(report.sessionsWritten()).isEqualTo(SESSIONS);
+        assertThat(destination.sessions).hasSize(SESSIONS);
+    }
+
+    @Test
+    void migrateGroupSessions_CopiesSenderKeyAndDistributionMessage() throws Exception {
+        // Arrange
+        SekretessSignalProtocolStore protocolStore = new SekretessSignalProtocolStore(IdentityKeyPair.generate(),
+                KeyHelper.generateRegistrationId(false), new InMemorySessionStore(), new InMemoryGroupSessionStore());
+        SignalProtocolAddress business = new SignalProtocolAddress("business", 1);
+        UUID distributionId = UUID.randomUUID();
+        SenderKeyDistributionMessage distributionMessage = new GroupSessionBuilder(protocolStore).create(business, distributionId);
+        byte[] senderKey = protocolStore.loadSenderKey(business, distributionId).serialize();
+        InMemoryGroupSessionStore groupSource = new InMemoryGroupSessionStore();
+        groupSource.saveCompleteGroupSession("business", 1, distributionId.toString(),
+                Base64.getEncoder().encodeToString(senderKey), Base64.getEncoder().encodeToString(distributionMessage.serialize()));
+        InMemoryGroupSessionStore groupDestination = new InMemoryGroupSessionStore();
+
+        // Act
+        int migrated = new StoreMigration(MigrationConfig.defaults())
+                .migrateGroupSessions(groupSource, groupDestination, List.of("business", "unknown"));
+
+        // Assert
+        assertThat(migrated).isEqualTo(1);
+        GroupSessionRecordData copied = groupDestination.loadGroupSessionRecord("business");
+        assertThat(copied.distributionId()).isEqualTo(distributionId.toString());
+        assertThat(copied.sessionRecord()).isEqualTo(senderKey);
+        assertThat(copied.businessDistributionMessage()).isEqualTo(distributionMessage.serialize());
+    }
+
+    /**
+     * Thread-safe destination that can fail its n-th batch.
+     */
+    private static final class ConcurrentSessionStore implements SessionStore {
+        private final Map<String, byte[]> sessions = new ConcurrentHashMap<>();
+        private final AtomicInteger batches = new AtomicInteger();
+        private volatile int failOnBatch;
+
+        @Override
+        public void saveSession(String name, int deviceId, String base64EncodedRecord) {
+            saveSessionRecord(name, deviceId, Base64.getDecoder().decode(base64EncodedRecord));
+        }
+
+        @Override
+        public void saveSessionRecord(String name, int deviceId, byte[] sessionRecord) {
+            sessions.put(name + ":" + deviceId, sessionRecord);
+        }
+
+        @Override
+        public void saveSessionRecords(List<SessionRecordData> records) {
+            if (batches.incrementAndGet() == failOnBatch) {
+                failOnBatch = 0;
+                throw new IllegalStateException("destination unavailable");
+            }
+            records.forEach(record -> saveSessionRecord(record.name(), record.deviceId(), record.sessionRecord()));
+        }
+
+        @Override
+        public SessionRecordData loadSessionRecord(String name, int deviceId) {
+            byte[] sessionRecord = sessions.get(name + ":" + deviceId);
+            return sessionRecord == null ? null : new SessionRecordData(name, deviceId, sessionRecord);
+        }
+
+        @Override
+        public List<SessionData> loadAll() {
+            return List.of();
+        }
+
+        @Override
+        public void deleteSession(String name) {
+            sessions.keySet().removeIf(key -> key.startsWith(name + ":"));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.sekretess.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Encryption throughput and heap allocation of {@link FileEncryptionUtil#encrypt} with its NIO temp file path, of
+ * the stream-based temp file path it replaced, of the single GCM upload stream, and of the chunked format that
+ * seals chunks in parallel, and of {@value #SMALL_FILE_MEGABYTES} MB of small files sent through the upload stream
+ * and encrypted into memory. Upload bodies are read and discarded as fast as they are produced. Each mode runs a few
+ * rounds so that the last ones are JIT-compiled; allocation is counted over all threads. Not run by the build; run it
+ * with {@code java -cp target/classes:target/test-classes io.sekretess.util.FileEncryptionBenchmark [megabytes] [chunkKilobytes] [smallFileKilobytes]},
+ * once with a file below and once above the 64 MiB memory-mapping threshold.
+ */
+public class FileEncryptionBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int SMALL_FILE_MEGABYTES = 64;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int chunkSize = (args.length > 1 ? Integer.parseInt(args[1]) : 1024) * 1024;
+        int smallFileSize = (args.length > 2 ? Integer.parseInt(args[2]) : 32) * 1024;
+
+        Path file = Files.createTempFile("sekretess-file-benchmark", ".bin");
+        Path smallFile = Files.createTempFile("sekretess-small-file-benchmark", ".bin");
+        try {
+            byte[] block = new byte[1024 * 1024];
+            new Random(42).nextBytes(block);
+            try (OutputStream output = Files.newOutputStream(file)) {
+                for (int i = 0; i < megabytes; i++) {
+                    output.write(block);
+                }
+            }
+            measure("temp file, streams", megabytes, () -> Files.delete(encryptWithStreams(file)));
+            measure("temp file, nio", megabytes, () -> FileEncryptionUtil.encrypt(file).deleteTempFile());
+            measure("upload stream", megabytes, () -> drain(FileEncryptionUtil.encryptForUpload(file).bodyPublisher()));
+            measure("upload chunked", megabytes, () -> drain(FileEncryptionUtil.encryptForUpload(file, chunkSize).bodyPublisher()));
+
+            Files.write(smallFile, Arrays.copyOf(block, smallFileSize));
+            int smallFiles = SMALL_FILE_MEGABYTES * 1024 * 1024 / smallFileSize;
+            measure("small files, stream", SMALL_FILE_MEGABYTES, () -> {
+                for (int i = 0; i < smallFiles; i++) {
+                    drain(FileEncryptionUtil.encryptForUpload(smallFile).bodyPublisher());
+                }
+            });
+            measure("small files, memory", SMALL_FILE_MEGABYTES, () -> {
+                for (int i = 0; i < smallFiles; i++) {
+                    drain(FileEncryptionUtil.encryptForUpload(smallFile, 0, Integer.MAX_VALUE).bodyPublisher());
+                }
+            });
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(smallFile);
+        }
+    }
+
+    private static void measure(String name, int megabytes, Encryption encryption) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+            long start = System.nanoTime();
+            encryption.run();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double allocatedMegabytes = (threads.getTotalThreadAllocatedBytes() - allocatedBefore) / (1024.0 * 1024);
+            System.out.printf("%-20s round %d: %,7.0f MB/s  allocated %,9.1f MB (%,7.1f MB/s, %,7.3f bytes per byte)%n",
+                    name, round, megabytes / seconds, allocatedMegabytes, allocatedMegabytes / seconds, allocatedMegabytes / megabytes);
+        }
+    }
+
+    /**
+     * The former implementation of {@link FileEncryptionUtil#encrypt}, kept as the baseline.
+     */
+    private static Path encryptWithStreams(Path inputFile) throws Exception {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(key);
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+        Path encryptedFile = Files.createTempFile("sekretess-file-", ".bin");
+        try (InputStream inputStream = Files.newInputStream(inputFile);
+             OutputStream outputStream = Files.newOutputStream(encryptedFile);
+             DigestOutputStream digestOutputStream = new DigestOutputStream(outputStream, MessageDigest.getInstance("SHA-256"));
+             CipherOutputStream cipherOutputStream = new CipherOutputStream(digestOutputStream, cipher)) {
+            inputStream.transferTo(cipherOutputStream);
+        }
+        return encryptedFile;
+    }
+
+    private static void drain(HttpRequest.BodyPublisher publisher) throws Exception {
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                item.position(item.limit());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get();
+    }
+
+    @FunctionalInterface
+    private interface Encryption {
+        void run() throws Exception;
+    }
+}
@@ -3,16 +3,28 @@ package io.sekretess.util;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class FileEncryptionUtilTest {
 
@@ -53,4 +65,266 @@ class FileEncryptionUtilTest {
 
         assertThat(Files.exists(payload.encryptedFilePath())).isFalse();
     }
+
+    @Test
+    void encrypt_EncryptsFilesLargerThanOneBuffer() throws Exception {
+        byte[] plaintext = new byte[3 * 1024 * 1024 + 5];
+        new Random(7).nextBytes(plaintext);
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, plaintext);
+
+        EncryptedFilePayload payload = FileEncryptionUtil.encrypt(inputFile);
+        try {
+            byte[] ciphertext = Files.readAllBytes(payload.encryptedFilePath());
+            assertThat(ciphertext).hasSize(plaintext.length + 16);
+            String digest = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(ciphertext));
+            assertThat(payload.ciphertextSha256()).isEqualTo(digest);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(Base64.getDecoder().decode(payload.encodedKey()), "AES"),
+                    new GCMParameterSpec(128, Base64.getDecoder().decode(payload.encodedIv())));
+            assertThat(cipher.doFinal(ciphertext)).isEqualTo(plaintext);
+        } finally {
+            payload.deleteTempFile();
+        }
+    }
+
+    @Test
+    void encryptForUpload_PublishesDecryptableCiphertextAndItsDigest() throws Exception {
+        byte[] plaintext = new byte[200_003];
+        new Random(7).nextBytes(plaintext);
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, plaintext);
+
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile);
+        HttpRequest.BodyPublisher publisher = upload.bodyPublisher();
+        assertThatThrownBy(upload::ciphertextSha256).isInstanceOf(IllegalStateException.class);
+        byte[] ciphertext = readBody(publisher);
+
+        assertThat(publisher.contentLength()).isEqualTo(ciphertext.length);
+        assertThat(upload.ciphertextSize()).isEqualTo(ciphertext.length);
+        assertThat(upload.plaintextSize()).isEqualTo(plaintext.length);
+        String digest = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(ciphertext));
+        assertThat(upload.ciphertextSha256()).isEqualTo(digest);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(Base64.getDecoder().decode(upload.encodedKey()), "AES"),
+                new GCMParameterSpec(128, Base64.getDecoder().decode(upload.encodedIv())));
+        assertThat(cipher.doFinal(ciphertext)).isEqualTo(plaintext);
+        assertThat(tempDir.toFile().list()).containsExactly("payload.bin");
+    }
+
+    @Test
+    void encryptForUpload_CanBePublishedOnlyOnce() throws Exception {
+        Path inputFile = tempDir.resolve("payload.txt");
+        Files.writeString(inputFile, "sekretess-file-message");
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile);
+        upload.bodyPublisher();
+
+        assertThatThrownBy(upload::bodyPublisher).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void encryptForUpload_FailsWhenFileGrowsWhileUploading() throws Exception {
+        Path inputFile = tempDir.resolve("payload.txt");
+        Files.writeString(inputFile, "sekretess-file-message");
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile);
+        Files.writeString(inputFile, "sekretess-file-message-grown");
+
+        assertThatThrownBy(() -> readBody(upload.bodyPublisher()))
+                .hasRootCauseInstanceOf(IOException.class)
+                .hasStackTraceContaining("File changed while encrypting");
+    }
+
+    @Test
+    void encryptForUpload_WithChunkSize_SealsEveryChunkSeparately() throws Exception {
+        byte[] plaintext = new byte[10_000];
+        new Random(7).nextBytes(plaintext);
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, plaintext);
+
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile, 4096);
+        byte[] ciphertext = readBody(upload.bodyPublisher());
+
+        assertThat(upload.algorithm()).isEqualTo("AES-256-GCM-CHUNKED");
+        assertThat(upload.chunkSize()).isEqualTo(4096);
+        assertThat(ciphertext).hasSize(10_000 + 3 * 16);
+        assertThat(upload.ciphertextSize()).isEqualTo(ciphertext.length);
+        String digest = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(ciphertext));
+        assertThat(upload.ciphertextSha256()).isEqualTo(digest);
+
+        byte[] key = Base64.getDecoder().decode(upload.encodedKey());
+        byte[] noncePrefix = Base64.getDecoder().decode(upload.encodedIv());
+        assertThat(noncePrefix).hasSize(8);
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        decrypted.writeBytes(ChunkedFileCipher.open(key, noncePrefix, 0, false, Arrays.copyOfRange(ciphertext, 0, 4112)));
+        decrypted.writeBytes(ChunkedFileCipher.open(key, noncePrefix, 1, false, Arrays.copyOfRange(ciphertext, 4112, 8224)));
+        decrypted.writeBytes(ChunkedFileCipher.open(key, noncePrefix, 2, true, Arrays.copyOfRange(ciphertext, 8224, ciphertext.length)));
+        assertThat(decrypted.toByteArray()).isEqualTo(plaintext);
+    }
+
+    @Test
+    void encryptForUpload_WithChunkSize_SealsChunksOnTheGivenExecutor() throws Exception {
+        byte[] plaintext = new byte[10_000];
+        new Random(7).nextBytes(plaintext);
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, plaintext);
+        AtomicInteger sealed = new AtomicInteger();
+        Executor executor = task -> {
+            sealed.incrementAndGet();
+            task.run();
+        };
+
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile, 4096, executor);
+        byte[] ciphertext = readBody(upload.bodyPublisher());
+
+        assertThat(sealed).hasValue(3);
+        assertThat(ciphertext).hasSize(10_000 + 3 * 16);
+        byte[] key = Base64.getDecoder().decode(upload.encodedKey());
+        byte[] noncePrefix = Base64.getDecoder().decode(upload.encodedIv());
+        assertThat(ChunkedFileCipher.open(key, noncePrefix, 2, true, Arrays.copyOfRange(ciphertext, 8224, ciphertext.length)))
+                .isEqualTo(Arrays.copyOfRange(plaintext, 8192, 10_000));
+    }
+
+    @Test
+    void encryptForUpload_WithChunkSize_RejectsReorderedAndTruncatedChunks() throws Exception {
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, new byte[10_000]);
+
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile, 4096);
+        byte[] ciphertext = readBody(upload.bodyPublisher());
+
+        byte[] key = Base64.getDecoder().decode(upload.encodedKey());
+        byte[] noncePrefix = Base64.getDecoder().decode(upload.encodedIv());
+        byte[] secondChunk = Arrays.copyOfRange(ciphertext, 4112, 8224);
+        assertThatThrownBy(() -> ChunkedFileCipher.open(key, noncePrefix, 0, false, secondChunk))
+                .isInstanceOf(AEADBadTagException.class);
+        assertThatThrownBy(() -> ChunkedFileCipher.open(key, noncePrefix, 1, true, secondChunk))
+                .isInstanceOf(AEADBadTagException.class);
+    }
+
+    @Test
+    void encryptForUpload_WithChunkSize_EncryptsEmptyFileAsOneChunk() throws Exception {
+        Path inputFile = tempDir.resolve("empty.bin");
+        Files.write(inputFile, new byte[0]);
+
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile, 4096);
+        byte[] ciphertext = readBody(upload.bodyPublisher());
+
+        assertThat(ciphertext).hasSize(16);
+        assertThat(ChunkedFileCipher.open(Base64.getDecoder().decode(upload.encodedKey()),
+                Base64.getDecoder().decode(upload.encodedIv()), 0, true, ciphertext)).isEmpty();
+    }
+
+    @Test
+    void encryptForUpload_BelowInMemoryThreshold_EncryptsUpFront() throws Exception {
+        byte[] plaintext = new byte[10_000];
+        new Random(7).nextBytes(plaintext);
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, plaintext);
+
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile, 0, 10_001);
+        String digestBeforeUpload = upload.ciphertextSha256();
+        Files.delete(inputFile);
+        byte[] ciphertext = readBody(upload.bodyPublisher());
+
+        assertThat(upload.inMemory()).isTrue();
+        assertThat(upload.ciphertextSize()).isEqualTo(ciphertext.length);
+        assertThat(upload.plaintextSize()).isEqualTo(plaintext.length);
+        String digest = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(ciphertext));
+        assertThat(digestBeforeUpload).isEqualTo(digest);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(Base64.getDecoder().decode(upload.encodedKey()), "AES"),
+                new GCMParameterSpec(128, Base64.getDecoder().decode(upload.encodedIv())));
+        assertThat(cipher.doFinal(ciphertext)).isEqualTo(plaintext);
+        assertThatThrownBy(upload::bodyPublisher).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void encryptForUpload_BelowInMemoryThreshold_WithChunkSize_SealsEveryChunkSeparately() throws Exception {
+        byte[] plaintext = new byte[10_000];
+        new Random(7).nextBytes(plaintext);
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, plaintext);
+
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile, 4096, 64 * 1024);
+        byte[] ciphertext = readBody(upload.bodyPublisher());
+
+        assertThat(upload.inMemory()).isTrue();
+        assertThat(upload.algorithm()).isEqualTo("AES-256-GCM-CHUNKED");
+        assertThat(ciphertext).hasSize(10_000 + 3 * 16);
+        byte[] key = Base64.getDecoder().decode(upload.encodedKey());
+        byte[] noncePrefix = Base64.getDecoder().decode(upload.encodedIv());
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        decrypted.writeBytes(ChunkedFileCipher.open(key, noncePrefix, 0, false, Arrays.copyOfRange(ciphertext, 0, 4112)));
+        decrypted.writeBytes(ChunkedFileCipher.open(key, noncePrefix, 1, false, Arrays.copyOfRange(ciphertext, 4112, 8224)));
+        decrypted.writeBytes(ChunkedFileCipher.open(key, noncePrefix, 2, true, Arrays.copyOfRange(ciphertext, 8224, ciphertext.length)));
+        assertThat(decrypted.toByteArray()).isEqualTo(plaintext);
+    }
+
+    @Test
+    void encryptForUpload_BelowInMemoryThreshold_TakesMimeTypeFromFileName() throws Exception {
+        Path textFile = tempDir.resolve("notes.txt");
+        Files.writeString(textFile, "sekretess-file-message");
+        Path unknownFile = tempDir.resolve("payload.sekretess");
+        Files.writeString(unknownFile, "sekretess-file-message");
+
+        EncryptedFileUpload text = FileEncryptionUtil.encryptForUpload(textFile, 0, 64 * 1024);
+        EncryptedFileUpload unknown = FileEncryptionUtil.encryptForUpload(unknownFile, 0, 64 * 1024);
+
+        assertThat(text.mimeType()).isEqualTo("text/plain");
+        assertThat(unknown.mimeType()).isEqualTo("application/octet-stream");
+    }
+
+    @Test
+    void encryptInMemory_ReturnsNullAtInMemoryThreshold() throws Exception {
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, new byte[10_000]);
+
+        assertThat(FileEncryptionUtil.encryptInMemory(inputFile, 0, 10_000, Runnable::run)).isNull();
+        assertThat(FileEncryptionUtil.encryptInMemory(inputFile, 0, 0, Runnable::run)).isNull();
+        assertThat(FileEncryptionUtil.encryptInMemory(inputFile, 0, 10_001, Runnable::run).inMemory()).isTrue();
+    }
+
+    @Test
+    void encryptForUpload_AtInMemoryThreshold_EncryptsWhileUploading() throws Exception {
+        Path inputFile = tempDir.resolve("payload.bin");
+        Files.write(inputFile, new byte[10_000]);
+
+        EncryptedFileUpload upload = FileEncryptionUtil.encryptForUpload(inputFile, 0, 10_000);
+
+        assertThat(upload.inMemory()).isFalse();
+        assertThatThrownBy(upload::ciphertextSha256).isInstanceOf(IllegalStateException.class);
+        assertThat(readBody(upload.bodyPublisher())).hasSize(10_016);
+    }
+
+    private static byte[] readBody(HttpRequest.BodyPublisher publisher) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                body.writeBytes(bytes);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get();
+        return body.toByteArray();
+    }
 }